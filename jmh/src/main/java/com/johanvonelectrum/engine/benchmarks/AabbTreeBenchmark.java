@@ -0,0 +1,97 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import com.johanvonelectrum.engine.spatial.AabbTree;
+import com.johanvonelectrum.engine.spatial.QueryResults;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frustum culling and queries against an {@link AabbTree} of small boxes scattered over a square world, plus
+ * moving a tenth of them every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AabbTreeBenchmark {
+
+    private static final float WORLD_SIZE = 1000f;
+
+    @Param({ "1000", "100000" })
+    private int objects;
+
+    private AabbTree tree;
+    private int[] proxies;
+    private float[] positions;
+    private final QueryResults results = new QueryResults(1024);
+    private FrustumIntersection frustum;
+    private JobSystem jobSystem;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        tree = new AabbTree();
+        proxies = new int[objects];
+        positions = new float[objects * 3];
+        Random random = new Random(42);
+        for (int i = 0; i < objects; i++) {
+            float x = random.nextFloat() * WORLD_SIZE, y = random.nextFloat() * 20f, z = random.nextFloat() * WORLD_SIZE;
+            positions[i * 3] = x;
+            positions[i * 3 + 1] = y;
+            positions[i * 3 + 2] = z;
+            proxies[i] = tree.insert(i, x, y, z, x + 1f, y + 1f, z + 1f);
+        }
+        tree.rebuild();
+
+        Matrix4f viewProjection = new Matrix4f()
+                .perspective((float) Math.toRadians(60), 16f / 9f, 0.1f, 400f)
+                .lookAt(WORLD_SIZE / 2, 30f, WORLD_SIZE / 2, WORLD_SIZE / 2 + 100f, 0f, WORLD_SIZE / 2 + 100f, 0f, 1f, 0f);
+        frustum = new FrustumIntersection(viewProjection);
+        jobSystem = new JobSystem(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jobSystem.dispose();
+    }
+
+    @Benchmark
+    public int cull() {
+        results.clear();
+        tree.cull(frustum, results);
+        return results.size();
+    }
+
+    @Benchmark
+    public int cullParallel() {
+        results.clear();
+        tree.cull(frustum, results, jobSystem);
+        return results.size();
+    }
+
+    @Benchmark
+    public int queryAabb() {
+        results.clear();
+        tree.queryAabb(400f, 0f, 400f, 450f, 20f, 450f, results);
+        return results.size();
+    }
+
+    @Benchmark
+    public boolean move() {
+        frame++;
+        float offset = (frame / 10 & 1) == 0 ? 0.5f : -0.5f;
+        for (int i = frame % 10; i < objects; i += 10) {
+            positions[i * 3] += offset;
+            float x = positions[i * 3], y = positions[i * 3 + 1], z = positions[i * 3 + 2];
+            tree.update(proxies[i], x, y, z, x + 1f, y + 1f, z + 1f);
+        }
+        return tree.rebuildIfNeeded();
+    }
+}
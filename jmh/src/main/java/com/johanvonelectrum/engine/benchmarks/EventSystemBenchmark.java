@@ -0,0 +1,73 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.events.KeyEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Pooled events through the bus: a single push and pop, a frame worth of events drained at once, and several
+ * threads pushing while the main thread drains.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSystemBenchmark {
+
+    private static final int BATCH = 64;
+
+    private EventSystem eventSystem;
+    private Consumer<Event> consumer;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        eventSystem = new EventSystem();
+        eventSystem.registerPool(KeyEvent.class, KeyEvent::new, EventSystem.DEFAULT_CAPACITY);
+        consumer = blackhole::consume;
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventSystem.dispose();
+    }
+
+    @Benchmark
+    @Group("pushPop")
+    public int pushPop() {
+        eventSystem.push(eventSystem.obtain(KeyEvent.class).set(65, 30, 1, 0));
+        KeyEvent event = (KeyEvent) eventSystem.pop();
+        int key = event.getKey();
+        event.recycle();
+        return key;
+    }
+
+    @Benchmark
+    @Group("pushDrain")
+    @OperationsPerInvocation(BATCH)
+    public int pushDrain() {
+        for (int i = 0; i < BATCH; i++)
+            eventSystem.push(eventSystem.obtain(KeyEvent.class).set(i, i, 1, 0));
+        return eventSystem.drain(consumer);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public boolean contendedPush() {
+        return eventSystem.push(eventSystem.obtain(KeyEvent.class).set(65, 30, 1, 0));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int contendedDrain() {
+        return eventSystem.drain(consumer, BATCH);
+    }
+}
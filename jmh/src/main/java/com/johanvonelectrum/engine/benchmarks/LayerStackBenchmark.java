@@ -0,0 +1,123 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventCategory;
+import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.events.KeyEvent;
+import com.johanvonelectrum.engine.layers.Layer;
+import com.johanvonelectrum.engine.layers.LayerStack;
+import com.johanvonelectrum.engine.profiling.Profiler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event dispatch and the render pass of a stack of N layers. The layers do not touch GL, so this measures the stack
+ * itself and, when enabled, the profiler scopes around every layer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerStackBenchmark {
+
+    private static final int EVENTS = 64;
+
+    @Param({ "1", "8", "32" })
+    private int layers;
+
+    @Param({ "false", "true" })
+    private boolean profiler;
+
+    private EventSystem eventSystem;
+    private LayerStack layerStack;
+    private CountingLayer[] counting;
+
+    @Setup
+    public void setup() {
+        Profiler.setEnabled(profiler);
+        eventSystem = new EventSystem();
+        eventSystem.registerPool(KeyEvent.class, KeyEvent::new, EVENTS);
+        layerStack = new LayerStack();
+        counting = new CountingLayer[layers];
+        for (int i = 0; i < layers; i++) {
+            // Every other layer only listens to the network category, so dispatch has to skip it
+            counting[i] = new CountingLayer(i % 2 == 0 ? EventCategory.INPUT : EventCategory.NETWORK);
+            layerStack.add(counting[i].init());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        layerStack.dispose();
+        eventSystem.dispose();
+        Profiler.setEnabled(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public long dispatch() {
+        for (int i = 0; i < EVENTS; i++)
+            eventSystem.push(eventSystem.obtain(KeyEvent.class).set(i, i, 1, 0));
+        layerStack.handle(eventSystem);
+        return counting[0].count;
+    }
+
+    @Benchmark
+    public long render() {
+        layerStack.render(1f / 60f, 0.5f);
+        if (profiler)
+            Profiler.endFrame();
+        return counting[0].count;
+    }
+
+    @Benchmark
+    public long update() {
+        layerStack.update(1f / 60f);
+        return counting[0].count;
+    }
+
+    private static final class CountingLayer extends Layer {
+
+        private long count;
+
+        CountingLayer(int categories) {
+            super("CountingLayer");
+            subscribe(categories);
+        }
+
+        @Override
+        public Layer init() {
+            return this;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void render(float deltaTime) {
+            count++;
+        }
+
+        @Override
+        public void update(float fixedDeltaTime) {
+            count++;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            count++;
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.net.ConnectionEvent;
+import com.johanvonelectrum.engine.net.Delivery;
+import com.johanvonelectrum.engine.net.MessageEvent;
+import com.johanvonelectrum.engine.net.NetHost;
+import com.johanvonelectrum.engine.net.Transport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server and a client host over loopback. Throughput sends batches of small reliable ordered messages to the
+ * server, latency bounces one message off the server and back, both through the selector threads and event buses.
+ * With packet loss, both UDP hosts drop that fraction of their data packets and acknowledgements, and throughput
+ * fails if a message is lost, duplicated or delivered out of order.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+
+    /**
+     * The previous batch may still wait for its acknowledgements, two must fit in the reliable window.
+     */
+    private static final int BATCH = 100;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    @Param({ "UDP", "TCP" })
+    private Transport transport;
+
+    @Param({ "32" })
+    private int messageSize;
+
+    /**
+     * Only applies to UDP.
+     */
+    @Param({ "0", "0.2" })
+    private double packetLoss;
+
+    private EventSystem serverEvents;
+    private EventSystem clientEvents;
+    private NetHost server;
+    private NetHost client;
+    private int serverConnection = -1;
+    private int clientConnection;
+    private ByteBuffer message;
+
+    @Setup
+    public void setup() throws IOException {
+        serverEvents = new EventSystem();
+        clientEvents = new EventSystem();
+        server = new NetHost(serverEvents, 4, NetHost.DEFAULT_MTU);
+        server.listen(0);
+        client = new NetHost(clientEvents, 1, NetHost.DEFAULT_MTU);
+        if (transport == Transport.UDP) {
+            server.setPacketLoss(packetLoss);
+            client.setPacketLoss(packetLoss);
+        }
+        server.start();
+
+        int port = transport == Transport.UDP ? server.getUdpPort() : server.getTcpPort();
+        clientConnection = client.connect(new InetSocketAddress("127.0.0.1", port), transport);
+        client.start();
+        message = ByteBuffer.allocateDirect(messageSize);
+
+        long deadline = System.nanoTime() + TIMEOUT;
+        while (serverConnection < 0) {
+            Event event = await(serverEvents, deadline);
+            if (event instanceof ConnectionEvent && ((ConnectionEvent) event).getType() == ConnectionEvent.Type.CONNECTED)
+                serverConnection = ((ConnectionEvent) event).getConnection();
+            event.recycle();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.dispose();
+        server.dispose();
+        clientEvents.dispose();
+        serverEvents.dispose();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(BATCH)
+    public int throughput() {
+        for (int i = 0; i < BATCH; i++) {
+            message.clear();
+            message.putInt(0, i);
+            while (!client.send(clientConnection, Delivery.RELIABLE_ORDERED, message))
+                Thread.yield();
+        }
+        client.flush();
+
+        int received = 0;
+        long deadline = System.nanoTime() + TIMEOUT;
+        while (received < BATCH) {
+            Event event = await(serverEvents, deadline);
+            if (event instanceof MessageEvent) {
+                int index = ((MessageEvent) event).getPayload().getInt(0);
+                if (index != received) {
+                    event.recycle();
+                    throw new IllegalStateException("Expected reliable ordered message " + received + " but got " + index + ".");
+                }
+                received++;
+            }
+            event.recycle();
+        }
+        return received;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public int roundTrip() {
+        message.clear();
+        client.send(clientConnection, Delivery.RELIABLE, message);
+        client.flush();
+
+        long deadline = System.nanoTime() + TIMEOUT;
+        MessageEvent request = awaitMessage(serverEvents, deadline);
+        server.send(serverConnection, Delivery.RELIABLE, request.getPayload());
+        request.recycle();
+        server.flush();
+
+        MessageEvent response = awaitMessage(clientEvents, deadline);
+        int size = response.getPayload().remaining();
+        response.recycle();
+        return size;
+    }
+
+    private static MessageEvent awaitMessage(EventSystem events, long deadline) {
+        while (true) {
+            Event event = await(events, deadline);
+            if (event instanceof MessageEvent)
+                return (MessageEvent) event;
+            event.recycle();
+        }
+    }
+
+    private static Event await(EventSystem events, long deadline) {
+        Event event;
+        while ((event = events.pop()) == null) {
+            if (System.nanoTime() - deadline > 0)
+                throw new IllegalStateException("Timed out waiting for the network thread.");
+            Thread.yield();
+        }
+        return event;
+    }
+}
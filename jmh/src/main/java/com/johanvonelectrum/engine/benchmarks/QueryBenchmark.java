@@ -0,0 +1,80 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.ecs.Chunk;
+import com.johanvonelectrum.engine.ecs.ComponentType;
+import com.johanvonelectrum.engine.ecs.Query;
+import com.johanvonelectrum.engine.ecs.World;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECS iteration: a movement system over every entity with a position and a velocity, half of them in a second
+ * archetype, sequentially and on the job workers. Entities per second are {@code entities} divided by the time per
+ * operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final ComponentType POSITION = ComponentType.floats("Position", "x", "y");
+    private static final ComponentType VELOCITY = ComponentType.floats("Velocity", "x", "y");
+    private static final ComponentType HEALTH = ComponentType.builder("Health").intField("value").build();
+    private static final int X = 0, Y = 1;
+    private static final float DELTA = 1f / 60f;
+
+    @Param({ "10000", "1000000" })
+    private int entities;
+
+    private World world;
+    private Query query;
+    private Query.ChunkConsumer move;
+    private JobSystem jobSystem;
+
+    @Setup
+    public void setup() {
+        world = new World();
+        for (int i = 0; i < entities; i++) {
+            int entity = (i & 1) == 0 ? world.create(POSITION, VELOCITY) : world.create(POSITION, VELOCITY, HEALTH);
+            world.setFloat(entity, VELOCITY, X, 1f + (i % 7));
+            world.setFloat(entity, VELOCITY, Y, -1f);
+        }
+        query = world.query(POSITION, VELOCITY);
+        move = QueryBenchmark::move;
+        jobSystem = new JobSystem(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jobSystem.dispose();
+    }
+
+    @Benchmark
+    public void sequential() {
+        query.forEachChunk(move);
+    }
+
+    @Benchmark
+    public void parallel() {
+        query.forEachChunk(jobSystem, move);
+    }
+
+    @Benchmark
+    public int count() {
+        return query.count();
+    }
+
+    private static void move(Chunk chunk) {
+        float[] x = chunk.floats(POSITION, X), y = chunk.floats(POSITION, Y);
+        float[] vx = chunk.floats(VELOCITY, X), vy = chunk.floats(VELOCITY, Y);
+        for (int i = 0, n = chunk.size(); i < n; i++) {
+            x[i] += vx[i] * DELTA;
+            y[i] += vy[i] * DELTA;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.graphics.Graphics;
+import com.johanvonelectrum.engine.graphics.NullRenderDevice;
+import com.johanvonelectrum.engine.graphics.RecordingRenderDevice;
+import com.johanvonelectrum.engine.graphics.Renderer;
+import com.johanvonelectrum.engine.graphics.UniformBuffer;
+import com.johanvonelectrum.engine.shaders.ShaderException;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full frame of the sprite renderer on the recording device: staging, sorting, writing the stream buffer and
+ * issuing the draw calls, without a GPU. Returns the draw calls of the frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+
+    private static final int TEXTURES = 16;
+
+    @Param({ "1000", "10000" })
+    private int sprites;
+
+    @Param({ "INSTANCED", "VERTICES" })
+    private Renderer.Mode mode;
+
+    @Param({ "NONE", "STATE" })
+    private Renderer.SortMode sortMode;
+
+    private RecordingRenderDevice device;
+    private Renderer renderer;
+    private final Matrix4f projection = new Matrix4f().setOrtho2D(0, 1920, 1080, 0);
+    private int[] textures;
+
+    @Setup
+    public void setup() throws ShaderException {
+        device = new RecordingRenderDevice(new NullRenderDevice());
+        Graphics.setDevice(device);
+        renderer = new Renderer(sprites, mode, sortMode);
+
+        textures = new int[sprites];
+        Random random = new Random(42);
+        for (int i = 0; i < sprites; i++)
+            textures[i] = 1 + random.nextInt(TEXTURES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.dispose();
+        UniformBuffer.disposeAll();
+        device.dispose();
+    }
+
+    @Benchmark
+    public int frame() {
+        renderer.begin(projection);
+        for (int i = 0; i < sprites; i++)
+            renderer.draw(textures[i], i % 1920, i % 1080, 32f, 32f, 0f, 0f, 1f, 1f, Renderer.WHITE);
+        renderer.end();
+        renderer.nextFrame();
+        device.endFrame();
+        return device.getDrawCalls();
+    }
+}
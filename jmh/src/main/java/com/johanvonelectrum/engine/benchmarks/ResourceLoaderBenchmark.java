@@ -0,0 +1,69 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.io.resources.Resource;
+import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+import com.johanvonelectrum.engine.io.resources.Texture;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading resources from the classpath, or from the asset pack given with {@code -Djmh.assetPack=<file>}: shader
+ * text, the encoded bytes of a texture, decoding them, and both together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceLoaderBenchmark {
+
+    private static final String TEXT = "shaders/sprite.vs";
+    private static final String TEXTURE = "icon/JohanEngine";
+
+    private Resource encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        String pack = System.getProperty("jmh.assetPack");
+        if (pack != null)
+            ResourceLoader.mountPack(Paths.get(pack));
+        encoded = ResourceLoader.openResource("textures/" + TEXTURE + ".png");
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoded.close();
+    }
+
+    @Benchmark
+    public String loadText() throws IOException {
+        return ResourceLoader.loadResourceText(TEXT);
+    }
+
+    @Benchmark
+    public int openTexture() throws IOException {
+        try (Resource resource = ResourceLoader.openResource("textures/" + TEXTURE + ".png")) {
+            return resource.getData().remaining();
+        }
+    }
+
+    @Benchmark
+    public int decodeTexture() throws IOException {
+        Texture texture = ResourceLoader.decodeTexture(encoded.getData(), TEXTURE);
+        int width = texture.getWidth();
+        texture.free();
+        return width;
+    }
+
+    @Benchmark
+    public int loadTexture() throws IOException {
+        Texture texture = ResourceLoader.loadResourceTexture(TEXTURE);
+        int width = texture.getWidth();
+        texture.free();
+        return width;
+    }
+}
@@ -0,0 +1,220 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.ecs.ComponentType;
+import com.johanvonelectrum.engine.ecs.Query;
+import com.johanvonelectrum.engine.ecs.World;
+import com.johanvonelectrum.engine.net.snapshot.BitReader;
+import com.johanvonelectrum.engine.net.snapshot.BitWriter;
+import com.johanvonelectrum.engine.net.snapshot.Snapshot;
+import com.johanvonelectrum.engine.net.snapshot.SnapshotDecoder;
+import com.johanvonelectrum.engine.net.snapshot.SnapshotEncoder;
+import com.johanvonelectrum.engine.net.snapshot.SnapshotHistory;
+import com.johanvonelectrum.engine.net.snapshot.SnapshotSchema;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot replication of a world where a share of the entities move every tick, encoded against the snapshot of a
+ * few ticks ago as if acknowledgements took that long. Reports the encoded bytes per entity next to the encode and
+ * decode times of a whole tick, split in messages of a default MTU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private static final ComponentType POSITION = ComponentType.floats("Position", "x", "y", "z");
+    private static final ComponentType ROTATION = ComponentType.floats("Rotation", "x", "y", "z", "w");
+    private static final ComponentType HEALTH = ComponentType.builder("Health").intField("value").build();
+    private static final int X = 0, Y = 1, Z = 2, W = 3;
+    private static final int ACK_DELAY = 3;
+    private static final int MESSAGE_SIZE = 1150;
+
+    @Param({ "1000", "10000" })
+    private int entities;
+
+    @Param({ "10", "100" })
+    private int changedPercent;
+
+    /**
+     * Size of the last encoded tick.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public double bytesPerEntity;
+        public double messages;
+    }
+
+    private World world;
+    private int[] ids;
+    private Query query;
+    private SnapshotHistory history;
+    private SnapshotEncoder encoder;
+    private SnapshotDecoder decoder;
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+    private final Random random = new Random(42);
+    private ByteBuffer message;
+    private ByteBuffer encoded;
+    private int[] partEnds = new int[64];
+    private int partCount;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        SnapshotSchema schema = SnapshotSchema.builder()
+                .vector(POSITION, -4096, 4096, 20, "x", "y", "z")
+                .quaternion(ROTATION, 10, "x", "y", "z", "w")
+                .field(HEALTH, "value")
+                .build();
+
+        world = new World();
+        ids = new int[entities];
+        for (int i = 0; i < entities; i++) {
+            ids[i] = world.create(POSITION, ROTATION, HEALTH);
+            world.setFloat(ids[i], POSITION, X, random.nextFloat() * 8000 - 4000);
+            world.setFloat(ids[i], POSITION, Z, random.nextFloat() * 8000 - 4000);
+            world.setFloat(ids[i], ROTATION, W, 1);
+            world.setInt(ids[i], HEALTH, 0, 100);
+        }
+        query = world.query(schema.getTypes());
+        history = new SnapshotHistory(schema);
+        encoder = new SnapshotEncoder(schema);
+        decoder = new SnapshotDecoder(schema);
+        message = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+        encoded = ByteBuffer.allocateDirect(entities * 32 + MESSAGE_SIZE);
+
+        for (int i = 0; i < ACK_DELAY * 2; i++) {
+            prepare();
+            decodeAll();
+        }
+        checkNewZeroEntity();
+    }
+
+    /**
+     * An entity whose units are all zero does not differ from nothing, yet the client must learn it exists, in a full
+     * snapshot and in a delta. Fails the setup if a round trip loses it.
+     */
+    private static void checkNewZeroEntity() {
+        SnapshotSchema schema = SnapshotSchema.builder().field(HEALTH, "value").build();
+        World world = new World();
+        Query query = world.query(schema.getTypes());
+        SnapshotHistory history = new SnapshotHistory(schema);
+        SnapshotEncoder encoder = new SnapshotEncoder(schema);
+        SnapshotDecoder decoder = new SnapshotDecoder(schema);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+        BitWriter writer = new BitWriter();
+        BitReader reader = new BitReader();
+
+        world.setInt(world.create(HEALTH), HEALTH, 0, 100);
+        int full = world.create(HEALTH);
+        history.capture(1, query);
+        encoder.begin(history.get(1), null);
+        checkReplicated(roundTrip(encoder, decoder, writer, reader, buffer), full);
+
+        int delta = world.create(HEALTH);
+        history.capture(2, query);
+        encoder.begin(history.get(2), history.get(1));
+        Snapshot decoded = roundTrip(encoder, decoder, writer, reader, buffer);
+        checkReplicated(decoded, full);
+        checkReplicated(decoded, delta);
+    }
+
+    private static Snapshot roundTrip(SnapshotEncoder encoder, SnapshotDecoder decoder, BitWriter writer, BitReader reader, ByteBuffer buffer) {
+        Snapshot snapshot = null;
+        while (!encoder.isDone()) {
+            buffer.clear();
+            writer.wrap(buffer);
+            encoder.encodePart(writer);
+            writer.flush();
+            buffer.flip();
+            snapshot = decoder.decode(reader.wrap(buffer));
+        }
+        if (snapshot == null)
+            throw new IllegalStateException("The zero entity snapshot was not decoded.");
+        return snapshot;
+    }
+
+    private static void checkReplicated(Snapshot snapshot, int entity) {
+        int row = snapshot.indexOf(entity);
+        if (row < 0 || snapshot.getState(row, 0) != 0)
+            throw new IllegalStateException("Entity " + entity + " with only zero units was not replicated at tick " + snapshot.getTick() + ".");
+    }
+
+    /**
+     * Simulates and captures the next tick, and encodes it for the decode benchmark.
+     */
+    @Setup(Level.Invocation)
+    public void prepare() {
+        int changed = entities * changedPercent / 100;
+        for (int i = 0; i < changed; i++) {
+            int entity = ids[random.nextInt(entities)];
+            world.setFloat(entity, POSITION, X, world.getFloat(entity, POSITION, X) + random.nextFloat() - 0.5f);
+            world.setFloat(entity, POSITION, Y, world.getFloat(entity, POSITION, Y) + random.nextFloat() * 0.1f);
+            if ((i & 7) == 0) {
+                float angle = random.nextFloat() * 6.28f;
+                world.setFloat(entity, ROTATION, Y, (float) Math.sin(angle / 2));
+                world.setFloat(entity, ROTATION, W, (float) Math.cos(angle / 2));
+            }
+        }
+        history.capture(++tick, query);
+
+        encoded.clear();
+        partCount = 0;
+        encoder.begin(history.get(tick), history.get(tick - ACK_DELAY));
+        do {
+            encoded.limit(encoded.position() + MESSAGE_SIZE);
+            writer.wrap(encoded);
+            encoder.encodePart(writer);
+            writer.flush();
+            if (partCount == partEnds.length)
+                partEnds = Arrays.copyOf(partEnds, partCount * 2);
+            partEnds[partCount++] = encoded.position();
+        } while (!encoder.isDone());
+    }
+
+    @Benchmark
+    public int encode(Size size) {
+        Snapshot current = history.get(tick);
+        encoder.begin(current, history.get(tick - ACK_DELAY));
+        int bytes = 0;
+        int messages = 0;
+        do {
+            message.clear();
+            writer.wrap(message);
+            encoder.encodePart(writer);
+            bytes += writer.flush();
+            messages++;
+        } while (!encoder.isDone());
+
+        size.bytesPerEntity = (double) bytes / current.size();
+        size.messages = messages;
+        return bytes;
+    }
+
+    @Benchmark
+    public int decode() {
+        return decodeAll();
+    }
+
+    private int decodeAll() {
+        Snapshot snapshot = null;
+        int start = 0;
+        for (int i = 0; i < partCount; i++) {
+            encoded.limit(partEnds[i]).position(start);
+            snapshot = decoder.decode(reader.wrap(encoded));
+            start = partEnds[i];
+        }
+        if (snapshot == null)
+            throw new IllegalStateException("Tick " + tick + " was not decoded.");
+        return snapshot.size();
+    }
+}
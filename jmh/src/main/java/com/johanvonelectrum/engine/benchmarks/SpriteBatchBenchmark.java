@@ -0,0 +1,74 @@
+package com.johanvonelectrum.engine.benchmarks;
+
+import com.johanvonelectrum.engine.graphics.SpriteBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of sprite batching: staging a frame of sprites, sorting them by render state and walking the runs
+ * the renderer turns into draw calls. No GL is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpriteBatchBenchmark {
+
+    private static final int TEXTURES = 16;
+    private static final int SHADERS = 2;
+
+    @Param({ "1000", "100000" })
+    private int sprites;
+
+    private SpriteBatch batch;
+    private int[] layers, shaders, textures;
+
+    @Setup
+    public void setup() {
+        batch = new SpriteBatch(sprites);
+        layers = new int[sprites];
+        shaders = new int[sprites];
+        textures = new int[sprites];
+        Random random = new Random(42);
+        for (int i = 0; i < sprites; i++) {
+            layers[i] = random.nextInt(4);
+            shaders[i] = random.nextInt(SHADERS);
+            textures[i] = 1 + random.nextInt(TEXTURES);
+        }
+    }
+
+    @Benchmark
+    public int stage() {
+        fill();
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int stageAndSort() {
+        fill();
+        batch.sort();
+        int runs = countRuns();
+        batch.clear();
+        return runs;
+    }
+
+    private void fill() {
+        for (int i = 0; i < sprites; i++) {
+            batch.add(layers[i], shaders[i], textures[i], i % 1920, i % 1080, 32f, 32f,
+                    0f, 0f, 1f, 1f, 0xFFFFFFFF);
+        }
+    }
+
+    private int countRuns() {
+        int runs = 0;
+        for (int start = 0; start < batch.size(); runs++)
+            start += batch.runLength(start, batch.size());
+        return runs;
+    }
+}
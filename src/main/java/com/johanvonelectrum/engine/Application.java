@@ -30,6 +30,9 @@ public abstract class Application implements Runnable {
 
     protected abstract void init();
 
+    /**
+     * Method called once at the end, also when the run loop failed.
+     */
     protected abstract void dispose();
 
     /**
@@ -42,14 +45,17 @@ public abstract class Application implements Runnable {
 
         JohanEngine.LOGGER.debug("Initializing JohanEngine application...");
         initialize(app);
-        JohanEngine.LOGGER.debug("Pre-running JohanEngine application...");
-        app.preRun();
-        JohanEngine.LOGGER.debug("Running JohanEngine application...");
-        app.run();
-        JohanEngine.LOGGER.debug("Post-running JohanEngine application...");
-        app.postRun();
-        JohanEngine.LOGGER.debug("Disposing JohanEngine application...");
-        app.dispose();
+        try {
+            JohanEngine.LOGGER.debug("Pre-running JohanEngine application...");
+            app.preRun();
+            JohanEngine.LOGGER.debug("Running JohanEngine application...");
+            app.run();
+            JohanEngine.LOGGER.debug("Post-running JohanEngine application...");
+            app.postRun();
+        } finally {
+            JohanEngine.LOGGER.debug("Disposing JohanEngine application...");
+            app.dispose();
+        }
     }
 
     private static void initialize(final Application app) {
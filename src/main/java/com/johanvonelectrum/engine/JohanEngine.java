@@ -2,22 +2,69 @@ package com.johanvonelectrum.engine;
 
 import com.johanvonelectrum.engine.config.AppConfig;
 import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.events.KeyEvent;
+import com.johanvonelectrum.engine.graphics.Graphics;
+import com.johanvonelectrum.engine.graphics.RecordingRenderDevice;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import com.johanvonelectrum.engine.graphics.TextureCache;
+import com.johanvonelectrum.engine.io.input.Input;
+import com.johanvonelectrum.engine.io.resources.MeshCache;
+import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+import com.johanvonelectrum.engine.io.storage.Autosave;
+import com.johanvonelectrum.engine.io.storage.WorldStore;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import com.johanvonelectrum.engine.layers.BenchmarkLayer;
 import com.johanvonelectrum.engine.layers.ImGuiLayer;
 import com.johanvonelectrum.engine.layers.LayerStack;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import com.johanvonelectrum.engine.net.NetHost;
+import com.johanvonelectrum.engine.profiling.AllocationGuard;
+import com.johanvonelectrum.engine.profiling.FrameBenchmark;
+import com.johanvonelectrum.engine.profiling.Profiler;
+import com.johanvonelectrum.engine.time.FixedTimestep;
+import com.johanvonelectrum.engine.time.TickMetrics;
+import com.johanvonelectrum.engine.time.TickScheduler;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+
 @CommandLine.Command(name = "", mixinStandardHelpOptions = true, version = "", description = "")
 public class JohanEngine extends Application {
 
     public static final Logger LOGGER = LogManager.getLogger("Core");
+    private static final long SERVER_METRICS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final long MIB = 1024L * 1024L;
+    private static final int EVENTS_SCOPE = Profiler.scope("Events");
+    private static final int UPDATE_SCOPE = Profiler.scope("Update");
+    private static final int TEXTURES_SCOPE = Profiler.scope("TextureCache.update");
+    private static final int WINDOW_SCOPE = Profiler.scope("Window.update");
     private static Window window;
 
     private final EventSystem eventSystem = new EventSystem();
     private final LayerStack layerStack = new LayerStack();
+    private JobSystem jobSystem;
+    private TextureCache textureCache;
+    private MeshCache meshCache;
+    private Input input;
+    private NetHost netHost;
+    private WorldStore worldStore;
+    private Autosave autosave;
+
+    private volatile boolean running = true;
+    private final CountDownLatch disposed = new CountDownLatch(1);
 
     protected JohanEngine(AppConfig appConfig) {
         super(appConfig);
@@ -35,25 +82,269 @@ public class JohanEngine extends Application {
 
     @Override
     protected void init() {
-        window = new Window(this.appConfig);
+        jobSystem = new JobSystem(appConfig.getWorkers());
+        Profiler.setHistorySize(appConfig.getProfilerHistory());
+        mountAssetPack();
+        meshCache = new MeshCache(Paths.get(appConfig.getMeshCache()), appConfig.getMeshFormat());
+        startNetwork();
+        if (!appConfig.getWorld().isEmpty())
+            worldStore = new WorldStore(Paths.get(appConfig.getWorld()), appConfig.getWorldMapSize() * MIB);
+
+        if (appConfig.isServer()) {
+            LOGGER.info("Running headless in server mode.");
+            if (appConfig.isRemotery())
+                Profiler.startRemotery(false);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "Shutdown"));
+            return;
+        }
+
+        eventSystem.registerPool(KeyEvent.class, KeyEvent::new, 64);
+        input = new Input(eventSystem);
+        try {
+            if (!appConfig.getReplayInput().isEmpty())
+                input.replay(Paths.get(appConfig.getReplayInput()));
+            else if (!appConfig.getRecordInput().isEmpty())
+                input.record(Paths.get(appConfig.getRecordInput()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the input recording.", e);
+        }
+        window = new Window(this.appConfig, input);
+        if (window.isHeadless())
+            return;
+        textureCache = new TextureCache(Math.max(1, jobSystem.getWorkerCount() / 2),
+                appConfig.getTextureVramBudget() * MIB, appConfig.getTextureRamBudget() * MIB,
+                (long) (appConfig.getTextureUploadBudget() * 1_000_000L));
+    }
+
+    private void mountAssetPack() {
+        Path pack = Paths.get(appConfig.getAssetPack());
+        if (!Files.isRegularFile(pack)) {
+            LOGGER.debug("No asset pack at {}, loading resources from the classpath.", pack.toAbsolutePath());
+            return;
+        }
+
+        try {
+            ResourceLoader.mountPack(pack);
+        } catch (IOException e) {
+            LOGGER.error("Could not open the asset pack, loading resources from the classpath.", e);
+        }
+    }
+
+    private void startNetwork() {
+        if (appConfig.getPort() <= 0 && appConfig.getConnect().isEmpty())
+            return;
+
+        try {
+            netHost = new NetHost(eventSystem, appConfig.getMaxConnections(), appConfig.getMtu());
+            if (appConfig.getPort() > 0)
+                netHost.listen(appConfig.getPort());
+            if (!appConfig.getConnect().isEmpty())
+                netHost.connect(parseAddress(appConfig.getConnect()), appConfig.getTransport());
+            netHost.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the network host.", e);
+        }
+    }
+
+    private static InetSocketAddress parseAddress(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0)
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        try {
+            return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected host:port, got " + address, e);
+        }
     }
 
     @Override
     protected void preRun() {
-        layerStack.add(new ImGuiLayer("ImGuiLayer").init());
+        if (appConfig.isServer())
+            return;
+        if (appConfig.getBenchmark() > 0)
+            layerStack.add(new BenchmarkLayer("BenchmarkLayer", appConfig.getBenchmarkSprites()).init());
+        else if (window.isHeadless())
+            LOGGER.info("ImGui needs a GL context, it is disabled with the {} render device.", appConfig.getRenderDevice());
+        else if (appConfig.isRenderThread())
+            LOGGER.warn("ImGui needs GL on the main thread, it is disabled with the render thread.");
+        else
+            layerStack.add(new ImGuiLayer("ImGuiLayer").init());
     }
 
     @Override
     public void run() {
-        float deltaTime = 0;
-        long lastFrameTime = 0;
-        while (window.keepRunning()) {
-            deltaTime = (System.nanoTime() - lastFrameTime) / 1000000000f;
-            lastFrameTime = System.nanoTime();
+        if (appConfig.isServer())
+            runServer();
+        else
+            runClient();
+    }
 
-            window.update(deltaTime, layerStack);
+    private void runClient() {
+        FixedTimestep timestep = new FixedTimestep(appConfig.getTickRate(), appConfig.getMaxTicksPerFrame());
+        LOGGER.debug("Simulating at {} ticks per second.", timestep.getTickRate());
+
+        AllocationGuard allocationGuard = AllocationGuard.create(appConfig.getAllocGuard(), appConfig.getAllocBudget());
+        FrameBenchmark benchmark = appConfig.getBenchmark() > 0 ? createBenchmark() : null;
+        if (appConfig.isRenderThread())
+            window.startRenderThread(this::updateTextures);
+        timestep.start(input.start(System.nanoTime()));
+        while (running && window.keepRunning()) {
+            float deltaTime = timestep.advance(input.beginFrame(System.nanoTime()));
+            if (appConfig.isExitAfterReplay() && input.isReplayFinished())
+                break;
+
+            Profiler.begin(EVENTS_SCOPE);
             layerStack.handle(eventSystem);
+            Profiler.end(EVENTS_SCOPE);
+
+            Profiler.begin(UPDATE_SCOPE);
+            while (timestep.consumeTick())
+                layerStack.update(timestep.getTickDelta(), jobSystem);
+            Profiler.end(UPDATE_SCOPE);
+            if (netHost != null)
+                netHost.flush();
+            if (autosave != null)
+                autosave.update(System.nanoTime());
+
+            if (!appConfig.isRenderThread())
+                updateTextures();
+
+            Profiler.begin(WINDOW_SCOPE);
+            window.update(deltaTime, timestep.getAlpha(), layerStack, jobSystem);
+            Profiler.end(WINDOW_SCOPE);
+
+            Profiler.endFrame();
+            if (allocationGuard != null)
+                allocationGuard.endFrame();
+            if (benchmark != null) {
+                benchmark.endFrame();
+                if (benchmark.isFinished())
+                    break;
+            }
         }
+
+        window.stopRenderThread();
+        if (allocationGuard != null)
+            allocationGuard.report();
+        RecordingRenderDevice recording = window.getRenderDevice() instanceof RecordingRenderDevice
+                ? (RecordingRenderDevice) window.getRenderDevice() : null;
+        if (recording != null)
+            recording.report();
+        if (timestep.getDroppedTicks() > 0)
+            LOGGER.warn("{} simulation ticks were dropped to keep up.", timestep.getDroppedTicks());
+        if (benchmark != null)
+            writeBenchmark(benchmark);
+        // After the report is written, so a failing CI run still keeps it
+        if (recording != null)
+            recording.checkDrawCallBudget();
+    }
+
+    /**
+     * Uploads streamed textures, on the thread owning the GL context.
+     */
+    private void updateTextures() {
+        if (textureCache == null)
+            return;
+        Profiler.begin(TEXTURES_SCOPE);
+        textureCache.update();
+        Profiler.end(TEXTURES_SCOPE);
+    }
+
+    private FrameBenchmark createBenchmark() {
+        RenderDevice device = window.getRenderDevice();
+        return new FrameBenchmark(appConfig.getBenchmarkWarmup(), appConfig.getBenchmark())
+                .setProperty("title", appConfig.getTitle())
+                .setProperty("version", JohanEngine.class.getPackage().getImplementationVersion())
+                .setProperty("sprites", appConfig.getBenchmarkSprites())
+                .setProperty("width", appConfig.getBenchmarkWidth())
+                .setProperty("height", appConfig.getBenchmarkHeight())
+                .setProperty("context", appConfig.getOffscreenContext())
+                .setProperty("renderThread", appConfig.isRenderThread())
+                .setProperty("framesInFlight", appConfig.getFramesInFlight())
+                .setProperty("renderDevice", Graphics.unwrap(device).getBackend())
+                .setProperty("recording", device instanceof RecordingRenderDevice)
+                .setProperty("glRenderer", device.getString(GL_RENDERER))
+                .setProperty("glVersion", device.getString(GL_VERSION))
+                .setProperty("java", System.getProperty("java.version"))
+                .setProperty("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"))
+                .setProperty("cpus", Runtime.getRuntime().availableProcessors());
+    }
+
+    private void writeBenchmark(FrameBenchmark benchmark) {
+        if (window.getRenderDevice() instanceof RecordingRenderDevice) {
+            RecordingRenderDevice recording = (RecordingRenderDevice) window.getRenderDevice();
+            benchmark.setProperty("drawCallsPerFrame", recording.getTotalDrawCalls() / Math.max(1, recording.getFrames()))
+                    .setProperty("maxDrawCalls", recording.getMaxDrawCalls());
+        }
+        benchmark.report();
+        try {
+            benchmark.write(Paths.get(appConfig.getBenchmarkOutput()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the benchmark report.", e);
+        }
+    }
+
+    private void runServer() {
+        TickScheduler scheduler = new TickScheduler(appConfig.getTickRate(), appConfig.getMaxTicksPerFrame());
+        TickMetrics metrics = new TickMetrics(scheduler.getPeriodNanos(), SERVER_METRICS_INTERVAL);
+        float tickDelta = scheduler.getTickDelta();
+        LOGGER.info("Server ticking at {} ticks per second.", appConfig.getTickRate());
+
+        AllocationGuard allocationGuard = AllocationGuard.create(appConfig.getAllocGuard(), appConfig.getAllocBudget());
+        long now = System.nanoTime();
+        scheduler.start(now);
+        metrics.start(now);
+        while (running) {
+            long lateness = scheduler.awaitNextTick();
+            long tickStart = System.nanoTime();
+
+            Profiler.begin(EVENTS_SCOPE);
+            layerStack.handle(eventSystem);
+            Profiler.end(EVENTS_SCOPE);
+            Profiler.begin(UPDATE_SCOPE);
+            layerStack.update(tickDelta, jobSystem);
+            Profiler.end(UPDATE_SCOPE);
+            if (netHost != null)
+                netHost.flush();
+            if (autosave != null)
+                autosave.update(System.nanoTime());
+            Profiler.endFrame();
+
+            long tickEnd = System.nanoTime();
+            metrics.record(tickEnd - tickStart, lateness);
+            metrics.reportIfDue(tickEnd, LOGGER);
+            if (allocationGuard != null)
+                allocationGuard.endFrame();
+        }
+
+        if (allocationGuard != null)
+            allocationGuard.report();
+        LOGGER.info("Server stopped after {} ticks, {} overruns, {} skipped.",
+                metrics.getLifetimeTicks(), metrics.getLifetimeOverruns(), scheduler.getSkippedTicks());
+    }
+
+    /**
+     * Asks the run loop to finish after the current frame or tick.
+     */
+    public void stop() {
+        running = false;
+        if (window != null)
+            window.shouldClose = true;
+    }
+
+    private void shutdown() {
+        if (!running)
+            return;
+
+        LOGGER.info("Shutdown requested, stopping...");
+        stop();
+        try {
+            if (!disposed.await(5, TimeUnit.SECONDS))
+                LOGGER.warn("Timed out waiting for the engine to stop.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LogManager.shutdown();
     }
 
     @Override
@@ -63,15 +354,90 @@ public class JohanEngine extends Application {
 
     @Override
     protected void dispose() {
-        layerStack.dispose();
-        eventSystem.dispose();
-        window.dispose();
+        try {
+            if (window != null)
+                window.stopRenderThread();
+            if (worldStore != null) {
+                if (autosave != null)
+                    autosave.saveAndWait();
+                worldStore.flush();
+            }
+            layerStack.dispose();
+            if (netHost != null)
+                netHost.dispose();
+            if (worldStore != null) {
+                worldStore.report();
+                worldStore.dispose();
+            }
+            eventSystem.dispose();
+            if (textureCache != null)
+                textureCache.dispose();
+            jobSystem.dispose();
+            if (input != null)
+                input.dispose();
+            if (window != null)
+                window.dispose();
+            Profiler.dispose();
+            NativeMemory.reportLeaks();
+        } finally {
+            disposed.countDown();
+        }
     }
 
     public static Window getWindow() {
         return window;
     }
 
+    public EventSystem getEventSystem() {
+        return eventSystem;
+    }
+
+    public JobSystem getJobSystem() {
+        return jobSystem;
+    }
+
+    public Input getInput() {
+        return input;
+    }
+
+    /**
+     * @return the network host, null unless a port or a server to connect to is configured
+     */
+    public NetHost getNetHost() {
+        return netHost;
+    }
+
+    /**
+     * @return the world file, null unless {@code --world} is configured
+     */
+    public WorldStore getWorldStore() {
+        return worldStore;
+    }
+
+    /**
+     * Saves the chunks marked dirty on the returned {@link Autosave} every {@code --autosave-interval}, and once more
+     * when the engine stops.
+     *
+     * @throws IllegalStateException if no world file is configured
+     */
+    public Autosave enableAutosave(Autosave.ChunkSerializer serializer) {
+        if (worldStore == null)
+            throw new IllegalStateException("No world file is configured, see --world.");
+        autosave = new Autosave(worldStore, serializer, TimeUnit.SECONDS.toNanos(appConfig.getAutosaveInterval()));
+        return autosave;
+    }
+
+    /**
+     * @return the texture streamer, null with a headless render device
+     */
+    public TextureCache getTextureCache() {
+        return textureCache;
+    }
+
+    public MeshCache getMeshCache() {
+        return meshCache;
+    }
+
     public static void main(String[] args) {
         Configurator.setRootLevel(Level.ALL);
         LOGGER.info("Starting JohanEngine...");
@@ -80,11 +446,14 @@ public class JohanEngine extends Application {
             LOGGER.debug("Parsing CLI args...");
             new CommandLine(appConfig).parseArgs(args);
             setDebugMode(appConfig.isDebug());
+            NativeMemory.configure(appConfig.getAllocator(), appConfig.isMemoryDebug());
             launch(new JohanEngine(appConfig));
             LOGGER.info("Closing as expected...");
+            LogManager.shutdown();
             System.exit(0);
         } catch (Throwable exception) {
             LOGGER.fatal(exception);
+            LogManager.shutdown();
             System.exit(1);
         }
     }
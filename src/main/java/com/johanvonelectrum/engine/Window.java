@@ -1,39 +1,112 @@
 package com.johanvonelectrum.engine;
 
 import com.johanvonelectrum.engine.config.AppConfig;
-import com.johanvonelectrum.engine.io.KeyboardInput;
+import com.johanvonelectrum.engine.graphics.EglContext;
+import com.johanvonelectrum.engine.graphics.FrameUniforms;
+import com.johanvonelectrum.engine.graphics.Framebuffer;
+import com.johanvonelectrum.engine.graphics.Graphics;
+import com.johanvonelectrum.engine.graphics.RecordingRenderDevice;
+import com.johanvonelectrum.engine.graphics.RenderCommandBuffer;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import com.johanvonelectrum.engine.graphics.RenderFrame;
+import com.johanvonelectrum.engine.graphics.RenderThread;
+import com.johanvonelectrum.engine.graphics.Renderer;
+import com.johanvonelectrum.engine.graphics.UniformBuffer;
+import com.johanvonelectrum.engine.io.input.Input;
 import com.johanvonelectrum.engine.io.resources.ResourceLoader;
 import com.johanvonelectrum.engine.io.resources.Texture;
+import com.johanvonelectrum.engine.jobs.JobSystem;
 import com.johanvonelectrum.engine.layers.LayerStack;
+import com.johanvonelectrum.engine.profiling.Profiler;
+import com.johanvonelectrum.engine.shaders.ProgramBinaryCache;
+import com.johanvonelectrum.engine.shaders.ShaderCompiler;
+import com.johanvonelectrum.engine.shaders.ShaderException;
+import com.johanvonelectrum.engine.shaders.ShaderLibrary;
+import com.johanvonelectrum.engine.shaders.ShaderProgram;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.*;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.IntBuffer;
+import java.nio.file.Paths;
 import java.util.Objects;
 
 import static org.lwjgl.glfw.GLFW.*;
-import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_BUFFER_BIT;
+import static org.lwjgl.opengl.GL32.*;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class Window {
 
+    /**
+     * Context used when rendering offscreen, see {@link AppConfig#getBenchmark()}.
+     */
+    public enum Offscreen {
+        /**
+         * Hidden GLFW window, needs a display server such as Xvfb.
+         */
+        HIDDEN_WINDOW,
+        /**
+         * EGL pbuffer without any window, see {@link EglContext}.
+         */
+        EGL_PBUFFER
+    }
+
     public static final int[] DEFAULT_WINDOW_SIZE = new int[] { 1600, 900 };
 
+    private static final int START_FRAME_SCOPE = Profiler.scope("Window.startFrame");
+    private static final int END_FRAME_SCOPE = Profiler.scope("Window.endFrame");
+    private static final int SWAP_SCOPE = Profiler.scope("glfwSwapBuffers");
+    private static final int POLL_SCOPE = Profiler.scope("glfwPollEvents");
+    private static final int GPU_WAIT_SCOPE = Profiler.scope("Window.gpuWait");
+    private static final int RECORD_SCOPE = Profiler.scope("Window.record");
+    private static final int COMMANDS_SCOPE = Profiler.scope("Window.executeCommands");
+
     private long id;
     private Logger logger;
     private AppConfig appConfig;
+    private final Input input;
+    private ShaderCompiler shaderCompiler;
+    private final ShaderLibrary shaderLibrary = new ShaderLibrary();
+    private final RenderDevice device;
+    private final boolean headless;
+    private final boolean offscreen;
+    private EglContext eglContext;
+    private Framebuffer framebuffer;
+    private final long[] fences;
+    private int fence;
+    private final long startTime = System.nanoTime();
+
+    private GLCapabilities capabilities;
+    private final RenderFrame immediateFrame;
+    private Renderer commandRenderer;
+    private RenderThread renderThread;
+    private Runnable frameTask;
 
     private int[] x = new int[1], y = new int[1];
     private int[] width = new int[1], height = new int[1];
     public boolean shouldClose;
+    private long frame;
 
-    public Window(AppConfig appConfig) {
+    public Window(AppConfig appConfig, Input input) {
         this.appConfig = appConfig;
+        this.input = input;
+        RenderDevice device = Graphics.create(appConfig.getRenderDevice());
+        if (appConfig.isRecordRenderDevice() || appConfig.getDrawCallBudget() > 0)
+            device = Graphics.record(device);
+        this.device = device;
+        this.headless = Graphics.unwrap(device).getBackend() != RenderDevice.Backend.OPENGL;
+        this.offscreen = appConfig.getBenchmark() > 0 || headless;
+        if (appConfig.getFramesInFlight() < 1)
+            throw new IllegalArgumentException("At least one frame must be in flight: " + appConfig.getFramesInFlight());
+        this.fences = new long[appConfig.getFramesInFlight()];
+        this.immediateFrame = new RenderFrame(appConfig.getFrameArena() * 1024L);
         this.logger = LogManager.getLogger("Window (" + this.appConfig.getTitle() + ")");
 
         logger.trace(this.appConfig);
@@ -42,6 +115,79 @@ public class Window {
     }
 
     protected void initWindow(AppConfig config) {
+        Graphics.setDevice(device);
+        if (device instanceof RecordingRenderDevice)
+            ((RecordingRenderDevice) device).setDrawCallBudget(config.getDrawCallBudget());
+        if (headless) {
+            initHeadless(config);
+            return;
+        }
+
+        if (offscreen && config.getOffscreenContext() == Offscreen.EGL_PBUFFER) {
+            logger.info("Creating an EGL pbuffer context...");
+            this.eglContext = new EglContext(config.getBenchmarkWidth(), config.getBenchmarkHeight());
+        } else {
+            createGlfwWindow(config);
+        }
+
+        logger.debug("Creating the GLCapabilities instance...");
+        logger.debug("Enabling OpenGL bindings for use...");
+        this.capabilities = GL.createCapabilities();
+
+        if (!config.getShaderCache().isEmpty()) {
+            logger.debug("Setting up the program binary cache...");
+            ShaderProgram.setBinaryCache(new ProgramBinaryCache(Paths.get(config.getShaderCache())));
+        }
+
+        if (config.isRenderThread()) {
+            logger.info("GPU scopes are not measured with a render thread.");
+        } else {
+            logger.debug("Creating the GPU profiler queries...");
+            Profiler.initGpu();
+        }
+        if (config.isRemotery())
+            Profiler.startRemotery(!config.isRenderThread());
+
+        if (eglContext == null) {
+            logger.debug("Creating the background shader compiler...");
+            this.shaderCompiler = new ShaderCompiler(this.id);
+            shaderLibrary.setCompiler(shaderCompiler);
+            try {
+                // Compiled while the rest of the engine starts, the first frame picks it up
+                shaderLibrary.request(Renderer.defaultShader(Renderer.Mode.INSTANCED));
+            } catch (ShaderException e) {
+                throw new IllegalStateException("Could not compile the default sprite shader.", e);
+            }
+        }
+
+        if (offscreen) {
+            logger.info("Rendering offscreen at {}x{}.", config.getBenchmarkWidth(), config.getBenchmarkHeight());
+            this.framebuffer = new Framebuffer(config.getBenchmarkWidth(), config.getBenchmarkHeight());
+            this.width[0] = framebuffer.getWidth();
+            this.height[0] = framebuffer.getHeight();
+        }
+
+        logger.debug("Setting the clear color...");
+        device.clearColor(0.05f, 0.05f, 0.05f, 0.0f);
+
+        logger.info("Window created.");
+    }
+
+    /**
+     * Sets up a device without a GL context. There is no window, no shader compiler and no GPU profiling; the frame
+     * size is the benchmark size.
+     */
+    private void initHeadless(AppConfig config) {
+        logger.info("Using the {} render device, no window or GL context is created.", Graphics.unwrap(device).getBackend());
+        if (config.isRemotery())
+            Profiler.startRemotery(false);
+
+        this.width[0] = config.getBenchmarkWidth();
+        this.height[0] = config.getBenchmarkHeight();
+        device.clearColor(0.05f, 0.05f, 0.05f, 0.0f);
+    }
+
+    private void createGlfwWindow(AppConfig config) {
         logger.info("Creating the window...");
 
         logger.debug("Creating error print stream...");
@@ -63,40 +209,41 @@ public class Window {
 
         trySetIcon();
 
-        logger.debug("Setting up key callback...");
-        glfwSetKeyCallback(this.id, (id, key, scancode, action, mods) -> {
-            KeyboardInput.handle(this, key, scancode, action, mods);
-        });
+        logger.debug("Setting up input callbacks...");
+        glfwSetKeyCallback(this.id, (id, key, scancode, action, mods) -> input.onKey(key, scancode, action, mods));
+        glfwSetMouseButtonCallback(this.id, (id, button, action, mods) -> input.onMouseButton(button, action, mods));
+        glfwSetCursorPosCallback(this.id, (id, x, y) -> input.onCursor(x, y));
+        glfwSetScrollCallback(this.id, (id, x, y) -> input.onScroll(x, y));
+        input.setGamepadsEnabled(true);
 
         tryCenter();
 
         logger.debug("Making the OpenGL context current...");
         glfwMakeContextCurrent(this.id);
 
+        if (offscreen) {
+            logger.info("Disabling v-sync, the window stays hidden...");
+            glfwSwapInterval(0);
+            return;
+        }
+
         logger.info("Enabling v-sync...");
         glfwSwapInterval(1);
 
         logger.debug("Showing the window...");
         glfwShowWindow(this.id);
-
-        logger.debug("Creating the GLCapabilities instance...");
-        logger.debug("Enabling OpenGL bindings for use...");
-        GL.createCapabilities();
-
-        logger.debug("Setting the clear color...");
-        glClearColor(0.05f, 0.05f, 0.05f, 0.0f);
-
-        logger.info("Window created.");
     }
 
     private void trySetIcon() {
-        try {
-            GLFWImage image = GLFWImage.malloc();
-            GLFWImage.Buffer buffer = GLFWImage.malloc(1);
+        try (MemoryStack stack = stackPush()) {
             Texture icon = ResourceLoader.loadResourceTexture("icon/JohanEngine");
-            image.set(icon.getWidth(), icon.getHeight(), icon.getBuffer());
-            buffer.put(0, image);
-            glfwSetWindowIcon(this.id, buffer);
+            try {
+                GLFWImage.Buffer images = GLFWImage.mallocStack(1, stack);
+                images.get(0).set(icon.getWidth(), icon.getHeight(), icon.getBuffer());
+                glfwSetWindowIcon(this.id, images);
+            } finally {
+                icon.free();
+            }
         } catch (Exception e) {
             logger.error(e);
         }
@@ -121,34 +268,268 @@ public class Window {
     }
 
     public boolean keepRunning() {
+        if (eglContext != null || headless)
+            return !shouldClose;
         return !(glfwWindowShouldClose(this.id) || shouldClose);
     }
 
-    public void update(float deltaTime, LayerStack layerStack) {
-        glfwGetWindowPos(this.id, this.x, this.y);
-        glfwGetWindowSize(this.id, this.width, this.height);
+    /**
+     * Hands the GL context to a dedicated render thread. From then on {@link #update} only records the layers that
+     * {@link com.johanvonelectrum.engine.layers.Layer#recordsCommands() record commands}, while the render thread
+     * draws the previous frames, and the main thread must not call GL until {@link #stopRenderThread()}.
+     *
+     * @param frameTask GL work run on the render thread before every frame, such as texture uploads
+     */
+    public void startRenderThread(Runnable frameTask) {
+        if (renderThread != null)
+            throw new IllegalStateException("The render thread is already running.");
+
+        this.frameTask = frameTask;
+        releaseContext();
+        this.renderThread = new RenderThread(new RenderThread.Target() {
+            @Override
+            public void attach() {
+                makeContextCurrent();
+            }
+
+            @Override
+            public void render(RenderFrame frame) {
+                renderFrame(frame);
+            }
+
+            @Override
+            public void detach() {
+                releaseContext();
+            }
+        }, appConfig.getFramesInFlight(), appConfig.getFrameArena() * 1024L);
+    }
+
+    /**
+     * Draws the frames in flight, stops the render thread and makes the GL context current on the calling thread.
+     */
+    public void stopRenderThread() {
+        if (renderThread == null)
+            return;
 
-        startFrame(layerStack);
-        processFrame(deltaTime, layerStack);
+        renderThread.dispose();
+        renderThread = null;
+        makeContextCurrent();
+    }
+
+    private void makeContextCurrent() {
+        if (headless)
+            return;
+        if (eglContext != null)
+            eglContext.makeCurrent();
+        else
+            glfwMakeContextCurrent(this.id);
+        GL.setCapabilities(capabilities);
+    }
+
+    private void releaseContext() {
+        if (headless)
+            return;
+        GL.setCapabilities(null);
+        if (eglContext != null)
+            eglContext.release();
+        else
+            glfwMakeContextCurrent(NULL);
+    }
+
+    public void update(float deltaTime, float alpha, LayerStack layerStack, JobSystem jobSystem) {
+        if (!offscreen) {
+            glfwGetWindowPos(this.id, this.x, this.y);
+            glfwGetWindowSize(this.id, this.width, this.height);
+        }
+
+        if (renderThread != null) {
+            submitFrame(deltaTime, alpha, layerStack, jobSystem);
+            pollEvents();
+            return;
+        }
+
+        startFrame(getTime(), deltaTime, alpha, frame++);
+        processFrame(deltaTime, alpha, layerStack, jobSystem);
         endFrame(layerStack);
     }
 
-    private void startFrame(LayerStack layerStack) {
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+    private void submitFrame(float deltaTime, float alpha, LayerStack layerStack, JobSystem jobSystem) {
+        RenderFrame next = renderThread.acquire();
+        next.prepare(frame++, getTime(), deltaTime, alpha, layerStack.size());
+        Profiler.begin(RECORD_SCOPE);
+        layerStack.record(next, deltaTime, alpha, jobSystem);
+        Profiler.end(RECORD_SCOPE);
+        renderThread.submit(next);
     }
 
-    private void processFrame(float deltaTime, LayerStack layerStack) {
-        layerStack.render(deltaTime);
+    /**
+     * Draws a recorded frame, on the render thread.
+     */
+    private void renderFrame(RenderFrame frame) {
+        if (frameTask != null)
+            frameTask.run();
+        startFrame(frame.getTime(), frame.getDeltaTime(), frame.getAlpha(), frame.getNumber());
+
+        Profiler.begin(COMMANDS_SCOPE);
+        for (int i = frame.getBufferCount() - 1; i >= 0; i--) {
+            RenderCommandBuffer commands = frame.getCommands(i);
+            if (!commands.isEmpty())
+                commands.execute(getCommandRenderer());
+        }
+        if (commandRenderer != null)
+            commandRenderer.nextFrame();
+        Profiler.end(COMMANDS_SCOPE);
+
+        Profiler.begin(END_FRAME_SCOPE);
+        present();
+        Profiler.end(END_FRAME_SCOPE);
+    }
+
+    private void startFrame(float time, float deltaTime, float alpha, long number) {
+        Profiler.begin(START_FRAME_SCOPE);
+        if (framebuffer != null)
+            framebuffer.bind();
+        device.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        FrameUniforms.setFrame(time, deltaTime, alpha, number);
+        Profiler.end(START_FRAME_SCOPE);
+    }
+
+    private void processFrame(float deltaTime, float alpha, LayerStack layerStack, JobSystem jobSystem) {
+        if (!layerStack.recordsCommands()) {
+            layerStack.render(deltaTime, alpha);
+            return;
+        }
+
+        immediateFrame.prepare(frame, getTime(), deltaTime, alpha, layerStack.size());
+        Profiler.begin(RECORD_SCOPE);
+        layerStack.record(immediateFrame, deltaTime, alpha, jobSystem);
+        Profiler.end(RECORD_SCOPE);
+        layerStack.render(deltaTime, alpha, immediateFrame, getCommandRenderer());
+        commandRenderer.nextFrame();
+    }
+
+    /**
+     * @return the renderer executing recorded commands, created on the GL thread the first time it is needed
+     */
+    private Renderer getCommandRenderer() {
+        if (commandRenderer == null) {
+            try {
+                commandRenderer = new Renderer(Renderer.DEFAULT_CAPACITY, Renderer.Mode.INSTANCED, Renderer.SortMode.STATE, shaderLibrary);
+            } catch (ShaderException e) {
+                throw new IllegalStateException("Could not create the renderer for recorded commands.", e);
+            }
+        }
+        return commandRenderer;
     }
 
     private void endFrame(LayerStack layerStack) {
-        GLFW.glfwSwapBuffers(this.id);
+        Profiler.begin(END_FRAME_SCOPE);
+        present();
+        pollEvents();
+        Profiler.end(END_FRAME_SCOPE);
+    }
+
+    private void present() {
+        if (offscreen) {
+            Profiler.begin(GPU_WAIT_SCOPE);
+            throttle();
+            Profiler.end(GPU_WAIT_SCOPE);
+        } else {
+            Profiler.begin(SWAP_SCOPE);
+            GLFW.glfwSwapBuffers(this.id);
+            Profiler.end(SWAP_SCOPE);
+        }
+        device.endFrame();
+    }
+
+    private void pollEvents() {
+        if (eglContext != null || headless)
+            return;
+        Profiler.begin(POLL_SCOPE);
         GLFW.glfwPollEvents();
+        Profiler.end(POLL_SCOPE);
+    }
+
+    /**
+     * Fences the frame and waits for the one submitted {@link AppConfig#getFramesInFlight()} frames ago, so
+     * offscreen frame times include the GPU work instead of only queuing commands.
+     */
+    private void throttle() {
+        fences[fence] = device.fenceSync();
+        fence = (fence + 1) % fences.length;
+
+        long oldest = fences[fence];
+        if (oldest == 0) {
+            device.flush();
+            return;
+        }
+
+        while (true) {
+            int result = device.clientWaitSync(oldest, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L);
+            if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED)
+                break;
+            if (result == GL_WAIT_FAILED)
+                throw new IllegalStateException("Waiting for the frame fence failed.");
+        }
+        device.deleteSync(oldest);
+        fences[fence] = 0;
+    }
+
+    /**
+     * @return seconds since the window was created
+     */
+    private float getTime() {
+        if (eglContext != null || headless)
+            return (System.nanoTime() - startTime) / 1e9f;
+        return (float) glfwGetTime();
     }
 
     public void dispose() {
         logger.debug("Disposing window...");
+        stopRenderThread();
+
+        if (commandRenderer != null) {
+            logger.trace("Deleting the command renderer...");
+            commandRenderer.dispose();
+        }
+        immediateFrame.dispose();
 
+        logger.trace("Releasing the profiler...");
+        Profiler.dispose();
+
+        if (shaderCompiler != null) {
+            logger.trace("Stopping the shader compiler...");
+            shaderCompiler.dispose();
+        }
+        ShaderProgram.setBinaryCache(null);
+
+        logger.trace("Deleting shader programs...");
+        shaderLibrary.dispose();
+
+        logger.trace("Deleting uniform buffers...");
+        UniformBuffer.disposeAll();
+
+        for (long pending : fences) {
+            if (pending != 0)
+                device.deleteSync(pending);
+        }
+        if (framebuffer != null) {
+            logger.trace("Deleting the offscreen framebuffer...");
+            framebuffer.dispose();
+        }
+
+        logger.trace("Releasing the render device...");
+        device.dispose();
+        if (headless)
+            return;
+
+        if (eglContext != null) {
+            logger.trace("Destroying the EGL context...");
+            eglContext.dispose();
+            return;
+        }
+
+        input.setGamepadsEnabled(false);
         logger.trace("Freeing GLFW callbacks...");
         Callbacks.glfwFreeCallbacks(this.id);
         logger.trace("Destroying GLFW window...");
@@ -163,6 +544,37 @@ public class Window {
         return id;
     }
 
+    public Input getInput() {
+        return input;
+    }
+
+    /**
+     * @return the background compiler, null on an EGL context or a headless device where there is no window to share
+     * objects with
+     */
+    public ShaderCompiler getShaderCompiler() {
+        return shaderCompiler;
+    }
+
+    public ShaderLibrary getShaderLibrary() {
+        return shaderLibrary;
+    }
+
+    public boolean isOffscreen() {
+        return offscreen;
+    }
+
+    /**
+     * @return true when the render device has no GL context behind it, see {@link AppConfig#getRenderDevice()}
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    public RenderDevice getRenderDevice() {
+        return device;
+    }
+
     public Logger getLogger() {
         return logger;
     }
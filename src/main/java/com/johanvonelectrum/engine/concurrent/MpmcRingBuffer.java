@@ -0,0 +1,95 @@
+package com.johanvonelectrum.engine.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free multi-producer/multi-consumer queue. Same slot sequencing as {@link MpscRingBuffer}, but the
+ * head cursor is claimed with CAS so any thread can poll. Mainly used for object pools.
+ *
+ * @param <E> element type
+ */
+public final class MpmcRingBuffer<E> {
+
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public MpmcRingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.lazySet(i, i);
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException();
+
+        long position;
+        int index;
+        for (;;) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+
+        buffer[index] = element;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * @return the oldest element or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position;
+        int index;
+        for (;;) {
+            position = head.get();
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1))
+                    break;
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        sequences.lazySet(index, position + mask + 1);
+        return element;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,108 @@
+package com.johanvonelectrum.engine.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free multi-producer/single-consumer queue backed by a power of two array.
+ * Every slot carries a sequence number, so producers only contend on the tail cursor and the consumer never
+ * has to use CAS. Neither {@link #offer(Object)} nor {@link #poll()} allocate.
+ *
+ * @param <E> element type
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.lazySet(i, i);
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException();
+
+        long position;
+        int index;
+        for (;;) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+
+        buffer[index] = element;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Must only be called from the consumer thread.
+     *
+     * @return the oldest element or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1)
+            return null;
+
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        sequences.lazySet(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Polls up to {@code limit} elements and hands them to the consumer. Must only be called from the consumer thread.
+     *
+     * @return number of drained elements
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -1,5 +1,12 @@
 package com.johanvonelectrum.engine.config;
 
+import com.johanvonelectrum.engine.Window;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import com.johanvonelectrum.engine.io.resources.VertexFormat;
+import com.johanvonelectrum.engine.memory.NativeAllocator;
+import com.johanvonelectrum.engine.net.NetHost;
+import com.johanvonelectrum.engine.net.Transport;
+import com.johanvonelectrum.engine.profiling.AllocationGuard;
 import picocli.CommandLine;
 
 public class AppConfig {
@@ -13,12 +20,172 @@ public class AppConfig {
     @CommandLine.Option(names = { "-s", "--server" }, description = "Start in server mode.")
     private boolean server = false;
 
+    @CommandLine.Option(names = { "--tick-rate" }, description = "Fixed simulation ticks per second (default: ${DEFAULT-VALUE}).")
+    private int tickRate = 60;
+
+    @CommandLine.Option(names = { "--max-ticks-per-frame" }, description = "Simulation ticks allowed to catch up in one frame (default: ${DEFAULT-VALUE}).")
+    private int maxTicksPerFrame = 8;
+
+    @CommandLine.Option(names = { "--workers" }, description = "Job worker threads, 0 for one less than the available processors (default: ${DEFAULT-VALUE}).")
+    private int workers = 0;
+
+    @CommandLine.Option(names = { "--shader-cache" }, description = "Directory for cached program binaries, empty to disable (default: ${DEFAULT-VALUE}).")
+    private String shaderCache = "cache/shaders";
+
+    @CommandLine.Option(names = { "--asset-pack" }, description = "Asset pack mounted before the classpath, ignored if missing (default: ${DEFAULT-VALUE}).")
+    private String assetPack = "assets.pak";
+
+    @CommandLine.Option(names = { "--texture-vram-budget" }, description = "MiB of resident textures before released ones are evicted (default: ${DEFAULT-VALUE}).")
+    private int textureVramBudget = 512;
+
+    @CommandLine.Option(names = { "--texture-ram-budget" }, description = "MiB of decoded textures allowed to wait for upload (default: ${DEFAULT-VALUE}).")
+    private int textureRamBudget = 128;
+
+    @CommandLine.Option(names = { "--texture-upload-budget" }, description = "Milliseconds per frame spent uploading textures (default: ${DEFAULT-VALUE}).")
+    private float textureUploadBudget = 2.0f;
+
+    @CommandLine.Option(names = { "--mesh-cache" }, description = "Directory for meshes imported at runtime (default: ${DEFAULT-VALUE}).")
+    private String meshCache = "cache/meshes";
+
+    @CommandLine.Option(names = { "--mesh-format" }, description = "Vertex format of imported meshes: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private VertexFormat meshFormat = VertexFormat.PACKED;
+
+    @CommandLine.Option(names = { "--profiler-history" }, description = "Frames kept by the profiler for its panel and exports (default: ${DEFAULT-VALUE}).")
+    private int profilerHistory = 300;
+
+    @CommandLine.Option(names = { "--remotery" }, description = "Streams the profiler scopes to a Remotery viewer.")
+    private boolean remotery = false;
+
+    @CommandLine.Option(names = { "--alloc-guard" }, description = "Checks the bytes allocated by each frame: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private AllocationGuard.Mode allocGuard = AllocationGuard.Mode.OFF;
+
+    @CommandLine.Option(names = { "--alloc-budget" }, description = "Bytes a frame may allocate before the allocation guard reports it (default: ${DEFAULT-VALUE}).")
+    private long allocBudget = 256;
+
+    @CommandLine.Option(names = { "--allocator" }, description = "Native memory allocator: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private NativeAllocator allocator = NativeAllocator.JEMALLOC;
+
+    @CommandLine.Option(names = { "--frame-arena" }, description = "KiB of transient native memory per recorded frame, grown when a frame needs more (default: ${DEFAULT-VALUE}).")
+    private int frameArena = 1024;
+
+    @CommandLine.Option(names = { "--memory-debug" }, description = "Records where native memory is allocated to report leaks in detail.")
+    private boolean memoryDebug = false;
+
+    @CommandLine.Option(names = { "--record-input" }, description = "Records the input, with the frame times, to the given file.")
+    private String recordInput = "";
+
+    @CommandLine.Option(names = { "--replay-input" }, description = "Replays an input recording instead of the live input.")
+    private String replayInput = "";
+
+    @CommandLine.Option(names = { "--exit-after-replay" }, description = "Stops the engine when the input replay ends.")
+    private boolean exitAfterReplay = false;
+
+    @CommandLine.Option(names = { "--render-thread" }, description = "Draws on a dedicated thread owning the GL context, while the main thread records the next frame.")
+    private boolean renderThread = false;
+
+    @CommandLine.Option(names = { "--frames-in-flight" }, description = "Recorded frames that may wait for the GL thread, and offscreen frames the GPU may lag behind (default: ${DEFAULT-VALUE}).")
+    private int framesInFlight = 2;
+
+    @CommandLine.Option(names = { "--benchmark" }, description = "Renders the benchmark scene offscreen for the given frames, writes the report and exits, 0 to disable (default: ${DEFAULT-VALUE}).")
+    private int benchmark = 0;
+
+    @CommandLine.Option(names = { "--benchmark-warmup" }, description = "Frames rendered before the benchmark starts measuring (default: ${DEFAULT-VALUE}).")
+    private int benchmarkWarmup = 120;
+
+    @CommandLine.Option(names = { "--benchmark-sprites" }, description = "Sprites drawn every frame by the benchmark scene (default: ${DEFAULT-VALUE}).")
+    private int benchmarkSprites = 20000;
+
+    @CommandLine.Option(names = { "--benchmark-width" }, description = "Width of the offscreen benchmark framebuffer (default: ${DEFAULT-VALUE}).")
+    private int benchmarkWidth = 1920;
+
+    @CommandLine.Option(names = { "--benchmark-height" }, description = "Height of the offscreen benchmark framebuffer (default: ${DEFAULT-VALUE}).")
+    private int benchmarkHeight = 1080;
+
+    @CommandLine.Option(names = { "--benchmark-output" }, description = "JSON file the benchmark report is written to (default: ${DEFAULT-VALUE}).")
+    private String benchmarkOutput = "benchmark.json";
+
+    @CommandLine.Option(names = { "--offscreen-context" }, description = "OpenGL context used by the benchmark: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Window.Offscreen offscreenContext = Window.Offscreen.HIDDEN_WINDOW;
+
+    @CommandLine.Option(names = { "--render-device" }, description = "Render device: ${COMPLETION-CANDIDATES}, NULL and RECORDING run without a GPU or window (default: ${DEFAULT-VALUE}).")
+    private RenderDevice.Backend renderDevice = RenderDevice.Backend.OPENGL;
+
+    @CommandLine.Option(names = { "--record-render-device" }, description = "Counts the draws and state changes of the selected render device, OPENGL included.")
+    private boolean recordRenderDevice = false;
+
+    @CommandLine.Option(names = { "--draw-call-budget" }, description = "Draw calls a frame may issue before the run fails once it is over, records the render device when set, 0 to disable (default: ${DEFAULT-VALUE}).")
+    private int drawCallBudget = 0;
+
+    @CommandLine.Option(names = { "--port" }, description = "UDP and TCP port accepting connections, 0 to not listen (default: ${DEFAULT-VALUE}).")
+    private int port = 0;
+
+    @CommandLine.Option(names = { "--connect" }, description = "Server to connect to, as host:port.")
+    private String connect = "";
+
+    @CommandLine.Option(names = { "--transport" }, description = "Transport used by --connect: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Transport transport = Transport.UDP;
+
+    @CommandLine.Option(names = { "--max-connections" }, description = "Connections the network host can hold at once (default: ${DEFAULT-VALUE}).")
+    private int maxConnections = 4096;
+
+    @CommandLine.Option(names = { "--mtu" }, description = "Largest UDP packet sent, in bytes (default: ${DEFAULT-VALUE}).")
+    private int mtu = NetHost.DEFAULT_MTU;
+
+    @CommandLine.Option(names = { "--world" }, description = "LMDB file the world is saved to, empty to disable saving (default: ${DEFAULT-VALUE}).")
+    private String world = "";
+
+    @CommandLine.Option(names = { "--world-map-size" }, description = "Size the world file can grow to, in MiB (default: ${DEFAULT-VALUE}).")
+    private long worldMapSize = 1024;
+
+    @CommandLine.Option(names = { "--autosave-interval" }, description = "Seconds between saves of the changed chunks (default: ${DEFAULT-VALUE}).")
+    private int autosaveInterval = 60;
+
     @Override
     public String toString() {
         return "AppConfig{" +
                 "title='" + title + '\'' +
                 ", debug=" + debug +
                 ", server=" + server +
+                ", tickRate=" + tickRate +
+                ", maxTicksPerFrame=" + maxTicksPerFrame +
+                ", workers=" + workers +
+                ", shaderCache='" + shaderCache + '\'' +
+                ", assetPack='" + assetPack + '\'' +
+                ", textureVramBudget=" + textureVramBudget +
+                ", textureRamBudget=" + textureRamBudget +
+                ", textureUploadBudget=" + textureUploadBudget +
+                ", meshCache='" + meshCache + '\'' +
+                ", meshFormat=" + meshFormat +
+                ", profilerHistory=" + profilerHistory +
+                ", remotery=" + remotery +
+                ", allocGuard=" + allocGuard +
+                ", allocBudget=" + allocBudget +
+                ", allocator=" + allocator +
+                ", frameArena=" + frameArena +
+                ", memoryDebug=" + memoryDebug +
+                ", recordInput='" + recordInput + '\'' +
+                ", replayInput='" + replayInput + '\'' +
+                ", exitAfterReplay=" + exitAfterReplay +
+                ", renderThread=" + renderThread +
+                ", framesInFlight=" + framesInFlight +
+                ", benchmark=" + benchmark +
+                ", benchmarkWarmup=" + benchmarkWarmup +
+                ", benchmarkSprites=" + benchmarkSprites +
+                ", benchmarkWidth=" + benchmarkWidth +
+                ", benchmarkHeight=" + benchmarkHeight +
+                ", benchmarkOutput='" + benchmarkOutput + '\'' +
+                ", offscreenContext=" + offscreenContext +
+                ", renderDevice=" + renderDevice +
+                ", recordRenderDevice=" + recordRenderDevice +
+                ", drawCallBudget=" + drawCallBudget +
+                ", port=" + port +
+                ", connect='" + connect + '\'' +
+                ", transport=" + transport +
+                ", maxConnections=" + maxConnections +
+                ", mtu=" + mtu +
+                ", world='" + world + '\'' +
+                ", worldMapSize=" + worldMapSize +
+                ", autosaveInterval=" + autosaveInterval +
                 '}';
     }
 
@@ -41,4 +208,324 @@ public class AppConfig {
     public boolean isServer() {
         return server;
     }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public void setTickRate(int tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    public int getMaxTicksPerFrame() {
+        return maxTicksPerFrame;
+    }
+
+    public void setMaxTicksPerFrame(int maxTicksPerFrame) {
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public String getShaderCache() {
+        return shaderCache;
+    }
+
+    public void setShaderCache(String shaderCache) {
+        this.shaderCache = shaderCache;
+    }
+
+    public String getAssetPack() {
+        return assetPack;
+    }
+
+    public void setAssetPack(String assetPack) {
+        this.assetPack = assetPack;
+    }
+
+    public int getTextureVramBudget() {
+        return textureVramBudget;
+    }
+
+    public void setTextureVramBudget(int textureVramBudget) {
+        this.textureVramBudget = textureVramBudget;
+    }
+
+    public int getTextureRamBudget() {
+        return textureRamBudget;
+    }
+
+    public void setTextureRamBudget(int textureRamBudget) {
+        this.textureRamBudget = textureRamBudget;
+    }
+
+    public float getTextureUploadBudget() {
+        return textureUploadBudget;
+    }
+
+    public void setTextureUploadBudget(float textureUploadBudget) {
+        this.textureUploadBudget = textureUploadBudget;
+    }
+
+    public String getMeshCache() {
+        return meshCache;
+    }
+
+    public void setMeshCache(String meshCache) {
+        this.meshCache = meshCache;
+    }
+
+    public VertexFormat getMeshFormat() {
+        return meshFormat;
+    }
+
+    public void setMeshFormat(VertexFormat meshFormat) {
+        this.meshFormat = meshFormat;
+    }
+
+    public int getProfilerHistory() {
+        return profilerHistory;
+    }
+
+    public void setProfilerHistory(int profilerHistory) {
+        this.profilerHistory = profilerHistory;
+    }
+
+    public boolean isRemotery() {
+        return remotery;
+    }
+
+    public void setRemotery(boolean remotery) {
+        this.remotery = remotery;
+    }
+
+    public AllocationGuard.Mode getAllocGuard() {
+        return allocGuard;
+    }
+
+    public void setAllocGuard(AllocationGuard.Mode allocGuard) {
+        this.allocGuard = allocGuard;
+    }
+
+    public long getAllocBudget() {
+        return allocBudget;
+    }
+
+    public void setAllocBudget(long allocBudget) {
+        this.allocBudget = allocBudget;
+    }
+
+    public NativeAllocator getAllocator() {
+        return allocator;
+    }
+
+    public void setAllocator(NativeAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public int getFrameArena() {
+        return frameArena;
+    }
+
+    public void setFrameArena(int frameArena) {
+        this.frameArena = frameArena;
+    }
+
+    public boolean isMemoryDebug() {
+        return memoryDebug;
+    }
+
+    public void setMemoryDebug(boolean memoryDebug) {
+        this.memoryDebug = memoryDebug;
+    }
+
+    public String getRecordInput() {
+        return recordInput;
+    }
+
+    public void setRecordInput(String recordInput) {
+        this.recordInput = recordInput;
+    }
+
+    public String getReplayInput() {
+        return replayInput;
+    }
+
+    public void setReplayInput(String replayInput) {
+        this.replayInput = replayInput;
+    }
+
+    public boolean isExitAfterReplay() {
+        return exitAfterReplay;
+    }
+
+    public void setExitAfterReplay(boolean exitAfterReplay) {
+        this.exitAfterReplay = exitAfterReplay;
+    }
+
+    public boolean isRenderThread() {
+        return renderThread;
+    }
+
+    public void setRenderThread(boolean renderThread) {
+        this.renderThread = renderThread;
+    }
+
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    public void setFramesInFlight(int framesInFlight) {
+        this.framesInFlight = framesInFlight;
+    }
+
+    public int getBenchmark() {
+        return benchmark;
+    }
+
+    public void setBenchmark(int benchmark) {
+        this.benchmark = benchmark;
+    }
+
+    public int getBenchmarkWarmup() {
+        return benchmarkWarmup;
+    }
+
+    public void setBenchmarkWarmup(int benchmarkWarmup) {
+        this.benchmarkWarmup = benchmarkWarmup;
+    }
+
+    public int getBenchmarkSprites() {
+        return benchmarkSprites;
+    }
+
+    public void setBenchmarkSprites(int benchmarkSprites) {
+        this.benchmarkSprites = benchmarkSprites;
+    }
+
+    public int getBenchmarkWidth() {
+        return benchmarkWidth;
+    }
+
+    public void setBenchmarkWidth(int benchmarkWidth) {
+        this.benchmarkWidth = benchmarkWidth;
+    }
+
+    public int getBenchmarkHeight() {
+        return benchmarkHeight;
+    }
+
+    public void setBenchmarkHeight(int benchmarkHeight) {
+        this.benchmarkHeight = benchmarkHeight;
+    }
+
+    public String getBenchmarkOutput() {
+        return benchmarkOutput;
+    }
+
+    public void setBenchmarkOutput(String benchmarkOutput) {
+        this.benchmarkOutput = benchmarkOutput;
+    }
+
+    public Window.Offscreen getOffscreenContext() {
+        return offscreenContext;
+    }
+
+    public void setOffscreenContext(Window.Offscreen offscreenContext) {
+        this.offscreenContext = offscreenContext;
+    }
+
+    public RenderDevice.Backend getRenderDevice() {
+        return renderDevice;
+    }
+
+    public void setRenderDevice(RenderDevice.Backend renderDevice) {
+        this.renderDevice = renderDevice;
+    }
+
+    public boolean isRecordRenderDevice() {
+        return recordRenderDevice;
+    }
+
+    public void setRecordRenderDevice(boolean recordRenderDevice) {
+        this.recordRenderDevice = recordRenderDevice;
+    }
+
+    public int getDrawCallBudget() {
+        return drawCallBudget;
+    }
+
+    public void setDrawCallBudget(int drawCallBudget) {
+        this.drawCallBudget = drawCallBudget;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getConnect() {
+        return connect;
+    }
+
+    public void setConnect(String connect) {
+        this.connect = connect;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public String getWorld() {
+        return world;
+    }
+
+    public void setWorld(String world) {
+        this.world = world;
+    }
+
+    public long getWorldMapSize() {
+        return worldMapSize;
+    }
+
+    public void setWorldMapSize(long worldMapSize) {
+        this.worldMapSize = worldMapSize;
+    }
+
+    public int getAutosaveInterval() {
+        return autosaveInterval;
+    }
+
+    public void setAutosaveInterval(int autosaveInterval) {
+        this.autosaveInterval = autosaveInterval;
+    }
 }
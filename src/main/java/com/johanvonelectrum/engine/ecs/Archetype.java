@@ -0,0 +1,144 @@
+package com.johanvonelectrum.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage of every entity with exactly the same set of components. Entities are packed densely: the row of an
+ * entity is a single index over the chunks, every chunk but the last one is full, and removing an entity moves the
+ * last one into its place.
+ */
+public final class Archetype {
+
+    private static final Object[] ZEROES = {
+            new float[1], new int[1], new long[1], new double[1]
+    };
+
+    final long mask;
+    final ComponentType[] types;
+    final int[] columnStart = new int[ComponentType.MAX_TYPES];
+    final ComponentType.Kind[] columnKinds;
+    final int columnCount;
+    final int chunkCapacity;
+
+    final List<Chunk> chunks = new ArrayList<>();
+    final Archetype[] addEdges = new Archetype[ComponentType.MAX_TYPES];
+    final Archetype[] removeEdges = new Archetype[ComponentType.MAX_TYPES];
+    int entityCount;
+
+    Archetype(long mask, ComponentType[] types, int chunkCapacity) {
+        this.mask = mask;
+        this.types = types;
+        this.chunkCapacity = chunkCapacity;
+
+        Arrays.fill(columnStart, -1);
+        List<ComponentType.Kind> kinds = new ArrayList<>();
+        for (ComponentType type : types) {
+            columnStart[type.getId()] = kinds.size();
+            for (int field = 0; field < type.getFieldCount(); field++)
+                kinds.add(type.getKind(field));
+        }
+        this.columnKinds = kinds.toArray(new ComponentType.Kind[0]);
+        this.columnCount = columnKinds.length;
+    }
+
+    int column(ComponentType type, int field) {
+        int start = columnStart[type.getId()];
+        if (start < 0)
+            throw new IllegalArgumentException("Archetype " + this + " has no component " + type);
+        if (field < 0 || field >= type.getFieldCount())
+            throw new IllegalArgumentException("Component " + type + " has no field " + field);
+        return start + field;
+    }
+
+    public boolean has(ComponentType type) {
+        return (mask & type.getMask()) != 0;
+    }
+
+    Chunk chunkOf(int row) {
+        return chunks.get(row / chunkCapacity);
+    }
+
+    /**
+     * Appends an entity with zeroed components.
+     *
+     * @return the row of the entity
+     */
+    int add(int entity) {
+        int row = entityCount++;
+        int chunkIndex = row / chunkCapacity;
+        if (chunkIndex == chunks.size())
+            chunks.add(new Chunk(this, chunkCapacity));
+
+        Chunk chunk = chunks.get(chunkIndex);
+        int index = row % chunkCapacity;
+        chunk.entities[index] = entity;
+        chunk.size = index + 1;
+        for (int column = 0; column < columnCount; column++)
+            System.arraycopy(ZEROES[columnKinds[column].ordinal()], 0, chunk.columns[column], index, 1);
+        return row;
+    }
+
+    /**
+     * Removes the entity at the row by moving the last entity into it.
+     *
+     * @return the entity that now lives at {@code row}, or -1 if the removed entity was the last one
+     */
+    int remove(int row) {
+        int last = --entityCount;
+        Chunk lastChunk = chunks.get(last / chunkCapacity);
+        int lastIndex = last % chunkCapacity;
+        lastChunk.size = lastIndex;
+        if (row == last)
+            return -1;
+
+        Chunk chunk = chunkOf(row);
+        int index = row % chunkCapacity;
+        int moved = lastChunk.entities[lastIndex];
+        chunk.entities[index] = moved;
+        for (int column = 0; column < columnCount; column++)
+            System.arraycopy(lastChunk.columns[column], lastIndex, chunk.columns[column], index, 1);
+        return moved;
+    }
+
+    /**
+     * Copies the components both archetypes share from a row of this archetype into a row of the target.
+     */
+    void copyTo(int row, Archetype target, int targetRow) {
+        Chunk source = chunkOf(row), destination = target.chunkOf(targetRow);
+        int sourceIndex = row % chunkCapacity, targetIndex = targetRow % target.chunkCapacity;
+        for (ComponentType type : types) {
+            int targetStart = target.columnStart[type.getId()];
+            if (targetStart < 0)
+                continue;
+            int sourceStart = columnStart[type.getId()];
+            for (int field = 0; field < type.getFieldCount(); field++)
+                System.arraycopy(source.columns[sourceStart + field], sourceIndex, destination.columns[targetStart + field], targetIndex, 1);
+        }
+    }
+
+    /**
+     * @return chunks holding at least one entity
+     */
+    public int getChunkCount() {
+        return (entityCount + chunkCapacity - 1) / chunkCapacity;
+    }
+
+    public Chunk getChunk(int index) {
+        return chunks.get(index);
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public long getMask() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(types);
+    }
+}
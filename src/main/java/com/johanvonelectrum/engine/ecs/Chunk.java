@@ -0,0 +1,77 @@
+package com.johanvonelectrum.engine.ecs;
+
+/**
+ * Fixed size block of entities of one {@link Archetype}. Each component field is a primitive array indexed by row,
+ * and rows {@code [0, size())} are always filled, so systems iterate chunks with plain loops:
+ * <pre>{@code
+ * float[] x = chunk.floats(POSITION, X), vx = chunk.floats(VELOCITY, X);
+ * for (int i = 0, n = chunk.size(); i < n; i++)
+ *     x[i] += vx[i] * dt;
+ * }</pre>
+ * The arrays must not be kept after the iteration, structural changes move entities between chunks.
+ */
+public final class Chunk {
+
+    final Archetype archetype;
+    final int[] entities;
+    final Object[] columns;
+    int size;
+
+    Chunk(Archetype archetype, int capacity) {
+        this.archetype = archetype;
+        this.entities = new int[capacity];
+        this.columns = new Object[archetype.columnCount];
+        for (int column = 0; column < columns.length; column++) {
+            switch (archetype.columnKinds[column]) {
+                case FLOAT:
+                    columns[column] = new float[capacity];
+                    break;
+                case INT:
+                    columns[column] = new int[capacity];
+                    break;
+                case LONG:
+                    columns[column] = new long[capacity];
+                    break;
+                case DOUBLE:
+                    columns[column] = new double[capacity];
+                    break;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return entities.length;
+    }
+
+    public int getEntity(int row) {
+        return entities[row];
+    }
+
+    public boolean has(ComponentType type) {
+        return archetype.has(type);
+    }
+
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    public float[] floats(ComponentType type, int field) {
+        return (float[]) columns[archetype.column(type, field)];
+    }
+
+    public int[] ints(ComponentType type, int field) {
+        return (int[]) columns[archetype.column(type, field)];
+    }
+
+    public long[] longs(ComponentType type, int field) {
+        return (long[]) columns[archetype.column(type, field)];
+    }
+
+    public double[] doubles(ComponentType type, int field) {
+        return (double[]) columns[archetype.column(type, field)];
+    }
+}
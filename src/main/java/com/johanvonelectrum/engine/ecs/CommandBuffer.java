@@ -0,0 +1,124 @@
+package com.johanvonelectrum.engine.ecs;
+
+import java.util.Arrays;
+
+/**
+ * Structural changes recorded during iteration and applied later by {@link World#playback()}. Each thread records
+ * into its own buffer (see {@link World#commands()}), so recording does not synchronize, and buffers keep their
+ * arrays between frames, so recording does not allocate once warmed up.
+ * <p>
+ * {@link #create(ComponentType...)} returns a negative placeholder that other commands of the same buffer accept in
+ * place of an entity.
+ */
+public final class CommandBuffer {
+
+    private static final int CREATE = 0;
+    private static final int DESTROY = 1;
+    private static final int ADD = 2;
+    private static final int REMOVE = 3;
+    private static final int SET_FLOAT = 4;
+    private static final int SET_INT = 5;
+
+    private static final int STRIDE = 5;
+
+    private final World world;
+    private int[] commands = new int[STRIDE * 64];
+    private int size;
+    private int created;
+    private int[] createdEntities = new int[16];
+
+    CommandBuffer(World world) {
+        this.world = world;
+    }
+
+    private void record(int command, int entity, int a, int b, int c) {
+        if (size + STRIDE > commands.length)
+            commands = Arrays.copyOf(commands, commands.length * 2);
+        commands[size] = command;
+        commands[size + 1] = entity;
+        commands[size + 2] = a;
+        commands[size + 3] = b;
+        commands[size + 4] = c;
+        size += STRIDE;
+    }
+
+    /**
+     * @return a placeholder for the entity, valid in this buffer until the next playback
+     */
+    public int create(ComponentType... types) {
+        long mask = 0;
+        for (ComponentType type : types)
+            mask |= type.getMask();
+        record(CREATE, 0, (int) mask, (int) (mask >>> 32), 0);
+        return -(++created);
+    }
+
+    public void destroy(int entity) {
+        record(DESTROY, entity, 0, 0, 0);
+    }
+
+    public void add(int entity, ComponentType type) {
+        record(ADD, entity, type.getId(), 0, 0);
+    }
+
+    public void remove(int entity, ComponentType type) {
+        record(REMOVE, entity, type.getId(), 0, 0);
+    }
+
+    public void setFloat(int entity, ComponentType type, int field, float value) {
+        record(SET_FLOAT, entity, type.getId(), field, Float.floatToRawIntBits(value));
+    }
+
+    public void setInt(int entity, ComponentType type, int field, int value) {
+        record(SET_INT, entity, type.getId(), field, value);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    void playback() {
+        if (size == 0)
+            return;
+
+        if (createdEntities.length < created)
+            createdEntities = Arrays.copyOf(createdEntities, Integer.highestOneBit(created) << 1);
+
+        int nextCreated = 0;
+        for (int i = 0; i < size; i += STRIDE) {
+            int command = commands[i];
+            if (command == CREATE) {
+                long mask = (commands[i + 2] & 0xFFFFFFFFL) | ((long) commands[i + 3] << 32);
+                createdEntities[nextCreated++] = world.create(mask);
+                continue;
+            }
+
+            int entity = commands[i + 1];
+            if (entity < 0)
+                entity = createdEntities[-entity - 1];
+            // Entities destroyed earlier in the frame are skipped
+            if (!world.isAlive(entity))
+                continue;
+
+            switch (command) {
+                case DESTROY:
+                    world.destroy(entity);
+                    break;
+                case ADD:
+                    world.add(entity, ComponentType.byId(commands[i + 2]));
+                    break;
+                case REMOVE:
+                    world.remove(entity, ComponentType.byId(commands[i + 2]));
+                    break;
+                case SET_FLOAT:
+                    world.setFloat(entity, ComponentType.byId(commands[i + 2]), commands[i + 3], Float.intBitsToFloat(commands[i + 4]));
+                    break;
+                case SET_INT:
+                    world.setInt(entity, ComponentType.byId(commands[i + 2]), commands[i + 3], commands[i + 4]);
+                    break;
+            }
+        }
+        size = 0;
+        created = 0;
+    }
+}
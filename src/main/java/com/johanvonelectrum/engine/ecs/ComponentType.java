@@ -0,0 +1,142 @@
+package com.johanvonelectrum.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Component made of named primitive fields. Every field is stored in its own primitive array per {@link Chunk}
+ * (structure of arrays), so systems read and write components without boxing. Types should be created once and
+ * kept in static fields; at most {@value #MAX_TYPES} types can exist.
+ */
+public final class ComponentType {
+
+    public enum Kind {
+        FLOAT, INT, LONG, DOUBLE
+    }
+
+    public static final int MAX_TYPES = Long.SIZE;
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final AtomicReferenceArray<ComponentType> TYPES = new AtomicReferenceArray<>(MAX_TYPES);
+
+    private final int id;
+    private final String name;
+    private final String[] fields;
+    private final Kind[] kinds;
+
+    private ComponentType(String name, String[] fields, Kind[] kinds) {
+        this.id = COUNT.getAndIncrement();
+        if (id >= MAX_TYPES)
+            throw new IllegalStateException("Too many component types, the limit is " + MAX_TYPES);
+
+        this.name = name;
+        this.fields = fields;
+        this.kinds = kinds;
+        TYPES.set(id, this);
+    }
+
+    static ComponentType byId(int id) {
+        ComponentType type = TYPES.get(id);
+        if (type == null)
+            throw new IllegalArgumentException("Unknown component type id " + id);
+        return type;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * @return a component with float fields only, e.g. {@code floats("Position", "x", "y")}
+     */
+    public static ComponentType floats(String name, String... fields) {
+        Kind[] kinds = new Kind[fields.length];
+        Arrays.fill(kinds, Kind.FLOAT);
+        return new ComponentType(name, fields.clone(), kinds);
+    }
+
+    /**
+     * @return a component without data, used to mark entities for queries
+     */
+    public static ComponentType tag(String name) {
+        return new ComponentType(name, new String[0], new Kind[0]);
+    }
+
+    /**
+     * @return index of the field, to be resolved once and passed to the {@link Chunk} and {@link World} accessors
+     */
+    public int field(String fieldName) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(fieldName))
+                return i;
+        }
+        throw new IllegalArgumentException("Component " + name + " has no field " + fieldName);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getMask() {
+        return 1L << id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    public Kind getKind(int field) {
+        return kinds[field];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private final List<String> fields = new ArrayList<>();
+        private final List<Kind> kinds = new ArrayList<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder floatField(String field) {
+            return field(field, Kind.FLOAT);
+        }
+
+        public Builder intField(String field) {
+            return field(field, Kind.INT);
+        }
+
+        public Builder longField(String field) {
+            return field(field, Kind.LONG);
+        }
+
+        public Builder doubleField(String field) {
+            return field(field, Kind.DOUBLE);
+        }
+
+        private Builder field(String field, Kind kind) {
+            if (fields.contains(field))
+                throw new IllegalArgumentException("Duplicated field " + field + " in component " + name);
+            fields.add(field);
+            kinds.add(kind);
+            return this;
+        }
+
+        public ComponentType build() {
+            return new ComponentType(name, fields.toArray(new String[0]), kinds.toArray(new Kind[0]));
+        }
+    }
+}
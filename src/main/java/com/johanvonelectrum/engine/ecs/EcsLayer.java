@@ -0,0 +1,77 @@
+package com.johanvonelectrum.engine.ecs;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import com.johanvonelectrum.engine.layers.Layer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link EntitySystem systems} over a {@link World} at the fixed simulation rate. Systems run in the order they
+ * were added, and the recorded commands are played back after each one so the next system sees its changes.
+ */
+public class EcsLayer extends Layer {
+
+    private final World world;
+    private final JobSystem jobSystem;
+    private final List<EntitySystem> systems = new ArrayList<>();
+
+    public EcsLayer(String name, World world, JobSystem jobSystem) {
+        super(name);
+        this.world = world;
+        this.jobSystem = jobSystem;
+    }
+
+    public EcsLayer addSystem(EntitySystem system) {
+        systems.add(system);
+        return this;
+    }
+
+    @Override
+    public Layer init() {
+        for (EntitySystem system : systems)
+            system.init(world);
+        world.playback();
+        logger.debug("Initialized {} systems.", systems.size());
+        return this;
+    }
+
+    @Override
+    public void update(float fixedDeltaTime) {
+        for (int i = 0; i < systems.size(); i++) {
+            systems.get(i).update(world, jobSystem, fixedDeltaTime);
+            world.playback();
+        }
+    }
+
+    @Override
+    public void begin() {
+
+    }
+
+    @Override
+    public void render(float deltaTime) {
+
+    }
+
+    @Override
+    public void end() {
+
+    }
+
+    @Override
+    public void onEvent(Event event) {
+
+    }
+
+    @Override
+    public void dispose() {
+        for (EntitySystem system : systems)
+            system.dispose(world);
+    }
+
+    public World getWorld() {
+        return world;
+    }
+}
@@ -0,0 +1,22 @@
+package com.johanvonelectrum.engine.ecs;
+
+import com.johanvonelectrum.engine.jobs.JobSystem;
+
+/**
+ * Game logic run by an {@link EcsLayer} every simulation tick, usually over one or more {@link Query queries}.
+ */
+@FunctionalInterface
+public interface EntitySystem {
+
+    /**
+     * Structural changes must go through {@link World#commands()} while a query iterates; they are applied after
+     * each system.
+     */
+    void update(World world, JobSystem jobSystem, float deltaTime);
+
+    default void init(World world) {
+    }
+
+    default void dispose(World world) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.johanvonelectrum.engine.ecs;
+
+import com.johanvonelectrum.engine.jobs.Job;
+import com.johanvonelectrum.engine.jobs.JobCounter;
+import com.johanvonelectrum.engine.jobs.JobException;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entities having all of some components and none of others. Matching archetypes are cached and only new
+ * archetypes are checked again, so iterating does not allocate. Queries are meant to be created once per system.
+ */
+public final class Query {
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(Chunk chunk);
+    }
+
+    private final World world;
+    private final long all;
+    private long none;
+
+    private final List<Archetype> matches = new ArrayList<>();
+    private int checkedArchetypes;
+
+    private Chunk[] chunks = new Chunk[16];
+    private int chunkCount;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private ChunkConsumer parallelConsumer;
+    private Job[] jobs;
+    private final JobCounter counter = new JobCounter();
+
+    Query(World world, ComponentType... all) {
+        this.world = world;
+        long mask = 0;
+        for (ComponentType type : all)
+            mask |= type.getMask();
+        this.all = mask;
+    }
+
+    /**
+     * Excludes entities having any of the given components.
+     */
+    public Query without(ComponentType... types) {
+        for (ComponentType type : types)
+            none |= type.getMask();
+        matches.clear();
+        checkedArchetypes = 0;
+        return this;
+    }
+
+    private void refresh() {
+        List<Archetype> archetypes = world.getArchetypes();
+        for (int i = checkedArchetypes; i < archetypes.size(); i++) {
+            Archetype archetype = archetypes.get(i);
+            if ((archetype.mask & all) == all && (archetype.mask & none) == 0)
+                matches.add(archetype);
+        }
+        checkedArchetypes = archetypes.size();
+    }
+
+    public int count() {
+        refresh();
+        int count = 0;
+        for (int i = 0; i < matches.size(); i++)
+            count += matches.get(i).entityCount;
+        return count;
+    }
+
+    /**
+     * Hands every non-empty chunk to the consumer on the calling thread.
+     */
+    public void forEachChunk(ChunkConsumer consumer) {
+        refresh();
+        world.beginIteration();
+        try {
+            for (int i = 0; i < matches.size(); i++) {
+                Archetype archetype = matches.get(i);
+                for (int chunk = 0, count = archetype.getChunkCount(); chunk < count; chunk++)
+                    consumer.accept(archetype.chunks.get(chunk));
+            }
+        } finally {
+            world.endIteration();
+        }
+    }
+
+    /**
+     * Hands the chunks to the consumer on the job workers and the calling thread, which returns once all are done.
+     * Chunks are claimed one at a time, so uneven chunks balance out. The consumer must only write to the chunk it
+     * was given and record structural changes in {@link World#commands()}.
+     */
+    public void forEachChunk(JobSystem jobSystem, ChunkConsumer consumer) {
+        refresh();
+        chunkCount = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            Archetype archetype = matches.get(i);
+            for (int chunk = 0, count = archetype.getChunkCount(); chunk < count; chunk++) {
+                if (chunkCount == chunks.length)
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                chunks[chunkCount++] = archetype.chunks.get(chunk);
+            }
+        }
+
+        if (chunkCount <= 1) {
+            forEachChunk(consumer);
+            return;
+        }
+
+        if (jobs == null) {
+            jobs = new Job[jobSystem.getWorkerCount()];
+            for (int i = 0; i < jobs.length; i++)
+                jobs[i] = new Job("Query #" + i, this::processChunks);
+        }
+
+        world.beginIteration();
+        parallelConsumer = consumer;
+        cursor.set(0);
+        try {
+            int helpers = Math.min(jobs.length, chunkCount - 1);
+            for (int i = 0; i < helpers; i++)
+                jobSystem.submit(jobs[i], counter);
+            try {
+                processChunks();
+            } catch (RuntimeException | Error e) {
+                // The helpers still use the consumer, stop them claiming chunks and wait for them before clearing it
+                cursor.set(chunkCount);
+                try {
+                    jobSystem.waitFor(counter);
+                } catch (JobException helper) {
+                    e.addSuppressed(helper);
+                }
+                throw e;
+            }
+            jobSystem.waitFor(counter);
+        } finally {
+            parallelConsumer = null;
+            world.endIteration();
+        }
+    }
+
+    private void processChunks() {
+        ChunkConsumer consumer = parallelConsumer;
+        int index;
+        while ((index = cursor.getAndIncrement()) < chunkCount)
+            consumer.accept(chunks[index]);
+    }
+}
@@ -0,0 +1,280 @@
+package com.johanvonelectrum.engine.ecs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Entities and their components, grouped by {@link Archetype}. An entity is a non-negative int holding a 7 bit
+ * generation above a 24 bit index, so stale handles of destroyed entities are detected.
+ * <p>
+ * The world is owned by one thread. Structural changes (create, destroy, add, remove) are not allowed while a
+ * {@link Query} iterates; record them in {@link #commands()} instead and apply them with {@link #playback()}.
+ */
+public class World {
+
+    public static final int DEFAULT_CHUNK_CAPACITY = 1024;
+    public static final int MAX_ENTITIES = 1 << 24;
+
+    private static final Logger LOGGER = LogManager.getLogger("World");
+    private static final int INDEX_MASK = MAX_ENTITIES - 1;
+    private static final int GENERATION_SHIFT = 24;
+    private static final int GENERATION_MASK = 0x7F;
+
+    private final int chunkCapacity;
+
+    private final Map<Long, Archetype> archetypes = new HashMap<>();
+    private final List<Archetype> archetypeList = new ArrayList<>();
+
+    private int[] generations = new int[1024];
+    private Archetype[] archetypeOf = new Archetype[1024];
+    private int[] rowOf = new int[1024];
+    private int[] freeIndices = new int[256];
+    private int freeCount;
+    private int nextIndex;
+    private int entityCount;
+
+    private int iterating;
+
+    private final List<CommandBuffer> commandBuffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<CommandBuffer> threadCommands = ThreadLocal.withInitial(() -> {
+        CommandBuffer buffer = new CommandBuffer(this);
+        commandBuffers.add(buffer);
+        return buffer;
+    });
+
+    public World() {
+        this(DEFAULT_CHUNK_CAPACITY);
+    }
+
+    public World(int chunkCapacity) {
+        if (chunkCapacity < 1)
+            throw new IllegalArgumentException("Chunk capacity must be positive: " + chunkCapacity);
+        this.chunkCapacity = chunkCapacity;
+    }
+
+    public int create(ComponentType... types) {
+        long mask = 0;
+        for (ComponentType type : types)
+            mask |= type.getMask();
+        return create(mask);
+    }
+
+    int create(long mask) {
+        checkStructuralChange();
+
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (nextIndex == MAX_ENTITIES)
+                throw new IllegalStateException("Too many entities, the limit is " + MAX_ENTITIES);
+            index = nextIndex++;
+            if (index == generations.length) {
+                int capacity = index * 2;
+                generations = Arrays.copyOf(generations, capacity);
+                archetypeOf = Arrays.copyOf(archetypeOf, capacity);
+                rowOf = Arrays.copyOf(rowOf, capacity);
+            }
+        }
+
+        int entity = generations[index] << GENERATION_SHIFT | index;
+        Archetype archetype = archetypeOf(mask);
+        archetypeOf[index] = archetype;
+        rowOf[index] = archetype.add(entity);
+        entityCount++;
+        return entity;
+    }
+
+    public boolean isAlive(int entity) {
+        int index = entity & INDEX_MASK;
+        return entity >= 0 && index < nextIndex && archetypeOf[index] != null
+                && generations[index] == entity >>> GENERATION_SHIFT;
+    }
+
+    public void destroy(int entity) {
+        checkStructuralChange();
+        int index = indexOf(entity);
+
+        removeRow(archetypeOf[index], rowOf[index]);
+        archetypeOf[index] = null;
+        generations[index] = (generations[index] + 1) & GENERATION_MASK;
+        if (freeCount == freeIndices.length)
+            freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+        freeIndices[freeCount++] = index;
+        entityCount--;
+    }
+
+    public boolean has(int entity, ComponentType type) {
+        return archetypeOf[indexOf(entity)].has(type);
+    }
+
+    /**
+     * Adds a zeroed component, moving the entity to another archetype. Does nothing if it already has it.
+     */
+    public void add(int entity, ComponentType type) {
+        checkStructuralChange();
+        int index = indexOf(entity);
+        Archetype source = archetypeOf[index];
+        if (source.has(type))
+            return;
+
+        Archetype target = source.addEdges[type.getId()];
+        if (target == null) {
+            target = archetypeOf(source.mask | type.getMask());
+            source.addEdges[type.getId()] = target;
+        }
+        move(entity, index, source, target);
+    }
+
+    public void remove(int entity, ComponentType type) {
+        checkStructuralChange();
+        int index = indexOf(entity);
+        Archetype source = archetypeOf[index];
+        if (!source.has(type))
+            return;
+
+        Archetype target = source.removeEdges[type.getId()];
+        if (target == null) {
+            target = archetypeOf(source.mask & ~type.getMask());
+            source.removeEdges[type.getId()] = target;
+        }
+        move(entity, index, source, target);
+    }
+
+    private void move(int entity, int index, Archetype source, Archetype target) {
+        int row = rowOf[index];
+        int targetRow = target.add(entity);
+        source.copyTo(row, target, targetRow);
+        removeRow(source, row);
+        archetypeOf[index] = target;
+        rowOf[index] = targetRow;
+    }
+
+    private void removeRow(Archetype archetype, int row) {
+        int moved = archetype.remove(row);
+        if (moved != -1)
+            rowOf[moved & INDEX_MASK] = row;
+    }
+
+    private int indexOf(int entity) {
+        if (!isAlive(entity))
+            throw new IllegalArgumentException("Entity " + Integer.toHexString(entity) + " is not alive.");
+        return entity & INDEX_MASK;
+    }
+
+    private void checkStructuralChange() {
+        if (iterating > 0)
+            throw new IllegalStateException("Structural changes are not allowed while iterating, use World.commands().");
+    }
+
+    private Archetype archetypeOf(long mask) {
+        Archetype archetype = archetypes.get(mask);
+        if (archetype != null)
+            return archetype;
+
+        ComponentType[] types = new ComponentType[Long.bitCount(mask)];
+        long remaining = mask;
+        for (int i = 0; remaining != 0; i++, remaining &= remaining - 1)
+            types[i] = ComponentType.byId(Long.numberOfTrailingZeros(remaining));
+
+        archetype = new Archetype(mask, types, chunkCapacity);
+        archetypes.put(mask, archetype);
+        archetypeList.add(archetype);
+        LOGGER.trace("Created archetype {}", archetype);
+        return archetype;
+    }
+
+    private Chunk chunkOf(int entity) {
+        int index = indexOf(entity);
+        return archetypeOf[index].chunkOf(rowOf[index]);
+    }
+
+    private int indexInChunk(int entity) {
+        return rowOf[entity & INDEX_MASK] % chunkCapacity;
+    }
+
+    public float getFloat(int entity, ComponentType type, int field) {
+        return chunkOf(entity).floats(type, field)[indexInChunk(entity)];
+    }
+
+    public void setFloat(int entity, ComponentType type, int field, float value) {
+        chunkOf(entity).floats(type, field)[indexInChunk(entity)] = value;
+    }
+
+    public int getInt(int entity, ComponentType type, int field) {
+        return chunkOf(entity).ints(type, field)[indexInChunk(entity)];
+    }
+
+    public void setInt(int entity, ComponentType type, int field, int value) {
+        chunkOf(entity).ints(type, field)[indexInChunk(entity)] = value;
+    }
+
+    public long getLong(int entity, ComponentType type, int field) {
+        return chunkOf(entity).longs(type, field)[indexInChunk(entity)];
+    }
+
+    public void setLong(int entity, ComponentType type, int field, long value) {
+        chunkOf(entity).longs(type, field)[indexInChunk(entity)] = value;
+    }
+
+    public double getDouble(int entity, ComponentType type, int field) {
+        return chunkOf(entity).doubles(type, field)[indexInChunk(entity)];
+    }
+
+    public void setDouble(int entity, ComponentType type, int field, double value) {
+        chunkOf(entity).doubles(type, field)[indexInChunk(entity)] = value;
+    }
+
+    /**
+     * @return a query over the entities having every given component
+     */
+    public Query query(ComponentType... all) {
+        return new Query(this, all);
+    }
+
+    /**
+     * @return the command buffer of the calling thread, safe to record into from parallel queries
+     */
+    public CommandBuffer commands() {
+        return threadCommands.get();
+    }
+
+    /**
+     * Applies every recorded command, buffer by buffer. Must be called by the owning thread while nothing iterates.
+     */
+    public void playback() {
+        for (CommandBuffer buffer : commandBuffers)
+            buffer.playback();
+    }
+
+    void beginIteration() {
+        iterating++;
+    }
+
+    void endIteration() {
+        iterating--;
+    }
+
+    List<Archetype> getArchetypes() {
+        return archetypeList;
+    }
+
+    public int getArchetypeCount() {
+        return archetypeList.size();
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public int getChunkCapacity() {
+        return chunkCapacity;
+    }
+}
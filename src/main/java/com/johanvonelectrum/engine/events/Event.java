@@ -1,8 +1,47 @@
 package com.johanvonelectrum.engine.events;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Event {
 
+    private static final AtomicInteger TYPE_COUNT = new AtomicInteger();
+    private static final ClassValue<Integer> TYPE_IDS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return TYPE_COUNT.getAndIncrement();
+        }
+    };
+
+    private final int typeId = TYPE_IDS.get(getClass());
     private boolean handled = false;
+    EventPool<Event> pool;
+
+    /**
+     * Set while the event waits in its pool, so a second {@link #recycle()} can not hand it out twice.
+     */
+    final AtomicBoolean pooled = new AtomicBoolean();
+
+    /**
+     * @return dense id of the concrete event class, used to index dispatch tables
+     */
+    public final int getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * @return number of event classes that have been instantiated so far
+     */
+    public static int getTypeCount() {
+        return TYPE_COUNT.get();
+    }
+
+    /**
+     * @return {@link EventCategory} flags of this event type. Must be the same for every instance of a class.
+     */
+    public int getCategories() {
+        return EventCategory.NONE;
+    }
 
     public boolean isHandled() {
         return handled;
@@ -11,4 +50,22 @@ public class Event {
     public void setHandled() {
         this.handled = true;
     }
+
+    /**
+     * Clears the event state before it is handed out again by its {@link EventPool}. Subclasses holding data must
+     * override it and call super.
+     */
+    protected void reset() {
+        this.handled = false;
+    }
+
+    /**
+     * Returns the event to the pool it was obtained from. Events created with new are left to the GC.
+     *
+     * @throws IllegalStateException if the event was already recycled
+     */
+    public void recycle() {
+        if (pool != null)
+            pool.release(this);
+    }
 }
@@ -0,0 +1,19 @@
+package com.johanvonelectrum.engine.events;
+
+/**
+ * Bit flags grouping event types, so layers can subscribe to a whole family of events at once.
+ */
+public final class EventCategory {
+
+    public static final int NONE = 0;
+    public static final int APPLICATION = 1;
+    public static final int INPUT = 1 << 1;
+    public static final int KEYBOARD = 1 << 2;
+    public static final int MOUSE = 1 << 3;
+    public static final int GAMEPAD = 1 << 4;
+    public static final int NETWORK = 1 << 5;
+    public static final int ALL = ~0;
+
+    private EventCategory() {
+    }
+}
@@ -0,0 +1,77 @@
+package com.johanvonelectrum.engine.events;
+
+import com.johanvonelectrum.engine.concurrent.MpmcRingBuffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of reusable events of a single type.
+ *
+ * @param <T> event type
+ */
+public final class EventPool<T extends Event> {
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final MpmcRingBuffer<T> free;
+    private final AtomicLong misses = new AtomicLong();
+
+    public EventPool(Class<T> type, Supplier<T> factory, int capacity) {
+        this.type = type;
+        this.factory = factory;
+        this.free = new MpmcRingBuffer<>(capacity);
+    }
+
+    /**
+     * Fills the pool with new events, so the first frames do not allocate.
+     */
+    public EventPool<T> preallocate(int count) {
+        for (int i = 0; i < count; i++) {
+            T event = create();
+            event.pooled.set(true);
+            if (!free.offer(event))
+                break;
+        }
+        return this;
+    }
+
+    public T acquire() {
+        T event = free.poll();
+        if (event == null) {
+            misses.incrementAndGet();
+            return create();
+        }
+        event.pooled.set(false);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T create() {
+        T event = factory.get();
+        event.pool = (EventPool<Event>) this;
+        return event;
+    }
+
+    void release(T event) {
+        if (!event.pooled.compareAndSet(false, true))
+            throw new IllegalStateException(event.getClass().getSimpleName() + " was recycled twice.");
+        event.reset();
+        free.offer(event);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public int getAvailable() {
+        return free.size();
+    }
+
+    /**
+     * @return how many times the pool was empty and a new event had to be allocated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
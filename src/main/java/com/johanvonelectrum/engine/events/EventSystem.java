@@ -1,25 +1,187 @@
 package com.johanvonelectrum.engine.events;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded event bus. Events can be pushed from any thread (GLFW callbacks, loaders, network...) and are drained
+ * once per frame by the main thread. Events should be obtained from {@link #obtain(Class)} so they are recycled
+ * after dispatch instead of becoming garbage.
+ */
 public class EventSystem {
 
-    private final Queue<Event> eventBus = new LinkedList<>();
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final Logger LOGGER = LogManager.getLogger("EventSystem");
+
+    private final MpscRingBuffer<Event> eventBus;
+    private final Map<Class<?>, EventPool<?>> pools = new ConcurrentHashMap<>();
+
+    private final AtomicLong pushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int highWaterMark;
+
+    public EventSystem() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EventSystem(int capacity) {
+        this.eventBus = new MpscRingBuffer<>(capacity);
+    }
+
+    public <T extends Event> EventPool<T> registerPool(Class<T> type, Supplier<T> factory, int preallocate) {
+        EventPool<T> pool = new EventPool<>(type, factory, Math.max(eventBus.capacity(), preallocate));
+        pool.preallocate(preallocate);
+        pools.put(type, pool);
+        return pool;
+    }
+
+    /**
+     * Returns a clean event of the given type from its pool. Types not registered with
+     * {@link #registerPool(Class, Supplier, int)} get a pool backed by their no-arg constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Event> T obtain(Class<T> type) {
+        EventPool<T> pool = (EventPool<T>) pools.get(type);
+        if (pool == null)
+            pool = createPool(type);
+        return pool.acquire();
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T extends Event> EventPool<T> createPool(Class<T> type) {
+        EventPool<T> pool = (EventPool<T>) pools.get(type);
+        if (pool != null)
+            return pool;
+
+        final Constructor<T> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Event type has no default constructor, register a pool for it: " + type.getName(), e);
+        }
 
-    public void push(Event event) {
-        eventBus.add(event);
+        LOGGER.debug("Creating event pool for {}", type.getSimpleName());
+        return registerPool(type, () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create event " + type.getName(), e);
+            }
+        }, 0);
     }
 
+    /**
+     * Thread-safe. When the bus is full the event is recycled and counted as dropped.
+     *
+     * @return false if the event was dropped
+     */
+    public boolean push(Event event) {
+        if (eventBus.offer(event)) {
+            pushed.incrementAndGet();
+            return true;
+        }
+
+        dropped.incrementAndGet();
+        event.recycle();
+        return false;
+    }
+
+    /**
+     * Main thread only. The caller owns the returned event and should {@link Event#recycle()} it.
+     */
     public Event pop() {
         return eventBus.poll();
     }
 
+    /**
+     * Main thread only. Hands up to {@code limit} queued events to the handler and recycles them afterwards.
+     *
+     * @return number of dispatched events
+     */
+    public int drain(Consumer<? super Event> handler, int limit) {
+        int pending = eventBus.size();
+        if (pending > highWaterMark)
+            highWaterMark = pending;
+
+        int count = 0;
+        Event event;
+        while (count < limit && (event = eventBus.poll()) != null) {
+            try {
+                handler.accept(event);
+            } finally {
+                event.recycle();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    public int drain(Consumer<? super Event> handler) {
+        return drain(handler, Integer.MAX_VALUE);
+    }
+
     public boolean isEmpty() {
         return eventBus.isEmpty();
     }
 
+    public int size() {
+        return eventBus.size();
+    }
+
+    public int getCapacity() {
+        return eventBus.capacity();
+    }
+
+    public long getPushedCount() {
+        return pushed.get();
+    }
+
+    /**
+     * @return events rejected because the bus was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the highest number of events found waiting at the start of a drain
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void resetHighWaterMark() {
+        this.highWaterMark = 0;
+    }
+
+    /**
+     * @return events allocated because their pool was empty
+     */
+    public long getPoolMisses() {
+        long misses = 0;
+        for (EventPool<?> pool : pools.values())
+            misses += pool.getMisses();
+        return misses;
+    }
+
     public void dispose() {
+        Event event;
+        while ((event = eventBus.poll()) != null)
+            event.recycle();
 
+        if (dropped.get() > 0)
+            LOGGER.warn("{} events were dropped because the event bus was full (capacity {}).", dropped.get(), getCapacity());
+        LOGGER.debug("Events pushed: {}, high water mark: {}, pool misses: {}", pushed.get(), highWaterMark, getPoolMisses());
+        pools.clear();
     }
 }
@@ -0,0 +1,47 @@
+package com.johanvonelectrum.engine.events;
+
+public class KeyEvent extends Event {
+
+    private int key;
+    private int scancode;
+    private int action;
+    private int mods;
+
+    public KeyEvent set(int key, int scancode, int action, int mods) {
+        this.key = key;
+        this.scancode = scancode;
+        this.action = action;
+        this.mods = mods;
+        return this;
+    }
+
+    @Override
+    public int getCategories() {
+        return EventCategory.INPUT | EventCategory.KEYBOARD;
+    }
+
+    @Override
+    protected void reset() {
+        super.reset();
+        this.key = 0;
+        this.scancode = 0;
+        this.action = 0;
+        this.mods = 0;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public int getScancode() {
+        return scancode;
+    }
+
+    public int getAction() {
+        return action;
+    }
+
+    public int getMods() {
+        return mods;
+    }
+}
@@ -0,0 +1,170 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.io.resources.Texture;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reference counted texture handed out by a {@link TextureCache}. Until the image is decoded and uploaded,
+ * {@link #getId()} returns the cache placeholder, so it can be drawn right away. Call {@link #release()} once the
+ * texture is no longer needed. Acquiring and releasing are thread-safe.
+ */
+public final class CachedTexture {
+
+    public enum State {
+        QUEUED,
+        DECODING,
+        DECODED,
+        RESIDENT,
+        FAILED,
+        EVICTED
+    }
+
+    private final TextureCache cache;
+    private final String path;
+
+    private volatile State state = State.QUEUED;
+    /**
+     * Decoded image until it is staged or freed. Whoever takes it, the GL thread or a decoder racing with dispose,
+     * frees it.
+     */
+    private final AtomicReference<Texture> decoded = new AtomicReference<>();
+    private int id;
+    private int width, height;
+    private long size;
+    /**
+     * -1 once evicted, so a racing acquire can not revive it.
+     */
+    private final AtomicInteger references = new AtomicInteger();
+    private final AtomicBoolean changed = new AtomicBoolean();
+    // GL thread only
+    private boolean waiting;
+
+    CachedTexture(TextureCache cache, String path) {
+        this.cache = cache;
+        this.path = path;
+    }
+
+    /**
+     * @return the GL texture, or the placeholder while it is not resident
+     */
+    public int getId() {
+        return state == State.RESIDENT ? id : cache.getPlaceholder();
+    }
+
+    public boolean isResident() {
+        return state == State.RESIDENT;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return size in pixels, 0 until the image is decoded
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getReferences() {
+        return Math.max(0, references.get());
+    }
+
+    public void release() {
+        cache.release(this);
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void setDecoded(Texture decoded) {
+        this.decoded.set(decoded);
+    }
+
+    /**
+     * @return the decoded image, or null if it was already taken
+     */
+    Texture takeDecoded() {
+        return decoded.getAndSet(null);
+    }
+
+    void setResident(int id, int width, int height, long size) {
+        this.id = id;
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        this.state = State.RESIDENT;
+    }
+
+    int getTextureId() {
+        return id;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return false if the texture was evicted and must not be used
+     */
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count < 0)
+                return false;
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * @return references left
+     */
+    int unretain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0)
+                throw new IllegalStateException("Texture released more times than acquired: " + path);
+        } while (!references.compareAndSet(count, count - 1));
+        return count - 1;
+    }
+
+    /**
+     * @return true if nobody references the texture, which can no longer be acquired afterwards
+     */
+    boolean tryEvict() {
+        return references.compareAndSet(0, -1);
+    }
+
+    /**
+     * @return false if the texture already waits for the GL thread to look at it
+     */
+    boolean markChanged() {
+        return changed.compareAndSet(false, true);
+    }
+
+    void clearChanged() {
+        changed.set(false);
+    }
+
+    boolean isWaiting() {
+        return waiting;
+    }
+
+    void setWaiting(boolean waiting) {
+        this.waiting = waiting;
+    }
+}
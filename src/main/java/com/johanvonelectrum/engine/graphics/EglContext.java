@@ -0,0 +1,108 @@
+package com.johanvonelectrum.engine.graphics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL10;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.egl.EGL10.*;
+import static org.lwjgl.egl.EGL12.eglBindAPI;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_API;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_BIT;
+import static org.lwjgl.egl.EGL15.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+/**
+ * OpenGL 3.3 core context on an EGL pbuffer, for machines without a display server. With Mesa, run with
+ * {@code EGL_PLATFORM=surfaceless} to get a display without X11 or Wayland; it falls back to the llvmpipe software
+ * rasterizer when there is no GPU.
+ * <p>
+ * GL functions are loaded through {@code eglGetProcAddress}, so the context must be created before anything touches
+ * {@link GL}.
+ */
+public final class EglContext {
+
+    private static final Logger LOGGER = LogManager.getLogger("EglContext");
+
+    private final long display;
+    private final long surface;
+    private final long context;
+
+    public EglContext(int width, int height) {
+        Configuration.OPENGL_EXPLICIT_INIT.set(true);
+
+        this.display = eglGetDisplay(EGL_DEFAULT_DISPLAY);
+        if (display == EGL_NO_DISPLAY)
+            throw new IllegalStateException("No EGL display available.");
+
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer major = stack.mallocInt(1);
+            IntBuffer minor = stack.mallocInt(1);
+            if (!eglInitialize(display, major, minor))
+                throw error("Could not initialize EGL");
+            LOGGER.info("EGL {}.{} initialized.", major.get(0), minor.get(0));
+
+            IntBuffer configAttributes = stack.ints(
+                    EGL_SURFACE_TYPE, EGL_PBUFFER_BIT,
+                    EGL_RENDERABLE_TYPE, EGL_OPENGL_BIT,
+                    EGL_RED_SIZE, 8, EGL_GREEN_SIZE, 8, EGL_BLUE_SIZE, 8, EGL_ALPHA_SIZE, 8,
+                    EGL_DEPTH_SIZE, 24,
+                    EGL_NONE);
+            PointerBuffer configs = stack.mallocPointer(1);
+            IntBuffer count = stack.mallocInt(1);
+            if (!eglChooseConfig(display, configAttributes, configs, count) || count.get(0) == 0)
+                throw error("No EGL config supports OpenGL on a pbuffer");
+            long config = configs.get(0);
+
+            this.surface = eglCreatePbufferSurface(display, config, stack.ints(EGL_WIDTH, width, EGL_HEIGHT, height, EGL_NONE));
+            if (surface == EGL_NO_SURFACE)
+                throw error("Could not create the EGL pbuffer");
+
+            if (!eglBindAPI(EGL_OPENGL_API))
+                throw error("EGL does not support desktop OpenGL");
+            this.context = eglCreateContext(display, config, EGL_NO_CONTEXT, stack.ints(
+                    EGL_CONTEXT_MAJOR_VERSION, 3,
+                    EGL_CONTEXT_MINOR_VERSION, 3,
+                    EGL_CONTEXT_OPENGL_PROFILE_MASK, EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT,
+                    EGL_NONE));
+            if (context == EGL_NO_CONTEXT)
+                throw error("Could not create the EGL context");
+        }
+
+        makeCurrent();
+        GL.create(EGL10::eglGetProcAddress);
+    }
+
+    /**
+     * Makes the context current on the calling thread.
+     */
+    public void makeCurrent() {
+        if (!eglMakeCurrent(display, surface, surface, context))
+            throw error("Could not make the EGL context current");
+    }
+
+    /**
+     * Detaches the context from the calling thread, so another thread can make it current.
+     */
+    public void release() {
+        eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+    }
+
+    private static IllegalStateException error(String message) {
+        return new IllegalStateException(message + ": 0x" + Integer.toHexString(eglGetError()));
+    }
+
+    public void dispose() {
+        GL.setCapabilities(null);
+        release();
+        eglDestroyContext(display, context);
+        eglDestroySurface(display, surface);
+        eglTerminate(display);
+        GL.destroy();
+    }
+}
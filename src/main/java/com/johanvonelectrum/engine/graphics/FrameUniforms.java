@@ -0,0 +1,43 @@
+package com.johanvonelectrum.engine.graphics;
+
+import org.joml.Matrix4fc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Uniform blocks shared by every shader:
+ * <pre>
+ * layout (std140) uniform Camera { mat4 uViewProjection; };
+ * layout (std140) uniform Frame { vec3 uTime; uint uFrame; }; // time, delta time, interpolation alpha; frame index
+ * </pre>
+ */
+public final class FrameUniforms {
+
+    public static final String CAMERA = "Camera";
+    public static final String FRAME = "Frame";
+
+    private static final int CAMERA_SIZE = 16 * Float.BYTES;
+    private static final int FRAME_SIZE = 3 * Float.BYTES + Integer.BYTES;
+
+    private FrameUniforms() {
+    }
+
+    public static void setCamera(Matrix4fc viewProjection) {
+        UniformBuffer camera = UniformBuffer.get(CAMERA, CAMERA_SIZE);
+        viewProjection.get(0, camera.getData());
+        camera.upload();
+    }
+
+    /**
+     * @param frame frame index, wraps around as an unsigned 32 bit integer in the shader
+     */
+    public static void setFrame(float time, float deltaTime, float alpha, long frame) {
+        UniformBuffer buffer = UniformBuffer.get(FRAME, FRAME_SIZE);
+        ByteBuffer data = buffer.getData();
+        data.putFloat(0, time);
+        data.putFloat(4, deltaTime);
+        data.putFloat(8, alpha);
+        data.putInt(12, (int) frame);
+        buffer.upload();
+    }
+}
@@ -0,0 +1,72 @@
+package com.johanvonelectrum.engine.graphics;
+
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Offscreen render target with a color and a depth-stencil renderbuffer, for rendering without a visible default
+ * framebuffer.
+ */
+public final class Framebuffer {
+
+    private final RenderDevice device = Graphics.getDevice();
+    private final int id;
+    private final int color;
+    private final int depthStencil;
+    private final int width;
+    private final int height;
+
+    public Framebuffer(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid framebuffer size: " + width + "x" + height);
+
+        this.width = width;
+        this.height = height;
+
+        this.color = device.createRenderbuffer();
+        device.bindRenderbuffer(GL_RENDERBUFFER, color);
+        device.renderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+
+        this.depthStencil = device.createRenderbuffer();
+        device.bindRenderbuffer(GL_RENDERBUFFER, depthStencil);
+        device.renderbufferStorage(GL_RENDERBUFFER, GL_DEPTH24_STENCIL8, width, height);
+        device.bindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        this.id = device.createFramebuffer();
+        device.bindFramebuffer(GL_FRAMEBUFFER, id);
+        device.framebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, color);
+        device.framebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_STENCIL_ATTACHMENT, GL_RENDERBUFFER, depthStencil);
+        int status = device.checkFramebufferStatus(GL_FRAMEBUFFER);
+        device.bindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            dispose();
+            throw new IllegalStateException("Framebuffer is incomplete: 0x" + Integer.toHexString(status));
+        }
+    }
+
+    /**
+     * Binds the framebuffer for drawing and sets the viewport to cover it.
+     */
+    public void bind() {
+        device.bindFramebuffer(GL_FRAMEBUFFER, id);
+        device.viewport(0, 0, width, height);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void dispose() {
+        device.deleteFramebuffer(id);
+        device.deleteRenderbuffer(color);
+        device.deleteRenderbuffer(depthStencil);
+    }
+}
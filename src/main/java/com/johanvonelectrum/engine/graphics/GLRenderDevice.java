@@ -0,0 +1,400 @@
+package com.johanvonelectrum.engine.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+
+/**
+ * Forwards every call to the OpenGL context current on the calling thread.
+ */
+public final class GLRenderDevice implements RenderDevice {
+
+    private static final int INFO_LOG_LENGTH = 1024;
+
+    @Override
+    public Backend getBackend() {
+        return Backend.OPENGL;
+    }
+
+    @Override
+    public String getString(int name) {
+        return glGetString(name);
+    }
+
+    @Override
+    public boolean supportsBufferStorage() {
+        GLCapabilities capabilities = GL.getCapabilities();
+        return capabilities.OpenGL44 || capabilities.GL_ARB_buffer_storage;
+    }
+
+    @Override
+    public int createBuffer() {
+        return glGenBuffers();
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int buffer) {
+        glBindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        glBufferData(target, size, usage);
+    }
+
+    @Override
+    public void bufferData(int target, float[] data, int usage) {
+        glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, int[] data, int usage) {
+        glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        glBufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        glBufferStorage(target, size, flags);
+    }
+
+    @Override
+    public long mapBufferRange(int target, long offset, long length, int access) {
+        return nglMapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public void unmapBuffer(int target) {
+        glUnmapBuffer(target);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        glDeleteBuffers(buffer);
+    }
+
+    @Override
+    public int createVertexArray() {
+        return glGenVertexArrays();
+    }
+
+    @Override
+    public void bindVertexArray(int vertexArray) {
+        glBindVertexArray(vertexArray);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+        glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void deleteVertexArray(int vertexArray) {
+        glDeleteVertexArrays(vertexArray);
+    }
+
+    @Override
+    public int createTexture() {
+        return glGenTextures();
+    }
+
+    @Override
+    public void activeTexture(int unit) {
+        glActiveTexture(unit);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        glBindTexture(target, texture);
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+        glTexParameteri(target, name, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int format, int type, int[] pixels) {
+        glTexImage2D(target, level, internalFormat, width, height, 0, format, type, pixels);
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+        glDeleteTextures(texture);
+    }
+
+    @Override
+    public int createFramebuffer() {
+        return glGenFramebuffers();
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+        glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer) {
+        glFramebufferRenderbuffer(target, attachment, renderbufferTarget, renderbuffer);
+    }
+
+    @Override
+    public int checkFramebufferStatus(int target) {
+        return glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void deleteFramebuffer(int framebuffer) {
+        glDeleteFramebuffers(framebuffer);
+    }
+
+    @Override
+    public int createRenderbuffer() {
+        return glGenRenderbuffers();
+    }
+
+    @Override
+    public void bindRenderbuffer(int target, int renderbuffer) {
+        glBindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+        glRenderbufferStorage(target, internalFormat, width, height);
+    }
+
+    @Override
+    public void deleteRenderbuffer(int renderbuffer) {
+        glDeleteRenderbuffers(renderbuffer);
+    }
+
+    @Override
+    public int createShader(int type) {
+        return glCreateShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shader, CharSequence source) {
+        glShaderSource(shader, source);
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        glCompileShader(shader);
+    }
+
+    @Override
+    public int getShaderi(int shader, int name) {
+        return glGetShaderi(shader, name);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return glGetShaderInfoLog(shader, INFO_LOG_LENGTH);
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        glDeleteShader(shader);
+    }
+
+    @Override
+    public int createProgram() {
+        return glCreateProgram();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        glAttachShader(program, shader);
+    }
+
+    @Override
+    public void detachShader(int program, int shader) {
+        glDetachShader(program, shader);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        glLinkProgram(program);
+    }
+
+    @Override
+    public void validateProgram(int program) {
+        glValidateProgram(program);
+    }
+
+    @Override
+    public int getProgrami(int program, int name) {
+        return glGetProgrami(program, name);
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return glGetProgramInfoLog(program, INFO_LOG_LENGTH);
+    }
+
+    @Override
+    public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+        return glGetActiveUniform(program, index, size, type);
+    }
+
+    @Override
+    public int getUniformLocation(int program, CharSequence name) {
+        return glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public String getActiveUniformBlockName(int program, int index) {
+        return glGetActiveUniformBlockName(program, index);
+    }
+
+    @Override
+    public void uniformBlockBinding(int program, int index, int binding) {
+        glUniformBlockBinding(program, index, binding);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        glUseProgram(program);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        glDeleteProgram(program);
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+        glUniform1i(location, value);
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+        glUniform1f(location, value);
+    }
+
+    @Override
+    public void uniform2f(int location, float x, float y) {
+        glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniform4f(int location, float x, float y, float z, float w) {
+        glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+        glUniformMatrix3fv(location, transpose, value);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        glUniformMatrix4fv(location, transpose, value);
+    }
+
+    @Override
+    public void enable(int capability) {
+        glEnable(capability);
+    }
+
+    @Override
+    public void disable(int capability) {
+        glDisable(capability);
+    }
+
+    @Override
+    public void blendFunc(int source, int destination) {
+        glBlendFunc(source, destination);
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void clear(int mask) {
+        glClear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        glDrawArraysInstanced(mode, first, count, instances);
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex) {
+        glDrawElementsBaseVertex(mode, count, type, indices, baseVertex);
+    }
+
+    @Override
+    public void flush() {
+        glFlush();
+    }
+
+    @Override
+    public long fenceSync() {
+        return glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeout) {
+        return glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        glDeleteSync(sync);
+    }
+
+    @Override
+    public void endFrame() {
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
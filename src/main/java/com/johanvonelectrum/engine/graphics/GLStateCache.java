@@ -0,0 +1,160 @@
+package com.johanvonelectrum.engine.graphics;
+
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Shadow copy of the GL bindings, used to skip redundant state changes before they reach the
+ * {@link Graphics#getDevice() render device}. Must only be used from the thread owning the GL context, and
+ * {@link #invalidate()} must be called after code that changes GL state behind its back (e.g. the ImGui renderer).
+ */
+public final class GLStateCache {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 32;
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int arrayBuffer = UNKNOWN;
+    private static int uniformBuffer = UNKNOWN;
+    private static int activeTextureUnit = UNKNOWN;
+    private static final int[] textures = new int[MAX_TEXTURE_UNITS];
+    private static int blend = UNKNOWN;
+    private static int blendSource = UNKNOWN, blendDestination = UNKNOWN;
+
+    private static long skipped;
+
+    static {
+        invalidate();
+    }
+
+    private GLStateCache() {
+    }
+
+    public static void useProgram(int id) {
+        if (program == id) {
+            skipped++;
+            return;
+        }
+        Graphics.getDevice().useProgram(id);
+        program = id;
+    }
+
+    public static void bindVertexArray(int id) {
+        if (vertexArray == id) {
+            skipped++;
+            return;
+        }
+        Graphics.getDevice().bindVertexArray(id);
+        vertexArray = id;
+    }
+
+    /**
+     * Only GL_ARRAY_BUFFER and GL_UNIFORM_BUFFER are tracked, other targets are bound directly.
+     */
+    public static void bindBuffer(int target, int id) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (arrayBuffer == id) {
+                skipped++;
+                return;
+            }
+            arrayBuffer = id;
+        } else if (target == GL_UNIFORM_BUFFER) {
+            if (uniformBuffer == id) {
+                skipped++;
+                return;
+            }
+            uniformBuffer = id;
+        }
+        Graphics.getDevice().bindBuffer(target, id);
+    }
+
+    public static void bindTexture(int unit, int id) {
+        if (textures[unit] == id) {
+            skipped++;
+            return;
+        }
+        if (activeTextureUnit != unit) {
+            Graphics.getDevice().activeTexture(GL_TEXTURE0 + unit);
+            activeTextureUnit = unit;
+        }
+        Graphics.getDevice().bindTexture(GL_TEXTURE_2D, id);
+        textures[unit] = id;
+    }
+
+    public static void setBlend(boolean enabled) {
+        int state = enabled ? 1 : 0;
+        if (blend == state) {
+            skipped++;
+            return;
+        }
+        if (enabled)
+            Graphics.getDevice().enable(GL_BLEND);
+        else
+            Graphics.getDevice().disable(GL_BLEND);
+        blend = state;
+    }
+
+    public static void blendFunc(int source, int destination) {
+        if (blendSource == source && blendDestination == destination) {
+            skipped++;
+            return;
+        }
+        Graphics.getDevice().blendFunc(source, destination);
+        blendSource = source;
+        blendDestination = destination;
+    }
+
+    /**
+     * Forgets every cached binding, so the next call of each kind reaches GL.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        uniformBuffer = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+            textures[i] = UNKNOWN;
+        blend = UNKNOWN;
+        blendSource = UNKNOWN;
+        blendDestination = UNKNOWN;
+    }
+
+    /**
+     * Forgets a deleted object, since GL may reuse its name.
+     */
+    public static void forgetProgram(int id) {
+        if (program == id)
+            program = UNKNOWN;
+    }
+
+    public static void forgetVertexArray(int id) {
+        if (vertexArray == id)
+            vertexArray = UNKNOWN;
+    }
+
+    public static void forgetBuffer(int id) {
+        if (arrayBuffer == id)
+            arrayBuffer = UNKNOWN;
+        if (uniformBuffer == id)
+            uniformBuffer = UNKNOWN;
+    }
+
+    public static void forgetTexture(int id) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (textures[i] == id)
+                textures[i] = UNKNOWN;
+        }
+    }
+
+    /**
+     * @return number of state changes skipped because the state was already set
+     */
+    public static long getSkipped() {
+        return skipped;
+    }
+}
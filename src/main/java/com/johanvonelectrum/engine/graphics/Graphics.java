@@ -0,0 +1,61 @@
+package com.johanvonelectrum.engine.graphics;
+
+/**
+ * Holds the {@link RenderDevice} used by the GL thread. It defaults to OpenGL, so code running with a real context
+ * does not have to set it up.
+ */
+public final class Graphics {
+
+    private static RenderDevice device = new GLRenderDevice();
+
+    private Graphics() {
+    }
+
+    public static RenderDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * Replaces the device. Must happen before any object is created on the previous one.
+     */
+    public static void setDevice(RenderDevice device) {
+        if (device == null)
+            throw new IllegalArgumentException("The render device can not be null.");
+        Graphics.device = device;
+        GLStateCache.invalidate();
+    }
+
+    /**
+     * @return a device of the given backend, {@link RenderDevice.Backend#OPENGL} needs a current context to be used
+     */
+    public static RenderDevice create(RenderDevice.Backend backend) {
+        switch (backend) {
+            case OPENGL:
+                return new GLRenderDevice();
+            case NULL:
+                return new NullRenderDevice();
+            case RECORDING:
+                return record(new NullRenderDevice());
+            default:
+                throw new IllegalArgumentException("Unknown render device backend: " + backend);
+        }
+    }
+
+    /**
+     * @return a device counting the calls made to the given one, which may be any backend
+     */
+    public static RecordingRenderDevice record(RenderDevice device) {
+        if (device instanceof RecordingRenderDevice)
+            return (RecordingRenderDevice) device;
+        return new RecordingRenderDevice(device);
+    }
+
+    /**
+     * @return the device doing the work, unwrapping a {@link RecordingRenderDevice}
+     */
+    public static RenderDevice unwrap(RenderDevice device) {
+        while (device instanceof RecordingRenderDevice)
+            device = ((RecordingRenderDevice) device).getDevice();
+        return device;
+    }
+}
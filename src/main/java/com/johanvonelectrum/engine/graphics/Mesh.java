@@ -0,0 +1,109 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.io.resources.MeshData;
+import com.johanvonelectrum.engine.io.resources.VertexFormat;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+
+/**
+ * Static mesh on the GPU. The vertex and index data of the {@link MeshData} are uploaded as they are, without
+ * conversion, so a baked mesh goes from the file mapping to the buffers in a single copy. Attributes are bound to
+ * locations 0 (position), 1 (normal) and 2 (uv).
+ */
+public class Mesh {
+
+    private final String name;
+    private final int vao;
+    private final int vertexBuffer;
+    private final int indexBuffer;
+    private final int indexType;
+    private final int indexSize;
+    private final int indexCount;
+    private final int[] submeshes;
+    private final float[] bounds;
+
+    /**
+     * Uploads the mesh. The data can be closed afterwards.
+     */
+    public Mesh(MeshData data) {
+        this.name = data.getName();
+        this.indexSize = data.getIndexSize();
+        this.indexType = indexSize == Short.BYTES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+        this.indexCount = data.getIndexCount();
+        this.bounds = data.getBounds().clone();
+        this.submeshes = new int[data.getSubmeshCount() * 2];
+        for (int i = 0; i < data.getSubmeshCount(); i++) {
+            submeshes[i * 2] = data.getFirstIndex(i);
+            submeshes[i * 2 + 1] = data.getIndexCount(i);
+        }
+
+        this.vao = glGenVertexArrays();
+        GLStateCache.bindVertexArray(vao);
+
+        this.vertexBuffer = glGenBuffers();
+        GLStateCache.bindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
+        glBufferData(GL_ARRAY_BUFFER, data.getVertices(), GL_STATIC_DRAW);
+
+        this.indexBuffer = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, data.getIndices(), GL_STATIC_DRAW);
+
+        VertexFormat format = data.getFormat();
+        int stride = format.getStride();
+        for (int attribute = 0; attribute <= 2; attribute++)
+            glEnableVertexAttribArray(attribute);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
+        if (format == VertexFormat.FLOAT) {
+            glVertexAttribPointer(1, 3, GL_FLOAT, false, stride, 3 * Float.BYTES);
+            glVertexAttribPointer(2, 2, GL_FLOAT, false, stride, 6 * Float.BYTES);
+        } else {
+            glVertexAttribPointer(1, 4, GL_INT_2_10_10_10_REV, true, stride, 3 * Float.BYTES);
+            glVertexAttribPointer(2, 2, GL_HALF_FLOAT, false, stride, 4 * Float.BYTES);
+        }
+
+        GLStateCache.bindVertexArray(0);
+        GLStateCache.bindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void draw() {
+        GLStateCache.bindVertexArray(vao);
+        glDrawElements(GL_TRIANGLES, indexCount, indexType, 0L);
+    }
+
+    public void draw(int submesh) {
+        GLStateCache.bindVertexArray(vao);
+        glDrawElements(GL_TRIANGLES, submeshes[submesh * 2 + 1], indexType, (long) submeshes[submesh * 2] * indexSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSubmeshCount() {
+        return submeshes.length / 2;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return minX, minY, minZ, maxX, maxY, maxZ in model space
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public void dispose() {
+        glDeleteBuffers(vertexBuffer);
+        glDeleteBuffers(indexBuffer);
+        glDeleteVertexArrays(vao);
+        GLStateCache.forgetBuffer(vertexBuffer);
+        GLStateCache.forgetBuffer(indexBuffer);
+        GLStateCache.forgetVertexArray(vao);
+    }
+}
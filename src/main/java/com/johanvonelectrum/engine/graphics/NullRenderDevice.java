@@ -0,0 +1,415 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER_COMPLETE;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+
+/**
+ * Device without a GPU behind it. Calls are discarded, objects are plain counters and every shader compiles and
+ * links. Buffers get real memory so mapped ranges can be written like with OpenGL, nothing else is stored. Does not
+ * allocate once the buffers exist, so frame times measure the engine and not the device.
+ */
+public class NullRenderDevice implements RenderDevice {
+
+    private static final String NAME = "Null";
+    private static final long SYNC = 1;
+
+    private final NativeHeap heap = NativeMemory.heap("NullDevice");
+
+    private int nextName = 1;
+
+    /**
+     * Storage of each buffer, indexed by name.
+     */
+    private long[] addresses = new long[16];
+    private long[] sizes = new long[16];
+
+    private int arrayBuffer, elementArrayBuffer, uniformBuffer;
+
+    @Override
+    public Backend getBackend() {
+        return Backend.NULL;
+    }
+
+    @Override
+    public String getString(int name) {
+        return NAME;
+    }
+
+    @Override
+    public boolean supportsBufferStorage() {
+        return true;
+    }
+
+    private int nextName() {
+        return nextName++;
+    }
+
+    @Override
+    public int createBuffer() {
+        int buffer = nextName();
+        if (buffer >= addresses.length) {
+            addresses = Arrays.copyOf(addresses, addresses.length * 2);
+            sizes = Arrays.copyOf(sizes, sizes.length * 2);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        if (target == GL_ARRAY_BUFFER)
+            arrayBuffer = buffer;
+        else if (target == GL_ELEMENT_ARRAY_BUFFER)
+            elementArrayBuffer = buffer;
+        else if (target == GL_UNIFORM_BUFFER)
+            uniformBuffer = buffer;
+    }
+
+    private int boundBuffer(int target) {
+        if (target == GL_ARRAY_BUFFER)
+            return arrayBuffer;
+        if (target == GL_ELEMENT_ARRAY_BUFFER)
+            return elementArrayBuffer;
+        if (target == GL_UNIFORM_BUFFER)
+            return uniformBuffer;
+        throw new IllegalArgumentException("Buffer target not supported by the null device: " + target);
+    }
+
+    /**
+     * Makes the storage of the bound buffer at least {@code size} bytes. Like orphaning, the contents are lost.
+     */
+    private void allocate(int target, long size) {
+        int buffer = boundBuffer(target);
+        if (buffer == 0)
+            throw new IllegalStateException("No buffer bound to " + target);
+        if (sizes[buffer] >= size)
+            return;
+        heap.nfree(addresses[buffer]);
+        addresses[buffer] = heap.nmalloc(Math.max(1, size));
+        sizes[buffer] = size;
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int buffer) {
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        allocate(target, size);
+    }
+
+    @Override
+    public void bufferData(int target, float[] data, int usage) {
+        allocate(target, (long) data.length * Float.BYTES);
+    }
+
+    @Override
+    public void bufferData(int target, int[] data, int usage) {
+        allocate(target, (long) data.length * Integer.BYTES);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        allocate(target, size);
+    }
+
+    @Override
+    public long mapBufferRange(int target, long offset, long length, int access) {
+        int buffer = boundBuffer(target);
+        if (offset + length > sizes[buffer])
+            return 0;
+        return addresses[buffer] + offset;
+    }
+
+    @Override
+    public void unmapBuffer(int target) {
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        heap.nfree(addresses[buffer]);
+        addresses[buffer] = 0;
+        sizes[buffer] = 0;
+    }
+
+    @Override
+    public int createVertexArray() {
+        return nextName();
+    }
+
+    @Override
+    public void bindVertexArray(int vertexArray) {
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+    }
+
+    @Override
+    public void deleteVertexArray(int vertexArray) {
+    }
+
+    @Override
+    public int createTexture() {
+        return nextName();
+    }
+
+    @Override
+    public void activeTexture(int unit) {
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int format, int type, int[] pixels) {
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+    }
+
+    @Override
+    public int createFramebuffer() {
+        return nextName();
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+    }
+
+    @Override
+    public void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer) {
+    }
+
+    @Override
+    public int checkFramebufferStatus(int target) {
+        return GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void deleteFramebuffer(int framebuffer) {
+    }
+
+    @Override
+    public int createRenderbuffer() {
+        return nextName();
+    }
+
+    @Override
+    public void bindRenderbuffer(int target, int renderbuffer) {
+    }
+
+    @Override
+    public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+    }
+
+    @Override
+    public void deleteRenderbuffer(int renderbuffer) {
+    }
+
+    @Override
+    public int createShader(int type) {
+        return nextName();
+    }
+
+    @Override
+    public void shaderSource(int shader, CharSequence source) {
+    }
+
+    @Override
+    public void compileShader(int shader) {
+    }
+
+    @Override
+    public int getShaderi(int shader, int name) {
+        return name == GL_COMPILE_STATUS ? GL_TRUE : 0;
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+    }
+
+    @Override
+    public int createProgram() {
+        return nextName();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+    }
+
+    @Override
+    public void detachShader(int program, int shader) {
+    }
+
+    @Override
+    public void linkProgram(int program) {
+    }
+
+    @Override
+    public void validateProgram(int program) {
+    }
+
+    @Override
+    public int getProgrami(int program, int name) {
+        return name == GL_LINK_STATUS || name == GL_VALIDATE_STATUS ? GL_TRUE : 0;
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+        throw new IllegalArgumentException("The null device has no active uniforms.");
+    }
+
+    @Override
+    public int getUniformLocation(int program, CharSequence name) {
+        return -1;
+    }
+
+    @Override
+    public String getActiveUniformBlockName(int program, int index) {
+        throw new IllegalArgumentException("The null device has no active uniform blocks.");
+    }
+
+    @Override
+    public void uniformBlockBinding(int program, int index, int binding) {
+    }
+
+    @Override
+    public void useProgram(int program) {
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+    }
+
+    @Override
+    public void uniform2f(int location, float x, float y) {
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+    }
+
+    @Override
+    public void uniform4f(int location, float x, float y, float z, float w) {
+    }
+
+    @Override
+    public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+    }
+
+    @Override
+    public void enable(int capability) {
+    }
+
+    @Override
+    public void disable(int capability) {
+    }
+
+    @Override
+    public void blendFunc(int source, int destination) {
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+    }
+
+    @Override
+    public void clear(int mask) {
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long fenceSync() {
+        return SYNC;
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeout) {
+        return GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+    }
+
+    @Override
+    public void endFrame() {
+    }
+
+    @Override
+    public void dispose() {
+        for (int i = 0; i < addresses.length; i++) {
+            heap.nfree(addresses[i]);
+            addresses[i] = 0;
+            sizes[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.johanvonelectrum.engine.graphics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Forwards every call to another device and counts what a frame cost: draw calls, the vertices they submit, state
+ * changes that reached the device and uploaded bytes. Counters roll over on {@link #endFrame()}, so they can be read
+ * for the last complete frame. With a draw call budget set, frames going over it are counted and
+ * {@link #checkDrawCallBudget()} fails the run, for CI runs that guard the batching, with or without a GPU.
+ */
+public class RecordingRenderDevice implements RenderDevice {
+
+    private static final Logger LOGGER = LogManager.getLogger("RecordingDevice");
+
+    private final RenderDevice device;
+
+    private int drawCallBudget;
+    private long framesOverBudget;
+    private long firstFrameOverBudget;
+
+    private int drawCalls, vertices, instances, stateChanges, uniformUpdates, bufferUploads, textureUploads;
+    private long uploadedBytes;
+
+    private int lastDrawCalls, lastVertices, lastInstances, lastStateChanges, lastUniformUpdates, lastBufferUploads, lastTextureUploads;
+    private long lastUploadedBytes;
+
+    private long frames;
+    private long totalDrawCalls, totalStateChanges, totalUploadedBytes;
+    private int maxDrawCalls;
+    private int programsCreated;
+
+    public RecordingRenderDevice(RenderDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * @param drawCallBudget draw calls a frame may issue, 0 for no limit
+     */
+    public void setDrawCallBudget(int drawCallBudget) {
+        if (drawCallBudget < 0)
+            throw new IllegalArgumentException("Draw call budget can not be negative: " + drawCallBudget);
+        this.drawCallBudget = drawCallBudget;
+    }
+
+    @Override
+    public Backend getBackend() {
+        return Backend.RECORDING;
+    }
+
+    /**
+     * @return the device every call is forwarded to
+     */
+    public RenderDevice getDevice() {
+        return device;
+    }
+
+    @Override
+    public String getString(int name) {
+        return device.getString(name);
+    }
+
+    @Override
+    public boolean supportsBufferStorage() {
+        return device.supportsBufferStorage();
+    }
+
+    @Override
+    public int createBuffer() {
+        return device.createBuffer();
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        stateChanges++;
+        device.bindBuffer(target, buffer);
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int buffer) {
+        stateChanges++;
+        device.bindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        device.bufferData(target, size, usage);
+    }
+
+    @Override
+    public void bufferData(int target, float[] data, int usage) {
+        upload((long) data.length * Float.BYTES);
+        device.bufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, int[] data, int usage) {
+        upload((long) data.length * Integer.BYTES);
+        device.bufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        upload(data.remaining());
+        device.bufferSubData(target, offset, data);
+    }
+
+    private void upload(long bytes) {
+        bufferUploads++;
+        uploadedBytes += bytes;
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        device.bufferStorage(target, size, flags);
+    }
+
+    /**
+     * Mapped ranges count as uploads of their full length, the device can not see what is written into them.
+     */
+    @Override
+    public long mapBufferRange(int target, long offset, long length, int access) {
+        upload(length);
+        return device.mapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public void unmapBuffer(int target) {
+        device.unmapBuffer(target);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        device.deleteBuffer(buffer);
+    }
+
+    @Override
+    public int createVertexArray() {
+        return device.createVertexArray();
+    }
+
+    @Override
+    public void bindVertexArray(int vertexArray) {
+        stateChanges++;
+        device.bindVertexArray(vertexArray);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        stateChanges++;
+        device.enableVertexAttribArray(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+        stateChanges++;
+        device.vertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        stateChanges++;
+        device.vertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void deleteVertexArray(int vertexArray) {
+        device.deleteVertexArray(vertexArray);
+    }
+
+    @Override
+    public int createTexture() {
+        return device.createTexture();
+    }
+
+    @Override
+    public void activeTexture(int unit) {
+        stateChanges++;
+        device.activeTexture(unit);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        stateChanges++;
+        device.bindTexture(target, texture);
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+        device.texParameteri(target, name, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int format, int type, int[] pixels) {
+        textureUploads++;
+        if (pixels != null)
+            uploadedBytes += (long) pixels.length * Integer.BYTES;
+        device.texImage2D(target, level, internalFormat, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+        device.deleteTexture(texture);
+    }
+
+    @Override
+    public int createFramebuffer() {
+        return device.createFramebuffer();
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+        stateChanges++;
+        device.bindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer) {
+        device.framebufferRenderbuffer(target, attachment, renderbufferTarget, renderbuffer);
+    }
+
+    @Override
+    public int checkFramebufferStatus(int target) {
+        return device.checkFramebufferStatus(target);
+    }
+
+    @Override
+    public void deleteFramebuffer(int framebuffer) {
+        device.deleteFramebuffer(framebuffer);
+    }
+
+    @Override
+    public int createRenderbuffer() {
+        return device.createRenderbuffer();
+    }
+
+    @Override
+    public void bindRenderbuffer(int target, int renderbuffer) {
+        device.bindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+        device.renderbufferStorage(target, internalFormat, width, height);
+    }
+
+    @Override
+    public void deleteRenderbuffer(int renderbuffer) {
+        device.deleteRenderbuffer(renderbuffer);
+    }
+
+    @Override
+    public int createShader(int type) {
+        return device.createShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shader, CharSequence source) {
+        device.shaderSource(shader, source);
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        device.compileShader(shader);
+    }
+
+    @Override
+    public int getShaderi(int shader, int name) {
+        return device.getShaderi(shader, name);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return device.getShaderInfoLog(shader);
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        device.deleteShader(shader);
+    }
+
+    @Override
+    public int createProgram() {
+        programsCreated++;
+        return device.createProgram();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        device.attachShader(program, shader);
+    }
+
+    @Override
+    public void detachShader(int program, int shader) {
+        device.detachShader(program, shader);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        device.linkProgram(program);
+    }
+
+    @Override
+    public void validateProgram(int program) {
+        device.validateProgram(program);
+    }
+
+    @Override
+    public int getProgrami(int program, int name) {
+        return device.getProgrami(program, name);
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return device.getProgramInfoLog(program);
+    }
+
+    @Override
+    public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+        return device.getActiveUniform(program, index, size, type);
+    }
+
+    @Override
+    public int getUniformLocation(int program, CharSequence name) {
+        return device.getUniformLocation(program, name);
+    }
+
+    @Override
+    public String getActiveUniformBlockName(int program, int index) {
+        return device.getActiveUniformBlockName(program, index);
+    }
+
+    @Override
+    public void uniformBlockBinding(int program, int index, int binding) {
+        device.uniformBlockBinding(program, index, binding);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        stateChanges++;
+        device.useProgram(program);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        device.deleteProgram(program);
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+        uniformUpdates++;
+        device.uniform1i(location, value);
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+        uniformUpdates++;
+        device.uniform1f(location, value);
+    }
+
+    @Override
+    public void uniform2f(int location, float x, float y) {
+        uniformUpdates++;
+        device.uniform2f(location, x, y);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        uniformUpdates++;
+        device.uniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniform4f(int location, float x, float y, float z, float w) {
+        uniformUpdates++;
+        device.uniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+        uniformUpdates++;
+        device.uniformMatrix3fv(location, transpose, value);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        uniformUpdates++;
+        device.uniformMatrix4fv(location, transpose, value);
+    }
+
+    @Override
+    public void enable(int capability) {
+        stateChanges++;
+        device.enable(capability);
+    }
+
+    @Override
+    public void disable(int capability) {
+        stateChanges++;
+        device.disable(capability);
+    }
+
+    @Override
+    public void blendFunc(int source, int destination) {
+        stateChanges++;
+        device.blendFunc(source, destination);
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        device.clearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void clear(int mask) {
+        device.clear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        stateChanges++;
+        device.viewport(x, y, width, height);
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        drawCalls++;
+        vertices += count * instances;
+        this.instances += instances;
+        device.drawArraysInstanced(mode, first, count, instances);
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex) {
+        drawCalls++;
+        vertices += count;
+        device.drawElementsBaseVertex(mode, count, type, indices, baseVertex);
+    }
+
+    @Override
+    public void flush() {
+        device.flush();
+    }
+
+    @Override
+    public long fenceSync() {
+        return device.fenceSync();
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeout) {
+        return device.clientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        device.deleteSync(sync);
+    }
+
+    /**
+     * Publishes the counters of the frame and starts a new one.
+     */
+    @Override
+    public void endFrame() {
+        lastDrawCalls = drawCalls;
+        lastVertices = vertices;
+        lastInstances = instances;
+        lastStateChanges = stateChanges;
+        lastUniformUpdates = uniformUpdates;
+        lastBufferUploads = bufferUploads;
+        lastTextureUploads = textureUploads;
+        lastUploadedBytes = uploadedBytes;
+
+        frames++;
+        totalDrawCalls += drawCalls;
+        totalStateChanges += stateChanges;
+        totalUploadedBytes += uploadedBytes;
+        if (drawCalls > maxDrawCalls)
+            maxDrawCalls = drawCalls;
+        if (drawCallBudget > 0 && drawCalls > drawCallBudget && framesOverBudget++ == 0) {
+            firstFrameOverBudget = frames;
+            LOGGER.warn("Frame {} issued {} draw calls, over the {} draw calls budget.", box(frames), box(drawCalls), box(drawCallBudget));
+        }
+
+        drawCalls = 0;
+        vertices = 0;
+        instances = 0;
+        stateChanges = 0;
+        uniformUpdates = 0;
+        bufferUploads = 0;
+        textureUploads = 0;
+        uploadedBytes = 0;
+
+        device.endFrame();
+    }
+
+    /**
+     * Call once the run is over, so every frame is checked and not only the frames before the first failure.
+     *
+     * @throws IllegalStateException if any frame issued more draw calls than the budget
+     */
+    public void checkDrawCallBudget() {
+        if (framesOverBudget > 0)
+            throw new IllegalStateException(framesOverBudget + " of " + frames + " frames went over the "
+                    + drawCallBudget + " draw calls budget, the first one was frame " + firstFrameOverBudget
+                    + " and the worst issued " + maxDrawCalls + " draw calls.");
+    }
+
+    public void report() {
+        if (frames == 0)
+            return;
+        LOGGER.info("{} frames, {} draw calls, {} state changes and {} bytes uploaded per frame on average, {} draw calls at most.",
+                box(frames), box(totalDrawCalls / frames), box(totalStateChanges / frames), box(totalUploadedBytes / frames), box(maxDrawCalls));
+    }
+
+    public int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    public int getVertices() {
+        return lastVertices;
+    }
+
+    public int getInstances() {
+        return lastInstances;
+    }
+
+    public int getStateChanges() {
+        return lastStateChanges;
+    }
+
+    public int getUniformUpdates() {
+        return lastUniformUpdates;
+    }
+
+    public int getBufferUploads() {
+        return lastBufferUploads;
+    }
+
+    public int getTextureUploads() {
+        return lastTextureUploads;
+    }
+
+    public long getUploadedBytes() {
+        return lastUploadedBytes;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getTotalDrawCalls() {
+        return totalDrawCalls;
+    }
+
+    public int getMaxDrawCalls() {
+        return maxDrawCalls;
+    }
+
+    public long getFramesOverBudget() {
+        return framesOverBudget;
+    }
+
+    public int getProgramsCreated() {
+        return programsCreated;
+    }
+
+    @Override
+    public void dispose() {
+        device.dispose();
+    }
+}
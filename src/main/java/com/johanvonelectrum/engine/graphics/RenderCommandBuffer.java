@@ -0,0 +1,196 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.memory.FrameArena;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Draw commands recorded without touching GL, so any thread can build them, and replayed later on the GL thread by
+ * {@link #execute(Renderer)}. The calls mirror the {@link Renderer} API. Commands are packed, 44 bytes per sprite,
+ * into a block of the {@link FrameArena} of the frame, which moves to a bigger block as needed. The block is
+ * dropped by {@link #reset()} together with the arena, and the next frame starts with the largest size seen, so
+ * steady state recording only bumps the arena.
+ * <p>
+ * A buffer is recorded by one thread at a time, and must not be recorded while it executes.
+ */
+public final class RenderCommandBuffer {
+
+    private static final int BEGIN = 1;
+    private static final int END = 2;
+    private static final int SHADER = 3;
+    private static final int LAYER = 4;
+    private static final int SPRITE = 5;
+
+    private static final int MATRIX_SIZE = 16 * Float.BYTES;
+    private static final int SPRITE_SIZE = 11 * Integer.BYTES;
+
+    private final Matrix4f matrix = new Matrix4f();
+    private final FrameArena arena;
+
+    private long address = NULL;
+    private int capacity;
+    /**
+     * Size of the first block of a frame, the largest block used so far.
+     */
+    private int frameCapacity;
+    private int size;
+    private int commands;
+    private boolean drawing;
+
+    /**
+     * @param capacity bytes of the first block taken from the arena
+     */
+    public RenderCommandBuffer(FrameArena arena, int capacity) {
+        this.arena = arena;
+        this.frameCapacity = Math.max(capacity, SPRITE_SIZE);
+    }
+
+    /**
+     * Drops the recorded commands and their block, to be called with the reset of the arena.
+     */
+    public void reset() {
+        address = NULL;
+        capacity = 0;
+        size = 0;
+        commands = 0;
+        drawing = false;
+    }
+
+    public void begin(Matrix4fc viewProjection) {
+        if (drawing)
+            throw new IllegalStateException("RenderCommandBuffer.end must be called before begin.");
+
+        drawing = true;
+        long at = reserve(Integer.BYTES + MATRIX_SIZE);
+        memPutInt(at, BEGIN);
+        viewProjection.getToAddress(at + Integer.BYTES);
+    }
+
+    public void setShader(int slot) {
+        long at = reserve(2 * Integer.BYTES);
+        memPutInt(at, SHADER);
+        memPutInt(at + 4, slot);
+    }
+
+    public void setLayer(int layer) {
+        long at = reserve(2 * Integer.BYTES);
+        memPutInt(at, LAYER);
+        memPutInt(at + 4, layer);
+    }
+
+    public void draw(int texture, float x, float y, float width, float height) {
+        draw(texture, x, y, width, height, 0, 0, 1, 1, Renderer.WHITE);
+    }
+
+    public void draw(int texture, float x, float y, float width, float height,
+                     float u0, float v0, float u1, float v1, int color) {
+        long at = reserve(SPRITE_SIZE);
+        memPutInt(at, SPRITE);
+        memPutInt(at + 4, texture);
+        memPutFloat(at + 8, x);
+        memPutFloat(at + 12, y);
+        memPutFloat(at + 16, width);
+        memPutFloat(at + 20, height);
+        memPutFloat(at + 24, u0);
+        memPutFloat(at + 28, v0);
+        memPutFloat(at + 32, u1);
+        memPutFloat(at + 36, v1);
+        memPutInt(at + 40, color);
+    }
+
+    public void end() {
+        if (!drawing)
+            throw new IllegalStateException("RenderCommandBuffer.begin must be called before end.");
+
+        drawing = false;
+        memPutInt(reserve(Integer.BYTES), END);
+    }
+
+    private long reserve(int bytes) {
+        if (size + bytes > capacity)
+            grow(size + bytes);
+
+        long at = address + size;
+        size += bytes;
+        commands++;
+        return at;
+    }
+
+    /**
+     * Moves the commands to a bigger block of the arena, the old one is released with the arena.
+     */
+    private void grow(int required) {
+        int grown = Math.max(required, Math.max(capacity * 2, frameCapacity));
+        long block = arena.allocate(grown);
+        if (size > 0)
+            memCopy(address, block, size);
+        address = block;
+        capacity = grown;
+        frameCapacity = Math.max(frameCapacity, grown);
+    }
+
+    /**
+     * Replays the commands through the renderer. GL thread only.
+     */
+    public void execute(Renderer renderer) {
+        if (drawing)
+            throw new IllegalStateException("RenderCommandBuffer.end must be called before executing it.");
+
+        long at = address;
+        long end = address + size;
+        while (at < end) {
+            int command = memGetInt(at);
+            switch (command) {
+                case BEGIN:
+                    renderer.begin(matrix.setFromAddress(at + Integer.BYTES));
+                    at += Integer.BYTES + MATRIX_SIZE;
+                    break;
+                case END:
+                    renderer.end();
+                    at += Integer.BYTES;
+                    break;
+                case SHADER:
+                    renderer.setShader(memGetInt(at + 4));
+                    at += 2 * Integer.BYTES;
+                    break;
+                case LAYER:
+                    renderer.setLayer(memGetInt(at + 4));
+                    at += 2 * Integer.BYTES;
+                    break;
+                case SPRITE:
+                    renderer.draw(memGetInt(at + 4),
+                            memGetFloat(at + 8), memGetFloat(at + 12), memGetFloat(at + 16), memGetFloat(at + 20),
+                            memGetFloat(at + 24), memGetFloat(at + 28), memGetFloat(at + 32), memGetFloat(at + 36),
+                            memGetInt(at + 40));
+                    at += SPRITE_SIZE;
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupted render command " + command + " at " + (at - address));
+            }
+        }
+    }
+
+    /**
+     * @return recorded bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCommandCount() {
+        return commands;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Forgets the block, the memory belongs to the arena.
+     */
+    public void dispose() {
+        reset();
+    }
+}
@@ -0,0 +1,205 @@
+package com.johanvonelectrum.engine.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The GL calls made by the renderer, the shaders and the window, behind an interface so the engine can also run
+ * without a GL context. Methods mirror the OpenGL functions of the same name and take the same enums; objects are
+ * GL names. The current device is set with {@link Graphics#setDevice(RenderDevice)}.
+ * <p>
+ * Texture streaming, meshes, ImGui and the GPU profiler still call GL directly and are only available on top of
+ * OpenGL.
+ */
+public interface RenderDevice {
+
+    enum Backend {
+        /**
+         * Real OpenGL context.
+         */
+        OPENGL,
+        /**
+         * Discards every call, to measure the CPU side of rendering without a GPU.
+         */
+        NULL,
+        /**
+         * Discards every call like {@link #NULL}, but counts draws and state changes per frame. Any other device can
+         * be recorded with {@link Graphics#record(RenderDevice)}.
+         */
+        RECORDING
+    }
+
+    Backend getBackend();
+
+    String getString(int name);
+
+    boolean supportsBufferStorage();
+
+    // Buffers
+
+    int createBuffer();
+
+    void bindBuffer(int target, int buffer);
+
+    void bindBufferBase(int target, int index, int buffer);
+
+    void bufferData(int target, long size, int usage);
+
+    void bufferData(int target, float[] data, int usage);
+
+    void bufferData(int target, int[] data, int usage);
+
+    void bufferSubData(int target, long offset, ByteBuffer data);
+
+    void bufferStorage(int target, long size, int flags);
+
+    /**
+     * @return address of the mapped range, 0 on failure
+     */
+    long mapBufferRange(int target, long offset, long length, int access);
+
+    void unmapBuffer(int target);
+
+    void deleteBuffer(int buffer);
+
+    // Vertex arrays
+
+    int createVertexArray();
+
+    void bindVertexArray(int vertexArray);
+
+    void enableVertexAttribArray(int index);
+
+    void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset);
+
+    void vertexAttribDivisor(int index, int divisor);
+
+    void deleteVertexArray(int vertexArray);
+
+    // Textures
+
+    int createTexture();
+
+    void activeTexture(int unit);
+
+    void bindTexture(int target, int texture);
+
+    void texParameteri(int target, int name, int value);
+
+    void texImage2D(int target, int level, int internalFormat, int width, int height, int format, int type, int[] pixels);
+
+    void deleteTexture(int texture);
+
+    // Framebuffers
+
+    int createFramebuffer();
+
+    void bindFramebuffer(int target, int framebuffer);
+
+    void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer);
+
+    int checkFramebufferStatus(int target);
+
+    void deleteFramebuffer(int framebuffer);
+
+    int createRenderbuffer();
+
+    void bindRenderbuffer(int target, int renderbuffer);
+
+    void renderbufferStorage(int target, int internalFormat, int width, int height);
+
+    void deleteRenderbuffer(int renderbuffer);
+
+    // Shaders and programs
+
+    int createShader(int type);
+
+    void shaderSource(int shader, CharSequence source);
+
+    void compileShader(int shader);
+
+    int getShaderi(int shader, int name);
+
+    String getShaderInfoLog(int shader);
+
+    void deleteShader(int shader);
+
+    int createProgram();
+
+    void attachShader(int program, int shader);
+
+    void detachShader(int program, int shader);
+
+    void linkProgram(int program);
+
+    void validateProgram(int program);
+
+    int getProgrami(int program, int name);
+
+    String getProgramInfoLog(int program);
+
+    String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type);
+
+    int getUniformLocation(int program, CharSequence name);
+
+    String getActiveUniformBlockName(int program, int index);
+
+    void uniformBlockBinding(int program, int index, int binding);
+
+    void useProgram(int program);
+
+    void deleteProgram(int program);
+
+    void uniform1i(int location, int value);
+
+    void uniform1f(int location, float value);
+
+    void uniform2f(int location, float x, float y);
+
+    void uniform3f(int location, float x, float y, float z);
+
+    void uniform4f(int location, float x, float y, float z, float w);
+
+    void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value);
+
+    void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value);
+
+    // State and draws
+
+    void enable(int capability);
+
+    void disable(int capability);
+
+    void blendFunc(int source, int destination);
+
+    void clearColor(float red, float green, float blue, float alpha);
+
+    void clear(int mask);
+
+    void viewport(int x, int y, int width, int height);
+
+    void drawArraysInstanced(int mode, int first, int count, int instances);
+
+    void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex);
+
+    // Synchronization
+
+    void flush();
+
+    long fenceSync();
+
+    /**
+     * @return GL_ALREADY_SIGNALED, GL_TIMEOUT_EXPIRED, GL_CONDITION_SATISFIED or GL_WAIT_FAILED
+     */
+    int clientWaitSync(long sync, int flags, long timeout);
+
+    void deleteSync(long sync);
+
+    /**
+     * Called once per frame, after the frame was presented.
+     */
+    void endFrame();
+
+    void dispose();
+}
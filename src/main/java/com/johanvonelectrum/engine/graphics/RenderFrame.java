@@ -0,0 +1,98 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.memory.FrameArena;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+
+import java.util.Arrays;
+
+/**
+ * Everything needed to draw one frame on the GL thread: the {@link FrameUniforms} values and one
+ * {@link RenderCommandBuffer} per layer. The commands and any other transient data of the frame live in its
+ * {@link FrameArena}, reset when the frame is prepared again; frames are recycled, so the arena is too.
+ */
+public final class RenderFrame {
+
+    public static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final NativeHeap HEAP = NativeMemory.heap("FrameArena");
+    private static final RenderCommandBuffer[] NO_BUFFERS = new RenderCommandBuffer[0];
+
+    private final FrameArena arena;
+    private RenderCommandBuffer[] buffers = NO_BUFFERS;
+    private int bufferCount;
+
+    private float time;
+    private float deltaTime;
+    private float alpha;
+    private long number;
+
+    /**
+     * @param arenaCapacity bytes of the frame arena, grown when a frame needs more
+     */
+    public RenderFrame(long arenaCapacity) {
+        this.arena = new FrameArena(HEAP, arenaCapacity);
+    }
+
+    /**
+     * Starts recording a new frame with one empty command buffer per layer, releasing the arena of the previous.
+     */
+    public void prepare(long number, float time, float deltaTime, float alpha, int layers) {
+        this.number = number;
+        this.time = time;
+        this.deltaTime = deltaTime;
+        this.alpha = alpha;
+
+        arena.reset();
+        if (buffers.length < layers) {
+            int from = buffers.length;
+            buffers = Arrays.copyOf(buffers, layers);
+            for (int i = from; i < layers; i++)
+                buffers[i] = new RenderCommandBuffer(arena, INITIAL_CAPACITY);
+        }
+        for (int i = 0; i < layers; i++)
+            buffers[i].reset();
+        this.bufferCount = layers;
+    }
+
+    public RenderCommandBuffer getCommands(int layer) {
+        if (layer < 0 || layer >= bufferCount)
+            throw new IndexOutOfBoundsException(layer + " >= " + bufferCount);
+        return buffers[layer];
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * @return transient native memory of the frame, valid until it is prepared again
+     */
+    public FrameArena getArena() {
+        return arena;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public float getDeltaTime() {
+        return deltaTime;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    public void dispose() {
+        for (RenderCommandBuffer buffer : buffers)
+            buffer.dispose();
+        buffers = NO_BUFFERS;
+        bufferCount = 0;
+        arena.dispose();
+    }
+}
@@ -0,0 +1,58 @@
+package com.johanvonelectrum.engine.graphics;
+
+/**
+ * Per frame counters of a renderer. Values of the frame in progress are accumulated until {@link #nextFrame()},
+ * which publishes them as the last frame values.
+ */
+public class RenderStats {
+
+    private int drawCalls, vertices, flushes, sprites;
+    private int lastDrawCalls, lastVertices, lastFlushes, lastSprites;
+
+    void addDrawCall(int vertices) {
+        this.drawCalls++;
+        this.vertices += vertices;
+    }
+
+    void addFlush() {
+        this.flushes++;
+    }
+
+    void addSprites(int sprites) {
+        this.sprites += sprites;
+    }
+
+    public void nextFrame() {
+        lastDrawCalls = drawCalls;
+        lastVertices = vertices;
+        lastFlushes = flushes;
+        lastSprites = sprites;
+        drawCalls = vertices = flushes = sprites = 0;
+    }
+
+    public int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    public int getVertices() {
+        return lastVertices;
+    }
+
+    public int getFlushes() {
+        return lastFlushes;
+    }
+
+    public int getSprites() {
+        return lastSprites;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderStats{" +
+                "drawCalls=" + lastDrawCalls +
+                ", vertices=" + lastVertices +
+                ", flushes=" + lastFlushes +
+                ", sprites=" + lastSprites +
+                '}';
+    }
+}
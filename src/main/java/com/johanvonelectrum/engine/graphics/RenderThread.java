@@ -0,0 +1,165 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import com.johanvonelectrum.engine.profiling.Profiler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated thread owning the GL context. It draws frame N while the thread that owns the render thread simulates
+ * and records frame N + 1. At most {@code framesInFlight} recorded frames wait for or are being drawn; after that
+ * {@link #acquire()} blocks until the oldest one is done. Frames are handed over through lock-free rings and
+ * recycled, so the pipeline does not allocate.
+ */
+public final class RenderThread {
+
+    /**
+     * GL side of the pipeline, every method is called on the render thread.
+     */
+    public interface Target {
+
+        /**
+         * Makes the GL context current on the render thread.
+         */
+        void attach();
+
+        void render(RenderFrame frame);
+
+        /**
+         * Releases the GL context, so the main thread can take it back.
+         */
+        void detach();
+    }
+
+    private static final Logger LOGGER = LogManager.getLogger("RenderThread");
+    private static final long IDLE_PARK_NANOS = 50_000L;
+    private static final int WAIT_SCOPE = Profiler.scope("RenderThread.wait");
+    private static final int FRAME_SCOPE = Profiler.scope("RenderThread.frame");
+
+    private final Target target;
+    private final RenderFrame[] frames;
+    private final MpscRingBuffer<RenderFrame> submitted;
+    private final MpscRingBuffer<RenderFrame> free;
+    private final Thread owner;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    /**
+     * Starts the thread. The GL context must have been released by the calling thread.
+     *
+     * @param arenaCapacity bytes of the {@link RenderFrame#getArena() arena} of each frame
+     */
+    public RenderThread(Target target, int framesInFlight, long arenaCapacity) {
+        if (framesInFlight < 1)
+            throw new IllegalArgumentException("At least one frame must be in flight: " + framesInFlight);
+
+        this.target = target;
+        this.frames = new RenderFrame[framesInFlight];
+        this.submitted = new MpscRingBuffer<>(Math.max(2, framesInFlight));
+        this.free = new MpscRingBuffer<>(Math.max(2, framesInFlight));
+        for (int i = 0; i < framesInFlight; i++) {
+            frames[i] = new RenderFrame(arenaCapacity);
+            free.offer(frames[i]);
+        }
+
+        this.owner = Thread.currentThread();
+        this.thread = new Thread(this::run, "Render");
+        this.thread.start();
+        LOGGER.info("Render thread started with {} frames in flight.", framesInFlight);
+    }
+
+    private void run() {
+        NativeMemory.attachThread();
+        try {
+            target.attach();
+            while (true) {
+                RenderFrame frame = submitted.poll();
+                if (frame == null) {
+                    if (!running)
+                        break;
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+
+                Profiler.begin(FRAME_SCOPE);
+                target.render(frame);
+                Profiler.end(FRAME_SCOPE);
+                free.offer(frame);
+                LockSupport.unpark(owner);
+            }
+        } catch (Throwable e) {
+            failure = e;
+            LOGGER.error("The render thread failed.", e);
+            LockSupport.unpark(owner);
+        } finally {
+            target.detach();
+            NativeMemory.detachThread();
+        }
+    }
+
+    /**
+     * @return a frame to record, waiting while every frame is in flight
+     * @throws IllegalStateException if the render thread failed
+     */
+    public RenderFrame acquire() {
+        checkFailure();
+        RenderFrame frame = free.poll();
+        if (frame != null)
+            return frame;
+
+        Profiler.begin(WAIT_SCOPE);
+        while ((frame = free.poll()) == null) {
+            if (failure != null || !thread.isAlive())
+                break;
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        Profiler.end(WAIT_SCOPE);
+
+        checkFailure();
+        if (frame == null)
+            throw new IllegalStateException("The render thread stopped.");
+        return frame;
+    }
+
+    /**
+     * Queues a frame obtained from {@link #acquire()} for drawing.
+     */
+    public void submit(RenderFrame frame) {
+        checkFailure();
+        if (!submitted.offer(frame))
+            throw new IllegalStateException("More frames were submitted than acquired.");
+        LockSupport.unpark(thread);
+    }
+
+    private void checkFailure() {
+        Throwable cause = failure;
+        if (cause != null)
+            throw new IllegalStateException("The render thread failed.", cause);
+    }
+
+    /**
+     * Draws the submitted frames, then stops the thread and releases the GL context.
+     */
+    public void dispose() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (RenderFrame frame : frames)
+            frame.dispose();
+        LOGGER.debug("Render thread stopped.");
+    }
+
+    public int getFramesInFlight() {
+        return frames.length;
+    }
+}
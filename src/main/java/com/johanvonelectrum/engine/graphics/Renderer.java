@@ -1,4 +1,343 @@
 package com.johanvonelectrum.engine.graphics;
 
+import com.johanvonelectrum.engine.shaders.ShaderException;
+import com.johanvonelectrum.engine.shaders.ShaderLibrary;
+import com.johanvonelectrum.engine.shaders.ShaderProgram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4fc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+
+/**
+ * 2D quad batch renderer. Sprites are staged in a {@link SpriteBatch}, optionally sorted by render state, and
+ * written into a {@link StreamBuffer} in as few draw calls as possible. A flush happens when the staging batch is
+ * full or on {@link #end()}, and a new draw call is issued whenever the shader or texture changes.
+ */
 public class Renderer {
+
+    public enum Mode {
+        /**
+         * One instance per sprite expanded from a static unit quad, 36 bytes per sprite.
+         */
+        INSTANCED,
+        /**
+         * Four vertices per sprite with a static index buffer, 80 bytes per sprite.
+         */
+        VERTICES
+    }
+
+    public enum SortMode {
+        /**
+         * Keep the submission order, needed when translucent sprites overlap.
+         */
+        NONE,
+        /**
+         * Group sprites by layer, shader and texture to minimize draw calls.
+         */
+        STATE
+    }
+
+    public static final int DEFAULT_CAPACITY = 16384;
+    public static final int WHITE = 0xFFFFFFFF;
+
+    private static final Logger LOGGER = LogManager.getLogger("Renderer");
+
+    private static final int INSTANCE_STRIDE = 9 * Float.BYTES;
+    private static final int VERTEX_STRIDE = 5 * Float.BYTES;
+
+    private final Mode mode;
+    private final SortMode sortMode;
+    private final SpriteBatch batch;
+    private final RenderStats stats = new RenderStats();
+    private final RenderDevice device = Graphics.getDevice();
+
+    private final int vao;
+    private final int quadBuffer;
+    private final int indexBuffer;
+    private final StreamBuffer streamBuffer;
+    private final int spriteStride;
+
+    private final List<ShaderProgram> shaders = new ArrayList<>();
+
+    /**
+     * Default shader owned by a {@link ShaderLibrary}, not disposed with the renderer.
+     */
+    private final ShaderProgram sharedShader;
+
+    private int shader;
+    private int layer;
+    private boolean drawing;
+
+    public Renderer() throws ShaderException {
+        this(DEFAULT_CAPACITY, Mode.INSTANCED, SortMode.STATE);
+    }
+
+    public Renderer(int capacity, Mode mode, SortMode sortMode) throws ShaderException {
+        this(capacity, mode, sortMode, null);
+    }
+
+    /**
+     * @param library source of the default shader, usually already compiling in the background; null to compile
+     *                it here
+     */
+    public Renderer(int capacity, Mode mode, SortMode sortMode, ShaderLibrary library) throws ShaderException {
+        this.mode = mode;
+        this.sortMode = sortMode;
+        this.batch = new SpriteBatch(capacity);
+        this.spriteStride = mode == Mode.INSTANCED ? INSTANCE_STRIDE : VERTEX_STRIDE * 4;
+
+        LOGGER.debug("Creating {} sprite renderer for {} sprites...", mode, capacity);
+        ShaderProgram defaultShader;
+        if (library != null) {
+            defaultShader = library.get(defaultShader(mode));
+            this.sharedShader = defaultShader;
+        } else {
+            defaultShader = new ShaderProgram(defaultShader(mode));
+            defaultShader.link();
+            this.sharedShader = null;
+        }
+        addShader(defaultShader);
+
+        this.vao = device.createVertexArray();
+        GLStateCache.bindVertexArray(vao);
+
+        this.streamBuffer = new StreamBuffer(GL_ARRAY_BUFFER, (long) spriteStride * capacity * 2, mode == Mode.INSTANCED ? INSTANCE_STRIDE : VERTEX_STRIDE);
+        if (mode == Mode.INSTANCED) {
+            this.quadBuffer = device.createBuffer();
+            this.indexBuffer = 0;
+            GLStateCache.bindBuffer(GL_ARRAY_BUFFER, quadBuffer);
+            device.bufferData(GL_ARRAY_BUFFER, new float[] { 0, 0, 1, 0, 0, 1, 1, 1 }, GL_STATIC_DRAW);
+            device.enableVertexAttribArray(0);
+            device.vertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+            for (int attribute = 1; attribute <= 3; attribute++) {
+                device.enableVertexAttribArray(attribute);
+                device.vertexAttribDivisor(attribute, 1);
+            }
+        } else {
+            this.quadBuffer = 0;
+            this.indexBuffer = device.createBuffer();
+            device.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+            device.bufferData(GL_ELEMENT_ARRAY_BUFFER, createQuadIndices(capacity), GL_STATIC_DRAW);
+            streamBuffer.bind();
+            for (int attribute = 0; attribute <= 2; attribute++)
+                device.enableVertexAttribArray(attribute);
+            device.vertexAttribPointer(0, 2, GL_FLOAT, false, VERTEX_STRIDE, 0);
+            device.vertexAttribPointer(1, 2, GL_FLOAT, false, VERTEX_STRIDE, 2 * Float.BYTES);
+            device.vertexAttribPointer(2, 4, GL_UNSIGNED_BYTE, true, VERTEX_STRIDE, 4 * Float.BYTES);
+        }
+
+        GLStateCache.bindVertexArray(0);
+        GLStateCache.bindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * @return name of the shader a renderer in the given mode draws with by default
+     */
+    public static String defaultShader(Mode mode) {
+        return mode == Mode.INSTANCED ? "sprite_instanced" : "sprite";
+    }
+
+    private static int[] createQuadIndices(int quads) {
+        int[] indices = new int[quads * 6];
+        for (int quad = 0, i = 0; quad < quads; quad++) {
+            int vertex = quad * 4;
+            indices[i++] = vertex;
+            indices[i++] = vertex + 1;
+            indices[i++] = vertex + 2;
+            indices[i++] = vertex + 2;
+            indices[i++] = vertex + 1;
+            indices[i++] = vertex + 3;
+        }
+        return indices;
+    }
+
+    /**
+     * Registers a shader compatible with the default sprite vertex layout. It reads the view projection matrix from
+     * the {@link FrameUniforms#CAMERA} block.
+     *
+     * @return shader slot for {@link #setShader(int)}
+     */
+    public int addShader(ShaderProgram program) {
+        int slot = shaders.indexOf(program);
+        if (slot >= 0)
+            return slot;
+
+        shaders.add(program);
+        return shaders.size() - 1;
+    }
+
+    public void begin(Matrix4fc viewProjection) {
+        if (drawing)
+            throw new IllegalStateException("Renderer.end must be called before begin.");
+
+        this.drawing = true;
+        this.shader = 0;
+        this.layer = 0;
+
+        FrameUniforms.setCamera(viewProjection);
+        GLStateCache.setBlend(true);
+        GLStateCache.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    public void setShader(int slot) {
+        if (slot < 0 || slot >= shaders.size())
+            throw new IllegalArgumentException("Unknown shader slot: " + slot);
+        this.shader = slot;
+    }
+
+    /**
+     * Sprites of lower layers are drawn first when sorting by state.
+     */
+    public void setLayer(int layer) {
+        this.layer = layer;
+    }
+
+    public void draw(int texture, float x, float y, float width, float height) {
+        draw(texture, x, y, width, height, 0, 0, 1, 1, WHITE);
+    }
+
+    public void draw(int texture, float x, float y, float width, float height,
+                     float u0, float v0, float u1, float v1, int color) {
+        if (!batch.add(layer, shader, texture, x, y, width, height, u0, v0, u1, v1, color)) {
+            flush();
+            batch.add(layer, shader, texture, x, y, width, height, u0, v0, u1, v1, color);
+        }
+    }
+
+    /**
+     * Sends every staged sprite to the GPU.
+     */
+    public void flush() {
+        int count = batch.size();
+        if (count == 0)
+            return;
+
+        if (sortMode == SortMode.STATE)
+            batch.sort();
+
+        stats.addFlush();
+        stats.addSprites(count);
+
+        GLStateCache.bindVertexArray(vao);
+        streamBuffer.bind();
+        for (int start = 0; start < count; ) {
+            int length = batch.runLength(start, count);
+            drawRun(start, length);
+            start += length;
+        }
+
+        batch.clear();
+    }
+
+    private void drawRun(int start, int length) {
+        int first = batch.spriteAt(start);
+        shaders.get(batch.getShader(first)).bind();
+        GLStateCache.bindTexture(0, batch.getTexture(first));
+
+        long address = streamBuffer.map((long) length * spriteStride);
+        if (mode == Mode.INSTANCED)
+            writeInstances(address, start, length);
+        else
+            writeVertices(address, start, length);
+        streamBuffer.unmap();
+
+        long offset = streamBuffer.getDrawOffset();
+        if (mode == Mode.INSTANCED) {
+            device.vertexAttribPointer(1, 4, GL_FLOAT, false, INSTANCE_STRIDE, offset);
+            device.vertexAttribPointer(2, 4, GL_FLOAT, false, INSTANCE_STRIDE, offset + 4 * Float.BYTES);
+            device.vertexAttribPointer(3, 4, GL_UNSIGNED_BYTE, true, INSTANCE_STRIDE, offset + 8 * Float.BYTES);
+            device.drawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, length);
+        } else {
+            device.drawElementsBaseVertex(GL_TRIANGLES, length * 6, GL_UNSIGNED_INT, 0, (int) (offset / VERTEX_STRIDE));
+        }
+        stats.addDrawCall(length * 4);
+    }
+
+    private void writeInstances(long address, int start, int length) {
+        float[] rects = batch.getRects();
+        for (int i = 0; i < length; i++) {
+            int sprite = batch.spriteAt(start + i);
+            int offset = sprite * SpriteBatch.FLOATS_PER_SPRITE;
+            for (int component = 0; component < SpriteBatch.FLOATS_PER_SPRITE; component++)
+                memPutFloat(address + component * Float.BYTES, rects[offset + component]);
+            memPutInt(address + 8 * Float.BYTES, batch.getColor(sprite));
+            address += INSTANCE_STRIDE;
+        }
+    }
+
+    private void writeVertices(long address, int start, int length) {
+        float[] rects = batch.getRects();
+        for (int i = 0; i < length; i++) {
+            int sprite = batch.spriteAt(start + i);
+            int offset = sprite * SpriteBatch.FLOATS_PER_SPRITE;
+            float x0 = rects[offset], y0 = rects[offset + 1];
+            float x1 = x0 + rects[offset + 2], y1 = y0 + rects[offset + 3];
+            float u0 = rects[offset + 4], v0 = rects[offset + 5];
+            float u1 = rects[offset + 6], v1 = rects[offset + 7];
+            int color = batch.getColor(sprite);
+
+            address = putVertex(address, x0, y0, u0, v0, color);
+            address = putVertex(address, x1, y0, u1, v0, color);
+            address = putVertex(address, x0, y1, u0, v1, color);
+            address = putVertex(address, x1, y1, u1, v1, color);
+        }
+    }
+
+    private static long putVertex(long address, float x, float y, float u, float v, int color) {
+        memPutFloat(address, x);
+        memPutFloat(address + 4, y);
+        memPutFloat(address + 8, u);
+        memPutFloat(address + 12, v);
+        memPutInt(address + 16, color);
+        return address + VERTEX_STRIDE;
+    }
+
+    public void end() {
+        if (!drawing)
+            throw new IllegalStateException("Renderer.begin must be called before end.");
+
+        flush();
+        drawing = false;
+    }
+
+    /**
+     * Rolls the frame statistics and moves the stream buffer to its next segment. Call once per frame.
+     */
+    public void nextFrame() {
+        streamBuffer.nextFrame();
+        stats.nextFrame();
+    }
+
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void dispose() {
+        streamBuffer.dispose();
+        if (quadBuffer != 0) {
+            device.deleteBuffer(quadBuffer);
+            GLStateCache.forgetBuffer(quadBuffer);
+        }
+        if (indexBuffer != 0) {
+            device.deleteBuffer(indexBuffer);
+            GLStateCache.forgetBuffer(indexBuffer);
+        }
+        device.deleteVertexArray(vao);
+        GLStateCache.forgetVertexArray(vao);
+        for (ShaderProgram program : shaders) {
+            if (program != sharedShader)
+                program.dispose();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.johanvonelectrum.engine.graphics;
+
+import java.util.Arrays;
+
+/**
+ * CPU side staging of sprites, kept in primitive arrays. Every sprite gets a 64 bit sort key
+ * (layer, shader, texture, submission index), so sorting the keys groups sprites by render state while keeping the
+ * submission order inside each group. Does not touch GL, the {@link Renderer} turns the sorted runs into draws.
+ */
+public class SpriteBatch {
+
+    public static final int FLOATS_PER_SPRITE = 8;
+    public static final int MAX_CAPACITY = 1 << 24;
+
+    private static final long INDEX_MASK = 0xFFFFFFL;
+
+    private final int capacity;
+    private final float[] rects;
+    private final int[] colors;
+    private final int[] textures;
+    private final int[] shaders;
+    private final long[] keys;
+    private int count;
+
+    public SpriteBatch(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Sprite batch capacity out of range: " + capacity);
+
+        this.capacity = capacity;
+        this.rects = new float[capacity * FLOATS_PER_SPRITE];
+        this.colors = new int[capacity];
+        this.textures = new int[capacity];
+        this.shaders = new int[capacity];
+        this.keys = new long[capacity];
+    }
+
+    /**
+     * @param layer draw order group, lower layers are drawn first when sorting
+     * @param shader renderer shader slot
+     * @param color packed as 0xAABBGGRR
+     * @return false if the batch is full
+     */
+    public boolean add(int layer, int shader, int texture,
+                       float x, float y, float width, float height,
+                       float u0, float v0, float u1, float v1, int color) {
+        if (count == capacity)
+            return false;
+
+        int index = count++;
+        int offset = index * FLOATS_PER_SPRITE;
+        rects[offset] = x;
+        rects[offset + 1] = y;
+        rects[offset + 2] = width;
+        rects[offset + 3] = height;
+        rects[offset + 4] = u0;
+        rects[offset + 5] = v0;
+        rects[offset + 6] = u1;
+        rects[offset + 7] = v1;
+        colors[index] = color;
+        textures[index] = texture;
+        shaders[index] = shader;
+        // The sign bit is flipped so layers 128-255 sort after the lower ones
+        keys[index] = (((long) (layer & 0xFF) << 56)
+                | ((long) (shader & 0xFFF) << 44)
+                | ((long) (texture & 0xFFFFF) << 24)
+                | index) ^ Long.MIN_VALUE;
+        return true;
+    }
+
+    /**
+     * Orders the sprites by layer, shader and texture.
+     */
+    public void sort() {
+        Arrays.sort(keys, 0, count);
+    }
+
+    /**
+     * @return the sprite stored at the given position of the (possibly sorted) draw order
+     */
+    public int spriteAt(int position) {
+        return (int) (keys[position] & INDEX_MASK);
+    }
+
+    /**
+     * @return number of consecutive sprites from {@code start} sharing shader and texture, at most {@code max}
+     */
+    public int runLength(int start, int max) {
+        int first = spriteAt(start);
+        int texture = textures[first];
+        int shader = shaders[first];
+
+        int end = start + 1;
+        int limit = Math.min(count, start + max);
+        while (end < limit) {
+            int sprite = spriteAt(end);
+            if (textures[sprite] != texture || shaders[sprite] != shader)
+                break;
+            end++;
+        }
+        return end - start;
+    }
+
+    public float[] getRects() {
+        return rects;
+    }
+
+    public int getColor(int sprite) {
+        return colors[sprite];
+    }
+
+    public int getTexture(int sprite) {
+        return textures[sprite];
+    }
+
+    public int getShader(int sprite) {
+        return shaders[sprite];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,162 @@
+package com.johanvonelectrum.engine.graphics;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.*;
+
+/**
+ * GL buffer for data rewritten every frame. With GL 4.4 (or ARB_buffer_storage) the buffer is mapped once,
+ * persistently, and split into {@value #SEGMENTS} segments fenced independently, so the CPU never writes into a
+ * range the GPU is still reading. Otherwise the buffer is orphaned whenever it fills up and mapped unsynchronized.
+ * Allocations are aligned to the stride, so offsets can be used as base vertices or instances.
+ */
+public class StreamBuffer {
+
+    public static final int SEGMENTS = 3;
+
+    private final RenderDevice device = Graphics.getDevice();
+    private final int target;
+    private final int id;
+    private final long segmentSize;
+    private final int stride;
+    private final boolean persistent;
+
+    private long persistentAddress;
+    private final long[] fences = new long[SEGMENTS];
+    private int segment;
+
+    private long head;
+    private long drawOffset;
+    private boolean mapped;
+
+    public StreamBuffer(int target, long capacity, int stride) {
+        this.target = target;
+        this.stride = stride;
+        this.segmentSize = capacity - capacity % stride;
+
+        this.persistent = device.supportsBufferStorage();
+
+        this.id = device.createBuffer();
+        GLStateCache.bindBuffer(target, id);
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            device.bufferStorage(target, segmentSize * SEGMENTS, flags);
+            persistentAddress = device.mapBufferRange(target, 0, segmentSize * SEGMENTS, flags);
+            if (persistentAddress == 0)
+                throw new IllegalStateException("Could not map stream buffer persistently.");
+        } else {
+            device.bufferData(target, segmentSize, GL_STREAM_DRAW);
+        }
+    }
+
+    /**
+     * Reserves {@code bytes} for writing. The buffer must be bound to its target.
+     *
+     * @return native address to write the data to, valid until {@link #unmap()}
+     */
+    public long map(long bytes) {
+        if (bytes > segmentSize)
+            throw new IllegalArgumentException("Stream buffer too small: " + bytes + " > " + segmentSize);
+
+        long start = align(head);
+        if (start + bytes > segmentSize) {
+            if (persistent)
+                nextSegment();
+            else
+                device.bufferData(target, segmentSize, GL_STREAM_DRAW);
+            start = 0;
+        }
+
+        head = start + bytes;
+        mapped = true;
+        if (persistent) {
+            drawOffset = segment * segmentSize + start;
+            return persistentAddress + drawOffset;
+        }
+
+        drawOffset = start;
+        long address = device.mapBufferRange(target, start, bytes, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT);
+        if (address == 0)
+            throw new IllegalStateException("Could not map stream buffer.");
+        return address;
+    }
+
+    public void unmap() {
+        if (!mapped)
+            return;
+        mapped = false;
+        if (!persistent)
+            device.unmapBuffer(target);
+    }
+
+    /**
+     * Should be called once per frame after the last draw using this buffer, so the next frame writes into a fresh
+     * segment.
+     */
+    public void nextFrame() {
+        if (persistent)
+            nextSegment();
+    }
+
+    private void nextSegment() {
+        if (fences[segment] != 0)
+            device.deleteSync(fences[segment]);
+        fences[segment] = device.fenceSync();
+
+        segment = (segment + 1) % SEGMENTS;
+        head = 0;
+
+        long fence = fences[segment];
+        if (fence != 0) {
+            while (true) {
+                int result = device.clientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L);
+                if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED)
+                    break;
+                if (result == GL_WAIT_FAILED)
+                    throw new IllegalStateException("Waiting for stream buffer fence failed.");
+            }
+            device.deleteSync(fence);
+            fences[segment] = 0;
+        }
+    }
+
+    private long align(long offset) {
+        long remainder = offset % stride;
+        return remainder == 0 ? offset : offset + stride - remainder;
+    }
+
+    public void bind() {
+        GLStateCache.bindBuffer(target, id);
+    }
+
+    /**
+     * @return byte offset of the last mapped range inside the GL buffer
+     */
+    public long getDrawOffset() {
+        return drawOffset;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public void dispose() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            if (fences[i] != 0) {
+                device.deleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        GLStateCache.bindBuffer(target, id);
+        if (persistent)
+            device.unmapBuffer(target);
+        GLStateCache.bindBuffer(target, 0);
+        device.deleteBuffer(id);
+        GLStateCache.forgetBuffer(id);
+    }
+}
@@ -0,0 +1,458 @@
+package com.johanvonelectrum.engine.graphics;
+
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import com.johanvonelectrum.engine.io.resources.Resource;
+import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+import com.johanvonelectrum.engine.io.resources.Texture;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * Streams textures from the classpath. Images are decoded with stb_image on dedicated decoder threads, not the job
+ * workers, so a frame helping its jobs never ends up decoding. Decoded pixels are copied into a pixel buffer object
+ * on the GL thread, at most {@code uploadBudgetNanos} per frame, and a fence is placed behind the copy; a later
+ * frame that finds the fence signaled creates the texture from the buffer, so neither side waits for the other.
+ * Textures are reference
+ * counted; released ones stay cached and are evicted least recently released first once the resident size goes
+ * over the VRAM budget. Decodes waiting for upload are limited by the RAM budget.
+ * <p>
+ * {@link #acquire(String)} and {@link CachedTexture#release()} are thread-safe: they only touch a concurrent map and
+ * the atomic reference count, and hand new and released textures to the GL thread through a lock-free ring. Everything
+ * else, decoding aside, runs on the thread owning the GL context, which may be the render thread.
+ */
+public class TextureCache {
+
+    private static final Logger LOGGER = LogManager.getLogger("TextureCache");
+    private static final int DECODED_QUEUE_CAPACITY = 256;
+    private static final int CHANGED_QUEUE_CAPACITY = 1024;
+    private static final int PIXEL_BUFFERS = 4;
+
+    private final ExecutorService decoders;
+    private final long vramBudget;
+    private final long ramBudget;
+    private final long uploadBudgetNanos;
+
+    private final Map<String, CachedTexture> textures = new ConcurrentHashMap<>();
+    /**
+     * Textures created or released by any thread, for the GL thread to queue or add to {@link #unused}.
+     */
+    private final MpscRingBuffer<CachedTexture> changed = new MpscRingBuffer<>(CHANGED_QUEUE_CAPACITY);
+    private volatile boolean changedOverflow;
+
+    // GL thread only
+    private final LinkedHashMap<String, CachedTexture> unused = new LinkedHashMap<>();
+    private final ArrayDeque<CachedTexture> waiting = new ArrayDeque<>();
+    private final MpscRingBuffer<CachedTexture> decoded = new MpscRingBuffer<>(DECODED_QUEUE_CAPACITY);
+
+    private final int placeholder;
+    private final int[] pixelBuffers = new int[PIXEL_BUFFERS];
+
+    /**
+     * Per pixel buffer, the texture whose pixels it holds and the fence signaled once the copy reached the GPU.
+     */
+    private final CachedTexture[] staged = new CachedTexture[PIXEL_BUFFERS];
+    private final long[] fences = new long[PIXEL_BUFFERS];
+    private final int[] stagedWidths = new int[PIXEL_BUFFERS];
+    private final int[] stagedHeights = new int[PIXEL_BUFFERS];
+    private final long[] stagedSizes = new long[PIXEL_BUFFERS];
+    private CachedTexture next;
+
+    private volatile long residentBytes;
+    private final AtomicLong stagingBytes = new AtomicLong();
+    private volatile long uploads, evictions;
+    private volatile boolean disposed;
+
+    /**
+     * @param decoderThreads    threads decoding images in the background
+     * @param vramBudget        bytes of resident textures kept before evicting released ones
+     * @param ramBudget         bytes of decoded pixels allowed to wait for upload before new decodes are held back
+     * @param uploadBudgetNanos upload time per {@link #update()}, at least one texture is uploaded per call
+     */
+    public TextureCache(int decoderThreads, long vramBudget, long ramBudget, long uploadBudgetNanos) {
+        if (decoderThreads < 1)
+            throw new IllegalArgumentException("At least one decoder thread is needed: " + decoderThreads);
+
+        AtomicInteger count = new AtomicInteger();
+        this.decoders = Executors.newFixedThreadPool(decoderThreads, task -> {
+            Thread thread = new Thread(() -> {
+                NativeMemory.attachThread();
+                try {
+                    task.run();
+                } finally {
+                    NativeMemory.detachThread();
+                }
+            }, "Texture Decoder #" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.vramBudget = vramBudget;
+        this.ramBudget = ramBudget;
+        this.uploadBudgetNanos = uploadBudgetNanos;
+
+        this.placeholder = createPlaceholder();
+        glGenBuffers(pixelBuffers);
+    }
+
+    private static int createPlaceholder() {
+        int id = glGenTextures();
+        GLStateCache.bindTexture(0, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, 2, 2, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                new int[] { 0xFFFF00FF, 0xFF000000, 0xFF000000, 0xFFFF00FF });
+        return id;
+    }
+
+    /**
+     * Returns the texture at {@code textures/<path>.png} with one more reference, starting to stream it if it is not
+     * cached. Must be balanced with {@link CachedTexture#release()}. Thread-safe.
+     */
+    public CachedTexture acquire(String path) {
+        for (;;) {
+            CachedTexture texture = textures.get(path);
+            if (texture == null) {
+                CachedTexture created = new CachedTexture(this, path);
+                created.retain();
+                texture = textures.putIfAbsent(path, created);
+                if (texture == null) {
+                    notifyChanged(created);
+                    return created;
+                }
+            }
+
+            if (texture.retain())
+                return texture;
+            // Evicted by the GL thread in the meantime, stream it again
+            textures.remove(path, texture);
+        }
+    }
+
+    void release(CachedTexture texture) {
+        if (texture.unretain() == 0)
+            notifyChanged(texture);
+    }
+
+    private void notifyChanged(CachedTexture texture) {
+        if (!texture.markChanged())
+            return;
+        if (!changed.offer(texture)) {
+            // The GL thread rescans every texture instead, producers never wait for it
+            texture.clearChanged();
+            changedOverflow = true;
+        }
+    }
+
+    /**
+     * Starts pending decodes, uploads decoded images within the frame budget and evicts released textures when over
+     * the VRAM budget. Call once per frame on the GL thread.
+     */
+    public void update() {
+        applyChanges();
+        startDecodes();
+        upload();
+        evict();
+    }
+
+    private void applyChanges() {
+        CachedTexture texture;
+        while ((texture = changed.poll()) != null)
+            apply(texture);
+
+        if (changedOverflow) {
+            changedOverflow = false;
+            for (CachedTexture cached : textures.values())
+                apply(cached);
+        }
+    }
+
+    /**
+     * Queues a new texture for decoding and moves a released one to the most recent end of {@link #unused}.
+     */
+    private void apply(CachedTexture texture) {
+        // Cleared first, so a release racing with this call notifies again
+        texture.clearChanged();
+        if (texture.getState() == CachedTexture.State.EVICTED)
+            return;
+
+        if (texture.getState() == CachedTexture.State.QUEUED && !texture.isWaiting()) {
+            texture.setWaiting(true);
+            waiting.add(texture);
+        }
+        unused.remove(texture.getPath());
+        if (texture.getReferences() == 0)
+            unused.put(texture.getPath(), texture);
+    }
+
+    private void startDecodes() {
+        while (!waiting.isEmpty() && stagingBytes.get() < ramBudget) {
+            CachedTexture texture = waiting.poll();
+            texture.setWaiting(false);
+            texture.setState(CachedTexture.State.DECODING);
+            decoders.execute(() -> decode(texture));
+        }
+    }
+
+    private void decode(CachedTexture texture) {
+        try {
+            try (Resource encoded = ResourceLoader.openResource("textures/" + texture.getPath() + ".png")) {
+                Texture image = ResourceLoader.decodeTexture(encoded.getData(), texture.getPath());
+                stagingBytes.addAndGet(image.getSize());
+                texture.setDecoded(image);
+            }
+            texture.setState(CachedTexture.State.DECODED);
+        } catch (Throwable e) {
+            LOGGER.error("Could not load texture " + texture.getPath(), e);
+            texture.setState(CachedTexture.State.FAILED);
+        }
+
+        while (!decoded.offer(texture)) {
+            if (disposed)
+                break;
+            Thread.yield();
+        }
+        if (disposed)
+            freeDecoded(texture);
+    }
+
+    private void upload() {
+        long start = System.nanoTime();
+        finishUploads();
+
+        boolean first = true;
+        while (first || System.nanoTime() - start < uploadBudgetNanos) {
+            if (next == null && (next = decoded.poll()) == null)
+                break;
+            if (next.getState() != CachedTexture.State.DECODED) {
+                next = null;
+                continue;
+            }
+
+            int slot = freeSlot();
+            if (slot < 0)
+                break;
+            stage(slot, next);
+            next = null;
+            first = false;
+        }
+    }
+
+    private int freeSlot() {
+        for (int i = 0; i < PIXEL_BUFFERS; i++) {
+            if (staged[i] == null)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the decoded pixels into a pixel buffer and fences the copy. The decoded image is freed right away.
+     */
+    private void stage(int slot, CachedTexture texture) {
+        Texture image = texture.takeDecoded();
+        if (image == null)
+            return;
+        long size = image.getSize();
+
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pixelBuffers[slot]);
+        // Respecifying the store orphans the previous contents, a texture may still be reading them
+        glBufferData(GL_PIXEL_UNPACK_BUFFER, size, GL_STREAM_DRAW);
+        ByteBuffer mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+        if (mapped == null) {
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+            LOGGER.error("Could not map the pixel buffer for {}", texture.getPath());
+            texture.setState(CachedTexture.State.FAILED);
+            free(image);
+            return;
+        }
+        MemoryUtil.memCopy(image.getBuffer(), mapped);
+        glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        staged[slot] = texture;
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        stagedWidths[slot] = image.getWidth();
+        stagedHeights[slot] = image.getHeight();
+        stagedSizes[slot] = size;
+        free(image);
+    }
+
+    /**
+     * Creates the textures whose pixel buffers were filled by an earlier frame and are signaled.
+     */
+    private void finishUploads() {
+        for (int slot = 0; slot < PIXEL_BUFFERS; slot++) {
+            if (staged[slot] == null)
+                continue;
+            int result = glClientWaitSync(fences[slot], 0, 0);
+            if (result == GL_TIMEOUT_EXPIRED)
+                continue;
+
+            glDeleteSync(fences[slot]);
+            fences[slot] = 0;
+            CachedTexture texture = staged[slot];
+            staged[slot] = null;
+            if (result == GL_WAIT_FAILED) {
+                LOGGER.error("Waiting for the pixel buffer of {} failed.", texture.getPath());
+                texture.setState(CachedTexture.State.FAILED);
+                continue;
+            }
+            createTexture(slot, texture);
+        }
+    }
+
+    private void createTexture(int slot, CachedTexture texture) {
+        int width = stagedWidths[slot];
+        int height = stagedHeights[slot];
+        long size = stagedSizes[slot];
+
+        int id = glGenTextures();
+        GLStateCache.bindTexture(0, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pixelBuffers[slot]);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        glGenerateMipmap(GL_TEXTURE_2D);
+
+        // Mipmaps add a third on top of the base level
+        long resident = size + size / 3;
+        texture.setResident(id, width, height, resident);
+        residentBytes += resident;
+        uploads++;
+    }
+
+    private void evict() {
+        if (residentBytes <= vramBudget)
+            return;
+
+        Iterator<CachedTexture> iterator = unused.values().iterator();
+        while (residentBytes > vramBudget && iterator.hasNext()) {
+            CachedTexture texture = iterator.next();
+            if (texture.getState() != CachedTexture.State.RESIDENT && texture.getState() != CachedTexture.State.FAILED)
+                continue;
+
+            // Fails if another thread acquired it again since it was released
+            if (!texture.tryEvict()) {
+                iterator.remove();
+                continue;
+            }
+            iterator.remove();
+            textures.remove(texture.getPath(), texture);
+            delete(texture);
+            evictions++;
+        }
+
+        if (residentBytes > vramBudget)
+            LOGGER.debug("Referenced textures use {} bytes, over the {} bytes budget.", residentBytes, vramBudget);
+    }
+
+    private void delete(CachedTexture texture) {
+        if (texture.getState() == CachedTexture.State.RESIDENT) {
+            int id = texture.getTextureId();
+            glDeleteTextures(id);
+            GLStateCache.forgetTexture(id);
+            residentBytes -= texture.getSize();
+        }
+        texture.setState(CachedTexture.State.EVICTED);
+    }
+
+    /**
+     * Frees the decoded image, unless another thread took it first.
+     */
+    private void freeDecoded(CachedTexture texture) {
+        Texture image = texture.takeDecoded();
+        if (image != null)
+            free(image);
+    }
+
+    private void free(Texture image) {
+        stagingBytes.addAndGet(-image.getSize());
+        image.free();
+    }
+
+    int getPlaceholder() {
+        return placeholder;
+    }
+
+    public int getTextureCount() {
+        return textures.size();
+    }
+
+    /**
+     * @return estimated bytes of resident textures, including mipmaps
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getUploadCount() {
+        return uploads;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Cancels the decodes that did not start and waits for the running ones before freeing what they decoded.
+     */
+    public void dispose() {
+        disposed = true;
+        decoders.shutdownNow();
+        try {
+            if (!decoders.awaitTermination(5, TimeUnit.SECONDS))
+                LOGGER.warn("Texture decoders did not finish in time.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (next != null)
+            freeDecoded(next);
+        CachedTexture texture;
+        while ((texture = decoded.poll()) != null)
+            freeDecoded(texture);
+        while (changed.poll() != null) {
+            // Every texture is deleted below
+        }
+        for (int slot = 0; slot < PIXEL_BUFFERS; slot++) {
+            if (fences[slot] != 0)
+                glDeleteSync(fences[slot]);
+            staged[slot] = null;
+        }
+
+        for (CachedTexture cached : textures.values())
+            delete(cached);
+        LOGGER.debug("Disposed {} textures after {} uploads and {} evictions.", textures.size(), uploads, evictions);
+        textures.clear();
+        unused.clear();
+        waiting.clear();
+
+        glDeleteBuffers(pixelBuffers);
+        glDeleteTextures(placeholder);
+        GLStateCache.forgetTexture(placeholder);
+    }
+}
@@ -0,0 +1,95 @@
+package com.johanvonelectrum.engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Uniform buffer object shared by every program declaring a uniform block of the same name. Each block name gets a
+ * fixed binding point, which programs pick up at link time, so the data is uploaded once per frame no matter how
+ * many programs read it. Data is written in std140 layout into {@link #getData()} and sent with {@link #upload()}.
+ */
+public class UniformBuffer {
+
+    private static final Map<String, Integer> BINDINGS = new HashMap<>();
+    private static final Map<String, UniformBuffer> BUFFERS = new HashMap<>();
+
+    private final RenderDevice device = Graphics.getDevice();
+    private final String name;
+    private final int binding;
+    private final int id;
+    private final ByteBuffer data;
+
+    private UniformBuffer(String name, int size) {
+        this.name = name;
+        this.binding = bindingOf(name);
+        this.data = MemoryUtil.memCalloc(size);
+
+        this.id = device.createBuffer();
+        GLStateCache.bindBuffer(GL_UNIFORM_BUFFER, id);
+        device.bufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+        device.bindBufferBase(GL_UNIFORM_BUFFER, binding, id);
+    }
+
+    /**
+     * @return the buffer of the given block, created on first use
+     */
+    public static UniformBuffer get(String name, int size) {
+        UniformBuffer buffer = BUFFERS.get(name);
+        if (buffer == null) {
+            buffer = new UniformBuffer(name, size);
+            BUFFERS.put(name, buffer);
+        } else if (buffer.data.capacity() < size) {
+            throw new IllegalArgumentException("Uniform block " + name + " was created with " + buffer.data.capacity() + " bytes, " + size + " requested.");
+        }
+        return buffer;
+    }
+
+    /**
+     * Thread-safe, programs may be linked by the background {@link com.johanvonelectrum.engine.shaders.ShaderCompiler}.
+     *
+     * @return the binding point reserved for a uniform block name
+     */
+    public static synchronized int bindingOf(String name) {
+        Integer binding = BINDINGS.get(name);
+        if (binding == null) {
+            binding = BINDINGS.size();
+            BINDINGS.put(name, binding);
+        }
+        return binding;
+    }
+
+    /**
+     * @return staging memory of the block, in std140 layout
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public void upload() {
+        GLStateCache.bindBuffer(GL_UNIFORM_BUFFER, id);
+        device.bufferSubData(GL_UNIFORM_BUFFER, 0, data);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBinding() {
+        return binding;
+    }
+
+    public static void disposeAll() {
+        for (UniformBuffer buffer : BUFFERS.values()) {
+            buffer.device.deleteBuffer(buffer.id);
+            GLStateCache.forgetBuffer(buffer.id);
+            MemoryUtil.memFree(buffer.data);
+        }
+        BUFFERS.clear();
+    }
+}
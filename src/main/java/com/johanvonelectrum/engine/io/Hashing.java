@@ -0,0 +1,75 @@
+package com.johanvonelectrum.engine.io;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.xxhash.XXH64State;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memUTF8;
+import static org.lwjgl.util.xxhash.XXHash.*;
+
+/**
+ * xxHash64 helpers for content keys (shader binaries, permutations, asset packs).
+ */
+public final class Hashing {
+
+    public static final long SEED = 0x4A6F68616E456EL;
+
+    /**
+     * Longest part hashed from the stack by {@link #xxh64(String)}, in chars of up to 3 UTF-8 bytes.
+     */
+    private static final int MAX_STACK_CHARS = 4096;
+
+    private Hashing() {
+    }
+
+    public static long xxh64(ByteBuffer data) {
+        return XXH64(data, SEED);
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of every part. Null parts are skipped but still change the result, so
+     * ("a", null) and (null, "a") hash differently.
+     */
+    public static long xxh64(String... parts) {
+        XXH64State state = XXH64_createState();
+        if (state == null)
+            throw new OutOfMemoryError("Could not allocate xxHash state.");
+
+        try {
+            XXH64_reset(state, SEED);
+            for (String part : parts) {
+                ByteBuffer bytes = memUTF8(part == null ? "\u0000" : part + '\u0001', false);
+                try {
+                    XXH64_update(state, bytes);
+                } finally {
+                    memFree(bytes);
+                }
+            }
+            return XXH64_digest(state);
+        } finally {
+            XXH64_freeState(state);
+        }
+    }
+
+    /**
+     * Same result as the varargs version for a single part, hashed in one pass from the stack without a state.
+     */
+    public static long xxh64(String part) {
+        if (part == null || part.length() > MAX_STACK_CHARS)
+            return xxh64(new String[]{part});
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            // The null terminator becomes the separator the varargs version appends to every part.
+            ByteBuffer bytes = stack.UTF8(part, true);
+            bytes.put(bytes.limit() - 1, (byte) 1);
+            return XXH64(bytes, SEED);
+        }
+    }
+
+    public static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
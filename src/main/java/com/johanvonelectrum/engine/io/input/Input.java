@@ -0,0 +1,387 @@
+package com.johanvonelectrum.engine.io.input;
+
+import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.events.KeyEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.glfw.GLFWGamepadState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * Polled input state. The GLFW callbacks write into a back buffer which {@link #beginFrame(long)} copies to the
+ * front buffer, so during a frame gameplay code sees a stable state and can ask what is held, or was pressed or
+ * released since the previous frame, without handling events. Key presses are still pushed as {@link KeyEvent}s.
+ * <p>
+ * The raw input stream, with the frame times, can be recorded to a file and replayed. While replaying, live input
+ * is ignored and the frame times come from the recording, so the simulation ticks exactly as when it was recorded.
+ * Main thread only, except for the queries, which may also be made from jobs running during the frame.
+ */
+public final class Input {
+
+    private static final Logger LOGGER = LogManager.getLogger("Input");
+
+    private final EventSystem eventSystem;
+    private final InputState front = new InputState();
+    private final InputState back = new InputState();
+    private final GLFWGamepadState gamepadState = GLFWGamepadState.create();
+
+    private double previousCursorX, previousCursorY;
+    private boolean cursorChanged, scrollChanged;
+
+    private InputRecorder recorder;
+    private InputReplay replay;
+    private boolean replayFinished;
+    private boolean gamepads;
+    private long lastNow;
+    private long frameTime;
+
+    public Input(EventSystem eventSystem) {
+        this.eventSystem = eventSystem;
+    }
+
+    /**
+     * Records every input from now on to the file, replacing it.
+     */
+    public void record(Path file) throws IOException {
+        if (replay != null)
+            throw new IllegalStateException("Can not record input while replaying it.");
+        recorder = new InputRecorder(file);
+        LOGGER.info("Recording input to {}", file.toAbsolutePath());
+    }
+
+    /**
+     * Replaces the live input with a recording, from the first frame on.
+     */
+    public void replay(Path file) throws IOException {
+        if (recorder != null)
+            throw new IllegalStateException("Can not replay input while recording it.");
+        replay = new InputReplay(file);
+        LOGGER.info("Replaying input from {}", file.toAbsolutePath());
+    }
+
+    /**
+     * @param now {@link System#nanoTime()} when the loop starts
+     * @return the time the frame loop starts at
+     */
+    public long start(long now) {
+        lastNow = now;
+        frameTime = now;
+        return now;
+    }
+
+    /**
+     * Makes the input received since the previous frame visible.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return the frame time to simulate with, the recorded one while replaying
+     */
+    public long beginFrame(long now) {
+        long delta = now - lastNow;
+        lastNow = now;
+
+        if (replay != null) {
+            long recorded = nextReplayFrame();
+            if (recorded >= 0)
+                delta = recorded;
+        } else if (gamepads) {
+            pollGamepads();
+        }
+
+        if (recorder != null)
+            recordFrame(delta);
+        frameTime += delta;
+
+        previousCursorX = front.cursorX;
+        previousCursorY = front.cursorY;
+        front.copyFrom(back);
+        back.clearFrame();
+        return frameTime;
+    }
+
+    private long nextReplayFrame() {
+        try {
+            long delta = replay.nextFrame(this);
+            if (delta >= 0)
+                return delta;
+            LOGGER.info("Input replay finished after {} frames.", box(replay.getFrames()));
+        } catch (IOException e) {
+            LOGGER.error("Input replay failed, switching to live input.", e);
+        }
+        stopReplay();
+        replayFinished = true;
+        return -1;
+    }
+
+    private void pollGamepads() {
+        FloatBuffer axes = gamepadState.axes();
+        ByteBuffer buttons = gamepadState.buttons();
+        for (int gamepad = 0; gamepad < InputState.GAMEPADS; gamepad++) {
+            boolean connected = glfwJoystickIsGamepad(gamepad) && glfwGetGamepadState(gamepad, gamepadState);
+            if (!connected && (back.gamepadsConnected & 1 << gamepad) == 0)
+                continue;
+
+            int pressed = 0;
+            boolean changed = false;
+            int offset = gamepad * InputState.GAMEPAD_AXES;
+            for (int axis = 0; axis < InputState.GAMEPAD_AXES; axis++) {
+                float value = connected ? axes.get(axis) : 0f;
+                changed |= back.gamepadAxes[offset + axis] != value;
+                back.gamepadAxes[offset + axis] = value;
+            }
+            if (connected) {
+                for (int button = 0; button < InputState.GAMEPAD_BUTTONS; button++) {
+                    if (buttons.get(button) == GLFW_PRESS)
+                        pressed |= 1 << button;
+                }
+            }
+
+            changed |= !connected || pressed != back.gamepadButtons[gamepad];
+            back.setGamepad(gamepad, connected, pressed);
+            if (changed && recorder != null)
+                recordGamepad(gamepad, connected, pressed);
+        }
+    }
+
+    public void onKey(int key, int scancode, int action, int mods) {
+        if (replay == null)
+            applyKey(key, scancode, action, mods);
+    }
+
+    public void onMouseButton(int button, int action, int mods) {
+        if (replay == null)
+            applyMouseButton(button, action, mods);
+    }
+
+    public void onCursor(double x, double y) {
+        if (replay == null)
+            applyCursor(x, y);
+    }
+
+    public void onScroll(double x, double y) {
+        if (replay == null)
+            applyScroll(back.scrollX + x, back.scrollY + y);
+    }
+
+    void applyKey(int key, int scancode, int action, int mods) {
+        back.setKey(key, action != GLFW_RELEASE);
+        if (action != GLFW_REPEAT)
+            LOGGER.trace("Key {}: {}", box(key), box(action));
+
+        if (recorder != null) {
+            try {
+                recorder.key(key, scancode, action, mods);
+            } catch (IOException e) {
+                recordingFailed(e);
+            }
+        }
+        eventSystem.push(eventSystem.obtain(KeyEvent.class).set(key, scancode, action, mods));
+    }
+
+    void applyMouseButton(int button, int action, int mods) {
+        back.setMouseButton(button, action != GLFW_RELEASE);
+        if (recorder != null) {
+            try {
+                recorder.mouseButton(button, action, mods);
+            } catch (IOException e) {
+                recordingFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Only the last position of a frame matters, it is recorded once when the frame ends.
+     */
+    void applyCursor(double x, double y) {
+        back.cursorX = x;
+        back.cursorY = y;
+        cursorChanged = true;
+    }
+
+    /**
+     * @param x scroll of the frame so far
+     */
+    void applyScroll(double x, double y) {
+        back.scrollX = x;
+        back.scrollY = y;
+        scrollChanged = true;
+    }
+
+    void applyGamepad(int gamepad, boolean connected, int buttons, float[] axes) {
+        if (gamepad >= InputState.GAMEPADS)
+            return;
+        back.setGamepad(gamepad, connected, buttons);
+        System.arraycopy(axes, 0, back.gamepadAxes, gamepad * InputState.GAMEPAD_AXES, InputState.GAMEPAD_AXES);
+    }
+
+    private void recordFrame(long delta) {
+        try {
+            if (cursorChanged)
+                recorder.cursor(back.cursorX, back.cursorY);
+            if (scrollChanged)
+                recorder.scroll(back.scrollX, back.scrollY);
+            recorder.frame(delta);
+        } catch (IOException e) {
+            recordingFailed(e);
+        }
+        cursorChanged = false;
+        scrollChanged = false;
+    }
+
+    private void recordGamepad(int gamepad, boolean connected, int buttons) {
+        try {
+            recorder.gamepad(gamepad, connected, buttons, back.gamepadAxes, gamepad * InputState.GAMEPAD_AXES);
+        } catch (IOException e) {
+            recordingFailed(e);
+        }
+    }
+
+    private void recordingFailed(IOException e) {
+        LOGGER.error("Could not write the input recording, recording stopped.", e);
+        stopRecording();
+    }
+
+    private void stopRecording() {
+        if (recorder == null)
+            return;
+        try {
+            recorder.close();
+            LOGGER.info("Recorded {} input records.", box(recorder.getRecords()));
+        } catch (IOException e) {
+            LOGGER.error("Could not finish the input recording.", e);
+        }
+        recorder = null;
+    }
+
+    private void stopReplay() {
+        if (replay == null)
+            return;
+        try {
+            replay.close();
+        } catch (IOException e) {
+            LOGGER.debug("Could not close the input replay.", e);
+        }
+        replay = null;
+    }
+
+    public boolean isKeyDown(int key) {
+        return InputState.test(front.keys, key);
+    }
+
+    /**
+     * @return true if the key went down since the previous frame
+     */
+    public boolean isKeyPressed(int key) {
+        return InputState.test(front.keysPressed, key);
+    }
+
+    /**
+     * @return true if the key went up since the previous frame
+     */
+    public boolean isKeyReleased(int key) {
+        return InputState.test(front.keysReleased, key);
+    }
+
+    public boolean isMouseButtonDown(int button) {
+        return testBit(front.mouseButtons, button, InputState.MOUSE_BUTTONS);
+    }
+
+    public boolean isMouseButtonPressed(int button) {
+        return testBit(front.mouseButtonsPressed, button, InputState.MOUSE_BUTTONS);
+    }
+
+    public boolean isMouseButtonReleased(int button) {
+        return testBit(front.mouseButtonsReleased, button, InputState.MOUSE_BUTTONS);
+    }
+
+    public double getCursorX() {
+        return front.cursorX;
+    }
+
+    public double getCursorY() {
+        return front.cursorY;
+    }
+
+    public double getCursorDeltaX() {
+        return front.cursorX - previousCursorX;
+    }
+
+    public double getCursorDeltaY() {
+        return front.cursorY - previousCursorY;
+    }
+
+    /**
+     * @return horizontal scroll since the previous frame
+     */
+    public double getScrollX() {
+        return front.scrollX;
+    }
+
+    public double getScrollY() {
+        return front.scrollY;
+    }
+
+    public boolean isGamepadConnected(int gamepad) {
+        return testBit(front.gamepadsConnected, gamepad, InputState.GAMEPADS);
+    }
+
+    public boolean isGamepadButtonDown(int gamepad, int button) {
+        return isGamepadConnected(gamepad) && testBit(front.gamepadButtons[gamepad], button, InputState.GAMEPAD_BUTTONS);
+    }
+
+    public boolean isGamepadButtonPressed(int gamepad, int button) {
+        return isGamepadConnected(gamepad) && testBit(front.gamepadButtonsPressed[gamepad], button, InputState.GAMEPAD_BUTTONS);
+    }
+
+    public boolean isGamepadButtonReleased(int gamepad, int button) {
+        return gamepad >= 0 && gamepad < InputState.GAMEPADS
+                && testBit(front.gamepadButtonsReleased[gamepad], button, InputState.GAMEPAD_BUTTONS);
+    }
+
+    /**
+     * @param axis one of the {@code GLFW_GAMEPAD_AXIS_*} constants
+     * @return the axis value in [-1, 1], 0 for disconnected gamepads
+     */
+    public float getGamepadAxis(int gamepad, int axis) {
+        if (!isGamepadConnected(gamepad) || axis < 0 || axis >= InputState.GAMEPAD_AXES)
+            return 0f;
+        return front.gamepadAxes[gamepad * InputState.GAMEPAD_AXES + axis];
+    }
+
+    private static boolean testBit(int bits, int index, int count) {
+        return index >= 0 && index < count && (bits & 1 << index) != 0;
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Enables gamepad polling, only while GLFW is initialized. Headless and EGL runs never initialize it.
+     */
+    public void setGamepadsEnabled(boolean gamepads) {
+        this.gamepads = gamepads;
+    }
+
+    public boolean isReplaying() {
+        return replay != null;
+    }
+
+    /**
+     * @return true once a replay reached the end of its recording
+     */
+    public boolean isReplayFinished() {
+        return replayFinished;
+    }
+
+    public void dispose() {
+        stopRecording();
+        stopReplay();
+    }
+}
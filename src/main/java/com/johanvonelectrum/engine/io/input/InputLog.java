@@ -0,0 +1,30 @@
+package com.johanvonelectrum.engine.io.input;
+
+/**
+ * Binary layout of recorded input, big endian as written by {@link java.io.DataOutputStream}.
+ * <pre>
+ * header:       int magic, int version
+ * record:       byte type, fields
+ * FRAME:        varlong nanoseconds since the previous frame, ends the records of the previous frame
+ * KEY:          varint key + 1, varint scancode, byte action, byte mods
+ * MOUSE_BUTTON: byte button, byte action, byte mods
+ * CURSOR:       double x, double y, the last position of the frame
+ * SCROLL:       double x, double y, summed over the frame
+ * GAMEPAD:      byte gamepad, byte connected, short buttons, float axes[6], only when the gamepad changed
+ * </pre>
+ */
+final class InputLog {
+
+    static final int MAGIC = 0x504E494A;
+    static final int VERSION = 1;
+
+    static final byte FRAME = 0;
+    static final byte KEY = 1;
+    static final byte MOUSE_BUTTON = 2;
+    static final byte CURSOR = 3;
+    static final byte SCROLL = 4;
+    static final byte GAMEPAD = 5;
+
+    private InputLog() {
+    }
+}
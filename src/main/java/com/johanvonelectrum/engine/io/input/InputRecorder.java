@@ -0,0 +1,92 @@
+package com.johanvonelectrum.engine.io.input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the raw input stream to an {@link InputLog}. Buffered, so recording does not touch the disk every event.
+ */
+final class InputRecorder implements AutoCloseable {
+
+    private final DataOutputStream out;
+    private long records;
+
+    InputRecorder(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        out.writeInt(InputLog.MAGIC);
+        out.writeInt(InputLog.VERSION);
+    }
+
+    void frame(long deltaNanos) throws IOException {
+        out.writeByte(InputLog.FRAME);
+        writeVarLong(deltaNanos);
+        records++;
+    }
+
+    void key(int key, int scancode, int action, int mods) throws IOException {
+        out.writeByte(InputLog.KEY);
+        writeVarLong(key + 1);
+        writeVarLong(scancode);
+        out.writeByte(action);
+        out.writeByte(mods);
+        records++;
+    }
+
+    void mouseButton(int button, int action, int mods) throws IOException {
+        out.writeByte(InputLog.MOUSE_BUTTON);
+        out.writeByte(button);
+        out.writeByte(action);
+        out.writeByte(mods);
+        records++;
+    }
+
+    void cursor(double x, double y) throws IOException {
+        out.writeByte(InputLog.CURSOR);
+        out.writeDouble(x);
+        out.writeDouble(y);
+        records++;
+    }
+
+    void scroll(double x, double y) throws IOException {
+        out.writeByte(InputLog.SCROLL);
+        out.writeDouble(x);
+        out.writeDouble(y);
+        records++;
+    }
+
+    void gamepad(int gamepad, boolean connected, int buttons, float[] axes, int axesOffset) throws IOException {
+        out.writeByte(InputLog.GAMEPAD);
+        out.writeByte(gamepad);
+        out.writeBoolean(connected);
+        out.writeShort(buttons);
+        for (int i = 0; i < InputState.GAMEPAD_AXES; i++)
+            out.writeFloat(axes[axesOffset + i]);
+        records++;
+    }
+
+    /**
+     * Unsigned LEB128, small values take a single byte.
+     */
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
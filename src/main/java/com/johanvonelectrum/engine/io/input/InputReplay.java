@@ -0,0 +1,100 @@
+package com.johanvonelectrum.engine.io.input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads an {@link InputLog} back, one frame at a time, feeding the records to the {@link Input}.
+ */
+final class InputReplay implements AutoCloseable {
+
+    private final Path file;
+    private final DataInputStream in;
+    private final float[] axes = new float[InputState.GAMEPAD_AXES];
+    private long frames;
+
+    InputReplay(Path file) throws IOException {
+        this.file = file;
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        try {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != InputLog.MAGIC)
+                throw new IOException(file + " is not an input recording.");
+            if (version != InputLog.VERSION)
+                throw new IOException("Unsupported input recording version " + version + " in " + file);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the records up to the next frame.
+     *
+     * @return nanoseconds between the recorded frames, or -1 once the recording is over
+     */
+    long nextFrame(Input input) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0)
+                return -1;
+
+            switch (type) {
+                case InputLog.FRAME:
+                    frames++;
+                    return readVarLong();
+                case InputLog.KEY:
+                    int key = (int) readVarLong() - 1;
+                    int scancode = (int) readVarLong();
+                    input.applyKey(key, scancode, in.readByte(), in.readByte());
+                    break;
+                case InputLog.MOUSE_BUTTON:
+                    input.applyMouseButton(in.readByte(), in.readByte(), in.readByte());
+                    break;
+                case InputLog.CURSOR:
+                    input.applyCursor(in.readDouble(), in.readDouble());
+                    break;
+                case InputLog.SCROLL:
+                    input.applyScroll(in.readDouble(), in.readDouble());
+                    break;
+                case InputLog.GAMEPAD:
+                    int gamepad = in.readUnsignedByte();
+                    boolean connected = in.readBoolean();
+                    int buttons = in.readUnsignedShort();
+                    for (int i = 0; i < axes.length; i++)
+                        axes[i] = in.readFloat();
+                    input.applyGamepad(gamepad, connected, buttons, axes);
+                    break;
+                default:
+                    throw new IOException("Corrupted input recording " + file + ": unknown record " + type);
+            }
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Input recording " + file + " ends inside a record.");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Corrupted input recording " + file + ": varint too long");
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
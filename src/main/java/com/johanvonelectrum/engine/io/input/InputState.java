@@ -0,0 +1,124 @@
+package com.johanvonelectrum.engine.io.input;
+
+import java.util.Arrays;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * One buffer of input state in primitive arrays: keys and buttons as bitsets, plus the cursor, the scroll of the
+ * frame and the gamepad axes. Alongside what is held, the bits of what went down or up during the frame are kept,
+ * so a press and release between two frames is not lost.
+ */
+final class InputState {
+
+    static final int KEYS = GLFW_KEY_LAST + 1;
+    static final int MOUSE_BUTTONS = GLFW_MOUSE_BUTTON_LAST + 1;
+    static final int GAMEPADS = GLFW_JOYSTICK_LAST + 1;
+    static final int GAMEPAD_BUTTONS = GLFW_GAMEPAD_BUTTON_LAST + 1;
+    static final int GAMEPAD_AXES = GLFW_GAMEPAD_AXIS_LAST + 1;
+
+    private static final int KEY_WORDS = (KEYS + 63) >>> 6;
+
+    final long[] keys = new long[KEY_WORDS];
+    final long[] keysPressed = new long[KEY_WORDS];
+    final long[] keysReleased = new long[KEY_WORDS];
+
+    int mouseButtons;
+    int mouseButtonsPressed;
+    int mouseButtonsReleased;
+    double cursorX, cursorY;
+    double scrollX, scrollY;
+
+    int gamepadsConnected;
+    final int[] gamepadButtons = new int[GAMEPADS];
+    final int[] gamepadButtonsPressed = new int[GAMEPADS];
+    final int[] gamepadButtonsReleased = new int[GAMEPADS];
+    final float[] gamepadAxes = new float[GAMEPADS * GAMEPAD_AXES];
+
+    void setKey(int key, boolean down) {
+        if (key < 0 || key >= KEYS)
+            return;
+
+        int word = key >>> 6;
+        long bit = 1L << key;
+        boolean wasDown = (keys[word] & bit) != 0;
+        if (down) {
+            keys[word] |= bit;
+            if (!wasDown)
+                keysPressed[word] |= bit;
+        } else {
+            keys[word] &= ~bit;
+            if (wasDown)
+                keysReleased[word] |= bit;
+        }
+    }
+
+    void setMouseButton(int button, boolean down) {
+        if (button < 0 || button >= MOUSE_BUTTONS)
+            return;
+
+        int bit = 1 << button;
+        boolean wasDown = (mouseButtons & bit) != 0;
+        if (down) {
+            mouseButtons |= bit;
+            if (!wasDown)
+                mouseButtonsPressed |= bit;
+        } else {
+            mouseButtons &= ~bit;
+            if (wasDown)
+                mouseButtonsReleased |= bit;
+        }
+    }
+
+    /**
+     * Gamepads are polled once per frame, so their edges are the difference with the previous poll.
+     */
+    void setGamepad(int gamepad, boolean connected, int buttons) {
+        int bit = 1 << gamepad;
+        if (connected)
+            gamepadsConnected |= bit;
+        else
+            gamepadsConnected &= ~bit;
+
+        int previous = gamepadButtons[gamepad];
+        gamepadButtons[gamepad] = buttons;
+        gamepadButtonsPressed[gamepad] |= buttons & ~previous;
+        gamepadButtonsReleased[gamepad] |= previous & ~buttons;
+    }
+
+    static boolean test(long[] bits, int index) {
+        return index >= 0 && index < KEYS && (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Clears what only lasts one frame: the edges and the scroll.
+     */
+    void clearFrame() {
+        Arrays.fill(keysPressed, 0);
+        Arrays.fill(keysReleased, 0);
+        mouseButtonsPressed = 0;
+        mouseButtonsReleased = 0;
+        scrollX = 0;
+        scrollY = 0;
+        Arrays.fill(gamepadButtonsPressed, 0);
+        Arrays.fill(gamepadButtonsReleased, 0);
+    }
+
+    void copyFrom(InputState other) {
+        System.arraycopy(other.keys, 0, keys, 0, KEY_WORDS);
+        System.arraycopy(other.keysPressed, 0, keysPressed, 0, KEY_WORDS);
+        System.arraycopy(other.keysReleased, 0, keysReleased, 0, KEY_WORDS);
+        mouseButtons = other.mouseButtons;
+        mouseButtonsPressed = other.mouseButtonsPressed;
+        mouseButtonsReleased = other.mouseButtonsReleased;
+        cursorX = other.cursorX;
+        cursorY = other.cursorY;
+        scrollX = other.scrollX;
+        scrollY = other.scrollY;
+        gamepadsConnected = other.gamepadsConnected;
+        System.arraycopy(other.gamepadButtons, 0, gamepadButtons, 0, GAMEPADS);
+        System.arraycopy(other.gamepadButtonsPressed, 0, gamepadButtonsPressed, 0, GAMEPADS);
+        System.arraycopy(other.gamepadButtonsReleased, 0, gamepadButtonsReleased, 0, GAMEPADS);
+        System.arraycopy(other.gamepadAxes, 0, gamepadAxes, 0, gamepadAxes.length);
+    }
+}
@@ -0,0 +1,182 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.util.lz4.LZ4.LZ4_decompress_safe;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_decompress;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_getErrorName;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_isError;
+
+/**
+ * Read-only archive of resources built by {@link AssetPackWriter}, memory-mapped as a whole.
+ * <p>
+ * Layout, little endian: a 24 byte header ({@code magic, version, entry count, reserved, names offset}), the index
+ * sorted by path hash with {@value #ENTRY_SIZE} bytes per entry ({@code xxHash64 of the path, data offset, stored
+ * size, size, name offset, name length, compression}), the UTF-8 names and finally the entry data, 16 byte aligned.
+ * Uncompressed entries are returned as views of the mapping; compressed ones are decoded into owned buffers.
+ * Lookups are thread-safe.
+ */
+public class AssetPack {
+
+    public static final int MAGIC = 0x4B41504A;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+    public static final int ENTRY_SIZE = 40;
+    public static final int ALIGNMENT = 16;
+
+    public static final byte NONE = 0;
+    public static final byte LZ4 = 1;
+    public static final byte ZSTD = 2;
+
+    private static final Logger LOGGER = LogManager.getLogger("AssetPack");
+
+    private final Path file;
+    private final MappedByteBuffer mapping;
+    private final long address;
+    private final int count;
+    private final long[] hashes;
+    private final long namesOffset;
+
+    private AssetPack(Path file, MappedByteBuffer mapping) throws IOException {
+        this.file = file;
+        this.mapping = mapping;
+        this.address = MemoryUtil.memAddress(mapping);
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapping.capacity() < HEADER_SIZE || mapping.getInt(0) != MAGIC)
+            throw new IOException("Not an asset pack: " + file);
+        if (mapping.getInt(4) != VERSION)
+            throw new IOException("Unsupported asset pack version " + mapping.getInt(4) + ": " + file);
+
+        this.count = mapping.getInt(8);
+        this.namesOffset = mapping.getLong(16);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > namesOffset || namesOffset > mapping.capacity())
+            throw new IOException("Corrupted asset pack index: " + file);
+
+        this.hashes = new long[count];
+        for (int i = 0; i < count; i++)
+            hashes[i] = mapping.getLong(entryOffset(i));
+    }
+
+    public static AssetPack open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Asset packs are limited to 2 GiB: " + file);
+
+            AssetPack pack = new AssetPack(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            LOGGER.info("Opened asset pack {} with {} entries.", file, pack.count);
+            return pack;
+        }
+    }
+
+    private static int entryOffset(int index) {
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    /**
+     * @return index of the entry or -1
+     */
+    private int find(String path) {
+        long hash = Hashing.xxh64(path);
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(hashes[middle], hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                int first = middle;
+                while (first > 0 && hashes[first - 1] == hash)
+                    first--;
+                for (int i = first; i < count && hashes[i] == hash; i++) {
+                    if (path.equals(nameOf(i)))
+                        return i;
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private String nameOf(int index) {
+        int entry = entryOffset(index);
+        int offset = mapping.getInt(entry + 32);
+        int length = mapping.getShort(entry + 36) & 0xFFFF;
+        return MemoryUtil.memUTF8(address + namesOffset + offset, length);
+    }
+
+    public boolean contains(String path) {
+        return find(path) >= 0;
+    }
+
+    /**
+     * @return the resource or null if the pack does not contain it
+     */
+    public Resource open(String path) throws IOException {
+        int index = find(path);
+        if (index < 0)
+            return null;
+
+        int entry = entryOffset(index);
+        long offset = mapping.getLong(entry + 8);
+        long stored = mapping.getLong(entry + 16);
+        long size = mapping.getLong(entry + 24);
+        byte compression = mapping.get(entry + 38);
+        if (offset + stored > mapping.capacity() || size > Integer.MAX_VALUE)
+            throw new IOException("Corrupted entry " + path + " in " + file);
+
+        ByteBuffer source = MemoryUtil.memByteBuffer(address + offset, (int) stored);
+        if (compression == NONE)
+            return new Resource(path, source, null);
+
+        ByteBuffer target = ResourceLoader.HEAP.malloc((int) size);
+        try {
+            if (compression == LZ4) {
+                int decoded = LZ4_decompress_safe(source, target);
+                if (decoded != size)
+                    throw new IOException("LZ4 decompression of " + path + " failed: " + decoded);
+            } else if (compression == ZSTD) {
+                long decoded = ZSTD_decompress(target, source);
+                if (ZSTD_isError(decoded))
+                    throw new IOException("Zstd decompression of " + path + " failed: " + ZSTD_getErrorName(decoded));
+                if (decoded != size)
+                    throw new IOException("Zstd decompression of " + path + " returned " + decoded + " of " + size + " bytes");
+            } else {
+                throw new IOException("Unknown compression " + compression + " for " + path);
+            }
+        } catch (IOException e) {
+            ResourceLoader.HEAP.free(target);
+            throw e;
+        }
+        return new Resource(path, target, ResourceLoader.HEAP);
+    }
+
+    public String readText(String path) throws IOException {
+        try (Resource resource = open(path)) {
+            if (resource == null)
+                return null;
+            return MemoryUtil.memUTF8(resource.getData());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getEntryCount() {
+        return count;
+    }
+}
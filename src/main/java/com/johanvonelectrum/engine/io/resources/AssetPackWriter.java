@@ -0,0 +1,220 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.lwjgl.util.lz4.LZ4.LZ4_compressBound;
+import static org.lwjgl.util.lz4.LZ4HC.LZ4HC_CLEVEL_MAX;
+import static org.lwjgl.util.lz4.LZ4HC.LZ4_compress_HC;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compress;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_compressBound;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_getErrorName;
+import static org.lwjgl.util.zstd.Zstd.ZSTD_isError;
+
+/**
+ * Builds an {@link AssetPack} from a resources directory, run by the {@code packAssets} Gradle task.
+ * <p>
+ * Text assets (shaders, json...) are compressed with Zstd for the best ratio and everything else with LZ4 HC for the
+ * fastest decoding. Formats that are already compressed, and entries that would not shrink by at least an eighth,
+ * are stored as is so they can be read without a copy. Baked meshes are always stored so they map straight into
+ * vertex buffers, and replace their source meshes.
+ * <p>
+ * Usage: {@code AssetPackWriter <resources directory> <output file> [<generated directory>...]}, where files of the
+ * generated directories override the resources with the same path.
+ */
+public final class AssetPackWriter {
+
+    private static final Logger LOGGER = LogManager.getLogger("AssetPackWriter");
+    private static final int ZSTD_LEVEL = 19;
+
+    private static final Set<String> STORED = new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "ogg", "mp3", "zip", "pak", MeshImporter.BAKED_EXTENSION));
+    private static final Set<String> TEXT = new HashSet<>(Arrays.asList("vs", "gs", "fs", "glsl", "json", "txt", "xml", "properties"));
+
+    private AssetPackWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AssetPackWriter <resources directory> <output file> [<generated directory>...]");
+            System.exit(2);
+        }
+
+        List<Path> roots = new ArrayList<>();
+        roots.add(Paths.get(args[0]));
+        for (int i = 2; i < args.length; i++)
+            roots.add(Paths.get(args[i]));
+        write(roots, Paths.get(args[1]));
+    }
+
+    public static void write(Path root, Path output) throws IOException {
+        write(Collections.singletonList(root), output);
+    }
+
+    public static void write(List<Path> roots, Path output) throws IOException {
+        Map<String, Path> files = new TreeMap<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root))
+                continue;
+            try (Stream<Path> stream = Files.walk(root)) {
+                for (Path file : stream.filter(Files::isRegularFile).collect(Collectors.toList()))
+                    files.put(root.relativize(file).toString().replace('\\', '/'), file);
+            }
+        }
+        files.keySet().removeIf(path -> isBakedSource(path, files.keySet()));
+
+        List<Entry> entries = new ArrayList<>(files.size());
+        long rawBytes = 0, storedBytes = 0;
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            String path = file.getKey();
+            Entry entry = compress(path, Files.readAllBytes(file.getValue()));
+            entries.add(entry);
+            rawBytes += entry.size;
+            storedBytes += entry.data.length;
+        }
+        entries.sort((a, b) -> Long.compareUnsigned(a.hash, b.hash));
+
+        ByteBuffer names = ByteBuffer.allocate(entries.stream().mapToInt(entry -> entry.name.length).sum());
+        for (Entry entry : entries) {
+            entry.nameOffset = names.position();
+            names.put(entry.name);
+        }
+
+        long namesOffset = AssetPack.HEADER_SIZE + (long) entries.size() * AssetPack.ENTRY_SIZE;
+        long offset = align(namesOffset + names.capacity());
+        for (Entry entry : entries) {
+            entry.offset = offset;
+            offset = align(offset + entry.data.length);
+        }
+
+        ByteBuffer index = ByteBuffer.allocate((int) namesOffset).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(AssetPack.MAGIC).putInt(AssetPack.VERSION).putInt(entries.size()).putInt(0).putLong(namesOffset);
+        for (Entry entry : entries) {
+            index.putLong(entry.hash)
+                    .putLong(entry.offset)
+                    .putLong(entry.data.length)
+                    .putLong(entry.size)
+                    .putInt(entry.nameOffset)
+                    .putShort((short) entry.name.length)
+                    .put(entry.compression)
+                    .put((byte) 0);
+        }
+        index.flip();
+        names.flip();
+
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            writeFully(channel, index, 0);
+            writeFully(channel, names, namesOffset);
+            for (Entry entry : entries)
+                writeFully(channel, ByteBuffer.wrap(entry.data), entry.offset);
+        }
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        LOGGER.info("Packed {} assets into {}: {} bytes stored for {} bytes of data.", entries.size(), output, storedBytes, rawBytes);
+    }
+
+    private static boolean isBakedSource(String path, Set<String> paths) {
+        int dot = path.lastIndexOf('.');
+        return dot > 0 && path.startsWith(MeshCache.ROOT)
+                && MeshImporter.SOURCE_EXTENSIONS.contains(MeshImporter.extensionOf(path))
+                && paths.contains(path.substring(0, dot + 1) + MeshImporter.BAKED_EXTENSION);
+    }
+
+    private static Entry compress(String path, byte[] bytes) {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF)
+            throw new IllegalArgumentException("Asset path too long: " + path);
+
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        Entry stored = new Entry(path, name, AssetPack.NONE, bytes, bytes.length);
+        if (bytes.length == 0 || STORED.contains(extension))
+            return stored;
+
+        ByteBuffer source = MemoryUtil.memAlloc(bytes.length);
+        source.put(bytes).flip();
+        ByteBuffer target = null;
+        try {
+            byte compression;
+            int length;
+            if (TEXT.contains(extension)) {
+                compression = AssetPack.ZSTD;
+                target = MemoryUtil.memAlloc((int) ZSTD_compressBound(bytes.length));
+                long result = ZSTD_compress(target, source, ZSTD_LEVEL);
+                if (ZSTD_isError(result))
+                    throw new IllegalStateException("Zstd failed on " + path + ": " + ZSTD_getErrorName(result));
+                length = (int) result;
+            } else {
+                compression = AssetPack.LZ4;
+                target = MemoryUtil.memAlloc(LZ4_compressBound(bytes.length));
+                length = LZ4_compress_HC(source, target, LZ4HC_CLEVEL_MAX);
+                if (length <= 0)
+                    throw new IllegalStateException("LZ4 failed on " + path);
+            }
+
+            if (length > bytes.length - bytes.length / 8)
+                return stored;
+
+            byte[] data = new byte[length];
+            target.get(data);
+            return new Entry(path, name, compression, data, bytes.length);
+        } finally {
+            MemoryUtil.memFree(source);
+            if (target != null)
+                MemoryUtil.memFree(target);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + AssetPack.ALIGNMENT - 1) & -AssetPack.ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static final class Entry {
+
+        private final byte[] name;
+        private final long hash;
+        private final byte compression;
+        private final byte[] data;
+        private final long size;
+        private int nameOffset;
+        private long offset;
+
+        private Entry(String path, byte[] name, byte compression, byte[] data, long size) {
+            this.name = name;
+            this.hash = Hashing.xxh64(path);
+            this.compression = compression;
+            this.data = data;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads meshes by name, importing each source mesh with Assimp only once.
+ * <p>
+ * Meshes baked by the {@code bakeMeshes} task ({@code meshes/<name>.mesh}) are used first, and come straight out
+ * of the mapped asset pack. Otherwise the source mesh ({@code meshes/<name>.obj}, {@code .glb}...) is hashed and
+ * the baked copy in the cache directory is memory-mapped if it was made from the same bytes, or baked again and
+ * stored. Thread-safe, but imports are serialized.
+ */
+public class MeshCache {
+
+    public static final String ROOT = "meshes/";
+
+    private static final Logger LOGGER = LogManager.getLogger("MeshCache");
+    private static final NativeHeap HEAP = NativeMemory.heap("Meshes");
+
+    private final Path directory;
+    private final VertexFormat format;
+
+    private final AtomicInteger baked = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger imports = new AtomicInteger();
+
+    public MeshCache(Path directory, VertexFormat format) {
+        this.directory = directory;
+        this.format = format;
+        LOGGER.debug("Caching imported meshes in {} as {}", directory.toAbsolutePath(), format);
+    }
+
+    /**
+     * @param name path below {@value #ROOT}, without extension
+     */
+    public MeshData load(String name) throws IOException {
+        String bakedPath = ROOT + name + "." + MeshImporter.BAKED_EXTENSION;
+        if (ResourceLoader.hasResource(bakedPath)) {
+            baked.incrementAndGet();
+            return MeshData.read(ResourceLoader.openResource(bakedPath));
+        }
+
+        String sourcePath = findSource(name);
+        try (Resource source = ResourceLoader.openResource(sourcePath)) {
+            long sourceHash = Hashing.xxh64(source.getData());
+            Path file = directory.resolve(name + "." + MeshImporter.BAKED_EXTENSION);
+
+            // Only map a current bake: a stale mapping stays alive until collected and keeps the file from being
+            // replaced on some platforms.
+            if (Files.isRegularFile(file) && isCurrent(file, sourceHash)) {
+                try {
+                    MeshData mesh = MeshData.read(map(file), name);
+                    hits.incrementAndGet();
+                    return mesh;
+                } catch (IOException e) {
+                    LOGGER.debug("Discarding cached mesh {}: {}", file.getFileName(), e.getMessage());
+                }
+            }
+
+            LOGGER.info("Importing {}, bake it with the bakeMeshes task to skip this at startup.", sourcePath);
+            ByteBuffer data = HEAP.track(MeshImporter.bake(source.getData(), MeshImporter.extensionOf(sourcePath), sourceHash, format, sourcePath));
+            try {
+                MeshImporter.write(data, file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not store the imported mesh " + name + ", using it from memory.", e);
+                imports.incrementAndGet();
+                return MeshData.read(new Resource(file.toString(), data, HEAP));
+            } catch (RuntimeException e) {
+                HEAP.free(data);
+                throw e;
+            }
+            HEAP.free(data);
+
+            imports.incrementAndGet();
+            return MeshData.read(map(file), name);
+        }
+    }
+
+    private static String findSource(String name) throws FileNotFoundException {
+        for (String extension : MeshImporter.SOURCE_EXTENSIONS) {
+            String path = ROOT + name + "." + extension;
+            if (ResourceLoader.hasResource(path))
+                return path;
+        }
+        throw new FileNotFoundException("No baked or source mesh for " + name);
+    }
+
+    private boolean isCurrent(Path file, long sourceHash) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MeshData.HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+        }
+        header.flip();
+        return MeshData.peekSourceHash(header) == sourceHash && header.getInt(16) == format.ordinal();
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Baked meshes are limited to 2 GiB: " + file);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return meshes loaded from a baked resource
+     */
+    public int getBakedCount() {
+        return baked.get();
+    }
+
+    /**
+     * @return meshes mapped from the cache directory
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return meshes imported with Assimp
+     */
+    public int getImports() {
+        return imports.get();
+    }
+}
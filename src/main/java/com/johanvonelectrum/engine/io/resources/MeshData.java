@@ -0,0 +1,198 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Baked mesh ready to be uploaded as is, written by {@link MeshImporter}.
+ * <p>
+ * Layout, little endian: a {@value #HEADER_SIZE} byte header ({@code magic, version, source hash, vertex format,
+ * vertex count, index count, index size, submesh count, reserved, bounds}), {@value #SUBMESH_SIZE} bytes per submesh
+ * ({@code first index, index count, first vertex, material}), then the interleaved vertices and the indices, both 16
+ * byte aligned. Indices are absolute, so submeshes are drawn without a base vertex. The buffers are views of the
+ * loaded file and must not be used after {@link #close()}.
+ */
+public final class MeshData implements AutoCloseable {
+
+    public static final int MAGIC = 0x48534D4A;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int SUBMESH_SIZE = 16;
+    public static final int ALIGNMENT = 16;
+
+    private final String name;
+    private final Resource resource;
+    private final long sourceHash;
+    private final VertexFormat format;
+    private final int vertexCount;
+    private final int indexCount;
+    private final int indexSize;
+    private final float[] bounds = new float[6];
+    private final int[] submeshes;
+
+    private ByteBuffer vertices;
+    private ByteBuffer indices;
+
+    private MeshData(String name, ByteBuffer data, Resource resource) throws IOException {
+        this.name = name;
+        this.resource = resource;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC)
+            throw new IOException("Not a baked mesh: " + name);
+        if (data.getInt(4) != VERSION)
+            throw new IOException("Unsupported mesh version " + data.getInt(4) + ": " + name);
+
+        this.sourceHash = data.getLong(8);
+        int formatIndex = data.getInt(16);
+        if (formatIndex < 0 || formatIndex >= VertexFormat.values().length)
+            throw new IOException("Unknown vertex format " + formatIndex + ": " + name);
+        this.format = VertexFormat.values()[formatIndex];
+        this.vertexCount = data.getInt(20);
+        this.indexCount = data.getInt(24);
+        this.indexSize = data.getInt(28);
+        int submeshCount = data.getInt(32);
+        for (int i = 0; i < 6; i++)
+            bounds[i] = data.getFloat(40 + i * Float.BYTES);
+
+        if (vertexCount < 0 || indexCount < 0 || submeshCount < 0 || (indexSize != 2 && indexSize != 4))
+            throw new IOException("Corrupted mesh header: " + name);
+
+        long vertexOffset = verticesOffset(submeshCount);
+        long indexOffset = indicesOffset(submeshCount, format, vertexCount);
+        if (indexOffset + (long) indexCount * indexSize > data.remaining())
+            throw new IOException("Truncated mesh: " + name);
+
+        this.submeshes = new int[submeshCount * 4];
+        for (int i = 0; i < submeshes.length; i++)
+            submeshes[i] = data.getInt(HEADER_SIZE + i * Integer.BYTES);
+
+        this.vertices = MemoryUtil.memSlice(data, (int) vertexOffset, vertexCount * format.getStride());
+        this.indices = MemoryUtil.memSlice(data, (int) indexOffset, indexCount * indexSize);
+    }
+
+    static long verticesOffset(int submeshCount) {
+        return align(HEADER_SIZE + (long) submeshCount * SUBMESH_SIZE);
+    }
+
+    static long indicesOffset(int submeshCount, VertexFormat format, int vertexCount) {
+        return align(verticesOffset(submeshCount) + (long) vertexCount * format.getStride());
+    }
+
+    static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Reads the mesh straight from a resource, taking ownership of it.
+     */
+    public static MeshData read(Resource resource) throws IOException {
+        try {
+            return new MeshData(resource.getPath(), resource.getData(), resource);
+        } catch (IOException | RuntimeException e) {
+            resource.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the mesh from a buffer that outlives it, such as a file mapping.
+     */
+    public static MeshData read(ByteBuffer data, String name) throws IOException {
+        return new MeshData(name, data, null);
+    }
+
+    /**
+     * @return the source hash stored in a baked mesh, or 0 if the data is not a current baked mesh
+     */
+    static long peekSourceHash(ByteBuffer data) {
+        if (data.remaining() < HEADER_SIZE)
+            return 0;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        return data.getInt(0) == MAGIC && data.getInt(4) == VERSION ? data.getLong(8) : 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return 2 for unsigned short indices, 4 for unsigned int
+     */
+    public int getIndexSize() {
+        return indexSize;
+    }
+
+    public int getSubmeshCount() {
+        return submeshes.length / 4;
+    }
+
+    public int getFirstIndex(int submesh) {
+        return submeshes[submesh * 4];
+    }
+
+    public int getIndexCount(int submesh) {
+        return submeshes[submesh * 4 + 1];
+    }
+
+    public int getFirstVertex(int submesh) {
+        return submeshes[submesh * 4 + 2];
+    }
+
+    public int getMaterial(int submesh) {
+        return submeshes[submesh * 4 + 3];
+    }
+
+    /**
+     * @return minX, minY, minZ, maxX, maxY, maxZ
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public ByteBuffer getVertices() {
+        if (vertices == null)
+            throw new IllegalStateException("Mesh was already closed: " + name);
+        return vertices;
+    }
+
+    public ByteBuffer getIndices() {
+        if (indices == null)
+            throw new IllegalStateException("Mesh was already closed: " + name);
+        return indices;
+    }
+
+    /**
+     * @return size of the vertex and index data in bytes
+     */
+    public long getSize() {
+        return (long) vertexCount * format.getStride() + (long) indexCount * indexSize;
+    }
+
+    @Override
+    public void close() {
+        if (resource != null)
+            resource.close();
+        vertices = null;
+        indices = null;
+    }
+}
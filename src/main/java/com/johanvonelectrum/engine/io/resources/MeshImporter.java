@@ -0,0 +1,424 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.lwjgl.assimp.Assimp.*;
+import static org.lwjgl.util.tootle.Tootle.*;
+
+/**
+ * Imports meshes with Assimp and bakes them into the {@link MeshData} format, run by the {@code bakeMeshes} Gradle
+ * task and by {@link MeshCache} for meshes that were not baked.
+ * <p>
+ * The scene is flattened into one vertex and index buffer with a submesh per Assimp mesh. Each submesh is reordered
+ * with Tootle: triangles for the post-transform vertex cache and then for overdraw, and finally vertices in order of
+ * first use so the vertex fetch reads memory sequentially. Vertices are then written in the requested
+ * {@link VertexFormat}, with 16-bit indices whenever they fit.
+ * <p>
+ * Usage: {@code MeshImporter <source directory> <output directory> [FLOAT|PACKED]}
+ */
+public final class MeshImporter {
+
+    public static final Set<String> SOURCE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "obj", "fbx", "gltf", "glb", "dae", "3ds", "blend", "ply", "stl")));
+    public static final String BAKED_EXTENSION = "mesh";
+
+    private static final Logger LOGGER = LogManager.getLogger("MeshImporter");
+
+    private static final int IMPORT_FLAGS = aiProcess_Triangulate | aiProcess_JoinIdenticalVertices
+            | aiProcess_GenSmoothNormals | aiProcess_PreTransformVertices | aiProcess_SortByPType
+            | aiProcess_FindDegenerates | aiProcess_RemoveRedundantMaterials | aiProcess_ValidateDataStructure;
+
+    // position, normal, uv as floats while optimizing; Tootle reads the position from the first 12 bytes
+    private static final int WORK_FLOATS = 8;
+    private static final int WORK_STRIDE = WORK_FLOATS * Float.BYTES;
+
+    private static boolean tootleReady;
+
+    private MeshImporter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: MeshImporter <source directory> <output directory> [FLOAT|PACKED]");
+            System.exit(2);
+        }
+
+        Path root = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        VertexFormat format = args.length == 3 ? VertexFormat.valueOf(args[2].toUpperCase(Locale.ROOT)) : VertexFormat.PACKED;
+        if (!Files.isDirectory(root)) {
+            LOGGER.info("No meshes to bake in {}", root);
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(file -> SOURCE_EXTENSIONS.contains(extensionOf(file.getFileName().toString())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        try {
+            for (Path file : files) {
+                String relative = root.relativize(file).toString().replace('\\', '/');
+                String name = relative.substring(0, relative.lastIndexOf('.'));
+                Path target = output.resolve(name + "." + BAKED_EXTENSION);
+
+                ByteBuffer source = MemoryUtil.memAlloc((int) Files.size(file));
+                ByteBuffer baked = null;
+                try {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        while (source.hasRemaining()) {
+                            if (channel.read(source) < 0)
+                                throw new IOException("Unexpected end of file: " + file);
+                        }
+                    }
+                    source.flip();
+                    baked = bake(source, extensionOf(relative), Hashing.xxh64(source), format, relative);
+                    write(baked, target);
+                    LOGGER.info("Baked {} ({} bytes)", relative, baked.remaining());
+                } finally {
+                    MemoryUtil.memFree(source);
+                    if (baked != null)
+                        MemoryUtil.memFree(baked);
+                }
+            }
+        } finally {
+            cleanup();
+        }
+    }
+
+    static String extensionOf(String path) {
+        return path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Imports and optimizes a mesh. Assimp and Tootle are not thread-safe, so bakes are serialized.
+     *
+     * @param source    encoded mesh, only read
+     * @param extension format hint for Assimp
+     * @return the baked mesh in an off-heap buffer the caller must free with {@link MemoryUtil#memFree}
+     */
+    public static synchronized ByteBuffer bake(ByteBuffer source, String extension, long sourceHash,
+                                               VertexFormat format, String name) throws IOException {
+        long start = System.nanoTime();
+        AIScene scene = aiImportFileFromMemory(source, IMPORT_FLAGS, extension);
+        if (scene == null)
+            throw new IOException("Assimp could not import " + name + ": " + aiGetErrorString());
+
+        List<Submesh> submeshes = new ArrayList<>();
+        try {
+            PointerBuffer meshes = scene.mMeshes();
+            for (int i = 0; i < scene.mNumMeshes(); i++) {
+                Submesh submesh = readMesh(AIMesh.create(meshes.get(i)));
+                if (submesh != null)
+                    submeshes.add(submesh);
+            }
+        } finally {
+            aiReleaseImport(scene);
+        }
+        if (submeshes.isEmpty())
+            throw new IOException("No triangles found in " + name);
+
+        initTootle();
+        for (Submesh submesh : submeshes)
+            optimize(submesh, name);
+
+        ByteBuffer baked = serialize(submeshes, sourceHash, format);
+        LOGGER.debug("Imported {} in {} ms: {} submeshes, {} vertices, {} triangles", name,
+                (System.nanoTime() - start) / 1_000_000, submeshes.size(),
+                submeshes.stream().mapToInt(submesh -> submesh.vertexCount).sum(),
+                submeshes.stream().mapToInt(submesh -> submesh.indices.length / 3).sum());
+        return baked;
+    }
+
+    private static Submesh readMesh(AIMesh mesh) {
+        if ((mesh.mPrimitiveTypes() & aiPrimitiveType_TRIANGLE) == 0)
+            return null;
+
+        int vertexCount = mesh.mNumVertices();
+        AIVector3D.Buffer positions = mesh.mVertices();
+        AIVector3D.Buffer normals = mesh.mNormals();
+        AIVector3D.Buffer uvs = mesh.mTextureCoords(0);
+
+        float[] vertices = new float[vertexCount * WORK_FLOATS];
+        for (int i = 0, offset = 0; i < vertexCount; i++, offset += WORK_FLOATS) {
+            AIVector3D position = positions.get(i);
+            vertices[offset] = position.x();
+            vertices[offset + 1] = position.y();
+            vertices[offset + 2] = position.z();
+            if (normals != null) {
+                AIVector3D normal = normals.get(i);
+                vertices[offset + 3] = normal.x();
+                vertices[offset + 4] = normal.y();
+                vertices[offset + 5] = normal.z();
+            }
+            if (uvs != null) {
+                AIVector3D uv = uvs.get(i);
+                vertices[offset + 6] = uv.x();
+                vertices[offset + 7] = uv.y();
+            }
+        }
+
+        AIFace.Buffer faces = mesh.mFaces();
+        int[] indices = new int[mesh.mNumFaces() * 3];
+        int count = 0;
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            AIFace face = faces.get(i);
+            if (face.mNumIndices() != 3)
+                continue;
+            IntBuffer faceIndices = face.mIndices();
+            indices[count++] = faceIndices.get(0);
+            indices[count++] = faceIndices.get(1);
+            indices[count++] = faceIndices.get(2);
+        }
+        if (count == 0)
+            return null;
+
+        return new Submesh(vertices, vertexCount, Arrays.copyOf(indices, count), mesh.mMaterialIndex());
+    }
+
+    private static void initTootle() throws IOException {
+        if (tootleReady)
+            return;
+        int result = TootleInit();
+        if (result != TOOTLE_OK)
+            throw new IOException("Tootle initialization failed: " + result);
+        tootleReady = true;
+    }
+
+    /**
+     * Releases Tootle. Bakes after this initialize it again.
+     */
+    public static synchronized void cleanup() {
+        if (tootleReady) {
+            TootleCleanup();
+            tootleReady = false;
+        }
+    }
+
+    private static void optimize(Submesh submesh, String name) {
+        ByteBuffer vertices = MemoryUtil.memAlloc(submesh.vertexCount * WORK_STRIDE);
+        ByteBuffer optimizedVertices = MemoryUtil.memAlloc(submesh.vertexCount * WORK_STRIDE);
+        IntBuffer indices = MemoryUtil.memAllocInt(submesh.indices.length);
+        IntBuffer reordered = MemoryUtil.memAllocInt(submesh.indices.length);
+        IntBuffer remapped = MemoryUtil.memAllocInt(submesh.indices.length);
+        try {
+            vertices.asFloatBuffer().put(submesh.vertices);
+            indices.put(submesh.indices).flip();
+
+            int result = TootleOptimize(vertices, indices, WORK_STRIDE, TOOTLE_DEFAULT_VCACHE_SIZE, null,
+                    TOOTLE_CCW, reordered, null, TOOTLE_VCACHE_AUTO, TOOTLE_OVERDRAW_FAST);
+            if (result != TOOTLE_OK) {
+                LOGGER.warn("Tootle could not reorder the triangles of {} ({}), keeping the original order.", name, result);
+                return;
+            }
+
+            result = TootleOptimizeVertexMemory(vertices, reordered, WORK_STRIDE, optimizedVertices, remapped, null);
+            if (result != TOOTLE_OK) {
+                LOGGER.warn("Tootle could not reorder the vertices of {} ({}), keeping the original order.", name, result);
+                reordered.get(submesh.indices);
+                return;
+            }
+
+            optimizedVertices.asFloatBuffer().get(submesh.vertices);
+            remapped.get(submesh.indices);
+        } finally {
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(optimizedVertices);
+            MemoryUtil.memFree(indices);
+            MemoryUtil.memFree(reordered);
+            MemoryUtil.memFree(remapped);
+        }
+    }
+
+    private static ByteBuffer serialize(List<Submesh> submeshes, long sourceHash, VertexFormat format) {
+        int vertexCount = 0, indexCount = 0;
+        for (Submesh submesh : submeshes) {
+            vertexCount += submesh.vertexCount;
+            indexCount += submesh.indices.length;
+        }
+        int indexSize = vertexCount <= 0x10000 ? Short.BYTES : Integer.BYTES;
+
+        long vertexOffset = MeshData.verticesOffset(submeshes.size());
+        long indexOffset = MeshData.indicesOffset(submeshes.size(), format, vertexCount);
+        long size = indexOffset + (long) indexCount * indexSize;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Mesh too large: " + size + " bytes");
+
+        ByteBuffer data = MemoryUtil.memCalloc((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        float[] bounds = {
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+        };
+
+        int vertex = 0, index = 0;
+        int vertexPosition = (int) vertexOffset, indexPosition = (int) indexOffset;
+        for (int i = 0; i < submeshes.size(); i++) {
+            Submesh submesh = submeshes.get(i);
+            int entry = MeshData.HEADER_SIZE + i * MeshData.SUBMESH_SIZE;
+            data.putInt(entry, index).putInt(entry + 4, submesh.indices.length).putInt(entry + 8, vertex).putInt(entry + 12, submesh.material);
+
+            float[] source = submesh.vertices;
+            for (int v = 0; v < submesh.vertexCount; v++) {
+                int offset = v * WORK_FLOATS;
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], source[offset + axis]);
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], source[offset + axis]);
+                }
+                writeVertex(data, vertexPosition, source, offset, format);
+                vertexPosition += format.getStride();
+            }
+
+            for (int triangleIndex : submesh.indices) {
+                if (indexSize == Short.BYTES)
+                    data.putShort(indexPosition, (short) (vertex + triangleIndex));
+                else
+                    data.putInt(indexPosition, vertex + triangleIndex);
+                indexPosition += indexSize;
+            }
+
+            vertex += submesh.vertexCount;
+            index += submesh.indices.length;
+        }
+
+        data.putInt(0, MeshData.MAGIC)
+                .putInt(4, MeshData.VERSION)
+                .putLong(8, sourceHash)
+                .putInt(16, format.ordinal())
+                .putInt(20, vertexCount)
+                .putInt(24, indexCount)
+                .putInt(28, indexSize)
+                .putInt(32, submeshes.size());
+        for (int i = 0; i < 6; i++)
+            data.putFloat(40 + i * Float.BYTES, bounds[i]);
+        return data;
+    }
+
+    private static void writeVertex(ByteBuffer data, int position, float[] source, int offset, VertexFormat format) {
+        data.putFloat(position, source[offset]);
+        data.putFloat(position + 4, source[offset + 1]);
+        data.putFloat(position + 8, source[offset + 2]);
+        if (format == VertexFormat.FLOAT) {
+            for (int component = 3; component < WORK_FLOATS; component++)
+                data.putFloat(position + component * Float.BYTES, source[offset + component]);
+        } else {
+            data.putInt(position + 12, packNormal(source[offset + 3], source[offset + 4], source[offset + 5]));
+            data.putShort(position + 16, toHalf(source[offset + 6]));
+            data.putShort(position + 18, toHalf(source[offset + 7]));
+        }
+    }
+
+    /**
+     * Packs a unit vector as signed normalized {@code GL_INT_2_10_10_10_REV}.
+     */
+    static int packNormal(float x, float y, float z) {
+        return snorm10(x) | snorm10(y) << 10 | snorm10(z) << 20;
+    }
+
+    private static int snorm10(float value) {
+        return Math.round(Math.max(-1f, Math.min(1f, value)) * 511f) & 0x3FF;
+    }
+
+    /**
+     * Converts to an IEEE 754 half float, rounding to nearest even. Values too large become infinity.
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = (bits >>> 23 & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent >= 0x1F) {
+            boolean nan = (bits & 0x7FFFFFFF) > 0x7F800000;
+            return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10)
+                return (short) sign;
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int midpoint = 1 << (shift - 1);
+            if (remainder > midpoint || (remainder == midpoint && (half & 1) != 0))
+                half++;
+            return (short) (sign | half);
+        }
+
+        int half = exponent << 10 | mantissa >> 13;
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0))
+            half++;
+        return (short) (sign | half);
+    }
+
+    /**
+     * Writes the buffer to a temporary file next to the target and moves it in place.
+     */
+    static void write(ByteBuffer data, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer view = data.duplicate();
+            while (view.hasRemaining())
+                channel.write(view);
+        }
+        try {
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static final class Submesh {
+
+        private final float[] vertices;
+        private final int vertexCount;
+        private final int[] indices;
+        private final int material;
+
+        private Submesh(float[] vertices, int vertexCount, int[] indices, int material) {
+            this.vertices = vertices;
+            this.vertexCount = vertexCount;
+            this.indices = indices;
+            this.material = material;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.johanvonelectrum.engine.io.resources;
+
+import com.johanvonelectrum.engine.memory.NativeHeap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bytes of a loaded resource. The data is either a zero-copy view into a mapped {@link AssetPack} or an off-heap
+ * buffer owned by a {@link NativeHeap}, which {@link #close()} frees. The data must not be used after closing.
+ */
+public final class Resource implements AutoCloseable {
+
+    private final String path;
+    private ByteBuffer data;
+    private final NativeHeap owner;
+
+    /**
+     * @param owner heap the data is freed to, null for views the resource does not own
+     */
+    Resource(String path, ByteBuffer data, NativeHeap owner) {
+        this.path = path;
+        this.data = data;
+        this.owner = owner;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public ByteBuffer getData() {
+        if (data == null)
+            throw new IllegalStateException("Resource was already closed: " + path);
+        return data;
+    }
+
+    public int getSize() {
+        return data == null ? 0 : data.remaining();
+    }
+
+    @Override
+    public void close() {
+        if (owner != null && data != null)
+            owner.free(data);
+        data = null;
+    }
+}
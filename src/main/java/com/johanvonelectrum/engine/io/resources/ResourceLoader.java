@@ -1,65 +1,142 @@
 package com.johanvonelectrum.engine.io.resources;
 
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
 import com.johanvonelectrum.engine.shaders.ShaderException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryStack;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 import static org.lwjgl.opengl.GL32.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
 import static org.lwjgl.opengl.GL32.GL_VERTEX_SHADER;
-import static org.lwjgl.stb.STBImage.stbi_load;
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
 
 public class ResourceLoader {
 
     private static final Logger LOGGER = LogManager.getLogger("ResourceLoader");
     private static final ClassLoader CLASS_LOADER = ResourceLoader.class.getClassLoader();
 
+    /**
+     * Owns the data of loaded resources until they are closed.
+     */
+    static final NativeHeap HEAP = NativeMemory.heap("Resources");
+
+    private static volatile AssetPack pack;
+
+    /**
+     * Makes every lookup check the pack before the classpath, which stays as the fallback for resources missing
+     * from it, e.g. during development.
+     */
+    public static void mountPack(Path file) throws IOException {
+        pack = AssetPack.open(file);
+    }
+
+    public static AssetPack getPack() {
+        return pack;
+    }
+
+    public static boolean hasResource(String path) {
+        AssetPack current = pack;
+        return (current != null && current.contains(path)) || CLASS_LOADER.getResource(path) != null;
+    }
+
     public static String loadResourceText(String path) throws IOException {
+        AssetPack current = pack;
+        if (current != null) {
+            String text = current.readText(path);
+            if (text != null)
+                return text;
+        }
+
+        InputStream in = CLASS_LOADER.getResourceAsStream(path);
+        if (in == null)
+            throw new FileNotFoundException(path);
+
         String result;
-        try (InputStream in = CLASS_LOADER.getResourceAsStream(path);
-             Scanner scanner = new Scanner(in, java.nio.charset.StandardCharsets.UTF_8.name())) {
-            result = scanner.useDelimiter("\\A").next();
+        try (Scanner scanner = new Scanner(in, java.nio.charset.StandardCharsets.UTF_8.name())) {
+            result = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
         }
         return result;
     }
 
-    public static Texture loadResourceTexture(String path) throws URISyntaxException, FileNotFoundException {
-        int[] width = new int[1], height = new int[1], nrChannels = new int[1];
+    /**
+     * Opens a resource from the mounted pack or, failing that, reads it from the classpath into an off-heap buffer,
+     * which also works for resources inside jars. Thread-safe.
+     */
+    public static Resource openResource(String path) throws IOException {
+        AssetPack current = pack;
+        if (current != null) {
+            Resource resource = current.open(path);
+            if (resource != null)
+                return resource;
+        }
+
+        InputStream in = CLASS_LOADER.getResourceAsStream(path);
+        if (in == null)
+            throw new FileNotFoundException(path);
+
+        ByteBuffer buffer = HEAP.malloc(16 * 1024);
+        try (ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining())
+                    buffer = HEAP.realloc(buffer, buffer.capacity() * 2);
+            }
+        } catch (IOException e) {
+            HEAP.free(buffer);
+            throw e;
+        }
+        buffer.flip();
+        return new Resource(path, buffer, HEAP);
+    }
 
-        URL resource = CLASS_LOADER.getResource("textures/" + path + ".png");
-        if (resource == null)
-            throw new FileNotFoundException();
-        String filePath = new File(resource.toURI()).toString();
-        LOGGER.trace(filePath);
-        ByteBuffer data = stbi_load(filePath, width, height, nrChannels, 4);
+    /**
+     * Decodes {@code textures/<path>.png} into RGBA pixels. Free the result with {@link Texture#free()}.
+     */
+    public static Texture loadResourceTexture(String path) throws IOException {
+        try (Resource encoded = openResource("textures/" + path + ".png")) {
+            return decodeTexture(encoded.getData(), path);
+        }
+    }
 
-        if (data == null)
-            throw new RuntimeException("Failed to load texture."); //I get this exception.
+    /**
+     * Decodes an encoded image into RGBA pixels. Thread-safe, the buffer is only read.
+     */
+    public static Texture decodeTexture(ByteBuffer encoded, String name) throws IOException {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer width = stack.mallocInt(1), height = stack.mallocInt(1), channels = stack.mallocInt(1);
+            ByteBuffer data = stbi_load_from_memory(encoded, width, height, channels, 4);
+            if (data == null)
+                throw new IOException("Failed to decode texture " + name + ": " + stbi_failure_reason());
 
-        return new Texture(data, width[0], height[0], nrChannels[0]);
+            LOGGER.trace("Decoded {} ({}x{}, {} channels)", name, width.get(0), height.get(0), channels.get(0));
+            return new Texture(data, width.get(0), height.get(0), channels.get(0));
+        }
     }
 
     public static String loadResourceShader(String name, int shader) throws ShaderException, IOException {
-        String extension;
+        return loadResourceText("shaders/" + name + shaderExtension(shader));
+    }
 
+    public static String shaderExtension(int shader) throws ShaderException {
         if (shader == GL_VERTEX_SHADER)
-            extension = ".vs";
+            return ".vs";
         else if (shader == GL_GEOMETRY_SHADER)
-            extension = ".gs";
+            return ".gs";
         else if (shader == GL_FRAGMENT_SHADER)
-            extension = ".fs";
+            return ".fs";
         else
             throw new ShaderException("Incorrect shader type.");
-
-        return loadResourceText("shaders/" + name + extension);
     }
 }
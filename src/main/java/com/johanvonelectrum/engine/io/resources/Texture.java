@@ -1,20 +1,34 @@
 package com.johanvonelectrum.engine.io.resources;
 
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.lwjgl.system.MemoryUtil;
+
 import java.nio.ByteBuffer;
 
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+
+/**
+ * Decoded image owned by stb_image and tracked by the "Images" heap. The pixels live off-heap and must be released
+ * with {@link #free()}.
+ */
 public class Texture {
 
-    private final ByteBuffer buffer;
+    private static final NativeHeap HEAP = NativeMemory.heap("Images");
+
+    private ByteBuffer buffer;
     private final int width, height, channels;
 
     public Texture(ByteBuffer buffer, int width, int height, int channels) {
-        this.buffer = buffer;
+        this.buffer = HEAP.track(buffer);
         this.width = width;
         this.height = height;
         this.channels = channels;
     }
 
     public ByteBuffer getBuffer() {
+        if (buffer == null)
+            throw new IllegalStateException("Texture pixels were already freed.");
         return buffer;
     }
 
@@ -29,4 +43,19 @@ public class Texture {
     public int getChannels() {
         return channels;
     }
+
+    /**
+     * @return size of the decoded pixels in bytes
+     */
+    public long getSize() {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+
+    public void free() {
+        if (buffer != null) {
+            HEAP.untrack(MemoryUtil.memAddress0(buffer));
+            stbi_image_free(buffer);
+            buffer = null;
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package com.johanvonelectrum.engine.io.resources;
+
+/**
+ * Interleaved vertex layouts of baked meshes. Attributes are always position (location 0), normal (1) and texture
+ * coordinates (2).
+ */
+public enum VertexFormat {
+    /**
+     * Full precision: position, normal and uv as floats, 32 bytes per vertex.
+     */
+    FLOAT(32),
+    /**
+     * Quantized: float position, normal packed as {@code GL_INT_2_10_10_10_REV} and uv as half floats, 20 bytes per
+     * vertex.
+     */
+    PACKED(20);
+
+    private final int stride;
+
+    VertexFormat(int stride) {
+        this.stride = stride;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+}
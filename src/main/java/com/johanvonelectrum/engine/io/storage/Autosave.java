@@ -0,0 +1,274 @@
+package com.johanvonelectrum.engine.io.storage;
+
+import java.util.Arrays;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Incremental saving of a {@link WorldStore}. The game marks the chunks it changes and every interval only those
+ * are serialized into one batch and handed to the storage thread; the frame pays for the serialization, the disk
+ * write happens in the background. Not thread-safe, owned by the thread updating the world.
+ * <p>
+ * The chunks of a save stay tracked until the storage thread reports its batch; if it could not be committed, they
+ * are marked dirty again by the next {@link #update} or {@link #saveNow}.
+ */
+public final class Autosave {
+
+    /**
+     * Writes the current state of a chunk, and of the entities in it, to a batch.
+     */
+    @FunctionalInterface
+    public interface ChunkSerializer {
+        void write(long chunk, WriteBatch batch);
+    }
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_SAVES_IN_FLIGHT = 8;
+    private static final int FINAL_SAVE_ATTEMPTS = 3;
+
+    private static final int IDLE = 0;
+    private static final int PENDING = 1;
+    private static final int COMMITTED = 2;
+    private static final int FAILED = 3;
+
+    /**
+     * The chunks of a submitted save. The state is written by the storage thread, everything else by the owner.
+     */
+    private static final class Save implements WriteBatch.Listener {
+
+        long[] chunks = new long[INITIAL_CAPACITY / 2];
+        int count;
+        volatile int state = IDLE;
+
+        @Override
+        public void completed(boolean committed) {
+            state = committed ? COMMITTED : FAILED;
+        }
+    }
+
+    private final WorldStore store;
+    private final ChunkSerializer serializer;
+    private final long interval;
+
+    /**
+     * Open addressing set of the dirty chunks, plus their insertion order so a save does not scan the table.
+     */
+    private long[] table = new long[INITIAL_CAPACITY];
+    private long[] dirty = new long[INITIAL_CAPACITY / 2];
+    private int dirtyCount;
+    private boolean containsEmpty;
+
+    private final Save[] inFlight = new Save[MAX_SAVES_IN_FLIGHT];
+
+    private long nextSave;
+    private long saves;
+    private long savedChunks;
+    private long failedSaves;
+
+    /**
+     * @param interval nanoseconds between saves
+     */
+    public Autosave(WorldStore store, ChunkSerializer serializer, long interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("The autosave interval must be positive: " + interval);
+
+        this.store = store;
+        this.serializer = serializer;
+        this.interval = interval;
+        this.nextSave = System.nanoTime() + interval;
+        Arrays.fill(table, EMPTY);
+        for (int i = 0; i < inFlight.length; i++)
+            inFlight[i] = new Save();
+    }
+
+    /**
+     * Marks a chunk to be saved with the next autosave, see {@link WorldStore#chunkKey(int, int, int)}.
+     */
+    public void markDirty(long chunk) {
+        if (chunk == EMPTY) {
+            if (!containsEmpty) {
+                containsEmpty = true;
+                append(chunk);
+            }
+            return;
+        }
+
+        int mask = table.length - 1;
+        int slot = mix(chunk) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == chunk)
+                return;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = chunk;
+        append(chunk);
+        if (dirtyCount * 2 > table.length)
+            rehash(table.length * 2);
+    }
+
+    private void append(long chunk) {
+        if (dirtyCount == dirty.length)
+            dirty = Arrays.copyOf(dirty, dirty.length * 2);
+        dirty[dirtyCount++] = chunk;
+    }
+
+    private void rehash(int capacity) {
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < dirtyCount; i++) {
+            long chunk = dirty[i];
+            if (chunk == EMPTY)
+                continue;
+            int slot = mix(chunk) & mask;
+            while (table[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            table[slot] = chunk;
+        }
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Saves the dirty chunks once the interval has passed since the last save.
+     *
+     * @param now {@link System#nanoTime()} of the frame
+     */
+    public void update(long now) {
+        reclaim();
+        if (now - nextSave < 0)
+            return;
+
+        nextSave = now + interval;
+        saveNow();
+    }
+
+    /**
+     * Marks the chunks of saves the storage thread failed to commit dirty again, and frees the reported saves.
+     */
+    private void reclaim() {
+        for (Save save : inFlight) {
+            int state = save.state;
+            if (state == FAILED) {
+                failedSaves++;
+                WorldStore.LOGGER.warn("An autosave of {} chunks failed, they are saved again with the next one.",
+                        box(save.count));
+                for (int i = 0; i < save.count; i++)
+                    markDirty(save.chunks[i]);
+            }
+            if (state == COMMITTED || state == FAILED)
+                save.state = IDLE;
+        }
+    }
+
+    private Save idleSave() {
+        for (Save save : inFlight)
+            if (save.state == IDLE)
+                return save;
+        return null;
+    }
+
+    /**
+     * Queues every dirty chunk in one batch. The chunks stay dirty if the storage queue is full or too many saves
+     * are still being written, to be retried by the next save.
+     *
+     * @return false if the batch was not queued
+     */
+    public boolean saveNow() {
+        reclaim();
+        if (dirtyCount == 0)
+            return true;
+
+        int count = dirtyCount;
+        Save save = idleSave();
+        if (save == null) {
+            WorldStore.LOGGER.warn("{} autosaves are still being written, {} dirty chunks are kept for the next save.",
+                    box(inFlight.length), box(count));
+            return false;
+        }
+
+        WriteBatch batch = store.batch();
+        for (int i = 0; i < count; i++)
+            serializer.write(dirty[i], batch);
+
+        if (save.chunks.length < count)
+            save.chunks = new long[dirty.length];
+        System.arraycopy(dirty, 0, save.chunks, 0, count);
+        save.count = count;
+        save.state = PENDING;
+        if (!store.submit(batch.setListener(save))) {
+            save.state = IDLE;
+            WorldStore.LOGGER.warn("The storage queue is full, {} dirty chunks are kept for the next save.", box(count));
+            return false;
+        }
+
+        Arrays.fill(table, EMPTY);
+        containsEmpty = false;
+        dirtyCount = 0;
+        saves++;
+        savedChunks += count;
+        WorldStore.LOGGER.debug("Autosave queued {} chunks.", box(count));
+        return true;
+    }
+
+    /**
+     * Saves every dirty chunk and waits until the storage thread wrote them, for shutdown. Saves that fail are
+     * retried a few times; what still could not be saved is logged.
+     *
+     * @return true if every chunk was saved
+     */
+    public boolean saveAndWait() {
+        for (int attempt = 0; ; attempt++) {
+            store.flush();
+            reclaim();
+            if (dirtyCount == 0)
+                return true;
+            if (attempt == FINAL_SAVE_ATTEMPTS || !store.isRunning()) {
+                WorldStore.LOGGER.error("{} dirty chunks could not be saved and are lost.", box(dirtyCount + unreportedChunks()));
+                return false;
+            }
+            saveNow();
+        }
+    }
+
+    /**
+     * @return chunks of saves still waiting for the storage thread
+     */
+    private int unreportedChunks() {
+        int count = 0;
+        for (Save save : inFlight)
+            if (save.state == PENDING)
+                count += save.count;
+        return count;
+    }
+
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    public long getSaves() {
+        return saves;
+    }
+
+    public long getSavedChunks() {
+        return savedChunks;
+    }
+
+    /**
+     * @return saves the storage thread could not commit, noticed so far
+     */
+    public long getFailedSaves() {
+        return failedSaves;
+    }
+
+    /**
+     * @return nanoseconds between saves
+     */
+    public long getInterval() {
+        return interval;
+    }
+}
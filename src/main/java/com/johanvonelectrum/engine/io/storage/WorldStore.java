@@ -0,0 +1,606 @@
+package com.johanvonelectrum.engine.io.storage;
+
+import com.johanvonelectrum.engine.concurrent.MpmcRingBuffer;
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.lmdb.MDBEnvInfo;
+import org.lwjgl.util.lmdb.MDBStat;
+import org.lwjgl.util.lmdb.MDBVal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.lmdb.LMDB.*;
+
+/**
+ * World persistence in an LMDB file, with one database of chunk blobs and one of entity blobs, both keyed by a
+ * {@code long}. LMDB memory maps the whole file, so reads are served straight from the page cache: a
+ * {@link Reader} hands out buffers that point into the map, without copying or deserializing a page.
+ * <p>
+ * Writes never block the caller. Changes are collected in a {@link WriteBatch} and {@link #submit submitted} to
+ * the storage thread, which commits everything queued since its last commit in a single write transaction, so an
+ * autosave of many chunks costs one fsync. A batch is atomic: it is either committed as a whole or, on failure,
+ * not at all.
+ * <p>
+ * The file never grows past the map size given at startup. When it is full the batch fails and is logged, the
+ * map size must be raised to save more.
+ */
+public final class WorldStore {
+
+    static final Logger LOGGER = LogManager.getLogger("Storage");
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int MAX_BATCHES_PER_COMMIT = 32;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int KEY_BITS = 21;
+    private static final int KEY_BIAS = 1 << (KEY_BITS - 1);
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    private final NativeHeap heap = NativeMemory.heap("Storage");
+    private final Path path;
+    private final long env;
+    private final int chunks;
+    private final int entities;
+
+    private final MpscRingBuffer<WriteBatch> submitted = new MpscRingBuffer<>(QUEUE_CAPACITY);
+    private final MpmcRingBuffer<WriteBatch> free = new MpmcRingBuffer<>(QUEUE_CAPACITY);
+    private final WriteBatch[] pending = new WriteBatch[MAX_BATCHES_PER_COMMIT];
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedBatches = new AtomicLong();
+    private volatile long completedCount;
+
+    private final ThreadLocal<Reader> readers = ThreadLocal.withInitial(this::createReader);
+    private final List<Reader> openReaders = new ArrayList<>();
+
+    /**
+     * Key and value of the storage thread, pointed at the staged records.
+     */
+    private final MDBVal writeKey;
+    private final MDBVal writeData;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean closed;
+
+    private volatile long commits;
+    private volatile long records;
+    private volatile long bytes;
+    private volatile long failedBatches;
+    private volatile long lastCommitNanos;
+    private volatile long maxCommitNanos;
+    private volatile long totalCommitNanos;
+    private volatile long maxLatencyNanos;
+    private volatile long totalLatencyNanos;
+    private volatile long committedBatches;
+
+    /**
+     * Opens or creates the store and starts the storage thread.
+     *
+     * @param mapSize bytes the file can grow to, rounded up to the page size by LMDB
+     * @throws IllegalStateException if the file can not be opened
+     */
+    public WorldStore(Path path, long mapSize) {
+        if (mapSize <= 0)
+            throw new IllegalArgumentException("The map size must be positive: " + mapSize);
+
+        this.path = path.toAbsolutePath();
+        try {
+            Path parent = this.path.getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not create the directory of " + this.path, e);
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pointer = stack.mallocPointer(1);
+            check(mdb_env_create(pointer), "create the environment");
+            this.env = pointer.get(0);
+
+            try {
+                check(mdb_env_set_mapsize(env, mapSize), "set the map size");
+                check(mdb_env_set_maxdbs(env, 2), "set the database count");
+                // NOTLS: read transactions belong to a Reader, not a thread. NOMETASYNC: the meta page is synced
+                // with the next commit, a crash loses at most the last commit, never consistency
+                check(mdb_env_open(env, this.path.toString(), MDB_NOSUBDIR | MDB_NOTLS | MDB_NORDAHEAD | MDB_NOMETASYNC, 0664),
+                        "open " + this.path);
+
+                check(mdb_txn_begin(env, NULL, 0, pointer), "begin a transaction");
+                long txn = pointer.get(0);
+                IntBuffer dbi = stack.mallocInt(1);
+                int code = mdb_dbi_open(txn, "chunks", MDB_CREATE, dbi);
+                int chunks = dbi.get(0);
+                if (code == MDB_SUCCESS)
+                    code = mdb_dbi_open(txn, "entities", MDB_CREATE, dbi);
+                if (code != MDB_SUCCESS) {
+                    mdb_txn_abort(txn);
+                    check(code, "open the databases");
+                }
+                check(mdb_txn_commit(txn), "create the databases");
+                this.chunks = chunks;
+                this.entities = dbi.get(0);
+            } catch (RuntimeException e) {
+                mdb_env_close(env);
+                throw e;
+            }
+        }
+
+        this.writeKey = MDBVal.create(heap.nmalloc(MDBVal.SIZEOF));
+        this.writeData = MDBVal.create(heap.nmalloc(MDBVal.SIZEOF));
+        for (int i = 0; i < QUEUE_CAPACITY / 2; i++)
+            free.offer(new WriteBatch(heap));
+
+        this.thread = new Thread(this::run, "Storage");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        LOGGER.info("Opened {} with a {} MiB map, {} KiB used.", this.path, box(mapSize >> 20), box(getDatabaseSize() >> 10));
+    }
+
+    /**
+     * Packs chunk coordinates into a chunk key, 21 bits per axis. Keys sort by x, then y, then z, so chunks close
+     * in x share pages in the file.
+     */
+    public static long chunkKey(int x, int y, int z) {
+        return ((x + KEY_BIAS) & KEY_MASK) << (2 * KEY_BITS)
+                | ((y + KEY_BIAS) & KEY_MASK) << KEY_BITS
+                | ((z + KEY_BIAS) & KEY_MASK);
+    }
+
+    public static int chunkX(long key) {
+        return (int) ((key >>> (2 * KEY_BITS)) & KEY_MASK) - KEY_BIAS;
+    }
+
+    public static int chunkY(long key) {
+        return (int) ((key >>> KEY_BITS) & KEY_MASK) - KEY_BIAS;
+    }
+
+    public static int chunkZ(long key) {
+        return (int) (key & KEY_MASK) - KEY_BIAS;
+    }
+
+    /**
+     * @return an empty batch, from a pool refilled as the storage thread commits
+     */
+    public WriteBatch batch() {
+        WriteBatch batch = free.poll();
+        return batch != null ? batch : new WriteBatch(heap);
+    }
+
+    /**
+     * Queues a batch to be committed by the storage thread. Thread-safe. The batch belongs to the store afterwards,
+     * even when it was rejected; its {@link WriteBatch.Listener} is told the outcome on the storage thread, or right
+     * away on the calling thread when the batch is empty or rejected.
+     *
+     * @return false if the queue was full and the batch was dropped
+     */
+    public boolean submit(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            complete(batch, true);
+            return true;
+        }
+
+        batch.submitTime = System.nanoTime();
+        if (!submitted.offer(batch)) {
+            rejectedBatches.incrementAndGet();
+            complete(batch, false);
+            return false;
+        }
+        submittedCount.incrementAndGet();
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Waits until every batch submitted before the call was committed or failed.
+     */
+    public void flush() {
+        long target = submittedCount.get();
+        while (completedCount < target && thread.isAlive()) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Tells the listener of a batch whether it was saved and returns the batch to the pool.
+     */
+    private void complete(WriteBatch batch, boolean committed) {
+        try {
+            batch.complete(committed);
+        } catch (RuntimeException e) {
+            LOGGER.error("The listener of a batch failed.", e);
+        }
+        recycle(batch);
+    }
+
+    private void recycle(WriteBatch batch) {
+        batch.clear();
+        if (!free.offer(batch))
+            batch.dispose();
+    }
+
+    private void run() {
+        NativeMemory.attachThread();
+        LOGGER.debug("Storage thread started.");
+        try {
+            while (true) {
+                int count = 0;
+                WriteBatch batch;
+                while (count < pending.length && (batch = submitted.poll()) != null)
+                    pending[count++] = batch;
+
+                if (count == 0) {
+                    if (!running)
+                        break;
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+
+                boolean committed = commit(count);
+                for (int i = 0; i < count; i++) {
+                    complete(pending[i], committed);
+                    pending[i] = null;
+                }
+                completedCount += count;
+            }
+        } catch (Throwable e) {
+            LOGGER.error("The storage thread failed, nothing else will be saved.", e);
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] != null) {
+                    complete(pending[i], false);
+                    pending[i] = null;
+                }
+            }
+        } finally {
+            running = false;
+            NativeMemory.detachThread();
+        }
+    }
+
+    /**
+     * Commits the pending batches in one transaction.
+     *
+     * @return false if the transaction failed and none of the batches was saved
+     */
+    private boolean commit(int count) {
+        long start = System.nanoTime();
+        long txn;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pointer = stack.mallocPointer(1);
+            int code = mdb_txn_begin(env, NULL, 0, pointer);
+            if (code != MDB_SUCCESS) {
+                fail(count, code);
+                return false;
+            }
+            txn = pointer.get(0);
+        }
+
+        int recordCount = 0;
+        long byteCount = 0;
+        for (int i = 0; i < count; i++) {
+            WriteBatch batch = pending[i];
+            int code = apply(txn, batch.records());
+            if (code != MDB_SUCCESS) {
+                mdb_txn_abort(txn);
+                fail(count, code);
+                return false;
+            }
+            recordCount += batch.getRecordCount();
+            byteCount += batch.getValueBytes();
+        }
+
+        int code = mdb_txn_commit(txn);
+        if (code != MDB_SUCCESS) {
+            fail(count, code);
+            return false;
+        }
+
+        long end = System.nanoTime();
+        long duration = end - start;
+        long latency = 0;
+        for (int i = 0; i < count; i++) {
+            long waited = end - pending[i].submitTime;
+            latency += waited;
+            if (waited > maxLatencyNanos)
+                maxLatencyNanos = waited;
+        }
+
+        commits++;
+        committedBatches += count;
+        records += recordCount;
+        bytes += byteCount;
+        lastCommitNanos = duration;
+        totalCommitNanos += duration;
+        totalLatencyNanos += latency;
+        if (duration > maxCommitNanos)
+            maxCommitNanos = duration;
+        return true;
+    }
+
+    /**
+     * Writes the staged records of a batch, pointing the LMDB values into the staging buffer.
+     */
+    private int apply(long txn, ByteBuffer staged) {
+        long base = memAddress(staged);
+        while (staged.hasRemaining()) {
+            int dbi = staged.get() == WriteBatch.CHUNKS ? chunks : entities;
+            int keyOffset = staged.position();
+            staged.position(keyOffset + Long.BYTES);
+            int size = staged.getInt();
+            memPutAddress(writeKey.address() + MDBVal.MV_DATA, base + keyOffset);
+            memPutAddress(writeKey.address() + MDBVal.MV_SIZE, Long.BYTES);
+
+            int code;
+            if (size == WriteBatch.DELETE) {
+                code = mdb_del(txn, dbi, writeKey, null);
+                if (code == MDB_NOTFOUND)
+                    code = MDB_SUCCESS;
+            } else {
+                memPutAddress(writeData.address() + MDBVal.MV_DATA, base + staged.position());
+                memPutAddress(writeData.address() + MDBVal.MV_SIZE, size);
+                code = mdb_put(txn, dbi, writeKey, writeData, 0);
+                staged.position(staged.position() + size);
+            }
+            if (code != MDB_SUCCESS)
+                return code;
+        }
+        return MDB_SUCCESS;
+    }
+
+    private void fail(int count, int code) {
+        failedBatches += count;
+        if (code == MDB_MAP_FULL)
+            LOGGER.error("{} is full, {} batches were not saved. Raise the map size.", path, box(count));
+        else
+            LOGGER.error("Could not save {} batches to {}: {}", box(count), path, mdb_strerror(code));
+    }
+
+    /**
+     * @return the reader of the calling thread, with a read transaction open until it is closed
+     */
+    public Reader read() {
+        if (closed)
+            throw new IllegalStateException("The store is closed.");
+        Reader reader = readers.get();
+        reader.open();
+        return reader;
+    }
+
+    private Reader createReader() {
+        Reader reader = new Reader();
+        synchronized (openReaders) {
+            if (closed)
+                throw new IllegalStateException("The store is closed.");
+            openReaders.add(reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Read transaction of one thread. Sees the store as of {@link WorldStore#read()}, commits made meanwhile are not
+     * visible until it is closed and opened again. Buffers returned while open point into the memory map, they are
+     * big endian, read only and invalid once the reader is closed. Nested {@code read()} calls on the same thread
+     * share the transaction.
+     */
+    public final class Reader implements AutoCloseable {
+
+        private final ByteBuffer key = heap.malloc(Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        private final MDBVal keyValue = MDBVal.create(heap.nmalloc(MDBVal.SIZEOF));
+        private final MDBVal data = MDBVal.create(heap.nmalloc(MDBVal.SIZEOF));
+        private long txn = NULL;
+        private int depth;
+
+        private void open() {
+            if (depth++ > 0)
+                return;
+
+            if (txn == NULL) {
+                try (MemoryStack stack = MemoryStack.stackPush()) {
+                    PointerBuffer pointer = stack.mallocPointer(1);
+                    int code = mdb_txn_begin(env, NULL, MDB_RDONLY, pointer);
+                    if (code != MDB_SUCCESS) {
+                        depth = 0;
+                        check(code, "begin a read transaction");
+                    }
+                    txn = pointer.get(0);
+                }
+            } else {
+                int code = mdb_txn_renew(txn);
+                if (code != MDB_SUCCESS) {
+                    depth = 0;
+                    check(code, "renew a read transaction");
+                }
+            }
+        }
+
+        /**
+         * @return the chunk, or null if it was never saved
+         */
+        public ByteBuffer getChunk(long key) {
+            return get(chunks, key);
+        }
+
+        /**
+         * @return the entity, or null if it was never saved
+         */
+        public ByteBuffer getEntity(long id) {
+            return get(entities, id);
+        }
+
+        private ByteBuffer get(int dbi, long id) {
+            if (depth == 0)
+                throw new IllegalStateException("The reader is closed.");
+
+            key.putLong(0, id);
+            keyValue.mv_data(key);
+            int code = mdb_get(txn, dbi, keyValue, data);
+            if (code == MDB_NOTFOUND)
+                return null;
+            check(code, "read " + id);
+
+            long address = memGetAddress(data.address() + MDBVal.MV_DATA);
+            int size = (int) memGetAddress(data.address() + MDBVal.MV_SIZE);
+            return memByteBuffer(address, size).asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+        }
+
+        /**
+         * Ends the read transaction once the outermost {@code read()} is closed. The transaction is kept for the
+         * next read of this thread.
+         */
+        @Override
+        public void close() {
+            if (depth == 0)
+                throw new IllegalStateException("The reader is not open.");
+            if (--depth == 0)
+                mdb_txn_reset(txn);
+        }
+
+        private void dispose() {
+            if (txn != NULL)
+                mdb_txn_abort(txn);
+            txn = NULL;
+            heap.free(key);
+            heap.nfree(keyValue.address());
+            heap.nfree(data.address());
+        }
+    }
+
+    private static void check(int code, String action) {
+        if (code != MDB_SUCCESS)
+            throw new IllegalStateException("Could not " + action + ": " + mdb_strerror(code));
+    }
+
+    /**
+     * @return bytes of the file in use, the map size bounds it
+     */
+    public long getDatabaseSize() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            MDBEnvInfo info = MDBEnvInfo.mallocStack(stack);
+            MDBStat stat = MDBStat.mallocStack(stack);
+            mdb_env_info(env, info);
+            mdb_env_stat(env, stat);
+            return (info.me_last_pgno() + 1) * stat.ms_psize();
+        }
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return bytes of committed values, without keys and LMDB pages
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return batches that were submitted but could not be committed
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * @return batches dropped because the queue to the storage thread was full
+     */
+    public long getRejectedBatches() {
+        return rejectedBatches.get();
+    }
+
+    /**
+     * @return duration of the last write transaction, from begin to the end of the commit
+     */
+    public long getLastCommitNanos() {
+        return lastCommitNanos;
+    }
+
+    public long getMaxCommitNanos() {
+        return maxCommitNanos;
+    }
+
+    public long getAverageCommitNanos() {
+        long commits = this.commits;
+        return commits == 0 ? 0 : totalCommitNanos / commits;
+    }
+
+    /**
+     * @return longest time from the submission of a batch until it was committed
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    public long getAverageLatencyNanos() {
+        long batches = committedBatches;
+        return batches == 0 ? 0 : totalLatencyNanos / batches;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void report() {
+        LOGGER.info("{} commits of {} records and {} KiB, {} KiB on disk; commits took {} us on average, {} us at most.",
+                box(commits), box(records), box(bytes >> 10), box(getDatabaseSize() >> 10),
+                box(TimeUnit.NANOSECONDS.toMicros(getAverageCommitNanos())), box(TimeUnit.NANOSECONDS.toMicros(maxCommitNanos)));
+        LOGGER.info("Batches were saved {} us after submission on average, {} us at most; {} failed, {} rejected.",
+                box(TimeUnit.NANOSECONDS.toMicros(getAverageLatencyNanos())), box(TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos)),
+                box(failedBatches), box(rejectedBatches.get()));
+    }
+
+    /**
+     * Commits what is queued, stops the storage thread and closes the file. Readers must be closed before, on every
+     * thread.
+     */
+    public void dispose() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (openReaders) {
+            closed = true;
+            for (Reader reader : openReaders)
+                reader.dispose();
+            openReaders.clear();
+        }
+
+        WriteBatch batch;
+        while ((batch = submitted.poll()) != null)
+            complete(batch, false);
+        while ((batch = free.poll()) != null)
+            batch.dispose();
+        heap.nfree(writeKey.address());
+        heap.nfree(writeData.address());
+
+        mdb_env_close(env);
+        LOGGER.debug("Closed {}.", path);
+    }
+}
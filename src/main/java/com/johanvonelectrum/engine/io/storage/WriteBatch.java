@@ -0,0 +1,142 @@
+package com.johanvonelectrum.engine.io.storage;
+
+import com.johanvonelectrum.engine.memory.NativeHeap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Changes to the {@link WorldStore} committed together on the writer thread. Values are copied into a native
+ * staging buffer when they are added, so the caller may reuse or change its data right away; the batch belongs to
+ * the store once {@link WorldStore#submit(WriteBatch) submitted}.
+ * <p>
+ * Records are {@code byte database, long key, int size, bytes}, with a size of -1 for deletions.
+ */
+public final class WriteBatch {
+
+    /**
+     * Told on the storage thread whether a submitted batch was saved, before the batch is reused.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void completed(boolean committed);
+    }
+
+    static final byte CHUNKS = 0;
+    static final byte ENTITIES = 1;
+    static final int DELETE = -1;
+    static final int RECORD_HEADER = 1 + Long.BYTES + Integer.BYTES;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final NativeHeap heap;
+    private ByteBuffer staging;
+    private int records;
+    private int valueBytes;
+    private Listener listener;
+    long submitTime;
+
+    WriteBatch(NativeHeap heap) {
+        this.heap = heap;
+        this.staging = heap.malloc(INITIAL_CAPACITY).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Stores a chunk, see {@link WorldStore#chunkKey(int, int, int)}. The data is copied between its position and
+     * limit, which are left unchanged.
+     */
+    public WriteBatch putChunk(long key, ByteBuffer data) {
+        return put(CHUNKS, key, data);
+    }
+
+    public WriteBatch putEntity(long id, ByteBuffer data) {
+        return put(ENTITIES, id, data);
+    }
+
+    public WriteBatch deleteChunk(long key) {
+        return delete(CHUNKS, key);
+    }
+
+    public WriteBatch deleteEntity(long id) {
+        return delete(ENTITIES, id);
+    }
+
+    /**
+     * Sets the listener told the outcome of this batch once it was submitted. Rejected batches and batches failed
+     * with others committed in the same transaction are reported as not committed.
+     */
+    public WriteBatch setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    private WriteBatch put(byte database, long key, ByteBuffer data) {
+        int size = data.remaining();
+        ensureCapacity(RECORD_HEADER + size);
+        staging.put(database).putLong(key).putInt(size);
+        int position = data.position();
+        staging.put(data);
+        data.position(position);
+        records++;
+        valueBytes += size;
+        return this;
+    }
+
+    private WriteBatch delete(byte database, long key) {
+        ensureCapacity(RECORD_HEADER);
+        staging.put(database).putLong(key).putInt(DELETE);
+        records++;
+        return this;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (staging.remaining() >= bytes)
+            return;
+        int position = staging.position();
+        int capacity = Math.max(staging.capacity() * 2, position + bytes);
+        staging = heap.realloc(staging, capacity).order(ByteOrder.BIG_ENDIAN);
+        staging.clear().position(position);
+    }
+
+    /**
+     * @return the records, between position 0 and the end of the last one
+     */
+    ByteBuffer records() {
+        ByteBuffer records = staging.duplicate().order(ByteOrder.BIG_ENDIAN);
+        records.flip();
+        return records;
+    }
+
+    void complete(boolean committed) {
+        Listener listener = this.listener;
+        this.listener = null;
+        if (listener != null)
+            listener.completed(committed);
+    }
+
+    void clear() {
+        staging.clear();
+        listener = null;
+        records = 0;
+        valueBytes = 0;
+    }
+
+    void dispose() {
+        heap.free(staging);
+    }
+
+    public int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return bytes of the stored values, without keys
+     */
+    public int getValueBytes() {
+        return valueBytes;
+    }
+
+    public boolean isEmpty() {
+        return records == 0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.johanvonelectrum.engine.jobs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable unit of work with explicit dependencies. A job is scheduled once all the jobs it runs {@link #after(Job...)}
+ * have finished, and the same instance is run again every frame, so scheduling does not allocate.
+ */
+public final class Job extends ForkJoinTask<Void> {
+
+    private static final long serialVersionUID = 1L;
+    private static final Job[] NONE = new Job[0];
+    private static final int PREPARED = 0;
+    private static final int SCHEDULED = 1;
+    private static final int CLAIMED = 2;
+
+    private final String name;
+    private final Runnable work;
+    private boolean mainThread;
+
+    private Job[] dependents = NONE;
+    private int dependencyCount;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * A scheduled job can be run by a worker or by a thread waiting on its counter, whoever claims it first. A copy
+     * left in a worker queue by the loser finds it claimed, or not yet scheduled again, and does nothing.
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    private JobSystem system;
+    private JobCounter counter;
+    private boolean prepared;
+
+    public Job(String name, Runnable work) {
+        this.name = name;
+        this.work = work;
+    }
+
+    /**
+     * Pins the job to the thread that owns the {@link JobSystem}, e.g. for GL calls.
+     */
+    public Job onMainThread() {
+        this.mainThread = true;
+        return this;
+    }
+
+    /**
+     * Makes this job wait for the given ones. Dependencies must not change while the job is running.
+     */
+    public Job after(Job... dependencies) {
+        for (Job dependency : dependencies) {
+            dependency.dependents = Arrays.copyOf(dependency.dependents, dependency.dependents.length + 1);
+            dependency.dependents[dependency.dependents.length - 1] = this;
+            dependencyCount++;
+        }
+        return this;
+    }
+
+    void prepare(JobSystem system, JobCounter counter) {
+        // The counter is released from inside run(), so the previous run may not have published its completion yet
+        if (prepared) {
+            while (!isDone())
+                Thread.yield();
+        }
+        prepared = true;
+        reinitialize();
+        this.pending.set(dependencyCount);
+        this.state.set(PREPARED);
+        this.system = system;
+        this.counter = counter;
+    }
+
+    void markScheduled() {
+        state.set(SCHEDULED);
+    }
+
+    /**
+     * Runs the job on the calling thread, unless it was already claimed.
+     *
+     * @return false if another thread runs or ran it
+     */
+    boolean tryRun() {
+        if (!state.compareAndSet(SCHEDULED, CLAIMED))
+            return false;
+        run();
+        quietlyComplete();
+        return true;
+    }
+
+    @Override
+    protected boolean exec() {
+        if (!state.compareAndSet(SCHEDULED, CLAIMED))
+            return false;
+        run();
+        return true;
+    }
+
+    private void run() {
+        try {
+            work.run();
+        } catch (Throwable throwable) {
+            counter.fail(this, throwable);
+        }
+
+        for (Job dependent : dependents) {
+            if (dependent.pending.decrementAndGet() == 0)
+                system.schedule(dependent);
+        }
+        counter.decrement();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isMainThread() {
+        return mainThread;
+    }
+
+    boolean hasDependencies() {
+        return dependencyCount > 0;
+    }
+
+    Job[] getDependents() {
+        return dependents;
+    }
+
+    JobCounter getCounter() {
+        return counter;
+    }
+
+    int getDependencyCount() {
+        return dependencyCount;
+    }
+
+    @Override
+    public Void getRawResult() {
+        return null;
+    }
+
+    @Override
+    protected void setRawResult(Void value) {
+    }
+
+    @Override
+    public String toString() {
+        return "Job{" + name + '}';
+    }
+}
@@ -0,0 +1,96 @@
+package com.johanvonelectrum.engine.jobs;
+
+import com.johanvonelectrum.engine.concurrent.MpmcRingBuffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counts the unfinished jobs of a batch or frame. Counters are meant to be reused: {@link JobGraph} resets its own
+ * counter on every run.
+ */
+public final class JobCounter {
+
+    private static final int HELP_CAPACITY = 256;
+
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile Thread waiter;
+    private volatile Throwable error;
+    private volatile Job failedJob;
+
+    /**
+     * Jobs of this counter scheduled to the workers, that a waiting thread can run itself. Entries may be stale,
+     * jobs that do not fit are left to the workers.
+     */
+    private final MpmcRingBuffer<Job> scheduled = new MpmcRingBuffer<>(HELP_CAPACITY);
+
+    void reset(int count) {
+        remaining.set(count);
+        error = null;
+        failedJob = null;
+    }
+
+    void add(int count) {
+        remaining.addAndGet(count);
+    }
+
+    void decrement() {
+        if (remaining.decrementAndGet() == 0) {
+            Thread thread = waiter;
+            if (thread != null)
+                LockSupport.unpark(thread);
+        }
+    }
+
+    void fail(Job job, Throwable throwable) {
+        if (error == null) {
+            failedJob = job;
+            error = throwable;
+        }
+    }
+
+    void offerHelp(Job job) {
+        scheduled.offer(job);
+    }
+
+    /**
+     * @return false if no scheduled job of this counter was left to run
+     */
+    boolean help() {
+        Job job;
+        while ((job = scheduled.poll()) != null) {
+            if (job.tryRun())
+                return true;
+        }
+        return false;
+    }
+
+    void clearHelp() {
+        while (scheduled.poll() != null)
+            ;
+    }
+
+    void setWaiter(Thread thread) {
+        this.waiter = thread;
+    }
+
+    /**
+     * @throws JobException if any job counted by this counter threw
+     */
+    void rethrow() {
+        Throwable throwable = error;
+        Job job = failedJob;
+        error = null;
+        failedJob = null;
+        if (throwable != null)
+            throw new JobException("Job " + job.getName() + " failed.", throwable);
+    }
+
+    public boolean isDone() {
+        return remaining.get() <= 0;
+    }
+
+    public int getRemaining() {
+        return remaining.get();
+    }
+}
@@ -0,0 +1,10 @@
+package com.johanvonelectrum.engine.jobs;
+
+public class JobException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JobException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
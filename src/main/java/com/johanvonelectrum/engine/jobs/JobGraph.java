@@ -0,0 +1,98 @@
+package com.johanvonelectrum.engine.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed set of dependent jobs that is run as a whole, typically once per frame
+ * (e.g. input -> simulation -> culling -> command recording). The graph is validated on its first run and can not
+ * be modified afterwards.
+ */
+public class JobGraph {
+
+    private final String name;
+    private final List<Job> jobs = new ArrayList<>();
+    private final JobCounter counter = new JobCounter();
+    private Job[] sealed;
+
+    public JobGraph(String name) {
+        this.name = name;
+    }
+
+    public Job add(String name, Runnable work) {
+        return add(new Job(name, work));
+    }
+
+    public Job add(Job job) {
+        if (sealed != null)
+            throw new IllegalStateException("Job graph " + name + " can not be modified after it ran.");
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Schedules every job of the graph. The returned counter is owned by the graph and reset on the next run.
+     */
+    public JobCounter run(JobSystem system) {
+        if (sealed == null)
+            seal();
+        if (!counter.isDone())
+            throw new IllegalStateException("Job graph " + name + " is still running.");
+
+        counter.reset(sealed.length);
+        for (Job job : sealed)
+            job.prepare(system, counter);
+        for (Job job : sealed) {
+            if (!job.hasDependencies())
+                system.schedule(job);
+        }
+        return counter;
+    }
+
+    /**
+     * Runs the graph and helps executing it until every job finished.
+     */
+    public void execute(JobSystem system) {
+        system.waitFor(run(system));
+    }
+
+    private void seal() {
+        Job[] array = jobs.toArray(new Job[0]);
+        checkAcyclic(array);
+        this.sealed = array;
+    }
+
+    private void checkAcyclic(Job[] array) {
+        List<Job> ready = new ArrayList<>();
+        int[] remaining = new int[array.length];
+        for (int i = 0; i < array.length; i++) {
+            remaining[i] = array[i].getDependencyCount();
+            if (remaining[i] == 0)
+                ready.add(array[i]);
+        }
+
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            Job job = ready.remove(ready.size() - 1);
+            visited++;
+            for (Job dependent : job.getDependents()) {
+                int index = jobs.indexOf(dependent);
+                if (index < 0)
+                    throw new IllegalStateException("Job " + dependent.getName() + " depends on " + job.getName() + " but is not part of graph " + name + ".");
+                if (--remaining[index] == 0)
+                    ready.add(dependent);
+            }
+        }
+
+        if (visited != array.length)
+            throw new IllegalStateException("Job graph " + name + " has a dependency cycle.");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+}
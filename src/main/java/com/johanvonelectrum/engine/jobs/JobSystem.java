@@ -0,0 +1,164 @@
+package com.johanvonelectrum.engine.jobs;
+
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Work-stealing job scheduler. Jobs run on a {@link ForkJoinPool}, except those pinned with
+ * {@link Job#onMainThread()}, which are queued for the thread that created the job system. Waiting on a counter
+ * never just blocks: the waiting thread runs pinned jobs and the jobs of that counter that no worker started yet,
+ * never unrelated pool work, until the counter reaches zero.
+ */
+public class JobSystem {
+
+    private static final Logger LOGGER = LogManager.getLogger("JobSystem");
+    private static final int MAIN_THREAD_QUEUE_CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = 50_000L;
+
+    private final ForkJoinPool pool;
+    private final Thread mainThread;
+    private final MpscRingBuffer<Job> mainThreadJobs = new MpscRingBuffer<>(MAIN_THREAD_QUEUE_CAPACITY);
+
+    /**
+     * @param workers worker thread count, 0 to use one less than the available processors
+     */
+    public JobSystem(int workers) {
+        int parallelism = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.mainThread = Thread.currentThread();
+        this.pool = new ForkJoinPool(parallelism, Worker::new, (thread, throwable) -> LOGGER.error("Uncaught exception in " + thread.getName(), throwable), true);
+
+        LOGGER.debug("Started {} job workers.", parallelism);
+    }
+
+    /**
+     * Schedules a standalone job, counted by the given counter. The job must not have dependencies.
+     */
+    public void submit(Job job, JobCounter counter) {
+        if (job.hasDependencies())
+            throw new IllegalArgumentException("Jobs with dependencies must be run through a JobGraph: " + job.getName());
+
+        counter.add(1);
+        job.prepare(this, counter);
+        schedule(job);
+    }
+
+    /**
+     * Runs fire-and-forget background work on the workers. Unlike jobs, the task is not
+     * counted and can not be waited for.
+     */
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    void schedule(Job job) {
+        job.markScheduled();
+        if (job.isMainThread()) {
+            while (!mainThreadJobs.offer(job))
+                Thread.yield();
+            LockSupport.unpark(mainThread);
+        } else {
+            job.getCounter().offerHelp(job);
+            if (ForkJoinTask.getPool() == pool)
+                job.fork();
+            else
+                pool.execute(job);
+        }
+    }
+
+    /**
+     * Runs main thread jobs and the jobs of the counter until it reaches zero.
+     *
+     * @throws JobException if one of the counted jobs threw
+     */
+    public void waitFor(JobCounter counter) {
+        boolean isMainThread = Thread.currentThread() == mainThread;
+        counter.setWaiter(Thread.currentThread());
+        try {
+            while (!counter.isDone()) {
+                if (isMainThread && runMainThreadJob())
+                    continue;
+
+                if (counter.help())
+                    continue;
+                if (!counter.isDone())
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        } finally {
+            counter.setWaiter(null);
+            counter.clearHelp();
+        }
+        counter.rethrow();
+    }
+
+    /**
+     * Runs every pending main thread job without waiting for new ones.
+     */
+    public void runMainThreadJobs() {
+        if (Thread.currentThread() != mainThread)
+            throw new IllegalStateException("Main thread jobs can only run on " + mainThread.getName());
+
+        while (runMainThreadJob())
+            ;
+    }
+
+    private boolean runMainThreadJob() {
+        Job job = mainThreadJobs.poll();
+        if (job == null)
+            return false;
+        job.tryRun();
+        return true;
+    }
+
+    public int getWorkerCount() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return tasks stolen between workers so far, useful to check load balance
+     */
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+
+    public void dispose() {
+        LOGGER.debug("Shutting down job workers...");
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS))
+                LOGGER.warn("Job workers did not finish in time.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Worker thread attached to the native allocator for its whole life.
+     */
+    private static final class Worker extends ForkJoinWorkerThread {
+
+        Worker(ForkJoinPool pool) {
+            super(pool);
+            setName("Job Worker #" + getPoolIndex());
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            NativeMemory.attachThread();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            NativeMemory.detachThread();
+            super.onTermination(exception);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.johanvonelectrum.engine.layers;
+
+import com.johanvonelectrum.engine.JohanEngine;
+import com.johanvonelectrum.engine.Window;
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.graphics.GLStateCache;
+import com.johanvonelectrum.engine.graphics.Graphics;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import com.johanvonelectrum.engine.graphics.RenderCommandBuffer;
+import org.joml.Matrix4f;
+
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Scripted scene of the offscreen benchmark: sprites circling fixed centers, spread over a few textures and layers so
+ * batching and state sorting are exercised. The motion only depends on the frame index, every run renders the same
+ * frames whatever the frame rate. The sprites are recorded as commands, so the scene also runs on the render thread.
+ */
+public class BenchmarkLayer extends Layer {
+
+    private static final int TEXTURES = 4;
+    private static final long SEED = 20210616L;
+    private static final float FRAME_TIME = 1f / 60f;
+
+    private final int sprites;
+    private final float[] centerX, centerY, radius, speed, phase, size;
+    private final int[] colors;
+    private final int[] textures = new int[TEXTURES];
+    private final Matrix4f projection = new Matrix4f();
+
+    private long frame;
+
+    public BenchmarkLayer(String name, int sprites) {
+        super(name);
+        if (sprites < 0)
+            throw new IllegalArgumentException("Sprite count can not be negative: " + sprites);
+
+        this.sprites = sprites;
+        this.centerX = new float[sprites];
+        this.centerY = new float[sprites];
+        this.radius = new float[sprites];
+        this.speed = new float[sprites];
+        this.phase = new float[sprites];
+        this.size = new float[sprites];
+        this.colors = new int[sprites];
+    }
+
+    @Override
+    public Layer init() {
+        Window window = JohanEngine.getWindow();
+        logger.info("Creating a benchmark scene of {} sprites at {}x{}...", sprites, window.getWidth(), window.getHeight());
+        projection.setOrtho2D(0, window.getWidth(), window.getHeight(), 0);
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < sprites; i++) {
+            centerX[i] = random.nextFloat() * window.getWidth();
+            centerY[i] = random.nextFloat() * window.getHeight();
+            radius[i] = 8 + random.nextFloat() * 120;
+            speed[i] = (random.nextBoolean() ? 1 : -1) * (0.5f + random.nextFloat() * 2);
+            phase[i] = random.nextFloat() * (float) (Math.PI * 2);
+            size[i] = 4 + random.nextFloat() * 28;
+            colors[i] = 0x80000000 | (random.nextInt() & 0x00FFFFFF);
+        }
+
+        for (int i = 0; i < TEXTURES; i++)
+            textures[i] = createTexture(0xFF000000 | (0x3F << (i % 3 * 8)), 0xFFFFFFFF);
+
+        return this;
+    }
+
+    private static int createTexture(int dark, int light) {
+        RenderDevice device = Graphics.getDevice();
+        int id = device.createTexture();
+        GLStateCache.bindTexture(0, id);
+        device.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        device.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        device.texImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, 2, 2, GL_RGBA, GL_UNSIGNED_BYTE,
+                new int[] { light, dark, dark, light });
+        return id;
+    }
+
+    @Override
+    public boolean recordsCommands() {
+        return true;
+    }
+
+    @Override
+    public void record(RenderCommandBuffer commands, float deltaTime, float alpha) {
+        float time = frame++ * FRAME_TIME;
+
+        commands.begin(projection);
+        for (int i = 0; i < sprites; i++) {
+            float angle = phase[i] + time * speed[i];
+            float x = centerX[i] + radius[i] * (float) Math.cos(angle);
+            float y = centerY[i] + radius[i] * (float) Math.sin(angle);
+            commands.setLayer(i & 1);
+            commands.draw(textures[i % TEXTURES], x, y, size[i], size[i], 0, 0, 1, 1, colors[i]);
+        }
+        commands.end();
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void render(float deltaTime) {
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void onEvent(Event event) {
+    }
+
+    @Override
+    public void dispose() {
+        for (int texture : textures) {
+            GLStateCache.forgetTexture(texture);
+            Graphics.getDevice().deleteTexture(texture);
+        }
+    }
+}
@@ -2,6 +2,12 @@ package com.johanvonelectrum.engine.layers;
 
 import com.johanvonelectrum.engine.JohanEngine;
 import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventCategory;
+import com.johanvonelectrum.engine.graphics.GLStateCache;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import com.johanvonelectrum.engine.profiling.ProfilerPanel;
+import com.johanvonelectrum.engine.profiling.TextBuffer;
 import imgui.ImGui;
 import imgui.ImGuiIO;
 import imgui.flag.*;
@@ -10,16 +16,32 @@ import imgui.glfw.ImGuiImplGlfw;
 import imgui.type.ImString;
 import org.lwjgl.glfw.GLFW;
 
+import java.util.Arrays;
+
 public class ImGuiLayer extends Layer {
 
+    /**
+     * Seconds between refreshes of the frame metrics, averaged over the interval.
+     */
+    private static final float METRICS_INTERVAL = 0.25f;
+
     private final ImGuiImplGlfw implGlfw = new ImGuiImplGlfw();
     private final ImGuiImplGl3 implGl3 = new ImGuiImplGl3();
+    private final ProfilerPanel profilerPanel = new ProfilerPanel();
 
     ImString str = new ImString(5);
     float[] flt = new float[1];
 
+    private final TextBuffer result = new TextBuffer(32);
+    private final TextBuffer frameTime = new TextBuffer(32);
+    private final TextBuffer fps = new TextBuffer(16);
+    private TextBuffer[] heaps = new TextBuffer[0];
+    private float metricsTime;
+    private int metricsFrames;
+
     public ImGuiLayer(String name) {
         super(name);
+        subscribe(EventCategory.INPUT);
     }
 
     @Override
@@ -65,20 +87,59 @@ public class ImGuiLayer extends Layer {
         ImGui.sameLine();
         ImGui.text("Info panel");
         ImGui.inputText("name", str, ImGuiInputTextFlags.CallbackResize);
-        ImGui.text("Result: " + str.get());
+        ImGui.text(result.clear().append("Result: ").append(str.get()).toString());
         ImGui.sliderFloat("slider", flt, 0, 1);
         ImGui.separator();
         ImGui.text("Game metrics");
-        ImGui.text("Frame time: " + deltaTime);
-        ImGui.text("FPS: " + 1 / deltaTime);
+        updateMetrics(deltaTime);
+        ImGui.text(frameTime.toString());
+        ImGui.text(fps.toString());
+        ImGui.separator();
+        ImGui.text("Native memory");
+        for (TextBuffer heap : heaps)
+            ImGui.text(heap.toString());
 
         ImGui.end();
+
+        profilerPanel.draw();
+    }
+
+    private void updateMetrics(float deltaTime) {
+        metricsTime += deltaTime;
+        metricsFrames++;
+        if (metricsTime < METRICS_INTERVAL && fps.length() > 0)
+            return;
+
+        float average = metricsTime / metricsFrames;
+        frameTime.clear().append("Frame time: ").append(average * 1000, 3).append(" ms");
+        fps.clear().append("FPS: ").append(1 / average, 0);
+        updateHeaps();
+        metricsTime = 0;
+        metricsFrames = 0;
+    }
+
+    private void updateHeaps() {
+        int count = NativeMemory.getHeapCount();
+        if (heaps.length != count) {
+            int from = heaps.length;
+            heaps = Arrays.copyOf(heaps, count);
+            for (int i = from; i < count; i++)
+                heaps[i] = new TextBuffer(64);
+        }
+
+        for (int i = 0; i < count; i++) {
+            NativeHeap heap = NativeMemory.getHeap(i);
+            heaps[i].clear().append(heap.getName()).append(": ")
+                    .append(heap.getBytes() / 1024.0, 1).append(" KiB in ").append(heap.getBlockCount())
+                    .append(" blocks, peak ").append(heap.getPeakBytes() / 1024.0, 1).append(" KiB");
+        }
     }
 
     @Override
     public void end() {
         ImGui.render();
         implGl3.renderDrawData(ImGui.getDrawData());
+        GLStateCache.invalidate();
 
         if (ImGui.getIO().hasConfigFlags(ImGuiConfigFlags.ViewportsEnable)) {
             final long backupWindowPtr = GLFW.glfwGetCurrentContext();
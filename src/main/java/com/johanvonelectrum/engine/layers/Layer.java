@@ -1,13 +1,21 @@
 package com.johanvonelectrum.engine.layers;
 
 import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventCategory;
+import com.johanvonelectrum.engine.graphics.RenderCommandBuffer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class Layer {
 
     protected final Logger logger;
 
+    private final List<Class<? extends Event>> subscribedTypes = new ArrayList<>();
+    private int subscribedCategories = EventCategory.NONE;
+
     public abstract Layer init();
     public abstract void begin();
     public abstract void render(float deltaTime);
@@ -18,4 +26,79 @@ public abstract class Layer {
     public Layer(String name) {
         logger = LogManager.getLogger(name);
     }
+
+    /**
+     * Called at the fixed simulation rate, possibly several times (or none) per rendered frame.
+     *
+     * @param fixedDeltaTime tick duration in seconds
+     */
+    public void update(float fixedDeltaTime) {
+    }
+
+    /**
+     * Layers returning true are updated on job workers, in parallel with the other layers. They must not touch GL
+     * or state owned by other layers from {@link #update(float)}.
+     */
+    public boolean isParallel() {
+        return false;
+    }
+
+    /**
+     * Variable rate render call.
+     *
+     * @param alpha interpolation factor between the previous and the current simulation tick
+     */
+    public void render(float deltaTime, float alpha) {
+        render(deltaTime);
+    }
+
+    /**
+     * Layers returning true draw by recording commands in {@link #record(RenderCommandBuffer, float, float)} instead
+     * of calling GL from {@link #begin()}, {@link #render(float, float)} and {@link #end()}, which are then not called.
+     * Recording runs on job workers, in parallel with the other layers, and the commands are executed on the GL
+     * thread, a frame later when there is a render thread. Only these layers are drawn with a render thread.
+     */
+    public boolean recordsCommands() {
+        return false;
+    }
+
+    /**
+     * Records the draw commands of the frame. Must not touch GL or state owned by other layers.
+     *
+     * @param commands empty buffer of this layer, executed after the commands of the layers below it
+     */
+    public void record(RenderCommandBuffer commands, float deltaTime, float alpha) {
+    }
+
+    /**
+     * Only events of the given class (or its subclasses) will reach {@link #onEvent(Event)}. Subscriptions must be
+     * declared before the layer is added to a {@link LayerStack}.
+     */
+    protected final Layer subscribe(Class<? extends Event> type) {
+        subscribedTypes.add(type);
+        return this;
+    }
+
+    /**
+     * Only events in any of the given {@link EventCategory} flags will reach {@link #onEvent(Event)}.
+     */
+    protected final Layer subscribe(int categories) {
+        subscribedCategories |= categories;
+        return this;
+    }
+
+    /**
+     * Layers that never subscribe receive every event.
+     */
+    public boolean isSubscribed(Class<? extends Event> type, int categories) {
+        if (subscribedTypes.isEmpty() && subscribedCategories == EventCategory.NONE)
+            return true;
+        if ((subscribedCategories & categories) != 0)
+            return true;
+        for (Class<? extends Event> subscribed : subscribedTypes) {
+            if (subscribed.isAssignableFrom(type))
+                return true;
+        }
+        return false;
+    }
 }
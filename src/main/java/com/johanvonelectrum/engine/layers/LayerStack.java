@@ -2,17 +2,72 @@ package com.johanvonelectrum.engine.layers;
 
 import com.johanvonelectrum.engine.events.Event;
 import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.graphics.RenderCommandBuffer;
+import com.johanvonelectrum.engine.graphics.RenderFrame;
+import com.johanvonelectrum.engine.graphics.Renderer;
+import com.johanvonelectrum.engine.jobs.Job;
+import com.johanvonelectrum.engine.jobs.JobCounter;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import com.johanvonelectrum.engine.profiling.Profiler;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.function.Consumer;
 
 public class LayerStack {
 
-    private List<Layer> layers = new LinkedList<>();
+    private static final Layer[][] EMPTY_TABLE = new Layer[0][];
+    private static final Job[] NO_JOBS = new Job[0];
+    private static final int[] NO_SCOPES = new int[0];
+
+    private final List<Layer> layers = new ArrayList<>();
+    private final Consumer<Event> dispatcher = this::onEvent;
+
+    /**
+     * Subscribed layers per event type id, in propagation order. Rows are filled the first time a type is seen and
+     * the whole table is dropped when layers are added or removed.
+     */
+    private Layer[][] dispatchTable = EMPTY_TABLE;
+
+    /**
+     * Update jobs of the parallel layers, rebuilt together with the dispatch table.
+     */
+    private Job[] updateJobs;
+    private final JobCounter updateCounter = new JobCounter();
+    private float tickDelta;
+
+    /**
+     * Record jobs of the layers recording commands, rebuilt together with the dispatch table.
+     */
+    private Job[] recordJobs;
+    private final JobCounter recordCounter = new JobCounter();
+    private RenderFrame recordFrame;
+    private float recordDelta;
+    private float recordAlpha;
+
+    /**
+     * Profiler scopes of each layer: begin, render, end, the whole layer and record.
+     */
+    private int[] renderScopes = NO_SCOPES;
 
     public void add(Layer layer) {
         layers.add(layer);
+        invalidate();
+    }
+
+    public boolean remove(Layer layer) {
+        if (!layers.remove(layer))
+            return false;
+        invalidate();
+        return true;
+    }
+
+    private void invalidate() {
+        dispatchTable = EMPTY_TABLE;
+        updateJobs = null;
+        recordJobs = null;
+        renderScopes = NO_SCOPES;
     }
 
     public void init() {
@@ -22,12 +77,11 @@ public class LayerStack {
     }
 
     public void handle(EventSystem eventSystem) {
-        while (!eventSystem.isEmpty())
-            onEvent(eventSystem.pop());
+        eventSystem.drain(dispatcher);
     }
 
     private void onEvent(Event event) {
-        for (Layer layer : layers) {
+        for (Layer layer : handlersOf(event)) {
             if (event.isHandled())
                 break;
 
@@ -35,14 +89,178 @@ public class LayerStack {
         }
     }
 
-    public void render(float deltaTime) {
-        ListIterator<Layer> layerStack = layers.listIterator(layers.size());
-        while (layerStack.hasPrevious()) {
-            Layer layer = layerStack.previous();
+    private Layer[] handlersOf(Event event) {
+        int typeId = event.getTypeId();
+        if (typeId >= dispatchTable.length)
+            dispatchTable = Arrays.copyOf(dispatchTable, Math.max(typeId + 1, Event.getTypeCount()));
+
+        Layer[] handlers = dispatchTable[typeId];
+        if (handlers == null) {
+            Class<? extends Event> type = event.getClass();
+            int categories = event.getCategories();
+
+            List<Layer> subscribed = new ArrayList<>();
+            for (Layer layer : layers) {
+                if (layer.isSubscribed(type, categories))
+                    subscribed.add(layer);
+            }
+            handlers = subscribed.toArray(new Layer[0]);
+            dispatchTable[typeId] = handlers;
+        }
+        return handlers;
+    }
+
+    public void update(float fixedDeltaTime) {
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).update(fixedDeltaTime);
+        }
+    }
+
+    /**
+     * Updates the parallel layers on the job workers while the calling thread updates the others in order, then
+     * helps until every layer is done.
+     */
+    public void update(float fixedDeltaTime, JobSystem jobSystem) {
+        if (updateJobs == null)
+            updateJobs = createUpdateJobs();
+        if (updateJobs.length == 0) {
+            update(fixedDeltaTime);
+            return;
+        }
+
+        tickDelta = fixedDeltaTime;
+        for (Job job : updateJobs)
+            jobSystem.submit(job, updateCounter);
+
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (!layer.isParallel())
+                layer.update(fixedDeltaTime);
+        }
+
+        jobSystem.waitFor(updateCounter);
+    }
+
+    private Job[] createUpdateJobs() {
+        List<Job> jobs = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer.isParallel())
+                jobs.add(new Job(layer.getClass().getSimpleName(), () -> layer.update(tickDelta)));
+        }
+        return jobs.isEmpty() ? NO_JOBS : jobs.toArray(NO_JOBS);
+    }
+
+    /**
+     * Records the commands of every layer that {@link Layer#recordsCommands() records commands} into its buffer of
+     * the frame, on the job workers, and waits for them. The frame must be prepared with one buffer per layer.
+     */
+    public void record(RenderFrame frame, float deltaTime, float alpha, JobSystem jobSystem) {
+        if (recordJobs == null)
+            recordJobs = createRecordJobs();
+        if (recordJobs.length == 0)
+            return;
+        if (frame.getBufferCount() != layers.size())
+            throw new IllegalArgumentException("The frame has " + frame.getBufferCount() + " buffers for " + layers.size() + " layers.");
+
+        recordFrame = frame;
+        recordDelta = deltaTime;
+        recordAlpha = alpha;
+        for (Job job : recordJobs)
+            jobSystem.submit(job, recordCounter);
+        jobSystem.waitFor(recordCounter);
+        recordFrame = null;
+    }
+
+    private Job[] createRecordJobs() {
+        if (renderScopes.length != layers.size() * 5)
+            renderScopes = createRenderScopes();
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            int index = i;
+            int scope = renderScopes[i * 5 + 4];
+            if (layer.recordsCommands()) {
+                jobs.add(new Job(layer.getClass().getSimpleName(), () -> {
+                    Profiler.begin(scope);
+                    layer.record(recordFrame.getCommands(index), recordDelta, recordAlpha);
+                    Profiler.end(scope);
+                }));
+            }
+        }
+        return jobs.isEmpty() ? NO_JOBS : jobs.toArray(NO_JOBS);
+    }
+
+    /**
+     * @return true if any layer {@link Layer#recordsCommands() records commands}
+     */
+    public boolean recordsCommands() {
+        if (recordJobs == null)
+            recordJobs = createRecordJobs();
+        return recordJobs.length > 0;
+    }
+
+    public int size() {
+        return layers.size();
+    }
+
+    public void render(float deltaTime, float alpha) {
+        render(deltaTime, alpha, null, null);
+    }
+
+    /**
+     * Draws every layer in order on the GL thread: layers recording commands execute their buffer of the frame
+     * through the renderer, the others render immediately.
+     */
+    public void render(float deltaTime, float alpha, RenderFrame frame, Renderer renderer) {
+        if (renderScopes.length != layers.size() * 5)
+            renderScopes = createRenderScopes();
+
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            int scopes = i * 5;
+            Profiler.begin(renderScopes[scopes + 3]);
+            Profiler.beginGpu(renderScopes[scopes + 3]);
+
+            if (layer.recordsCommands()) {
+                if (frame == null)
+                    throw new IllegalStateException(layer.getClass().getSimpleName() + " records commands, a frame is needed to render it.");
+                RenderCommandBuffer commands = frame.getCommands(i);
+                if (!commands.isEmpty())
+                    commands.execute(renderer);
+                Profiler.endGpu();
+                Profiler.end(renderScopes[scopes + 3]);
+                continue;
+            }
+
+            Profiler.begin(renderScopes[scopes]);
             layer.begin();
-            layer.render(deltaTime);
+            Profiler.end(renderScopes[scopes]);
+
+            Profiler.begin(renderScopes[scopes + 1]);
+            layer.render(deltaTime, alpha);
+            Profiler.end(renderScopes[scopes + 1]);
+
+            Profiler.begin(renderScopes[scopes + 2]);
             layer.end();
+            Profiler.end(renderScopes[scopes + 2]);
+
+            Profiler.endGpu();
+            Profiler.end(renderScopes[scopes + 3]);
+        }
+    }
+
+    private int[] createRenderScopes() {
+        int[] scopes = new int[layers.size() * 5];
+        for (int i = 0; i < layers.size(); i++) {
+            String name = layers.get(i).getClass().getSimpleName();
+            scopes[i * 5] = Profiler.scope(name + ".begin");
+            scopes[i * 5 + 1] = Profiler.scope(name + ".render");
+            scopes[i * 5 + 2] = Profiler.scope(name + ".end");
+            scopes[i * 5 + 3] = Profiler.scope(name);
+            scopes[i * 5 + 4] = Profiler.scope(name + ".record");
         }
+        return scopes;
     }
 
     public void dispose() {
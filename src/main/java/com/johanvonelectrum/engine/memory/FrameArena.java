@@ -0,0 +1,167 @@
+package com.johanvonelectrum.engine.memory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bump allocator for transient data that only lives until the end of the frame: vertices, uniforms and commands
+ * staged for the GPU. Allocating is an aligned pointer bump and {@link #reset()} releases everything at once, so
+ * the frame loop never calls {@code malloc} or {@code free}.
+ * <p>
+ * Requests that do not fit get their own block from the heap and are freed at the next reset, which then grows the
+ * arena to the frame's high water mark. Allocating is thread-safe, so the jobs recording one frame can share its
+ * arena; {@link #reset()} and {@link #dispose()} belong to the thread owning the frame, while nothing allocates.
+ */
+public final class FrameArena {
+
+    public static final int DEFAULT_ALIGNMENT = 16;
+
+    private static final Logger LOGGER = LogManager.getLogger("FrameArena");
+
+    private final NativeHeap heap;
+    private long address;
+    private long capacity;
+    private final AtomicLong offset = new AtomicLong();
+
+    private long[] overflowBlocks = new long[4];
+    private int overflowCount;
+    private long overflowBytes;
+
+    private long peak;
+    private long overflows;
+
+    public FrameArena(NativeHeap heap, long capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Frame arena capacity must be positive: " + capacity);
+        this.heap = heap;
+        this.capacity = capacity;
+        this.address = heap.nmalloc(capacity);
+    }
+
+    /**
+     * @return address of {@code size} bytes aligned to {@value #DEFAULT_ALIGNMENT}, valid until the next reset
+     */
+    public long allocate(long size) {
+        return allocate(size, DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * @param alignment power of two
+     * @return address of {@code size} uninitialized bytes, valid until the next reset
+     */
+    public long allocate(long size, int alignment) {
+        if (size < 0 || Integer.bitCount(alignment) != 1)
+            throw new IllegalArgumentException("Invalid frame allocation of " + size + " bytes aligned to " + alignment);
+
+        long mask = alignment - 1;
+        while (true) {
+            long current = offset.get();
+            long start = (address + current + mask) & ~mask;
+            long end = start - address + size;
+            if (end > capacity)
+                return allocateOverflow(size, mask);
+            if (offset.compareAndSet(current, end))
+                return start;
+        }
+    }
+
+    private synchronized long allocateOverflow(long size, long mask) {
+        if (overflowCount == overflowBlocks.length)
+            overflowBlocks = Arrays.copyOf(overflowBlocks, overflowCount * 2);
+
+        long block = heap.nmalloc(size + mask);
+        overflowBlocks[overflowCount++] = block;
+        overflowBytes += size + mask;
+        return (block + mask) & ~mask;
+    }
+
+    /**
+     * Wraps a frame allocation in a buffer. The buffer object itself lives on the Java heap, the raw
+     * {@link #allocate(long)} does not allocate at all.
+     */
+    public ByteBuffer malloc(int size) {
+        return MemoryUtil.memByteBuffer(allocate(size), size);
+    }
+
+    public ByteBuffer calloc(int size) {
+        long block = allocate(size);
+        MemoryUtil.memSet(block, 0, size);
+        return MemoryUtil.memByteBuffer(block, size);
+    }
+
+    public FloatBuffer mallocFloat(int count) {
+        return MemoryUtil.memFloatBuffer(allocate((long) count * Float.BYTES), count);
+    }
+
+    public IntBuffer mallocInt(int count) {
+        return MemoryUtil.memIntBuffer(allocate((long) count * Integer.BYTES), count);
+    }
+
+    /**
+     * Releases every allocation of the frame. Memory handed out before must not be used anymore.
+     */
+    public synchronized void reset() {
+        long used = getUsed();
+        if (used > peak)
+            peak = used;
+
+        if (overflowCount > 0) {
+            freeOverflow();
+            overflows++;
+
+            // Grows to the high water mark, with some headroom, so the next frames fit
+            long grown = Math.max(capacity * 2, used + used / 4);
+            LOGGER.debug("Frame arena overflowed with {} bytes, growing from {} to {} bytes.", used, capacity, grown);
+            heap.nfree(address);
+            address = heap.nmalloc(grown);
+            capacity = grown;
+        }
+        offset.set(0);
+    }
+
+    private void freeOverflow() {
+        for (int i = 0; i < overflowCount; i++)
+            heap.nfree(overflowBlocks[i]);
+        overflowCount = 0;
+        overflowBytes = 0;
+    }
+
+    /**
+     * @return bytes allocated this frame, including overflow blocks
+     */
+    public synchronized long getUsed() {
+        return offset.get() + overflowBytes;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return most bytes used by a single frame
+     */
+    public long getPeak() {
+        return peak;
+    }
+
+    /**
+     * @return frames that did not fit in the arena
+     */
+    public long getOverflows() {
+        return overflows;
+    }
+
+    public synchronized void dispose() {
+        freeOverflow();
+        heap.nfree(address);
+        address = MemoryUtil.NULL;
+        capacity = 0;
+    }
+}
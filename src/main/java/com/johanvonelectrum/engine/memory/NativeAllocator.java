@@ -0,0 +1,37 @@
+package com.johanvonelectrum.engine.memory;
+
+/**
+ * Allocator behind {@link org.lwjgl.system.MemoryUtil}, and so behind every {@link NativeHeap}, the
+ * {@link org.lwjgl.system.MemoryStack} and stb_image.
+ */
+public enum NativeAllocator {
+
+    /**
+     * The C runtime {@code malloc}.
+     */
+    SYSTEM("system"),
+
+    /**
+     * The bundled jemalloc, LWJGL's default when the module is present.
+     */
+    JEMALLOC("jemalloc"),
+
+    /**
+     * The bundled rpmalloc. Every thread must be attached with {@link NativeMemory#attachThread()} before it
+     * allocates.
+     */
+    RPMALLOC("rpmalloc");
+
+    private final String configName;
+
+    NativeAllocator(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * @return the value of {@link org.lwjgl.system.Configuration#MEMORY_ALLOCATOR} selecting this allocator
+     */
+    public String getConfigName() {
+        return configName;
+    }
+}
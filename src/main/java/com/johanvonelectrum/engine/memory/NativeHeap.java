@@ -0,0 +1,202 @@
+package com.johanvonelectrum.engine.memory;
+
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Long-lived native memory of one subsystem, allocated from the {@link NativeAllocator} selected at startup. Every
+ * live allocation is tracked, so the heap knows its size and peak and can report what was never freed. Tracking
+ * costs a map insertion per allocation, heaps are not meant for per-frame memory, that is what the
+ * {@link FrameArena} is for. Thread-safe.
+ */
+public final class NativeHeap {
+
+    private static final int MAX_REPORTED_SITES = 16;
+
+    private final String name;
+    private final Map<Long, Allocation> live = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+
+    NativeHeap(String name) {
+        this.name = name;
+    }
+
+    public ByteBuffer malloc(int size) {
+        return track(MemoryUtil.memAlloc(size));
+    }
+
+    public ByteBuffer calloc(int size) {
+        return track(MemoryUtil.memCalloc(size));
+    }
+
+    /**
+     * Resizes a buffer of this heap. The old buffer must not be used afterwards.
+     */
+    public ByteBuffer realloc(ByteBuffer buffer, int size) {
+        long address = MemoryUtil.memAddress0(buffer);
+        // Untracked first: the allocator may hand the freed address to another thread before realloc returns
+        Allocation allocation = remove(address);
+        ByteBuffer resized;
+        try {
+            resized = MemoryUtil.memRealloc(buffer, size);
+        } catch (RuntimeException | Error e) {
+            retrack(address, allocation);
+            throw e;
+        }
+        if (resized == null) {
+            retrack(address, allocation);
+            throw new OutOfMemoryError(name + " could not resize the block at 0x" + Long.toHexString(address) + " to " + size + " bytes.");
+        }
+        return track(resized);
+    }
+
+    public void free(ByteBuffer buffer) {
+        if (buffer == null)
+            return;
+        untrack(MemoryUtil.memAddress0(buffer));
+        MemoryUtil.memFree(buffer);
+    }
+
+    /**
+     * @return address of a new block, never {@link MemoryUtil#NULL}
+     */
+    public long nmalloc(long size) {
+        long address = MemoryUtil.nmemAllocChecked(size);
+        track(address, size);
+        return address;
+    }
+
+    public void nfree(long address) {
+        if (address == NULL)
+            return;
+        untrack(address);
+        MemoryUtil.nmemFree(address);
+    }
+
+    /**
+     * Starts tracking memory allocated elsewhere, such as by a native library, that this subsystem now owns.
+     *
+     * @return the same buffer
+     */
+    public ByteBuffer track(ByteBuffer buffer) {
+        track(MemoryUtil.memAddress0(buffer), buffer.capacity());
+        return buffer;
+    }
+
+    public void track(long address, long size) {
+        if (live.put(address, new Allocation(size, NativeMemory.isTrackingSites() ? new Throwable("Allocated by " + name) : null)) != null)
+            throw new IllegalStateException(name + " already tracks the block at 0x" + Long.toHexString(address));
+
+        allocations.incrementAndGet();
+        long current = bytes.addAndGet(size);
+        long max;
+        while (current > (max = peak.get()) && !peak.compareAndSet(max, current)) {
+            // Retry until the peak is at least the current size
+        }
+    }
+
+    /**
+     * Stops tracking a block that is about to be freed.
+     *
+     * @throws IllegalStateException if the block does not belong to this heap, or was already freed
+     */
+    public void untrack(long address) {
+        remove(address);
+    }
+
+    private Allocation remove(long address) {
+        Allocation allocation = live.remove(address);
+        if (allocation == null)
+            throw new IllegalStateException(name + " does not own the block at 0x" + Long.toHexString(address) + ", was it freed twice?");
+        bytes.addAndGet(-allocation.size);
+        return allocation;
+    }
+
+    /**
+     * Restores the tracking of a block whose resize failed, so it still belongs to this heap.
+     */
+    private void retrack(long address, Allocation allocation) {
+        live.put(address, allocation);
+        bytes.addAndGet(allocation.size);
+    }
+
+    /**
+     * Logs every block still allocated.
+     *
+     * @return number of leaked blocks
+     */
+    int reportLeaks(Logger logger) {
+        int leaks = live.size();
+        if (leaks == 0)
+            return 0;
+
+        logger.warn("{}: {} blocks, {} bytes, were never freed.", name, leaks, bytes.get());
+        int reported = 0;
+        for (Iterator<Map.Entry<Long, Allocation>> iterator = live.entrySet().iterator();
+             iterator.hasNext() && reported < MAX_REPORTED_SITES; reported++) {
+            Map.Entry<Long, Allocation> leak = iterator.next();
+            String block = "Leaked " + leak.getValue().size + " bytes at 0x" + Long.toHexString(leak.getKey());
+            if (leak.getValue().site != null)
+                logger.warn(block, leak.getValue().site);
+            else
+                logger.warn(block);
+        }
+        if (leaks > reported)
+            logger.warn("{} more leaks in {} not listed.", leaks - reported, name);
+        return leaks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return bytes currently allocated
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getPeakBytes() {
+        return peak.get();
+    }
+
+    /**
+     * @return blocks currently allocated
+     */
+    public int getBlockCount() {
+        return live.size();
+    }
+
+    /**
+     * @return blocks allocated since startup
+     */
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+    private static final class Allocation {
+
+        final long size;
+
+        /**
+         * Where the block was allocated, only recorded in memory debug mode.
+         */
+        final Throwable site;
+
+        Allocation(long size, Throwable site) {
+            this.size = size;
+            this.site = site;
+        }
+    }
+}
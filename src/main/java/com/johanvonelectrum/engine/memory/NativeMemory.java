@@ -0,0 +1,108 @@
+package com.johanvonelectrum.engine.memory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.rpmalloc.RPmalloc.rpmalloc_thread_finalize;
+import static org.lwjgl.system.rpmalloc.RPmalloc.rpmalloc_thread_initialize;
+
+/**
+ * Native memory of the engine. Selects the allocator used by LWJGL, which must happen before anything allocates,
+ * and keeps the {@link NativeHeap} of every subsystem to report their usage and leaks.
+ */
+public final class NativeMemory {
+
+    private static final Logger LOGGER = LogManager.getLogger("NativeMemory");
+
+    private static final List<NativeHeap> heaps = new ArrayList<>();
+    private static volatile NativeAllocator allocator;
+    private static volatile boolean trackingSites;
+
+    private NativeMemory() {
+    }
+
+    /**
+     * Selects the allocator. Must be called before the first native allocation, LWJGL picks its allocator once.
+     *
+     * @param debug records where every heap block is allocated and enables LWJGL's debug allocator, which also
+     *              reports leaks of memory allocated outside the heaps
+     */
+    public static void configure(NativeAllocator allocator, boolean debug) {
+        Configuration.MEMORY_ALLOCATOR.set(allocator.getConfigName());
+        if (debug)
+            Configuration.DEBUG_MEMORY_ALLOCATOR.set(true);
+        NativeMemory.allocator = allocator;
+        NativeMemory.trackingSites = debug;
+
+        LOGGER.debug("Native memory allocator: {}", MemoryUtil.getAllocator().getClass().getSimpleName());
+    }
+
+    /**
+     * Prepares the calling thread to allocate, required by rpmalloc for every thread but the one that configured it.
+     */
+    public static void attachThread() {
+        if (allocator == NativeAllocator.RPMALLOC)
+            rpmalloc_thread_initialize();
+    }
+
+    /**
+     * Releases the allocator caches of a thread about to finish.
+     */
+    public static void detachThread() {
+        if (allocator == NativeAllocator.RPMALLOC)
+            rpmalloc_thread_finalize();
+    }
+
+    /**
+     * @return a new heap for the named subsystem
+     */
+    public static synchronized NativeHeap heap(String name) {
+        NativeHeap heap = new NativeHeap(name);
+        heaps.add(heap);
+        return heap;
+    }
+
+    /**
+     * @return a copy of the heaps, in creation order
+     */
+    public static synchronized List<NativeHeap> getHeaps() {
+        return new ArrayList<>(heaps);
+    }
+
+    public static synchronized int getHeapCount() {
+        return heaps.size();
+    }
+
+    public static synchronized NativeHeap getHeap(int index) {
+        return heaps.get(index);
+    }
+
+    static boolean isTrackingSites() {
+        return trackingSites;
+    }
+
+    /**
+     * Logs the memory still held by every heap, call once everything was disposed.
+     *
+     * @return number of leaked blocks
+     */
+    public static synchronized int reportLeaks() {
+        int leaks = 0;
+        long peak = 0;
+        for (NativeHeap heap : heaps) {
+            leaks += heap.reportLeaks(LOGGER);
+            peak += heap.getPeakBytes();
+        }
+
+        if (leaks == 0)
+            LOGGER.debug("No native memory leaks, heaps peaked at {} bytes in total.", peak);
+        else if (!trackingSites)
+            LOGGER.warn("Run with --memory-debug to see where the leaked blocks were allocated.");
+        return leaks;
+    }
+}
@@ -0,0 +1,112 @@
+package com.johanvonelectrum.engine.net;
+
+import com.johanvonelectrum.engine.concurrent.MpmcRingBuffer;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers of a fixed size, reused instead of freed. Buffers are allocated from a {@link NativeHeap} the first
+ * time the pool runs dry and go back to a lock-free free list on {@link #release(ByteBuffer)}, so sending and
+ * receiving does not allocate once the pool is warm. Buffers are big endian. Thread-safe.
+ */
+public final class BufferPool {
+
+    private static final Logger LOGGER = LogManager.getLogger("BufferPool");
+
+    private final NativeHeap heap;
+    private final int bufferSize;
+    private final MpmcRingBuffer<ByteBuffer> free;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity buffers kept in the free list, extra buffers released to the pool are freed
+     */
+    public BufferPool(NativeHeap heap, int bufferSize, int capacity) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+
+        this.heap = heap;
+        this.bufferSize = bufferSize;
+        this.free = new MpmcRingBuffer<>(capacity);
+    }
+
+    /**
+     * Fills the free list, so the first packets do not allocate.
+     */
+    public BufferPool preallocate(int count) {
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = allocate();
+            if (!free.offer(buffer)) {
+                destroy(buffer);
+                break;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return a cleared buffer, owned by the caller until it is released
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return allocate();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize)
+            throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes does not belong to a pool of " + bufferSize + " byte buffers.");
+        if (!free.offer(buffer))
+            destroy(buffer);
+    }
+
+    private ByteBuffer allocate() {
+        allocated.incrementAndGet();
+        return heap.malloc(bufferSize).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private void destroy(ByteBuffer buffer) {
+        allocated.decrementAndGet();
+        heap.free(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return buffers currently allocated, in use or waiting in the free list
+     */
+    public int getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return how many times the pool was empty and a buffer had to be allocated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Frees the buffers in the free list. Buffers still in use are reported and left to the heap leak report.
+     */
+    public void dispose() {
+        ByteBuffer buffer;
+        while ((buffer = free.poll()) != null)
+            destroy(buffer);
+        if (allocated.get() > 0)
+            LOGGER.warn("{} buffers of {} bytes were not released to the pool.", allocated.get(), bufferSize);
+    }
+}
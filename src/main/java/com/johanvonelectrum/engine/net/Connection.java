@@ -0,0 +1,66 @@
+package com.johanvonelectrum.engine.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A peer of a {@link NetHost}. Owned by the network thread, the rest of the engine only sees its id.
+ */
+abstract class Connection {
+
+    enum State {
+        CONNECTING, CONNECTED, DISCONNECTED
+    }
+
+    /**
+     * Idle time after which a packet is sent even without data, so the peer does not time out.
+     */
+    static final long KEEPALIVE = TimeUnit.SECONDS.toNanos(1);
+
+    final int id;
+    final SocketAddress address;
+    final Transport transport;
+    /**
+     * True on the side that called {@link NetHost#connect}.
+     */
+    final boolean outgoing;
+    final NetStats stats;
+
+    State state = State.CONNECTING;
+    long lastReceived;
+    long lastSent;
+
+    Connection(int id, SocketAddress address, Transport transport, boolean outgoing, NetStats stats, long now) {
+        this.id = id;
+        this.address = address;
+        this.transport = transport;
+        this.outgoing = outgoing;
+        this.stats = stats;
+        this.lastReceived = now;
+        this.lastSent = now;
+    }
+
+    /**
+     * Adds a message to the next packet or frame.
+     *
+     * @return false if the connection can not take more data, it is then closed
+     */
+    abstract boolean write(Delivery delivery, ByteBuffer message, long now) throws IOException;
+
+    /**
+     * Sends what was written since the last flush, resends what was lost and keeps the connection alive.
+     */
+    abstract void flush(long now) throws IOException;
+
+    /**
+     * @return true if {@link #flush(long)} has something to send
+     */
+    abstract boolean hasWork(long now);
+
+    /**
+     * Releases the buffers and the channel of the connection, on the network thread.
+     */
+    abstract void dispose();
+}
@@ -0,0 +1,68 @@
+package com.johanvonelectrum.engine.net;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventCategory;
+
+import java.net.SocketAddress;
+
+/**
+ * A connection of a {@link NetHost} was established or closed. Connections that never completed the handshake
+ * only produce an event on the side that initiated them.
+ */
+public class ConnectionEvent extends Event {
+
+    public enum Type {
+        CONNECTED,
+        /**
+         * Closed by either side, or because it broke the protocol or could not keep up.
+         */
+        DISCONNECTED,
+        /**
+         * Nothing was received for the host timeout.
+         */
+        TIMED_OUT
+    }
+
+    private int connection = -1;
+    private Type type;
+    private SocketAddress address;
+    private Transport transport;
+
+    ConnectionEvent set(int connection, Type type, SocketAddress address, Transport transport) {
+        this.connection = connection;
+        this.type = type;
+        this.address = address;
+        this.transport = transport;
+        return this;
+    }
+
+    @Override
+    public int getCategories() {
+        return EventCategory.NETWORK;
+    }
+
+    @Override
+    protected void reset() {
+        super.reset();
+        this.connection = -1;
+        this.type = null;
+        this.address = null;
+        this.transport = null;
+    }
+
+    public int getConnection() {
+        return connection;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+}
@@ -0,0 +1,23 @@
+package com.johanvonelectrum.engine.net;
+
+/**
+ * Guarantees of a message. Reliable messages use their own sequence numbers per connection, so an ordered
+ * message waiting for a lost one never holds back unordered or unreliable traffic. Over {@link Transport#TCP}
+ * every message is reliable and ordered, the delivery is only reported to the receiver.
+ */
+public enum Delivery {
+    /**
+     * Sent once. Lost packets are not resent and duplicated packets are dropped. For state sent every tick anyway.
+     */
+    UNRELIABLE,
+    /**
+     * Resent until acknowledged, delivered once as soon as it arrives.
+     */
+    RELIABLE,
+    /**
+     * Resent until acknowledged and delivered in the order it was sent.
+     */
+    RELIABLE_ORDERED;
+
+    static final Delivery[] VALUES = values();
+}
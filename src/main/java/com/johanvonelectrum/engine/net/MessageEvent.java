@@ -0,0 +1,59 @@
+package com.johanvonelectrum.engine.net;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.events.EventCategory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Message received from a connection of a {@link NetHost}. The payload is copied into a heap buffer owned by the
+ * event, which keeps it across recycling, so pooled events stop allocating once they have seen the largest message.
+ */
+public class MessageEvent extends Event {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int connection = -1;
+    private Delivery delivery;
+    private ByteBuffer payload = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    MessageEvent set(int connection, Delivery delivery, ByteBuffer data) {
+        int length = data.remaining();
+        if (payload.capacity() < length)
+            payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+
+        this.connection = connection;
+        this.delivery = delivery;
+        payload.clear();
+        payload.put(data).flip();
+        return this;
+    }
+
+    @Override
+    public int getCategories() {
+        return EventCategory.NETWORK;
+    }
+
+    @Override
+    protected void reset() {
+        super.reset();
+        this.connection = -1;
+        this.delivery = null;
+        payload.clear().limit(0);
+    }
+
+    public int getConnection() {
+        return connection;
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * @return the message between position and limit, only valid until the event is recycled
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+}
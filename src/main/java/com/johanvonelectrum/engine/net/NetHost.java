@@ -0,0 +1,721 @@
+package com.johanvonelectrum.engine.net;
+
+import com.johanvonelectrum.engine.concurrent.MpscRingBuffer;
+import com.johanvonelectrum.engine.events.EventSystem;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Networking endpoint, the same class for servers and clients. A dedicated thread runs a {@link Selector} over one
+ * {@link DatagramChannel} shared by every UDP connection, a {@link ServerSocketChannel} when listening, and a
+ * {@link SocketChannel} per TCP connection.
+ * <p>
+ * Any thread can {@link #send} messages. They are copied into pooled direct buffers and queued to the network
+ * thread, which packs everything queued since the last {@link #flush()} into MTU sized packets or a single TCP
+ * write per connection, so a tick sending many small messages costs a few syscalls. Received messages and
+ * connection changes are pushed to the {@link EventSystem} as pooled {@link MessageEvent}s and
+ * {@link ConnectionEvent}s, with the {@link com.johanvonelectrum.engine.events.EventCategory#NETWORK} category.
+ * <p>
+ * Messages are not fragmented, they must fit in a packet, see {@link #getMaxMessageSize()}. Connections are plain
+ * ids; once an id is closed it is reused for new connections, oldest freed first.
+ */
+public class NetHost {
+
+    public static final int DEFAULT_MTU = 1200;
+    public static final int BROADCAST = -1;
+
+    /**
+     * Period of timeouts, keepalives, connection retries and resends.
+     */
+    static final long MAINTENANCE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    static final Logger LOGGER = LogManager.getLogger("Network");
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    private static final long CONNECT_RETRY = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final int SOCKET_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int OUTBOUND_CAPACITY = 16384;
+    private static final int MAX_DATAGRAMS_PER_SELECT = 4096;
+    private static final int DISCONNECT_COMMAND = -1;
+    private static final long PACKET_LOSS_SEED = 0x4A454E31L;
+
+    private final EventSystem events;
+    private final int maxConnections;
+    private final int mtu;
+    private final NativeHeap heap = NativeMemory.heap("Network");
+    private final BufferPool packets;
+    private final BufferPool streams;
+    private final NetStats stats = new NetStats();
+    private final Selector selector;
+
+    private DatagramChannel udp;
+    private ServerSocketChannel tcp;
+    private ByteBuffer receiveBuffer;
+
+    private final Connection[] connections;
+    private final Map<SocketAddress, UdpConnection> udpConnections = new HashMap<>();
+    private final int[] freeIds;
+    private int freeHead, freeCount;
+    private int highestId = -1;
+    private volatile int connectionCount;
+
+    /**
+     * Ids of the connections to flush this iteration, flagged per id so a closed connection whose id is reused is
+     * not queued twice.
+     */
+    private final int[] dirty;
+    private final boolean[] queued;
+    private int dirtyCount;
+
+    /**
+     * Messages queued by {@link #send}, as {@code int connection, byte delivery, payload}.
+     */
+    private final MpscRingBuffer<ByteBuffer> outbound = new MpscRingBuffer<>(OUTBOUND_CAPACITY);
+    private final AtomicLong outboundDrops = new AtomicLong();
+
+    private Thread thread;
+    private volatile boolean running;
+
+    private double packetLoss;
+    private SplittableRandom lossRandom;
+
+    /**
+     * @param mtu largest packet sent, {@value #DEFAULT_MTU} stays under the MTU of about any path
+     */
+    public NetHost(EventSystem events, int maxConnections, int mtu) throws IOException {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("At least one connection is needed: " + maxConnections);
+        if (mtu < Protocol.PACKET_HEADER + Protocol.MESSAGE_HEADER + 1 || mtu > STREAM_BUFFER_SIZE)
+            throw new IllegalArgumentException("MTU out of range: " + mtu);
+
+        this.events = events;
+        this.maxConnections = maxConnections;
+        this.mtu = mtu;
+        this.packets = new BufferPool(heap, mtu, OUTBOUND_CAPACITY).preallocate(256);
+        this.streams = new BufferPool(heap, STREAM_BUFFER_SIZE, Math.min(maxConnections * 2, 8192));
+        this.connections = new Connection[maxConnections];
+        this.dirty = new int[maxConnections];
+        this.queued = new boolean[maxConnections];
+        this.freeIds = new int[maxConnections];
+        for (int i = 0; i < maxConnections; i++)
+            freeIds[i] = i;
+        this.freeCount = maxConnections;
+        this.selector = Selector.open();
+
+        events.registerPool(MessageEvent.class, MessageEvent::new, events.getCapacity());
+        events.registerPool(ConnectionEvent.class, ConnectionEvent::new, 64);
+    }
+
+    /**
+     * Accepts UDP and TCP connections on the given port, 0 picks a free one for each. Must be called before
+     * {@link #start()}.
+     */
+    public void listen(int port) throws IOException {
+        checkNotStarted();
+        if (udp != null)
+            throw new IllegalStateException("The host is already bound to UDP port " + getUdpPort());
+
+        openUdp(new InetSocketAddress(port));
+        tcp = ServerSocketChannel.open();
+        tcp.configureBlocking(false);
+        tcp.bind(new InetSocketAddress(port), maxConnections);
+        tcp.register(selector, SelectionKey.OP_ACCEPT);
+        LOGGER.info("Listening on UDP port {} and TCP port {}, up to {} connections.", box(getUdpPort()), box(getTcpPort()), box(maxConnections));
+    }
+
+    /**
+     * Starts connecting to a server. Must be called before {@link #start()}, a {@link ConnectionEvent} tells how it
+     * went.
+     *
+     * @return id of the connection
+     */
+    public int connect(InetSocketAddress address, Transport transport) throws IOException {
+        checkNotStarted();
+        int id = allocateId();
+        if (id < 0)
+            throw new IllegalStateException("No free connection left to connect to " + address);
+
+        long now = System.nanoTime();
+        if (transport == Transport.UDP) {
+            if (udp == null)
+                openUdp(new InetSocketAddress(0));
+            UdpConnection connection = new UdpConnection(id, address, true, udp, packets, this, now);
+            connection.lastSent = now - CONNECT_RETRY;
+            udpConnections.put(address, connection);
+            add(connection);
+        } else {
+            SocketChannel socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = socket.connect(address);
+            TcpConnection connection = new TcpConnection(id, address, true, socket, streams, this, now);
+            connection.register(selector, SelectionKey.OP_CONNECT);
+            add(connection);
+            if (connected) {
+                connection.onConnected();
+                connected(connection);
+            }
+        }
+        LOGGER.info("Connecting to {} over {}...", address, transport);
+        return id;
+    }
+
+    private void openUdp(InetSocketAddress address) throws IOException {
+        udp = DatagramChannel.open();
+        udp.configureBlocking(false);
+        udp.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        udp.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+        udp.bind(address);
+        udp.register(selector, SelectionKey.OP_READ);
+        receiveBuffer = packets.acquire();
+    }
+
+    private void checkNotStarted() {
+        if (thread != null)
+            throw new IllegalStateException("The network thread is already running.");
+    }
+
+    public void start() {
+        checkNotStarted();
+        running = true;
+        thread = new Thread(this::run, "Network");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a message to a connection, or to every connected one with {@link #BROADCAST}. Thread-safe. The message
+     * is copied between its position and limit, which are left unchanged.
+     * <p>
+     * A connection that can not take the message, with 256 reliable messages of a kind waiting for acknowledgement
+     * or its TCP buffer full, is closed: the peer is not keeping up.
+     *
+     * @return false if the queue to the network thread was full and the message was dropped
+     */
+    public boolean send(int connection, Delivery delivery, ByteBuffer message) {
+        if (message.remaining() > getMaxMessageSize())
+            throw new IllegalArgumentException("Message of " + message.remaining() + " bytes is larger than the " + getMaxMessageSize() + " bytes limit.");
+        return enqueue(connection, delivery.ordinal(), message);
+    }
+
+    public boolean broadcast(Delivery delivery, ByteBuffer message) {
+        return send(BROADCAST, delivery, message);
+    }
+
+    /**
+     * Closes a connection once the messages queued before are sent. Thread-safe.
+     */
+    public void disconnect(int connection) {
+        enqueue(connection, DISCONNECT_COMMAND, null);
+    }
+
+    private boolean enqueue(int connection, int command, ByteBuffer message) {
+        ByteBuffer buffer = packets.acquire();
+        buffer.putInt(connection).put((byte) command);
+        if (message != null) {
+            int position = message.position();
+            buffer.put(message);
+            message.position(position);
+        }
+        buffer.flip();
+
+        if (outbound.offer(buffer))
+            return true;
+        packets.release(buffer);
+        outboundDrops.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Wakes the network thread to send what was queued, usually once at the end of a tick. Messages are also sent
+     * when the thread wakes up on its own, within {@link #MAINTENANCE_INTERVAL}.
+     */
+    public void flush() {
+        if (!outbound.isEmpty())
+            selector.wakeup();
+    }
+
+    private void run() {
+        NativeMemory.attachThread();
+        LOGGER.debug("Network thread started.");
+        try {
+            long nextMaintenance = System.nanoTime();
+            while (running) {
+                long timeout = TimeUnit.NANOSECONDS.toMillis(nextMaintenance - System.nanoTime());
+                if (timeout > 0)
+                    selector.select(timeout);
+                else
+                    selector.selectNow();
+
+                long now = System.nanoTime();
+                processKeys(now);
+                drainOutbound(now);
+                if (now - nextMaintenance >= 0) {
+                    maintain(now);
+                    nextMaintenance = now + MAINTENANCE_INTERVAL;
+                }
+                flushDirty(now);
+            }
+
+            long now = System.nanoTime();
+            drainOutbound(now);
+            flushDirty(now);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("The network thread failed, every connection is lost.", e);
+        } finally {
+            running = false;
+            NativeMemory.detachThread();
+        }
+    }
+
+    private void processKeys(long now) throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+                continue;
+
+            if (key.channel() == udp)
+                receiveDatagrams(now);
+            else if (key.channel() == tcp)
+                accept(now);
+            else
+                handleSocket((TcpConnection) key.attachment(), key, now);
+        }
+    }
+
+    private void receiveDatagrams(long now) throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_SELECT; i++) {
+            receiveBuffer.clear();
+            SocketAddress address = udp.receive(receiveBuffer);
+            if (address == null)
+                return;
+
+            receiveBuffer.flip();
+            stats.packetsReceived++;
+            stats.bytesReceived += receiveBuffer.remaining();
+            receiveDatagram(receiveBuffer, address, now);
+        }
+    }
+
+    private void receiveDatagram(ByteBuffer buffer, SocketAddress address, long now) throws IOException {
+        if (buffer.remaining() < Protocol.PACKET_HEADER || buffer.getInt(0) != Protocol.ID) {
+            stats.malformed++;
+            return;
+        }
+
+        UdpConnection connection = udpConnections.get(address);
+        switch (buffer.get(4)) {
+            case Protocol.CONNECT:
+                if (connection == null) {
+                    if (tcp == null)
+                        return;
+                    connection = acceptUdp(address, now);
+                    if (connection == null) {
+                        stats.rejected++;
+                        sendControl(Protocol.DISCONNECT, address);
+                        return;
+                    }
+                }
+                connection.lastReceived = now;
+                // Sent again for every attempt, the previous accept may have been lost
+                sendControl(Protocol.ACCEPT, address);
+                return;
+            case Protocol.ACCEPT:
+                if (connection != null && connection.state == Connection.State.CONNECTING) {
+                    connection.lastReceived = now;
+                    connected(connection);
+                }
+                return;
+            case Protocol.DATA:
+                if (connection == null)
+                    return;
+                if (connection.state == Connection.State.CONNECTING)
+                    connected(connection); // The accept was lost, but the server is already sending
+                connection.receive(buffer, now);
+                // Acknowledged once every datagram of this wakeup is read, along with any reply
+                markDirty(connection);
+                return;
+            case Protocol.DISCONNECT:
+                if (connection != null)
+                    close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+                return;
+            default:
+                stats.malformed++;
+        }
+    }
+
+    private UdpConnection acceptUdp(SocketAddress address, long now) {
+        int id = allocateId();
+        if (id < 0)
+            return null;
+
+        UdpConnection connection = new UdpConnection(id, address, false, udp, packets, this, now);
+        udpConnections.put(address, connection);
+        add(connection);
+        connected(connection);
+        return connection;
+    }
+
+    private void accept(long now) throws IOException {
+        SocketChannel socket;
+        while ((socket = tcp.accept()) != null) {
+            int id = allocateId();
+            if (id < 0) {
+                stats.rejected++;
+                socket.close();
+                continue;
+            }
+
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            TcpConnection connection = new TcpConnection(id, socket.getRemoteAddress(), false, socket, streams, this, now);
+            connection.register(selector, SelectionKey.OP_READ);
+            add(connection);
+        }
+    }
+
+    private void handleSocket(TcpConnection connection, SelectionKey key, long now) {
+        try {
+            if (key.isConnectable()) {
+                if (!connection.finishConnect())
+                    return;
+                connected(connection);
+                markDirty(connection);
+            }
+            if (key.isValid() && key.isReadable() && !connection.read(now)) {
+                close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+                return;
+            }
+            if (key.isValid() && key.isWritable())
+                connection.flush(now);
+        } catch (IOException e) {
+            LOGGER.debug("Connection {} to {} failed.", box(connection.id), connection.address, e);
+            close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+        } catch (RuntimeException e) {
+            LOGGER.error("Connection {} to {} broke, closing it.", box(connection.id), connection.address, e);
+            close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+        }
+    }
+
+    private void drainOutbound(long now) {
+        ByteBuffer command;
+        while ((command = outbound.poll()) != null) {
+            try {
+                execute(command, now);
+            } finally {
+                packets.release(command);
+            }
+        }
+    }
+
+    private void execute(ByteBuffer command, long now) {
+        int target = command.getInt();
+        int operation = command.get();
+        if (operation == DISCONNECT_COMMAND) {
+            Connection connection = get(target);
+            if (connection != null) {
+                flush(connection, now);
+                close(connection, ConnectionEvent.Type.DISCONNECTED, true);
+            }
+            return;
+        }
+
+        Delivery delivery = Delivery.VALUES[operation];
+        if (target != BROADCAST) {
+            Connection connection = get(target);
+            if (connection != null)
+                write(connection, delivery, command, now);
+            return;
+        }
+
+        for (int i = 0; i <= highestId; i++) {
+            Connection connection = connections[i];
+            if (connection != null && connection.state == Connection.State.CONNECTED)
+                write(connection, delivery, command, now);
+        }
+    }
+
+    private Connection get(int id) {
+        return id >= 0 && id < maxConnections ? connections[id] : null;
+    }
+
+    private void write(Connection connection, Delivery delivery, ByteBuffer message, long now) {
+        try {
+            if (!connection.write(delivery, message, now)) {
+                LOGGER.warn("Connection {} to {} is not keeping up with the messages sent to it, closing it.", box(connection.id), connection.address);
+                close(connection, ConnectionEvent.Type.DISCONNECTED, true);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Connection {} to {} failed.", box(connection.id), connection.address, e);
+            close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+            return;
+        }
+        stats.messagesSent++;
+        markDirty(connection);
+    }
+
+    /**
+     * Closes connections that timed out, retries connection attempts and flags connections owing acknowledgements,
+     * resends or keepalives.
+     */
+    private void maintain(long now) throws IOException {
+        for (int i = 0; i <= highestId; i++) {
+            Connection connection = connections[i];
+            if (connection == null)
+                continue;
+
+            if (now - connection.lastReceived > TIMEOUT) {
+                close(connection, ConnectionEvent.Type.TIMED_OUT, true);
+            } else if (connection.state == Connection.State.CONNECTING) {
+                if (connection.transport == Transport.UDP && connection.outgoing && now - connection.lastSent >= CONNECT_RETRY) {
+                    sendControl(Protocol.CONNECT, connection.address);
+                    connection.lastSent = now;
+                }
+            } else if (connection.hasWork(now)) {
+                markDirty(connection);
+            }
+        }
+    }
+
+    private void markDirty(Connection connection) {
+        if (queued[connection.id])
+            return;
+        queued[connection.id] = true;
+        dirty[dirtyCount++] = connection.id;
+    }
+
+    private void flushDirty(long now) {
+        for (int i = 0; i < dirtyCount; i++) {
+            int id = dirty[i];
+            queued[id] = false;
+            Connection connection = connections[id];
+            if (connection != null)
+                flush(connection, now);
+        }
+        dirtyCount = 0;
+    }
+
+    private void flush(Connection connection, long now) {
+        if (connection.state != Connection.State.CONNECTED)
+            return;
+        try {
+            connection.flush(now);
+        } catch (IOException e) {
+            LOGGER.debug("Connection {} to {} failed.", box(connection.id), connection.address, e);
+            close(connection, ConnectionEvent.Type.DISCONNECTED, false);
+        }
+    }
+
+    private void sendControl(byte type, SocketAddress address) throws IOException {
+        ByteBuffer packet = packets.acquire();
+        try {
+            Protocol.writeHeader(packet, type, 0, 0, 0);
+            packet.position(Protocol.PACKET_HEADER).flip();
+            if (udp.send(packet, address) > 0) {
+                stats.packetsSent++;
+                stats.bytesSent += Protocol.PACKET_HEADER;
+            } else {
+                stats.sendDrops++;
+            }
+        } finally {
+            packets.release(packet);
+        }
+    }
+
+    private int allocateId() {
+        if (freeCount == 0)
+            return -1;
+        int id = freeIds[freeHead];
+        freeHead = (freeHead + 1) % maxConnections;
+        freeCount--;
+        return id;
+    }
+
+    private void add(Connection connection) {
+        connections[connection.id] = connection;
+        highestId = Math.max(highestId, connection.id);
+        connectionCount++;
+    }
+
+    void connected(Connection connection) {
+        connection.state = Connection.State.CONNECTED;
+        LOGGER.debug("Connection {} to {} established over {}.", box(connection.id), connection.address, connection.transport);
+        push(connection, ConnectionEvent.Type.CONNECTED);
+    }
+
+    private void close(Connection connection, ConnectionEvent.Type reason, boolean notify) {
+        if (connection.state == Connection.State.DISCONNECTED)
+            return;
+
+        boolean established = connection.state == Connection.State.CONNECTED;
+        if (notify && established && connection.transport == Transport.UDP) {
+            try {
+                sendControl(Protocol.DISCONNECT, connection.address);
+            } catch (IOException e) {
+                LOGGER.debug("Could not notify {} of the disconnection.", connection.address, e);
+            }
+        }
+
+        connection.state = Connection.State.DISCONNECTED;
+        connection.dispose();
+        if (connection.transport == Transport.UDP)
+            udpConnections.remove(connection.address);
+        connections[connection.id] = null;
+        freeIds[(freeHead + freeCount) % maxConnections] = connection.id;
+        freeCount++;
+        connectionCount--;
+
+        LOGGER.debug("Connection {} to {} closed: {}.", box(connection.id), connection.address, reason);
+        if (established || connection.outgoing)
+            push(connection, reason);
+    }
+
+    private void push(Connection connection, ConnectionEvent.Type type) {
+        ConnectionEvent event = events.obtain(ConnectionEvent.class);
+        events.push(event.set(connection.id, type, connection.address, connection.transport));
+    }
+
+    /**
+     * Hands a received message to the event system, on the network thread.
+     */
+    void deliver(Connection connection, Delivery delivery, ByteBuffer payload) {
+        stats.messagesReceived++;
+        MessageEvent event = events.obtain(MessageEvent.class);
+        events.push(event.set(connection.id, delivery, payload));
+    }
+
+    /**
+     * Drops the given fraction of outgoing UDP data packets, with a fixed seed, to check the reliable channels over
+     * loopback. Must be called before {@link #start()}.
+     */
+    public void setPacketLoss(double packetLoss) {
+        checkNotStarted();
+        if (packetLoss < 0 || packetLoss >= 1)
+            throw new IllegalArgumentException("Packet loss must be in [0, 1): " + packetLoss);
+        this.packetLoss = packetLoss;
+        this.lossRandom = new SplittableRandom(PACKET_LOSS_SEED);
+    }
+
+    /**
+     * Network thread only.
+     *
+     * @return true if the next data packet should be dropped as if it was lost
+     */
+    boolean simulateLoss() {
+        return packetLoss > 0 && lossRandom.nextDouble() < packetLoss;
+    }
+
+    /**
+     * @return the largest message payload that fits in a packet
+     */
+    public int getMaxMessageSize() {
+        return mtu - Protocol.PACKET_HEADER - Protocol.MESSAGE_HEADER;
+    }
+
+    public int getUdpPort() {
+        return udp == null ? -1 : udp.socket().getLocalPort();
+    }
+
+    public int getTcpPort() {
+        return tcp == null ? -1 : tcp.socket().getLocalPort();
+    }
+
+    /**
+     * @return bound of the connection ids
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public NetStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return messages dropped because the queue to the network thread was full
+     */
+    public long getOutboundDrops() {
+        return outboundDrops.get();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void report() {
+        LOGGER.info("Sent {} packets and {} KiB, received {} packets and {} KiB; {} messages out, {} in.",
+                box(stats.packetsSent), box(stats.bytesSent / 1024), box(stats.packetsReceived), box(stats.bytesReceived / 1024),
+                box(stats.messagesSent), box(stats.messagesReceived));
+        if (stats.resends > 0 || stats.duplicates > 0 || stats.malformed > 0 || stats.sendDrops > 0 || stats.rejected > 0 || outboundDrops.get() > 0)
+            LOGGER.info("{} resends, {} duplicates, {} malformed, {} send drops, {} rejected connections, {} messages dropped before sending.",
+                    box(stats.resends), box(stats.duplicates), box(stats.malformed), box(stats.sendDrops), box(stats.rejected), box(outboundDrops.get()));
+    }
+
+    /**
+     * Sends what is queued, closes every connection and stops the network thread.
+     */
+    public void dispose() {
+        if (thread != null) {
+            running = false;
+            selector.wakeup();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (int i = 0; i <= highestId; i++) {
+            if (connections[i] != null)
+                close(connections[i], ConnectionEvent.Type.DISCONNECTED, true);
+        }
+        ByteBuffer command;
+        while ((command = outbound.poll()) != null)
+            packets.release(command);
+        if (receiveBuffer != null)
+            packets.release(receiveBuffer);
+
+        try {
+            if (udp != null)
+                udp.close();
+            if (tcp != null)
+                tcp.close();
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close the network channels.", e);
+        }
+
+        report();
+        packets.dispose();
+        streams.dispose();
+    }
+}
@@ -0,0 +1,81 @@
+package com.johanvonelectrum.engine.net;
+
+/**
+ * Counters of a {@link NetHost}. Written by the network thread only; other threads may read slightly stale values.
+ */
+public final class NetStats {
+
+    volatile long packetsSent;
+    volatile long packetsReceived;
+    volatile long bytesSent;
+    volatile long bytesReceived;
+    volatile long messagesSent;
+    volatile long messagesReceived;
+    volatile long resends;
+    volatile long duplicates;
+    volatile long malformed;
+    volatile long sendDrops;
+    volatile long rejected;
+
+    /**
+     * @return UDP packets or TCP writes
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * @return reliable messages sent again because their packet was not acknowledged in time
+     */
+    public long getResends() {
+        return resends;
+    }
+
+    /**
+     * @return UDP packets dropped because they were received before, or are too old to tell
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return packets or streams that did not follow the protocol
+     */
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return UDP packets the socket had no room for
+     */
+    public long getSendDrops() {
+        return sendDrops;
+    }
+
+    /**
+     * @return connection attempts refused because the host was full
+     */
+    public long getRejected() {
+        return rejected;
+    }
+}
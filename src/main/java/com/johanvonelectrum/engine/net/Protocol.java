@@ -0,0 +1,72 @@
+package com.johanvonelectrum.engine.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format. A UDP packet is a header followed by messages:
+ * <pre>
+ * int protocol id, byte type, short sequence, short ack, int ack bits
+ * byte delivery, [short reliable id], short length, payload...
+ * </pre>
+ * The ack is the latest packet sequence received from the other side and bit {@code n} of the ack bits stands for
+ * the packet {@code ack - 1 - n}, so every packet acknowledges the last 33. A TCP stream starts with the protocol id
+ * sent by the client and carries frames of {@code short length, byte delivery, payload}.
+ */
+final class Protocol {
+
+    static final int ID = 0x4A454E31;
+
+    static final byte CONNECT = 1;
+    static final byte ACCEPT = 2;
+    static final byte DATA = 3;
+    static final byte DISCONNECT = 4;
+
+    static final int PACKET_HEADER = 4 + 1 + 2 + 2 + 4;
+    static final int UNRELIABLE_HEADER = 1 + 2;
+    static final int MESSAGE_HEADER = 1 + 2 + 2;
+    static final int FRAME_HEADER = 2 + 1;
+
+    static final int SEQUENCE_MASK = 0xFFFF;
+
+    private Protocol() {
+    }
+
+    static void writeHeader(ByteBuffer packet, byte type, int sequence, int ack, int ackBits) {
+        packet.putInt(0, ID)
+                .put(4, type)
+                .putShort(5, (short) sequence)
+                .putShort(7, (short) ack)
+                .putInt(9, ackBits);
+    }
+
+    static int readSequence(ByteBuffer packet) {
+        return packet.getShort(5) & SEQUENCE_MASK;
+    }
+
+    static int readAck(ByteBuffer packet) {
+        return packet.getShort(7) & SEQUENCE_MASK;
+    }
+
+    static int readAckBits(ByteBuffer packet) {
+        return packet.getInt(9);
+    }
+
+    /**
+     * @return true if the 16 bit sequence {@code a} comes after {@code b}, allowing for wrap around
+     */
+    static boolean isNewer(int a, int b) {
+        int distance = (a - b) & SEQUENCE_MASK;
+        return distance != 0 && distance < 0x8000;
+    }
+
+    /**
+     * @return how many sequence numbers {@code newer} is ahead of {@code older}
+     */
+    static int distance(int newer, int older) {
+        return (newer - older) & SEQUENCE_MASK;
+    }
+
+    static int next(int sequence) {
+        return (sequence + 1) & SEQUENCE_MASK;
+    }
+}
@@ -0,0 +1,171 @@
+package com.johanvonelectrum.engine.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One direction pair of reliable messages on a UDP connection. Sent messages keep a pooled copy until a packet
+ * carrying them is acknowledged, and at most {@value #WINDOW} can be in flight. Received messages are delivered once;
+ * an ordered channel holds messages that arrive early until the missing ones fill the gap.
+ */
+final class ReliableChannel {
+
+    static final int WINDOW = 256;
+    private static final int MASK = WINDOW - 1;
+    private static final long NOT_SENT = Long.MIN_VALUE;
+
+    private final BufferPool pool;
+    private final boolean ordered;
+    private final Delivery delivery;
+
+    private final ByteBuffer[] pending = new ByteBuffer[WINDOW];
+    private final int[] pendingIds = new int[WINDOW];
+    private final long[] sentTimes = new long[WINDOW];
+    private int nextId;
+    private int oldestId;
+
+    /**
+     * Which of the {@value #WINDOW} ids up to {@link #latestReceived} arrived, indexed by slot.
+     */
+    private final boolean[] received = new boolean[WINDOW];
+    private final ByteBuffer[] early = new ByteBuffer[WINDOW];
+    private int latestReceived = -1;
+    private int nextReceiveId;
+
+    ReliableChannel(BufferPool pool, boolean ordered) {
+        this.pool = pool;
+        this.ordered = ordered;
+        this.delivery = ordered ? Delivery.RELIABLE_ORDERED : Delivery.RELIABLE;
+    }
+
+    boolean isFull() {
+        return Protocol.distance(nextId, oldestId) >= WINDOW;
+    }
+
+    boolean hasPending() {
+        return oldestId != nextId;
+    }
+
+    /**
+     * Copies the message into the send window. The caller checks {@link #isFull()} first.
+     */
+    void queue(ByteBuffer message) {
+        ByteBuffer copy = pool.acquire();
+        int position = message.position();
+        copy.put(message).flip();
+        message.position(position);
+
+        int slot = nextId & MASK;
+        pending[slot] = copy;
+        pendingIds[slot] = nextId;
+        sentTimes[slot] = NOT_SENT;
+        nextId = Protocol.next(nextId);
+    }
+
+    int getOldestId() {
+        return oldestId;
+    }
+
+    int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * @return the unacknowledged message, null once it was acknowledged
+     */
+    ByteBuffer getPending(int id) {
+        int slot = id & MASK;
+        return pendingIds[slot] == id ? pending[slot] : null;
+    }
+
+    boolean wasSent(int id) {
+        return sentTimes[id & MASK] != NOT_SENT;
+    }
+
+    long getSentTime(int id) {
+        return sentTimes[id & MASK];
+    }
+
+    void markSent(int id, long now) {
+        sentTimes[id & MASK] = now;
+    }
+
+    void acknowledge(int id) {
+        int slot = id & MASK;
+        if (pending[slot] == null || pendingIds[slot] != id)
+            return;
+
+        pool.release(pending[slot]);
+        pending[slot] = null;
+        while (oldestId != nextId && pending[oldestId & MASK] == null)
+            oldestId = Protocol.next(oldestId);
+    }
+
+    /**
+     * Delivers a received message, unless it is a duplicate. Ordered messages that arrive early are copied and
+     * delivered once every message before them was.
+     */
+    void receive(int id, ByteBuffer payload, Connection connection, NetHost host) {
+        if (ordered)
+            receiveOrdered(id, payload, connection, host);
+        else if (accept(id))
+            host.deliver(connection, delivery, payload);
+    }
+
+    /**
+     * Tracks the window of ids ending at the latest one received. Ids older than the window are rejected, the sender
+     * never has more than {@value #WINDOW} messages in flight, so those were all received before.
+     */
+    private boolean accept(int id) {
+        int slot = id & MASK;
+        if (latestReceived < 0 || Protocol.isNewer(id, latestReceived)) {
+            // The slots of the ids the window moves over now stand for ids not received yet
+            int advance = latestReceived < 0 ? WINDOW : Math.min(Protocol.distance(id, latestReceived), WINDOW);
+            for (int i = 0; i < advance; i++)
+                received[(id - i) & MASK] = false;
+            received[slot] = true;
+            latestReceived = id;
+            return true;
+        }
+
+        if (Protocol.distance(latestReceived, id) >= WINDOW || received[slot])
+            return false;
+        received[slot] = true;
+        return true;
+    }
+
+    private void receiveOrdered(int id, ByteBuffer payload, Connection connection, NetHost host) {
+        if (id != nextReceiveId) {
+            int slot = id & MASK;
+            if (Protocol.isNewer(id, nextReceiveId) && Protocol.distance(id, nextReceiveId) < WINDOW && early[slot] == null) {
+                ByteBuffer copy = pool.acquire();
+                copy.put(payload).flip();
+                early[slot] = copy;
+            }
+            return;
+        }
+
+        host.deliver(connection, delivery, payload);
+        nextReceiveId = Protocol.next(nextReceiveId);
+
+        ByteBuffer next;
+        while ((next = early[nextReceiveId & MASK]) != null) {
+            early[nextReceiveId & MASK] = null;
+            host.deliver(connection, delivery, next);
+            pool.release(next);
+            nextReceiveId = Protocol.next(nextReceiveId);
+        }
+    }
+
+    void dispose() {
+        for (int i = 0; i < WINDOW; i++) {
+            if (pending[i] != null) {
+                pool.release(pending[i]);
+                pending[i] = null;
+            }
+            if (early[i] != null) {
+                pool.release(early[i]);
+                early[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.johanvonelectrum.engine.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connection over its own socket. Messages are framed into a pooled write buffer and sent with one write per
+ * flush; whatever the socket does not take is kept and written once it becomes writable again.
+ */
+final class TcpConnection extends Connection {
+
+    /**
+     * Delivery byte of an empty frame sent to keep the connection alive.
+     */
+    private static final int KEEPALIVE_FRAME = 0xFF;
+
+    private final SocketChannel socket;
+    private final BufferPool pool;
+    private final NetHost host;
+    private ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+    private SelectionKey key;
+
+    /**
+     * False on the accepting side until the stream started with the protocol id.
+     */
+    private boolean verified;
+
+    TcpConnection(int id, SocketAddress address, boolean outgoing, SocketChannel socket, BufferPool pool, NetHost host, long now) {
+        super(id, address, Transport.TCP, outgoing, host.getStats(), now);
+        this.socket = socket;
+        this.pool = pool;
+        this.host = host;
+        this.readBuffer = pool.acquire();
+        this.writeBuffer = pool.acquire();
+        this.verified = outgoing;
+    }
+
+    void register(Selector selector, int operations) throws ClosedChannelException {
+        key = socket.register(selector, operations, this);
+    }
+
+    /**
+     * Completes an outgoing connection once the socket is connectable.
+     *
+     * @return true if the connection is established
+     */
+    boolean finishConnect() throws IOException {
+        if (!socket.finishConnect())
+            return false;
+        onConnected();
+        return true;
+    }
+
+    /**
+     * Starts the stream with the protocol id, ahead of anything written while connecting.
+     */
+    void onConnected() {
+        writeBuffer.flip();
+        ByteBuffer queued = writeBuffer;
+        writeBuffer = pool.acquire();
+        writeBuffer.putInt(Protocol.ID).put(queued);
+        pool.release(queued);
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    @Override
+    boolean write(Delivery delivery, ByteBuffer message, long now) throws IOException {
+        int size = Protocol.FRAME_HEADER + message.remaining();
+        if (writeBuffer.remaining() < size && state == State.CONNECTED)
+            flush(now);
+        // Keeps room for the protocol id put in front of the queued frames once connected.
+        int reserved = state == State.CONNECTING ? Integer.BYTES : 0;
+        if (writeBuffer.remaining() - reserved < size)
+            return false;
+
+        writeBuffer.putShort((short) message.remaining()).put((byte) delivery.ordinal());
+        int position = message.position();
+        writeBuffer.put(message);
+        message.position(position);
+        return true;
+    }
+
+    @Override
+    boolean hasWork(long now) {
+        return writeBuffer.position() > 0 || now - lastSent >= KEEPALIVE;
+    }
+
+    @Override
+    void flush(long now) throws IOException {
+        if (state != State.CONNECTED)
+            return;
+        if (writeBuffer.position() == 0) {
+            if (now - lastSent < KEEPALIVE)
+                return;
+            writeBuffer.putShort((short) 0).put((byte) KEEPALIVE_FRAME);
+        }
+
+        writeBuffer.flip();
+        int written = socket.write(writeBuffer);
+        writeBuffer.compact();
+        if (written > 0) {
+            lastSent = now;
+            stats.packetsSent++;
+            stats.bytesSent += written;
+        }
+        key.interestOps(writeBuffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Reads what the socket has and delivers every complete frame.
+     *
+     * @return false if the stream ended or broke the protocol
+     */
+    boolean read(long now) throws IOException {
+        int read = socket.read(readBuffer);
+        if (read < 0)
+            return false;
+        if (read == 0)
+            return true;
+
+        lastReceived = now;
+        stats.packetsReceived++;
+        stats.bytesReceived += read;
+
+        readBuffer.flip();
+        try {
+            if (!verified) {
+                if (readBuffer.remaining() < Integer.BYTES)
+                    return true;
+                if (readBuffer.getInt() != Protocol.ID) {
+                    stats.malformed++;
+                    return false;
+                }
+                verified = true;
+                host.connected(this);
+            }
+            return readFrames();
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    private boolean readFrames() {
+        int limit = readBuffer.limit();
+        while (readBuffer.remaining() >= Protocol.FRAME_HEADER) {
+            int start = readBuffer.position();
+            int length = readBuffer.getShort(start) & 0xFFFF;
+            if (Protocol.FRAME_HEADER + length > readBuffer.capacity()) {
+                stats.malformed++;
+                return false;
+            }
+            if (readBuffer.remaining() < Protocol.FRAME_HEADER + length)
+                break;
+
+            int ordinal = readBuffer.get(start + 2) & 0xFF;
+            int end = start + Protocol.FRAME_HEADER + length;
+            if (ordinal != KEEPALIVE_FRAME) {
+                if (ordinal >= Delivery.VALUES.length) {
+                    stats.malformed++;
+                    return false;
+                }
+                readBuffer.position(start + Protocol.FRAME_HEADER).limit(end);
+                host.deliver(this, Delivery.VALUES[ordinal], readBuffer);
+                readBuffer.limit(limit);
+            }
+            readBuffer.position(end);
+        }
+        return true;
+    }
+
+    @Override
+    void dispose() {
+        if (key != null)
+            key.cancel();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            NetHost.LOGGER.debug("Could not close the socket of connection {}.", id, e);
+        }
+        if (readBuffer != null) {
+            pool.release(readBuffer);
+            pool.release(writeBuffer);
+            readBuffer = null;
+            writeBuffer = null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.johanvonelectrum.engine.net;
+
+/**
+ * Protocol a connection runs on. A listening {@link NetHost} accepts both on the same port number.
+ */
+public enum Transport {
+    /**
+     * One {@link java.nio.channels.DatagramChannel} shared by every connection. Messages are coalesced into packets
+     * up to the MTU, and reliability and ordering are provided per {@link Delivery}.
+     */
+    UDP,
+    /**
+     * A {@link java.nio.channels.SocketChannel} per connection, for networks that block UDP. Messages are framed
+     * and coalesced into one write per flush.
+     */
+    TCP
+}
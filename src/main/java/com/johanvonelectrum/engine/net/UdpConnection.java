@@ -0,0 +1,290 @@
+package com.johanvonelectrum.engine.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection over the shared datagram channel. Messages written during a tick are packed into as few packets as
+ * the MTU allows; reliable messages ride along in the same packets and are resent when the packet carrying them
+ * is not acknowledged within twice the round trip time.
+ */
+final class UdpConnection extends Connection {
+
+    private static final int SENT_PACKETS = 512;
+    private static final int SENT_MASK = SENT_PACKETS - 1;
+    private static final int MAX_RELIABLE_PER_PACKET = 64;
+    private static final int ORDERED_FLAG = 1 << 16;
+
+    /**
+     * Resend delay before the round trip time is known, and lower bound afterwards. Resends wait for the host
+     * maintenance, so the delay must stay well above {@link NetHost#MAINTENANCE_INTERVAL}.
+     */
+    private static final long MIN_RESEND_DELAY = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final DatagramChannel channel;
+    private final BufferPool pool;
+    private final NetHost host;
+    private final ReliableChannel reliable;
+    private final ReliableChannel ordered;
+
+    private ByteBuffer packet;
+    private int localSequence;
+
+    private boolean receivedAny;
+    private int remoteSequence;
+    private int receivedBits;
+    private boolean ackPending;
+
+    private final int[] sentSequences = new int[SENT_PACKETS];
+    private final long[] sentTimes = new long[SENT_PACKETS];
+    private final int[] sentCounts = new int[SENT_PACKETS];
+    private final int[] sentMessages = new int[SENT_PACKETS * MAX_RELIABLE_PER_PACKET];
+
+    private long roundTripTime;
+
+    UdpConnection(int id, SocketAddress address, boolean outgoing, DatagramChannel channel, BufferPool pool, NetHost host, long now) {
+        super(id, address, Transport.UDP, outgoing, host.getStats(), now);
+        this.channel = channel;
+        this.pool = pool;
+        this.host = host;
+        this.reliable = new ReliableChannel(pool, false);
+        this.ordered = new ReliableChannel(pool, true);
+        Arrays.fill(sentSequences, -1);
+    }
+
+    @Override
+    boolean write(Delivery delivery, ByteBuffer message, long now) throws IOException {
+        switch (delivery) {
+            case UNRELIABLE:
+                if (state == State.CONNECTED)
+                    append(delivery, 0, 0, message, now);
+                return true;
+            case RELIABLE:
+                return queue(reliable, message);
+            default:
+                return queue(ordered, message);
+        }
+    }
+
+    private static boolean queue(ReliableChannel channel, ByteBuffer message) {
+        if (channel.isFull())
+            return false;
+        channel.queue(message);
+        return true;
+    }
+
+    @Override
+    boolean hasWork(long now) {
+        return packet != null || ackPending || reliable.hasPending() || ordered.hasPending() || now - lastSent >= KEEPALIVE;
+    }
+
+    @Override
+    void flush(long now) throws IOException {
+        long resendDelay = Math.max(MIN_RESEND_DELAY, roundTripTime * 2);
+        writeDue(reliable, 0, now, resendDelay);
+        writeDue(ordered, ORDERED_FLAG, now, resendDelay);
+
+        if (packet == null && (ackPending || now - lastSent >= KEEPALIVE))
+            begin();
+        if (packet != null)
+            send(now);
+    }
+
+    private void writeDue(ReliableChannel channel, int flag, long now, long resendDelay) throws IOException {
+        Delivery delivery = flag == 0 ? Delivery.RELIABLE : Delivery.RELIABLE_ORDERED;
+        for (int id = channel.getOldestId(); id != channel.getNextId(); id = Protocol.next(id)) {
+            ByteBuffer message = channel.getPending(id);
+            if (message == null)
+                continue;
+
+            if (channel.wasSent(id)) {
+                if (now - channel.getSentTime(id) < resendDelay)
+                    continue;
+                stats.resends++;
+            }
+            append(delivery, id, flag, message, now);
+            channel.markSent(id, now);
+        }
+    }
+
+    /**
+     * Writes a message into the current packet, sending it first when the message does not fit.
+     */
+    private void append(Delivery delivery, int messageId, int flag, ByteBuffer message, long now) throws IOException {
+        boolean isReliable = delivery != Delivery.UNRELIABLE;
+        int size = (isReliable ? Protocol.MESSAGE_HEADER : Protocol.UNRELIABLE_HEADER) + message.remaining();
+        int slot = localSequence & SENT_MASK;
+        if (packet != null && (packet.remaining() < size || isReliable && sentCounts[slot] == MAX_RELIABLE_PER_PACKET))
+            send(now);
+        if (packet == null)
+            begin();
+
+        slot = localSequence & SENT_MASK;
+        packet.put((byte) delivery.ordinal());
+        if (isReliable) {
+            packet.putShort((short) messageId);
+            sentMessages[slot * MAX_RELIABLE_PER_PACKET + sentCounts[slot]++] = flag | messageId;
+        }
+        packet.putShort((short) message.remaining());
+        int position = message.position();
+        packet.put(message);
+        message.position(position);
+    }
+
+    private void begin() {
+        packet = pool.acquire();
+        packet.position(Protocol.PACKET_HEADER);
+        int slot = localSequence & SENT_MASK;
+        sentSequences[slot] = -1;
+        sentCounts[slot] = 0;
+    }
+
+    private void send(long now) throws IOException {
+        // Before anything arrived, ack a sequence this side can not have sent yet
+        int ack = receivedAny ? remoteSequence : Protocol.SEQUENCE_MASK;
+        Protocol.writeHeader(packet, Protocol.DATA, localSequence, ack, receivedBits);
+        packet.flip();
+        int bytes = packet.remaining();
+
+        int slot = localSequence & SENT_MASK;
+        sentSequences[slot] = localSequence;
+        sentTimes[slot] = now;
+        localSequence = Protocol.next(localSequence);
+        ackPending = false;
+        lastSent = now;
+
+        try {
+            if (host.simulateLoss()) {
+                // Counted as sent, it is lost on the way
+                stats.packetsSent++;
+                stats.bytesSent += bytes;
+            } else if (channel.send(packet, address) == 0) {
+                stats.sendDrops++;
+            } else {
+                stats.packetsSent++;
+                stats.bytesSent += bytes;
+            }
+        } finally {
+            pool.release(packet);
+            packet = null;
+        }
+    }
+
+    /**
+     * Handles a data packet, the protocol id and type were checked by the host.
+     */
+    void receive(ByteBuffer buffer, long now) {
+        if (!acceptSequence(Protocol.readSequence(buffer))) {
+            stats.duplicates++;
+            return;
+        }
+        lastReceived = now;
+        // Packets without messages are acknowledged with the next packet, not one of their own
+        if (buffer.limit() > Protocol.PACKET_HEADER)
+            ackPending = true;
+
+        int ack = Protocol.readAck(buffer);
+        int ackBits = Protocol.readAckBits(buffer);
+        acknowledge(ack, now);
+        for (int i = 0; i < 32; i++) {
+            if ((ackBits >>> i & 1) != 0)
+                acknowledge((ack - 1 - i) & Protocol.SEQUENCE_MASK, now);
+        }
+
+        int limit = buffer.limit();
+        buffer.position(Protocol.PACKET_HEADER);
+        while (buffer.remaining() >= Protocol.UNRELIABLE_HEADER) {
+            int ordinal = buffer.get();
+            if (ordinal < 0 || ordinal >= Delivery.VALUES.length || ordinal != 0 && buffer.remaining() < Protocol.MESSAGE_HEADER - 1) {
+                stats.malformed++;
+                return;
+            }
+
+            Delivery delivery = Delivery.VALUES[ordinal];
+            int messageId = delivery == Delivery.UNRELIABLE ? 0 : buffer.getShort() & Protocol.SEQUENCE_MASK;
+            int length = buffer.getShort() & 0xFFFF;
+            if (length > buffer.remaining()) {
+                stats.malformed++;
+                return;
+            }
+
+            int end = buffer.position() + length;
+            buffer.limit(end);
+            if (delivery == Delivery.UNRELIABLE)
+                host.deliver(this, delivery, buffer);
+            else
+                (delivery == Delivery.RELIABLE ? reliable : ordered).receive(messageId, buffer, this, host);
+            buffer.limit(limit).position(end);
+        }
+    }
+
+    /**
+     * Records a received packet sequence in the ack state.
+     *
+     * @return false for a duplicate, or a packet too old to be told apart from one
+     */
+    private boolean acceptSequence(int sequence) {
+        if (!receivedAny) {
+            receivedAny = true;
+            remoteSequence = sequence;
+            return true;
+        }
+
+        if (Protocol.isNewer(sequence, remoteSequence)) {
+            int shift = Protocol.distance(sequence, remoteSequence);
+            if (shift > 32)
+                receivedBits = 0;
+            else
+                receivedBits = (shift == 32 ? 0 : receivedBits << shift) | 1 << (shift - 1);
+            remoteSequence = sequence;
+            return true;
+        }
+
+        int age = Protocol.distance(remoteSequence, sequence);
+        if (age == 0 || age > 32)
+            return false;
+        int bit = 1 << (age - 1);
+        if ((receivedBits & bit) != 0)
+            return false;
+        receivedBits |= bit;
+        return true;
+    }
+
+    private void acknowledge(int sequence, long now) {
+        int slot = sequence & SENT_MASK;
+        if (sentSequences[slot] != sequence)
+            return;
+        sentSequences[slot] = -1;
+
+        long sample = now - sentTimes[slot];
+        roundTripTime = roundTripTime == 0 ? sample : roundTripTime + (sample - roundTripTime) / 8;
+
+        int first = slot * MAX_RELIABLE_PER_PACKET;
+        for (int i = 0; i < sentCounts[slot]; i++) {
+            int message = sentMessages[first + i];
+            ReliableChannel channel = (message & ORDERED_FLAG) != 0 ? ordered : reliable;
+            channel.acknowledge(message & Protocol.SEQUENCE_MASK);
+        }
+    }
+
+    /**
+     * @return smoothed round trip time in nanoseconds, 0 until the first acknowledgement
+     */
+    long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    @Override
+    void dispose() {
+        if (packet != null) {
+            pool.release(packet);
+            packet = null;
+        }
+        reliable.dispose();
+        ordered.dispose();
+    }
+}
@@ -0,0 +1,115 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads what a {@link BitWriter} wrote, between the position and the limit of a buffer, without moving them.
+ */
+public final class BitReader {
+
+    private ByteBuffer buffer;
+    private boolean swap;
+    private int index;
+    private int end;
+    private long scratch;
+    private int scratchBits;
+
+    public BitReader wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+        this.index = buffer.position();
+        this.end = buffer.limit();
+        this.scratch = 0;
+        this.scratchBits = 0;
+        return this;
+    }
+
+    /**
+     * @param bits between 0 and 32
+     * @return the value in the low bits, zero extended
+     */
+    public int readBits(int bits) {
+        if (bits == 0)
+            return 0;
+        if (scratchBits < bits) {
+            if (end - index >= 4) {
+                int word = buffer.getInt(index);
+                scratch = scratch << 32 | (swap ? Integer.reverseBytes(word) : word) & 0xFFFFFFFFL;
+                index += 4;
+                scratchBits += 32;
+            } else {
+                while (scratchBits < bits) {
+                    if (index == end)
+                        throw new BufferUnderflowException();
+                    scratch = scratch << 8 | buffer.get(index++) & 0xFF;
+                    scratchBits += 8;
+                }
+            }
+        }
+        scratchBits -= bits;
+        return (int) (scratch >>> scratchBits) & (int) (0xFFFFFFFFL >>> (32 - bits));
+    }
+
+    /**
+     * @param bits between 0 and 64
+     */
+    public long readLong(int bits) {
+        if (bits <= 32)
+            return readBits(bits) & 0xFFFFFFFFL;
+        long high = readBits(bits - 32) & 0xFFFFFFFFL;
+        return high << 32 | readBits(32) & 0xFFFFFFFFL;
+    }
+
+    public boolean readBoolean() {
+        return readBits(1) != 0;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int group = readBits(8);
+            value |= (group & 0x7F) << shift;
+            if ((group & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed varint.");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int group = readBits(8);
+            value |= (long) (group & 0x7F) << shift;
+            if ((group & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed varint.");
+    }
+
+    public int readZigZagInt() {
+        int value = readVarInt();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    public long readZigZagLong() {
+        long value = readVarLong();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readBits(32));
+    }
+
+    public float readQuantized(float min, float max, int bits) {
+        return Quantization.dequantize(readBits(bits), min, max, bits);
+    }
+
+    /**
+     * @return bits left before the limit, including the padding of the last byte
+     */
+    public int getRemainingBits() {
+        return (end - index) * 8 + scratchBits;
+    }
+}
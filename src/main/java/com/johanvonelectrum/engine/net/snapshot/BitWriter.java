@@ -0,0 +1,139 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes values of any bit width into a buffer, most significant bit first. Bits gather in a 64 bit register and
+ * reach the buffer four bytes at a time with absolute puts, so writing into a direct buffer does not touch the
+ * heap. The bytes land between the position of the buffer when it was wrapped and its limit, in the same order
+ * whatever the byte order of the buffer.
+ */
+public final class BitWriter {
+
+    private ByteBuffer buffer;
+    private boolean swap;
+    private int start;
+    private int index;
+    private int end;
+    private long scratch;
+    private int scratchBits;
+
+    public BitWriter wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+        this.start = buffer.position();
+        this.index = start;
+        this.end = buffer.limit();
+        this.scratch = 0;
+        this.scratchBits = 0;
+        return this;
+    }
+
+    /**
+     * Writes the low bits of the value.
+     *
+     * @param bits between 0 and 32
+     */
+    public void writeBits(int value, int bits) {
+        if (bits == 0)
+            return;
+        scratch = scratch << bits | value & 0xFFFFFFFFL >>> (32 - bits);
+        scratchBits += bits;
+        if (scratchBits >= 32) {
+            if (end - index < 4)
+                throw new BufferOverflowException();
+            scratchBits -= 32;
+            int word = (int) (scratch >>> scratchBits);
+            buffer.putInt(index, swap ? Integer.reverseBytes(word) : word);
+            index += 4;
+        }
+    }
+
+    /**
+     * @param bits between 0 and 64
+     */
+    public void writeLong(long value, int bits) {
+        if (bits > 32) {
+            writeBits((int) (value >>> 32), bits - 32);
+            writeBits((int) value, 32);
+        } else {
+            writeBits((int) value, bits);
+        }
+    }
+
+    public void writeBoolean(boolean value) {
+        writeBits(value ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes an unsigned value in groups of 7 bits, each after a continuation bit: 8 bits below 128, at most 40.
+     */
+    public void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeBits(0x80 | value & 0x7F, 8);
+            value >>>= 7;
+        }
+        writeBits(value, 8);
+    }
+
+    public void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeBits(0x80 | (int) value & 0x7F, 8);
+            value >>>= 7;
+        }
+        writeBits((int) value, 8);
+    }
+
+    /**
+     * Writes a signed value as a varint of its zigzag encoding, so small negative values stay small.
+     */
+    public void writeZigZag(int value) {
+        writeVarInt(value << 1 ^ value >> 31);
+    }
+
+    public void writeZigZag(long value) {
+        writeVarLong(value << 1 ^ value >> 63);
+    }
+
+    public void writeFloat(float value) {
+        writeBits(Float.floatToRawIntBits(value), 32);
+    }
+
+    /**
+     * @see Quantization#quantize(float, float, float, int)
+     */
+    public void writeQuantized(float value, float min, float max, int bits) {
+        writeBits(Quantization.quantize(value, min, max, bits), bits);
+    }
+
+    /**
+     * Writes the bits still in the register, padded with zeros to a byte, and moves the position of the buffer
+     * after them.
+     *
+     * @return bytes written since the buffer was wrapped
+     */
+    public int flush() {
+        while (scratchBits > 0) {
+            if (index == end)
+                throw new BufferOverflowException();
+            int bits = Math.min(8, scratchBits);
+            scratchBits -= bits;
+            buffer.put(index++, (byte) (scratch >>> scratchBits << (8 - bits)));
+        }
+        buffer.position(index);
+        return index - start;
+    }
+
+    public int getBitCount() {
+        return (index - start) * 8 + scratchBits;
+    }
+
+    /**
+     * @return bits that can still be written before the limit of the buffer
+     */
+    public int getRemainingBits() {
+        return (end - index) * 8 - scratchBits;
+    }
+}
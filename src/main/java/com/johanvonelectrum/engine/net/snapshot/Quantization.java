@@ -0,0 +1,127 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Lossy fixed point encodings of floats, vectors and rotations. Values are compared in their quantized form, so
+ * changes below the precision are neither detected nor sent, and both ends see exactly the same values.
+ */
+public final class Quantization {
+
+    /**
+     * Bound of the three smallest components of a unit quaternion.
+     */
+    private static final float SMALLEST_THREE_BOUND = (float) (1 / Math.sqrt(2));
+
+    private Quantization() {
+    }
+
+    /**
+     * @param bits between 1 and 31
+     * @return the value clamped to {@code [min, max]} and mapped to {@code [0, 2^bits - 1]}, rounding to the nearest
+     */
+    public static int quantize(float value, float min, float max, int bits) {
+        int steps = (1 << bits) - 1;
+        float clamped = Math.max(min, Math.min(max, value));
+        return (int) ((clamped - min) / (max - min) * steps + 0.5f);
+    }
+
+    public static float dequantize(int quantized, float min, float max, int bits) {
+        int steps = (1 << bits) - 1;
+        return min + quantized * (max - min) / steps;
+    }
+
+    /**
+     * Packs the three components in {@code 3 * bits} bits, x lowest.
+     *
+     * @param bits between 1 and 21
+     */
+    public static long packVector(float x, float y, float z, float min, float max, int bits) {
+        return quantize(x, min, max, bits)
+                | (long) quantize(y, min, max, bits) << bits
+                | (long) quantize(z, min, max, bits) << 2 * bits;
+    }
+
+    public static long packVector(Vector3fc vector, float min, float max, int bits) {
+        return packVector(vector.x(), vector.y(), vector.z(), min, max, bits);
+    }
+
+    public static float unpackVector(long packed, int component, float min, float max, int bits) {
+        int mask = (1 << bits) - 1;
+        return dequantize((int) (packed >>> component * bits) & mask, min, max, bits);
+    }
+
+    public static Vector3f unpackVector(long packed, float min, float max, int bits, Vector3f dest) {
+        return dest.set(unpackVector(packed, 0, min, max, bits), unpackVector(packed, 1, min, max, bits),
+                unpackVector(packed, 2, min, max, bits));
+    }
+
+    /**
+     * Packs a rotation as its three smallest components in {@code 2 + 3 * bits} bits, the index of the largest in the
+     * lowest two. The largest is rebuilt from the others, its sign is dropped since {@code q} and {@code -q} are the
+     * same rotation.
+     *
+     * @param bits between 2 and 20
+     */
+    public static long packQuaternion(float x, float y, float z, float w, int bits) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (length == 0)
+            return packQuaternion(0, 0, 0, 1, bits);
+        float scale = 1 / length;
+
+        int largest = 0;
+        float max = Math.abs(x);
+        if (Math.abs(y) > max) {
+            largest = 1;
+            max = Math.abs(y);
+        }
+        if (Math.abs(z) > max) {
+            largest = 2;
+            max = Math.abs(z);
+        }
+        if (Math.abs(w) > max)
+            largest = 3;
+
+        float largestValue = largest == 0 ? x : largest == 1 ? y : largest == 2 ? z : w;
+        if (largestValue < 0)
+            scale = -scale;
+
+        long packed = largest;
+        int shift = 2;
+        for (int i = 0; i < 4; i++) {
+            if (i == largest)
+                continue;
+            float component = i == 0 ? x : i == 1 ? y : i == 2 ? z : w;
+            packed |= (long) quantize(component * scale, -SMALLEST_THREE_BOUND, SMALLEST_THREE_BOUND, bits) << shift;
+            shift += bits;
+        }
+        return packed;
+    }
+
+    public static long packQuaternion(Quaternionfc rotation, int bits) {
+        return packQuaternion(rotation.x(), rotation.y(), rotation.z(), rotation.w(), bits);
+    }
+
+    public static Quaternionf unpackQuaternion(long packed, int bits, Quaternionf dest) {
+        int largest = (int) packed & 3;
+        int mask = (1 << bits) - 1;
+        float a = dequantize((int) (packed >>> 2) & mask, -SMALLEST_THREE_BOUND, SMALLEST_THREE_BOUND, bits);
+        float b = dequantize((int) (packed >>> 2 + bits) & mask, -SMALLEST_THREE_BOUND, SMALLEST_THREE_BOUND, bits);
+        float c = dequantize((int) (packed >>> 2 + 2 * bits) & mask, -SMALLEST_THREE_BOUND, SMALLEST_THREE_BOUND, bits);
+        float d = (float) Math.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+
+        switch (largest) {
+            case 0:
+                return dest.set(d, a, b, c);
+            case 1:
+                return dest.set(a, d, b, c);
+            case 2:
+                return dest.set(a, b, d, c);
+            default:
+                return dest.set(a, b, c, d);
+        }
+    }
+}
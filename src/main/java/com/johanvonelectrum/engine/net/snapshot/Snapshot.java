@@ -0,0 +1,116 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import java.util.Arrays;
+
+/**
+ * Replicated state of every entity at one tick: the entities sorted by id and, per entity, one quantized value per
+ * unit of the {@link SnapshotSchema}. The encoder diffs two snapshots with a single merge pass over the ids.
+ */
+public final class Snapshot {
+
+    final int unitCount;
+    int tick;
+    int size;
+    int[] entities = new int[64];
+    long[] states;
+
+    private long[] sortKeys = new long[0];
+    private int[] sortedEntities = new int[0];
+    private long[] sortedStates = new long[0];
+
+    Snapshot(int unitCount) {
+        this.unitCount = unitCount;
+        this.states = new long[entities.length * unitCount];
+    }
+
+    /**
+     * Empties the snapshot, which has no tick until it is {@link #complete(int) completed}.
+     */
+    void begin() {
+        tick = 0;
+        size = 0;
+    }
+
+    void complete(int tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * @return the row of the new entity, its state is left as it was
+     */
+    int addRow(int entity) {
+        if (size == entities.length) {
+            entities = Arrays.copyOf(entities, size * 2);
+            states = Arrays.copyOf(states, size * 2 * unitCount);
+        }
+        entities[size] = entity;
+        return size++;
+    }
+
+    void copyRow(Snapshot from, int row) {
+        int to = addRow(from.entities[row]);
+        System.arraycopy(from.states, row * unitCount, states, to * unitCount, unitCount);
+    }
+
+    /**
+     * Sorts the rows by entity, captured chunks come in archetype order.
+     */
+    void sort() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++)
+            sorted = entities[i - 1] < entities[i];
+        if (sorted)
+            return;
+
+        if (sortKeys.length < size) {
+            sortKeys = new long[entities.length];
+            sortedEntities = new int[entities.length];
+            sortedStates = new long[states.length];
+        }
+        for (int i = 0; i < size; i++)
+            sortKeys[i] = (long) entities[i] << 32 | i;
+        Arrays.sort(sortKeys, 0, size);
+
+        for (int i = 0; i < size; i++) {
+            int row = (int) sortKeys[i];
+            sortedEntities[i] = entities[row];
+            System.arraycopy(states, row * unitCount, sortedStates, i * unitCount, unitCount);
+        }
+
+        int[] swapEntities = entities;
+        entities = sortedEntities;
+        sortedEntities = swapEntities;
+        long[] swapStates = states;
+        states = sortedStates;
+        sortedStates = swapStates;
+    }
+
+    /**
+     * @return the tick, 0 while the snapshot is captured or decoded
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEntity(int row) {
+        return entities[row];
+    }
+
+    /**
+     * @return the quantized value of a unit, see {@link SnapshotSchema#getFloat} to read it back as floats
+     */
+    public long getState(int row, int unit) {
+        return states[row * unitCount + unit];
+    }
+
+    /**
+     * @return the row of the entity, negative if it is not in the snapshot
+     */
+    public int indexOf(int entity) {
+        return Arrays.binarySearch(entities, 0, size, entity);
+    }
+}
@@ -0,0 +1,139 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Rebuilds the snapshots written by a {@link SnapshotEncoder} on top of the baselines it kept, see the encoder for
+ * the format. Decoded snapshots stay available as baselines for the next {@value SnapshotHistory#SIZE} ticks.
+ */
+public final class SnapshotDecoder {
+
+    private final SnapshotSchema schema;
+    private final SnapshotHistory history;
+
+    private Snapshot assembling;
+    private Snapshot baseline;
+    private int assemblingTick;
+    private int nextPart;
+    private int baselineRow;
+    private int previousEntity;
+    private int latestTick;
+    private long dropped;
+
+    public SnapshotDecoder(SnapshotSchema schema) {
+        this.schema = schema;
+        this.history = new SnapshotHistory(schema);
+    }
+
+    /**
+     * Decodes one part.
+     *
+     * @return the snapshot once its last part is decoded, null while parts are missing or when the tick is dropped,
+     * because it is older than the latest, a part was lost or its baseline is no longer known
+     * @throws IllegalStateException when the part is malformed
+     */
+    public Snapshot decode(BitReader in) {
+        try {
+            return decodePart(in);
+        } catch (BufferUnderflowException e) {
+            assembling = null;
+            throw new IllegalStateException("Truncated snapshot part.", e);
+        } catch (IllegalStateException e) {
+            assembling = null;
+            throw e;
+        }
+    }
+
+    private Snapshot decodePart(BitReader in) {
+        int tick = in.readVarInt();
+        int baselineDistance = in.readVarInt();
+        int part = in.readVarInt();
+
+        if (part == 0) {
+            assembling = null;
+            if (tick - latestTick <= 0 || baselineDistance >= SnapshotHistory.SIZE)
+                return drop();
+            baseline = baselineDistance == 0 ? null : history.get(tick - baselineDistance);
+            if (baselineDistance != 0 && baseline == null)
+                return drop();
+
+            assembling = history.begin(tick);
+            assemblingTick = tick;
+            nextPart = 0;
+            baselineRow = 0;
+            previousEntity = -1;
+        } else if (assembling == null || tick != assemblingTick) {
+            return null;
+        } else if (part != nextPart) {
+            assembling = null;
+            return drop();
+        }
+        nextPart++;
+
+        int units = schema.getUnitCount();
+        int baselineSize = baseline == null ? 0 : baseline.size;
+        int delta;
+        while ((delta = in.readVarInt()) != 0) {
+            int entity = previousEntity + delta;
+            previousEntity = entity;
+            boolean removed = in.readBoolean();
+
+            while (baselineRow < baselineSize && baseline.entities[baselineRow] < entity)
+                assembling.copyRow(baseline, baselineRow++);
+            int base = baselineRow < baselineSize && baseline.entities[baselineRow] == entity ? baselineRow++ * units : -1;
+            if (removed) {
+                if (base < 0)
+                    throw new IllegalStateException("Entity " + entity + " was removed but is not in the baseline.");
+                continue;
+            }
+
+            int row = assembling.addRow(entity) * units;
+            long mask = in.readLong(units);
+            for (int unit = 0; unit < units; unit++) {
+                long baseValue = base < 0 ? 0 : baseline.states[base + unit];
+                assembling.states[row + unit] = (mask & 1L << unit) != 0 ? schema.read(in, unit, baseValue) : baseValue;
+            }
+        }
+
+        if (!in.readBoolean())
+            return null;
+        while (baselineRow < baselineSize)
+            assembling.copyRow(baseline, baselineRow++);
+        assembling.complete(tick);
+        latestTick = tick;
+
+        Snapshot snapshot = assembling;
+        assembling = null;
+        return snapshot;
+    }
+
+    private Snapshot drop() {
+        dropped++;
+        return null;
+    }
+
+    /**
+     * @return a decoded snapshot, null if it was never completed or is too old
+     */
+    public Snapshot get(int tick) {
+        return history.get(tick);
+    }
+
+    /**
+     * @return tick of the latest complete snapshot, the one to acknowledge
+     */
+    public int getLatestTick() {
+        return latestTick;
+    }
+
+    /**
+     * @return ticks dropped because they arrived late, lost a part or their baseline was gone
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public SnapshotSchema getSchema() {
+        return schema;
+    }
+}
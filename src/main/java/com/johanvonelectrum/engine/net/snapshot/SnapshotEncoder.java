@@ -0,0 +1,134 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+/**
+ * Writes a snapshot as a delta against a baseline the client acknowledged, or against nothing for a full snapshot.
+ * Entities are walked in id order next to the baseline: unchanged ones are skipped, changed ones write an id delta
+ * and a mask of their changed units followed by those units, and removed ones write their id and a flag. Entities
+ * missing from the baseline are diffed against zero and always written, with an empty mask if every unit is zero.
+ * <p>
+ * A snapshot too large for one message is split in parts, each ending where the next entry may not fit:
+ * <pre>
+ * part:  varint tick, varint tick - baseline tick (0 for none), varint part, entries, varint 0, bit last
+ * entry: varint id - previous id, bit removed, [mask of units, changed units]
+ * </pre>
+ * Parts must be decoded in order; a client missing one drops the tick and keeps acknowledging the previous.
+ */
+public final class SnapshotEncoder {
+
+    private static final int END_BITS = 8 + 1;
+
+    /**
+     * Bits a part needs besides its entries at most: the header of three varints of up to 40 bits and the end.
+     */
+    static final int MAX_PART_OVERHEAD_BITS = 3 * 40 + END_BITS;
+
+    private final SnapshotSchema schema;
+
+    private Snapshot current;
+    private Snapshot baseline;
+    private int currentRow;
+    private int baselineRow;
+    private int previousEntity;
+    private int part;
+    private boolean done = true;
+    private int entries;
+
+    public SnapshotEncoder(SnapshotSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * @param baseline snapshot the client has, null to send every entity in full
+     */
+    public void begin(Snapshot current, Snapshot baseline) {
+        if (current.tick == 0)
+            throw new IllegalArgumentException("The snapshot is not complete.");
+        if (baseline != null && (baseline.tick == 0 || baseline.tick - current.tick >= 0))
+            throw new IllegalArgumentException("Baseline " + baseline.tick + " is not older than tick " + current.tick);
+
+        this.current = current;
+        this.baseline = baseline;
+        this.currentRow = 0;
+        this.baselineRow = 0;
+        this.previousEntity = -1;
+        this.part = 0;
+        this.done = false;
+    }
+
+    /**
+     * Writes the next part, as many entries as fit in the writer.
+     *
+     * @return true if it was the last part
+     */
+    public boolean encodePart(BitWriter out) {
+        if (done)
+            throw new IllegalStateException("Every part was already encoded, begin a new snapshot.");
+
+        out.writeVarInt(current.tick);
+        out.writeVarInt(baseline == null ? 0 : current.tick - baseline.tick);
+        out.writeVarInt(part++);
+        if (out.getRemainingBits() < schema.getMaxEntryBits() + END_BITS)
+            throw new IllegalStateException("The writer can not hold a single entity of " + schema.getMaxEntryBits() + " bits.");
+
+        int units = current.unitCount;
+        int baselineSize = baseline == null ? 0 : baseline.size;
+        while (currentRow < current.size || baselineRow < baselineSize) {
+            if (out.getRemainingBits() < schema.getMaxEntryBits() + END_BITS) {
+                out.writeVarInt(0);
+                out.writeBoolean(false);
+                return false;
+            }
+
+            int entity = currentRow < current.size ? current.entities[currentRow] : Integer.MAX_VALUE;
+            int baselineEntity = baselineRow < baselineSize ? baseline.entities[baselineRow] : Integer.MAX_VALUE;
+            if (baselineEntity < entity) {
+                writeEntity(out, baselineEntity);
+                out.writeBoolean(true);
+                baselineRow++;
+                continue;
+            }
+
+            int from = currentRow++ * units;
+            int base = baselineEntity == entity ? baselineRow++ * units : -1;
+            long mask = 0;
+            for (int unit = 0; unit < units; unit++) {
+                long baseValue = base < 0 ? 0 : baseline.states[base + unit];
+                if (current.states[from + unit] != baseValue)
+                    mask |= 1L << unit;
+            }
+            // A new entity is written even when every unit is zero, the client would not know it exists otherwise
+            if (mask == 0 && base >= 0)
+                continue;
+
+            writeEntity(out, entity);
+            out.writeBoolean(false);
+            out.writeLong(mask, units);
+            for (int unit = 0; unit < units; unit++) {
+                if ((mask & 1L << unit) != 0)
+                    schema.write(out, unit, current.states[from + unit], base < 0 ? 0 : baseline.states[base + unit]);
+            }
+        }
+
+        out.writeVarInt(0);
+        out.writeBoolean(true);
+        done = true;
+        return true;
+    }
+
+    private void writeEntity(BitWriter out, int entity) {
+        out.writeVarInt(entity - previousEntity);
+        previousEntity = entity;
+        entries++;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return changed and removed entities written since the encoder was created
+     */
+    public int getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,63 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import com.johanvonelectrum.engine.ecs.Chunk;
+import com.johanvonelectrum.engine.ecs.Query;
+
+/**
+ * The last {@value #SIZE} snapshots, the baselines deltas can be encoded against. Both ends keep the same number,
+ * so a baseline the server still has is one the client can still have.
+ */
+public final class SnapshotHistory {
+
+    public static final int SIZE = 32;
+
+    private final SnapshotSchema schema;
+    private final Snapshot[] snapshots = new Snapshot[SIZE];
+    private final Query.ChunkConsumer capture = this::capture;
+    private Snapshot capturing;
+
+    public SnapshotHistory(SnapshotSchema schema) {
+        this.schema = schema;
+        for (int i = 0; i < SIZE; i++)
+            snapshots[i] = new Snapshot(schema.getUnitCount());
+    }
+
+    /**
+     * Captures the entities of the query, which must have every component of the schema, as the snapshot of the
+     * tick.
+     *
+     * @param tick positive and newer than the ticks captured before
+     */
+    public Snapshot capture(int tick, Query query) {
+        capturing = begin(tick);
+        try {
+            query.forEachChunk(capture);
+            capturing.sort();
+            capturing.complete(tick);
+            return capturing;
+        } finally {
+            capturing = null;
+        }
+    }
+
+    private void capture(Chunk chunk) {
+        schema.capture(chunk, capturing);
+    }
+
+    /**
+     * @return the emptied snapshot taking the slot of the tick, older by {@value #SIZE} ticks
+     */
+    Snapshot begin(int tick) {
+        Snapshot snapshot = snapshots[tick & SIZE - 1];
+        snapshot.begin();
+        return snapshot;
+    }
+
+    /**
+     * @return the snapshot of the tick, null if it was never completed or was replaced since
+     */
+    public Snapshot get(int tick) {
+        Snapshot snapshot = snapshots[tick & SIZE - 1];
+        return tick != 0 && snapshot.tick == tick ? snapshot : null;
+    }
+}
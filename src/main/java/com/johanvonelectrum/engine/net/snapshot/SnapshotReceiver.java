@@ -0,0 +1,77 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.net.Delivery;
+import com.johanvonelectrum.engine.net.MessageEvent;
+import com.johanvonelectrum.engine.net.NetHost;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Client end of a {@link SnapshotReplicator}: decodes the snapshot parts sent by the server and acknowledges every
+ * complete snapshot, which the server then uses as the baseline of the next deltas.
+ */
+public class SnapshotReceiver {
+
+    /**
+     * Message type and tick.
+     */
+    static final int ACK_SIZE = 1 + Integer.BYTES;
+
+    private static final Logger LOGGER = LogManager.getLogger("Replication");
+
+    private final NetHost host;
+    private final byte messageType;
+    private final SnapshotDecoder decoder;
+    private final BitReader reader = new BitReader();
+    private final ByteBuffer ack = ByteBuffer.allocate(ACK_SIZE);
+    private long malformed;
+
+    public SnapshotReceiver(NetHost host, SnapshotSchema schema, byte messageType) {
+        this.host = host;
+        this.messageType = messageType;
+        this.decoder = new SnapshotDecoder(schema);
+    }
+
+    /**
+     * @return the snapshot completed by the event, null for other events and incomplete snapshots
+     */
+    public Snapshot onEvent(Event event) {
+        if (!(event instanceof MessageEvent))
+            return null;
+        MessageEvent received = (MessageEvent) event;
+        ByteBuffer payload = received.getPayload();
+        if (!payload.hasRemaining() || payload.get(payload.position()) != messageType)
+            return null;
+
+        int position = payload.position();
+        payload.position(position + 1);
+        Snapshot snapshot;
+        try {
+            snapshot = decoder.decode(reader.wrap(payload));
+        } catch (IllegalStateException e) {
+            malformed++;
+            LOGGER.debug("Malformed snapshot from connection {}.", received.getConnection(), e);
+            return null;
+        } finally {
+            payload.position(position);
+        }
+
+        if (snapshot != null) {
+            ack.clear();
+            ack.put(messageType).putInt(snapshot.getTick()).flip();
+            host.send(received.getConnection(), Delivery.UNRELIABLE, ack);
+        }
+        return snapshot;
+    }
+
+    public SnapshotDecoder getDecoder() {
+        return decoder;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+}
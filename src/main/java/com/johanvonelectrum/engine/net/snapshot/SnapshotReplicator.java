@@ -0,0 +1,203 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import com.johanvonelectrum.engine.ecs.Query;
+import com.johanvonelectrum.engine.ecs.World;
+import com.johanvonelectrum.engine.ecs.EntitySystem;
+import com.johanvonelectrum.engine.events.Event;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import com.johanvonelectrum.engine.memory.NativeHeap;
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import com.johanvonelectrum.engine.net.ConnectionEvent;
+import com.johanvonelectrum.engine.net.Delivery;
+import com.johanvonelectrum.engine.net.MessageEvent;
+import com.johanvonelectrum.engine.net.NetHost;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Sends the replicated entities to every client each tick, as a delta against the last snapshot the client
+ * acknowledged. Add it last to the server {@link com.johanvonelectrum.engine.ecs.EcsLayer}, so it sees the state
+ * left by the other systems, and hand it the network events with {@link #onEvent(Event)}: connections become
+ * clients once connected, and acknowledgements move their baselines forward.
+ * <p>
+ * Messages start with the type given to the constructor, to tell them apart from other game messages: snapshot
+ * parts are {@code type, part} and acknowledgements {@code type, int tick}, see {@link SnapshotReceiver}. Both are
+ * unreliable; a lost part only makes the client acknowledge an older tick and receive a larger delta.
+ */
+public class SnapshotReplicator implements EntitySystem {
+
+    private static final Logger LOGGER = LogManager.getLogger("Replication");
+    private static final int NOT_A_CLIENT = -1;
+
+    private final NetHost host;
+    private final SnapshotSchema schema;
+    private final byte messageType;
+    private final SnapshotHistory history;
+    private final SnapshotEncoder encoder;
+    private final BitWriter writer = new BitWriter();
+    private final NativeHeap heap = NativeMemory.heap("Replication");
+    private final ByteBuffer message;
+
+    private Query query;
+    private int tick;
+
+    private final int[] ackedTicks;
+    private int[] clients = new int[16];
+    private int clientCount;
+
+    private long lastBytes;
+    private int lastEntities;
+    private long totalBytes;
+    private long totalMessages;
+    private long fullSnapshots;
+
+    public SnapshotReplicator(NetHost host, SnapshotSchema schema, byte messageType) {
+        if (schema.getMaxEntryBits() + SnapshotEncoder.MAX_PART_OVERHEAD_BITS > (host.getMaxMessageSize() - 1) * 8)
+            throw new IllegalArgumentException("An entity of " + schema.getMaxEntryBits() + " bits does not fit in a message.");
+
+        this.host = host;
+        this.schema = schema;
+        this.messageType = messageType;
+        this.history = new SnapshotHistory(schema);
+        this.encoder = new SnapshotEncoder(schema);
+        this.message = heap.malloc(host.getMaxMessageSize());
+        this.ackedTicks = new int[host.getMaxConnections()];
+        Arrays.fill(ackedTicks, NOT_A_CLIENT);
+    }
+
+    @Override
+    public void init(World world) {
+        query = world.query(schema.getTypes());
+    }
+
+    @Override
+    public void update(World world, JobSystem jobSystem, float deltaTime) {
+        Snapshot snapshot = history.capture(++tick, query);
+        long bytes = 0;
+        for (int i = 0; i < clientCount; i++)
+            bytes += send(clients[i], snapshot);
+        lastBytes = bytes;
+        lastEntities = snapshot.size;
+        totalBytes += bytes;
+    }
+
+    private long send(int connection, Snapshot snapshot) {
+        int acked = ackedTicks[connection];
+        Snapshot baseline = acked > 0 && tick - acked < SnapshotHistory.SIZE ? history.get(acked) : null;
+        if (baseline == null)
+            fullSnapshots++;
+
+        long bytes = 0;
+        encoder.begin(snapshot, baseline);
+        do {
+            message.clear();
+            message.put(messageType);
+            writer.wrap(message);
+            encoder.encodePart(writer);
+            writer.flush();
+            message.flip();
+            bytes += message.remaining();
+            totalMessages++;
+            if (!host.send(connection, Delivery.UNRELIABLE, message))
+                LOGGER.debug("Snapshot {} to connection {} was dropped, the network queue is full.", box(tick), box(connection));
+        } while (!encoder.isDone());
+        return bytes;
+    }
+
+    /**
+     * Tracks clients and their acknowledgements, other events are ignored.
+     */
+    public void onEvent(Event event) {
+        if (event instanceof ConnectionEvent) {
+            ConnectionEvent connection = (ConnectionEvent) event;
+            if (connection.getType() == ConnectionEvent.Type.CONNECTED)
+                addClient(connection.getConnection());
+            else
+                removeClient(connection.getConnection());
+        } else if (event instanceof MessageEvent) {
+            MessageEvent received = (MessageEvent) event;
+            ByteBuffer payload = received.getPayload();
+            if (payload.remaining() == SnapshotReceiver.ACK_SIZE && payload.get(payload.position()) == messageType)
+                acknowledge(received.getConnection(), payload.getInt(payload.position() + 1));
+        }
+    }
+
+    public void addClient(int connection) {
+        if (ackedTicks[connection] != NOT_A_CLIENT)
+            return;
+        if (clientCount == clients.length)
+            clients = Arrays.copyOf(clients, clientCount * 2);
+        clients[clientCount++] = connection;
+        ackedTicks[connection] = 0;
+    }
+
+    public void removeClient(int connection) {
+        if (ackedTicks[connection] == NOT_A_CLIENT)
+            return;
+        ackedTicks[connection] = NOT_A_CLIENT;
+        for (int i = 0; i < clientCount; i++) {
+            if (clients[i] == connection) {
+                clients[i] = clients[--clientCount];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the baseline of a client forward, older or unknown acknowledgements are ignored.
+     */
+    public void acknowledge(int connection, int ackedTick) {
+        if (connection < 0 || connection >= ackedTicks.length || ackedTicks[connection] == NOT_A_CLIENT)
+            return;
+        if (ackedTick - ackedTicks[connection] > 0 && ackedTick - tick <= 0)
+            ackedTicks[connection] = ackedTick;
+    }
+
+    @Override
+    public void dispose(World world) {
+        report();
+        heap.free(message);
+    }
+
+    public void report() {
+        if (tick == 0)
+            return;
+        LOGGER.info("{} ticks replicated in {} messages and {} KiB, {} full snapshots.",
+                box(tick), box(totalMessages), box(totalBytes / 1024), box(fullSnapshots));
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * @return bytes sent to all clients in the last tick
+     */
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    /**
+     * @return bytes per replicated entity and client in the last tick
+     */
+    public double getLastBytesPerEntity() {
+        return lastEntities == 0 || clientCount == 0 ? 0 : (double) lastBytes / lastEntities / clientCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getFullSnapshots() {
+        return fullSnapshots;
+    }
+}
@@ -0,0 +1,381 @@
+package com.johanvonelectrum.engine.net.snapshot;
+
+import com.johanvonelectrum.engine.ecs.Chunk;
+import com.johanvonelectrum.engine.ecs.ComponentType;
+import com.johanvonelectrum.engine.ecs.World;
+import org.joml.Quaternionf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Component fields replicated to clients and how each is encoded. Fields are grouped in units, each with its own
+ * bit in the change mask of an entity: a single field, or the three floats of a vector or four of a rotation
+ * quantized together. Every replicated entity must have all the components of the schema. Reading values back with
+ * {@link #getFloat} and {@link #apply} is meant for one thread.
+ * <pre>{@code
+ * SnapshotSchema schema = SnapshotSchema.builder()
+ *         .vector(POSITION, -1024, 1024, 18, "x", "y", "z")
+ *         .quaternion(ROTATION, 10, "x", "y", "z", "w")
+ *         .quantized(HEALTH, "value", 0, 100, 7)
+ *         .field(STATE, "flags")
+ *         .build();
+ * }</pre>
+ */
+public final class SnapshotSchema {
+
+    public static final int MAX_UNITS = Long.SIZE;
+
+    enum Encoding {
+        /**
+         * Raw float bits.
+         */
+        FLOAT,
+        QUANTIZED,
+        VECTOR,
+        QUATERNION,
+        /**
+         * Zigzag varint of the difference with the baseline, small for counters and rarely changing values.
+         */
+        INT,
+        LONG,
+        /**
+         * Raw double bits.
+         */
+        DOUBLE
+    }
+
+    private final ComponentType[] types;
+    private final ComponentType[] unitTypes;
+    private final int[][] unitFields;
+    private final Encoding[] encodings;
+    private final float[] mins;
+    private final float[] maxs;
+    private final int[] bits;
+    private final int maxEntryBits;
+    private final Quaternionf rotation = new Quaternionf();
+
+    private SnapshotSchema(Builder builder) {
+        int count = builder.unitTypes.size();
+        this.unitTypes = builder.unitTypes.toArray(new ComponentType[0]);
+        this.unitFields = builder.unitFields.toArray(new int[0][]);
+        this.encodings = builder.encodings.toArray(new Encoding[0]);
+        this.mins = new float[count];
+        this.maxs = new float[count];
+        this.bits = new int[count];
+        List<ComponentType> distinct = new ArrayList<>();
+        for (int unit = 0; unit < count; unit++) {
+            mins[unit] = builder.mins.get(unit);
+            maxs[unit] = builder.maxs.get(unit);
+            bits[unit] = builder.bits.get(unit);
+            if (!distinct.contains(unitTypes[unit]))
+                distinct.add(unitTypes[unit]);
+        }
+        this.types = distinct.toArray(new ComponentType[0]);
+
+        // Entity id delta, removal flag, change mask and every unit at its largest
+        int entryBits = 40 + 1 + count;
+        for (int unit = 0; unit < count; unit++)
+            entryBits += getMaxBits(unit);
+        this.maxEntryBits = entryBits;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private int getMaxBits(int unit) {
+        switch (encodings[unit]) {
+            case FLOAT:
+                return 32;
+            case QUANTIZED:
+                return bits[unit];
+            case VECTOR:
+                return 3 * bits[unit];
+            case QUATERNION:
+                return 2 + 3 * bits[unit];
+            case INT:
+                return 40;
+            case LONG:
+                return 80;
+            default:
+                return 64;
+        }
+    }
+
+    /**
+     * Quantizes the units of every entity in the chunk into new rows of the snapshot.
+     */
+    void capture(Chunk chunk, Snapshot snapshot) {
+        int first = snapshot.size;
+        for (int i = 0, n = chunk.size(); i < n; i++)
+            snapshot.addRow(chunk.getEntity(i));
+
+        int stride = snapshot.unitCount;
+        long[] states = snapshot.states;
+        for (int unit = 0; unit < unitTypes.length; unit++) {
+            ComponentType type = unitTypes[unit];
+            int[] fields = unitFields[unit];
+            int index = first * stride + unit;
+            switch (encodings[unit]) {
+                case FLOAT: {
+                    float[] values = chunk.floats(type, fields[0]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = Float.floatToRawIntBits(values[i]) & 0xFFFFFFFFL;
+                    break;
+                }
+                case QUANTIZED: {
+                    float[] values = chunk.floats(type, fields[0]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = Quantization.quantize(values[i], mins[unit], maxs[unit], bits[unit]);
+                    break;
+                }
+                case VECTOR: {
+                    float[] x = chunk.floats(type, fields[0]), y = chunk.floats(type, fields[1]), z = chunk.floats(type, fields[2]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = Quantization.packVector(x[i], y[i], z[i], mins[unit], maxs[unit], bits[unit]);
+                    break;
+                }
+                case QUATERNION: {
+                    float[] x = chunk.floats(type, fields[0]), y = chunk.floats(type, fields[1]);
+                    float[] z = chunk.floats(type, fields[2]), w = chunk.floats(type, fields[3]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = Quantization.packQuaternion(x[i], y[i], z[i], w[i], bits[unit]);
+                    break;
+                }
+                case INT: {
+                    int[] values = chunk.ints(type, fields[0]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = values[i];
+                    break;
+                }
+                case LONG: {
+                    long[] values = chunk.longs(type, fields[0]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = values[i];
+                    break;
+                }
+                case DOUBLE: {
+                    double[] values = chunk.doubles(type, fields[0]);
+                    for (int i = 0, n = chunk.size(); i < n; i++, index += stride)
+                        states[index] = Double.doubleToRawLongBits(values[i]);
+                    break;
+                }
+            }
+        }
+    }
+
+    void write(BitWriter out, int unit, long value, long baseline) {
+        switch (encodings[unit]) {
+            case FLOAT:
+                out.writeBits((int) value, 32);
+                break;
+            case QUANTIZED:
+            case VECTOR:
+            case QUATERNION:
+                out.writeLong(value, getMaxBits(unit));
+                break;
+            case INT:
+                out.writeZigZag((int) value - (int) baseline);
+                break;
+            case LONG:
+                out.writeZigZag(value - baseline);
+                break;
+            case DOUBLE:
+                out.writeLong(value, 64);
+                break;
+        }
+    }
+
+    long read(BitReader in, int unit, long baseline) {
+        switch (encodings[unit]) {
+            case FLOAT:
+                return in.readBits(32) & 0xFFFFFFFFL;
+            case QUANTIZED:
+            case VECTOR:
+            case QUATERNION:
+                return in.readLong(getMaxBits(unit));
+            case INT:
+                return (int) baseline + in.readZigZagInt();
+            case LONG:
+                return baseline + in.readZigZagLong();
+            default:
+                return in.readLong(64);
+        }
+    }
+
+    /**
+     * @param component index of the float in the unit: 0 for single fields, up to 2 for vectors and 3 for rotations
+     * @return a float unit of the snapshot, dequantized
+     */
+    public float getFloat(Snapshot snapshot, int row, int unit, int component) {
+        long state = snapshot.getState(row, unit);
+        switch (encodings[unit]) {
+            case FLOAT:
+                return Float.intBitsToFloat((int) state);
+            case QUANTIZED:
+                return Quantization.dequantize((int) state, mins[unit], maxs[unit], bits[unit]);
+            case VECTOR:
+                return Quantization.unpackVector(state, component, mins[unit], maxs[unit], bits[unit]);
+            case QUATERNION:
+                Quantization.unpackQuaternion(state, bits[unit], rotation);
+                return component == 0 ? rotation.x : component == 1 ? rotation.y : component == 2 ? rotation.z : rotation.w;
+            default:
+                throw new IllegalArgumentException("Unit " + unit + " is not a float unit.");
+        }
+    }
+
+    /**
+     * Writes the values of a snapshot row into the components of a local entity.
+     */
+    public void apply(Snapshot snapshot, int row, World world, int entity) {
+        for (int unit = 0; unit < unitTypes.length; unit++) {
+            ComponentType type = unitTypes[unit];
+            int[] fields = unitFields[unit];
+            long state = snapshot.getState(row, unit);
+            switch (encodings[unit]) {
+                case INT:
+                    world.setInt(entity, type, fields[0], (int) state);
+                    break;
+                case LONG:
+                    world.setLong(entity, type, fields[0], state);
+                    break;
+                case DOUBLE:
+                    world.setDouble(entity, type, fields[0], Double.longBitsToDouble(state));
+                    break;
+                case QUATERNION:
+                    Quantization.unpackQuaternion(state, bits[unit], rotation);
+                    world.setFloat(entity, type, fields[0], rotation.x);
+                    world.setFloat(entity, type, fields[1], rotation.y);
+                    world.setFloat(entity, type, fields[2], rotation.z);
+                    world.setFloat(entity, type, fields[3], rotation.w);
+                    break;
+                default:
+                    for (int component = 0; component < fields.length; component++)
+                        world.setFloat(entity, type, fields[component], getFloat(snapshot, row, unit, component));
+            }
+        }
+    }
+
+    /**
+     * @return the components every replicated entity has
+     */
+    public ComponentType[] getTypes() {
+        return types.clone();
+    }
+
+    public int getUnitCount() {
+        return unitTypes.length;
+    }
+
+    /**
+     * @return bits of the largest entry an entity can take, deltas reserve it before writing one
+     */
+    public int getMaxEntryBits() {
+        return maxEntryBits;
+    }
+
+    public static final class Builder {
+
+        private final List<ComponentType> unitTypes = new ArrayList<>();
+        private final List<int[]> unitFields = new ArrayList<>();
+        private final List<Encoding> encodings = new ArrayList<>();
+        private final List<Float> mins = new ArrayList<>();
+        private final List<Float> maxs = new ArrayList<>();
+        private final List<Integer> bits = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Replicates a field exactly: floats and doubles as their raw bits, ints and longs as varint deltas.
+         */
+        public Builder field(ComponentType type, String field) {
+            int index = type.field(field);
+            switch (type.getKind(index)) {
+                case FLOAT:
+                    return unit(type, new int[]{ index }, Encoding.FLOAT, 0, 0, 32);
+                case INT:
+                    return unit(type, new int[]{ index }, Encoding.INT, 0, 0, 0);
+                case LONG:
+                    return unit(type, new int[]{ index }, Encoding.LONG, 0, 0, 0);
+                default:
+                    return unit(type, new int[]{ index }, Encoding.DOUBLE, 0, 0, 64);
+            }
+        }
+
+        /**
+         * Replicates a float field clamped to {@code [min, max]} in the given bits.
+         */
+        public Builder quantized(ComponentType type, String field, float min, float max, int bits) {
+            checkBits(bits, 1, 31);
+            return unit(type, floatFields(type, field), Encoding.QUANTIZED, min, max, bits);
+        }
+
+        /**
+         * Replicates three float fields as one vector unit, each clamped to {@code [min, max]} in the given bits.
+         */
+        public Builder vector(ComponentType type, float min, float max, int bits, String x, String y, String z) {
+            checkBits(bits, 1, 21);
+            return unit(type, floatFields(type, x, y, z), Encoding.VECTOR, min, max, bits);
+        }
+
+        /**
+         * Replicates four float fields as a rotation, the three smallest components in the given bits each.
+         */
+        public Builder quaternion(ComponentType type, int bits, String x, String y, String z, String w) {
+            checkBits(bits, 2, 20);
+            return unit(type, floatFields(type, x, y, z, w), Encoding.QUATERNION, -1, 1, bits);
+        }
+
+        private static int[] floatFields(ComponentType type, String... names) {
+            int[] fields = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                fields[i] = type.field(names[i]);
+                if (type.getKind(fields[i]) != ComponentType.Kind.FLOAT)
+                    throw new IllegalArgumentException("Field " + names[i] + " of " + type + " is not a float.");
+            }
+            return fields;
+        }
+
+        private static void checkBits(int bits, int min, int max) {
+            if (bits < min || bits > max)
+                throw new IllegalArgumentException("Bits must be between " + min + " and " + max + ": " + bits);
+        }
+
+        private Builder unit(ComponentType type, int[] fields, Encoding encoding, float min, float max, int bits) {
+            if (unitTypes.size() == MAX_UNITS)
+                throw new IllegalStateException("Too many units, the limit is " + MAX_UNITS);
+            if ((encoding == Encoding.QUANTIZED || encoding == Encoding.VECTOR) && min >= max)
+                throw new IllegalArgumentException("Empty range [" + min + ", " + max + "]");
+            for (int i = 0; i < unitTypes.size(); i++) {
+                if (unitTypes.get(i) == type && overlaps(unitFields.get(i), fields))
+                    throw new IllegalArgumentException("A field of " + type + " is replicated twice.");
+            }
+
+            unitTypes.add(type);
+            unitFields.add(fields);
+            encodings.add(encoding);
+            mins.add(min);
+            maxs.add(max);
+            this.bits.add(bits);
+            return this;
+        }
+
+        private static boolean overlaps(int[] a, int[] b) {
+            for (int field : a) {
+                for (int other : b) {
+                    if (field == other)
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        public SnapshotSchema build() {
+            if (unitTypes.isEmpty())
+                throw new IllegalStateException("A snapshot schema needs at least one field.");
+            return new SnapshotSchema(this);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.johanvonelectrum.engine.profiling;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Catches allocation regressions in the frame loop. Reads the bytes allocated by the loop thread through
+ * {@link com.sun.management.ThreadMXBean} at the end of every frame and reports, or fails, when a frame allocated
+ * more than the budget. The first frames are ignored while classes load and caches warm up.
+ */
+public final class AllocationGuard {
+
+    public enum Mode {
+        OFF, REPORT, FAIL
+    }
+
+    public static final int WARMUP_FRAMES = 300;
+
+    private static final Logger LOGGER = LogManager.getLogger("AllocationGuard");
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final Mode mode;
+    private final long budget;
+    private final long threadId;
+
+    /**
+     * Bytes allocated by reading the counter itself, subtracted from every frame.
+     */
+    private final long overhead;
+
+    private long mark;
+    private long frames;
+    private long violations;
+    private long maxBytes;
+    private long totalBytes;
+
+    /**
+     * @param budget bytes a frame may allocate before it is reported
+     */
+    public static AllocationGuard create(Mode mode, long budget) {
+        if (mode == Mode.OFF)
+            return null;
+
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            LOGGER.warn("This JVM can not measure thread allocations, the allocation guard is disabled.");
+            return null;
+        }
+
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemoryEnabled())
+            hotspot.setThreadAllocatedMemoryEnabled(true);
+
+        return new AllocationGuard(hotspot, mode, budget);
+    }
+
+    private AllocationGuard(com.sun.management.ThreadMXBean threads, Mode mode, long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("Allocation budget can not be negative: " + budget);
+
+        this.threads = threads;
+        this.mode = mode;
+        this.budget = budget;
+        this.threadId = Thread.currentThread().getId();
+
+        long first = allocatedBytes();
+        long second = allocatedBytes();
+        this.overhead = second - first;
+        this.mark = allocatedBytes();
+        LOGGER.info("Allocation guard in {} mode, {} bytes per frame.", mode, box(budget));
+    }
+
+    /**
+     * Ends the frame, must be called from the thread that created the guard.
+     *
+     * @throws IllegalStateException in {@link Mode#FAIL} when the frame went over the budget
+     */
+    public void endFrame() {
+        long allocated = Math.max(0, allocatedBytes() - mark - overhead);
+        frames++;
+
+        if (frames > WARMUP_FRAMES) {
+            totalBytes += allocated;
+            if (allocated > maxBytes)
+                maxBytes = allocated;
+            if (allocated > budget)
+                violation(allocated);
+        }
+
+        // Taken after reporting, the log message is not charged to the next frame
+        mark = allocatedBytes();
+    }
+
+    private void violation(long allocated) {
+        violations++;
+        if (mode == Mode.FAIL)
+            throw new IllegalStateException("Frame " + frames + " allocated " + allocated + " bytes, over the "
+                    + budget + " bytes budget.");
+        LOGGER.warn("Frame {} allocated {} bytes, over the {} bytes budget.", box(frames), box(allocated), box(budget));
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(threadId);
+    }
+
+    public void report() {
+        long measured = Math.max(0, frames - WARMUP_FRAMES);
+        if (measured == 0)
+            return;
+        LOGGER.info("{} of {} frames went over the allocation budget, {} bytes per frame on average, {} at most.",
+                box(violations), box(measured), box(totalBytes / measured), box(maxBytes));
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getViolations() {
+        return violations;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
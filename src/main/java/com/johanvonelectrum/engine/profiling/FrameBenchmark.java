@@ -0,0 +1,184 @@
+package com.johanvonelectrum.engine.profiling;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Records the frames of a benchmark run from the {@link Profiler} history and writes a JSON report with the p50, p95,
+ * p99 and max frame times, and the same percentiles for every profiler scope and for the GPU time. Reports of the
+ * same scene can be compared over time to track performance trends.
+ * <p>
+ * The first frames are rendered without being measured while shaders compile and caches warm up.
+ */
+public final class FrameBenchmark {
+
+    private static final Logger LOGGER = LogManager.getLogger("FrameBenchmark");
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+
+    private final int warmup;
+    private final int frames;
+    private final long[] frameTimes;
+    private final long[] gpuTimes;
+    private final long[][] scopeTimes = new long[Profiler.MAX_SCOPES][];
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private long firstFrame = -1;
+    private int recorded;
+    private int gpuRecorded;
+    private long nextGpuFrame;
+
+    /**
+     * @param warmup frames ignored before measuring
+     * @param frames measured frames
+     */
+    public FrameBenchmark(int warmup, int frames) {
+        if (warmup < 0 || frames < 1)
+            throw new IllegalArgumentException("Invalid benchmark length: " + warmup + " warmup frames, " + frames + " frames");
+
+        this.warmup = warmup;
+        this.frames = frames;
+        this.frameTimes = new long[frames];
+        this.gpuTimes = new long[frames];
+    }
+
+    /**
+     * Adds a value to the report, to tell runs on different machines or settings apart.
+     */
+    public FrameBenchmark setProperty(String name, Object value) {
+        properties.put(name, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Records the frame just closed by {@link Profiler#endFrame()}. Main thread only.
+     */
+    public void endFrame() {
+        Profiler.History history = Profiler.getHistory();
+        ProfilerFrame frame = history.get(0);
+        if (firstFrame < 0) {
+            firstFrame = frame.getNumber() + warmup;
+            nextGpuFrame = firstFrame;
+            LOGGER.info("Warming up for {} frames, then measuring {} frames...", box(warmup), box(frames));
+        }
+
+        if (frame.getNumber() >= firstFrame && recorded < frames)
+            record(frame, recorded++);
+        collectGpuTimes(history);
+    }
+
+    private void record(ProfilerFrame frame, int index) {
+        frameTimes[index] = frame.getDuration();
+        for (int i = 0; i < frame.getSampleCount(); i++) {
+            int scope = frame.getScope(i);
+            if (scopeTimes[scope] == null)
+                scopeTimes[scope] = new long[frames];
+            scopeTimes[scope][index] += frame.getEnd(i) - frame.getStart(i);
+        }
+    }
+
+    /**
+     * GPU scopes are resolved a few frames late, frames that leave the history before that are skipped.
+     */
+    private void collectGpuTimes(Profiler.History history) {
+        long last = Math.min(firstFrame + recorded, history.get(0).getNumber() + 1);
+        while (nextGpuFrame < last) {
+            ProfilerFrame frame = history.find(nextGpuFrame);
+            if (frame != null && !frame.isGpuResolved())
+                return;
+            if (frame != null && frame.getGpuSampleCount() > 0)
+                gpuTimes[gpuRecorded++] = frame.getGpuTotal();
+            nextGpuFrame++;
+        }
+    }
+
+    public boolean isFinished() {
+        return recorded == frames;
+    }
+
+    /**
+     * Writes the report of the measured frames, times in milliseconds.
+     */
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8); JsonWriter json = new JsonWriter(out)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("timestamp").value(Instant.now().toString());
+            json.name("warmupFrames").value(warmup);
+            json.name("frames").value(recorded);
+            json.name("properties").beginObject();
+            for (Map.Entry<String, String> property : properties.entrySet())
+                json.name(property.getKey()).value(property.getValue());
+            json.endObject();
+
+            json.name("frameTime");
+            writeStats(json, frameTimes, recorded);
+            if (gpuRecorded > 0) {
+                json.name("gpuTime");
+                writeStats(json, gpuTimes, gpuRecorded);
+            }
+
+            json.name("stages").beginObject();
+            for (int scope = 0; scope < scopeTimes.length; scope++) {
+                if (scopeTimes[scope] == null)
+                    continue;
+                json.name(Profiler.getScopeName(scope));
+                writeStats(json, scopeTimes[scope], recorded);
+            }
+            json.endObject();
+            json.endObject();
+        }
+        LOGGER.info("Wrote the benchmark report to {}", file.toAbsolutePath());
+    }
+
+    private static void writeStats(JsonWriter json, long[] values, int count) throws IOException {
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted)
+            sum += value;
+
+        json.beginObject();
+        json.name("mean").value(count == 0 ? 0 : sum / (double) count / 1e6);
+        for (double percentile : PERCENTILES)
+            json.name("p" + (int) percentile).value(percentile(sorted, percentile) / 1e6);
+        json.name("max").value(count == 0 ? 0 : sorted[count - 1] / 1e6);
+        json.endObject();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Logs the frame time percentiles of the measured frames.
+     */
+    public void report() {
+        long[] sorted = Arrays.copyOf(frameTimes, recorded);
+        Arrays.sort(sorted);
+        LOGGER.info("Frame time p50 {} ms, p95 {} ms, p99 {} ms, max {} ms over {} frames.",
+                box(percentile(sorted, 50) / 1e6), box(percentile(sorted, 95) / 1e6),
+                box(percentile(sorted, 99) / 1e6), box(recorded == 0 ? 0 : sorted[recorded - 1] / 1e6), box(recorded));
+    }
+}
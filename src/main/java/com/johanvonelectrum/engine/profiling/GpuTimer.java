@@ -0,0 +1,110 @@
+package com.johanvonelectrum.engine.profiling;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * {@code GL_TIME_ELAPSED} queries of the last {@value #LATENCY} frames. Results are only read back when a frame's
+ * queries are about to be reused, so the CPU practically never waits for the GPU. Elapsed time queries can not
+ * nest, scopes begun inside another GPU scope are ignored.
+ */
+final class GpuTimer {
+
+    static final int LATENCY = 4;
+    static final int MAX_QUERIES = 64;
+
+    private final int[][] queries = new int[LATENCY][MAX_QUERIES];
+    private final int[][] scopes = new int[LATENCY][MAX_QUERIES];
+    private final long[][] cpuStarts = new long[LATENCY][MAX_QUERIES];
+    private final int[] counts = new int[LATENCY];
+    private final long[] frames = new long[LATENCY];
+
+    private int slot;
+    private boolean active;
+    private long stalls;
+    private long ignored;
+
+    static boolean isSupported() {
+        GLCapabilities capabilities = GL.getCapabilities();
+        return capabilities.OpenGL33 || capabilities.GL_ARB_timer_query;
+    }
+
+    GpuTimer() {
+        for (int[] frameQueries : queries)
+            glGenQueries(frameQueries);
+        for (int i = 0; i < LATENCY; i++)
+            frames[i] = -1;
+    }
+
+    void begin(int scope, long cpuStart) {
+        if (active || counts[slot] == MAX_QUERIES) {
+            ignored++;
+            return;
+        }
+
+        int index = counts[slot]++;
+        scopes[slot][index] = scope;
+        cpuStarts[slot][index] = cpuStart;
+        glBeginQuery(GL_TIME_ELAPSED, queries[slot][index]);
+        active = true;
+    }
+
+    void end() {
+        if (!active)
+            return;
+        glEndQuery(GL_TIME_ELAPSED);
+        active = false;
+    }
+
+    /**
+     * Closes the queries of the frame and resolves the oldest frame, whose queries are reused next.
+     */
+    void nextFrame(long frame, Profiler.History history) {
+        end();
+        frames[slot] = frame;
+        slot = (slot + 1) % LATENCY;
+        if (frames[slot] >= 0)
+            resolve(history.find(frames[slot]));
+        counts[slot] = 0;
+        frames[slot] = -1;
+    }
+
+    private void resolve(ProfilerFrame frame) {
+        int count = counts[slot];
+        if (count > 0 && glGetQueryObjecti(queries[slot][count - 1], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE)
+            stalls++;
+
+        for (int i = 0; i < count; i++) {
+            long elapsed = glGetQueryObjectui64(queries[slot][i], GL_QUERY_RESULT);
+            if (frame != null)
+                frame.addGpuSample(scopes[slot][i], cpuStarts[slot][i], elapsed);
+        }
+        if (frame != null)
+            frame.setGpuResolved();
+    }
+
+    /**
+     * @return frames whose results were not ready when read, making the CPU wait
+     */
+    long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return GPU scopes not measured because they were nested or over the per frame limit
+     */
+    long getIgnored() {
+        return ignored;
+    }
+
+    void dispose() {
+        if (active)
+            end();
+        for (int[] frameQueries : queries)
+            glDeleteQueries(frameQueries);
+    }
+}
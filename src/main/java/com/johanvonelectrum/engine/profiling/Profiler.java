@@ -0,0 +1,385 @@
+package com.johanvonelectrum.engine.profiling;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.lwjgl.util.remotery.Remotery.*;
+import static org.lwjgl.util.remotery.RemoteryGL.*;
+
+/**
+ * Hierarchical frame profiler.
+ * <p>
+ * CPU scopes are registered once with {@link #scope(String)} and then measured with {@link #begin(int)} and
+ * {@link #end(int)} from any thread. Each thread writes into its own lock-free {@link ScopeRing}, which the main
+ * thread drains in {@link #endFrame()} into the frame history. GPU scopes ({@link #beginGpu(int)}) are measured
+ * with timer queries and appear in their frame a few frames later. Every scope can also be streamed to Remotery.
+ * <p>
+ * Recording is cheap but not free; {@link #setEnabled(boolean)} turns every call into a single branch.
+ */
+public final class Profiler {
+
+    public static final int MAX_SCOPES = 1024;
+    public static final int DEFAULT_HISTORY = 300;
+    public static final int RING_CAPACITY = 16384;
+
+    private static final Logger LOGGER = LogManager.getLogger("Profiler");
+
+    private static volatile boolean enabled = true;
+
+    private static final Map<String, Integer> scopeIds = new HashMap<>();
+    private static final String[] scopeNames = new String[MAX_SCOPES];
+    private static volatile int scopeCount;
+
+    private static final List<ScopeRing> rings = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<ScopeRing> threadRing = ThreadLocal.withInitial(Profiler::createRing);
+
+    private static History history = new History(DEFAULT_HISTORY);
+    private static long frameNumber;
+    private static long frameStart = System.nanoTime();
+
+    private static GpuTimer gpuTimer;
+    private static volatile long remotery;
+    private static volatile boolean remoteryGl;
+    /**
+     * Names and hash caches handed to Remotery. Kept once allocated, at most {@link #MAX_SCOPES}, since other threads
+     * may still be inside {@link #begin} when it stops.
+     */
+    private static final ByteBuffer[] remoteryNames = new ByteBuffer[MAX_SCOPES];
+    private static IntBuffer remoteryHashes;
+
+    private Profiler() {
+    }
+
+    private static synchronized ScopeRing createRing() {
+        ScopeRing ring = new ScopeRing(Thread.currentThread().getName(), rings.size(), RING_CAPACITY);
+        rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * Registers a scope name, returning the id of the existing scope if the name is already known.
+     */
+    public static synchronized int scope(String name) {
+        Integer id = scopeIds.get(name);
+        if (id != null)
+            return id;
+
+        int count = scopeCount;
+        if (count == MAX_SCOPES)
+            throw new IllegalStateException("Too many profiler scopes, " + name + " exceeds " + MAX_SCOPES);
+        scopeNames[count] = name;
+        scopeIds.put(name, count);
+        if (remotery != 0)
+            remoteryNames[count] = MemoryUtil.memUTF8(name);
+        scopeCount = count + 1;
+        return count;
+    }
+
+    public static String getScopeName(int scope) {
+        return scopeNames[scope];
+    }
+
+    public static int getScopeCount() {
+        return scopeCount;
+    }
+
+    public static void begin(int scope) {
+        if (!enabled)
+            return;
+        threadRing.get().begin(scope, System.nanoTime());
+        if (remotery != 0)
+            nrmt_BeginCPUSample(MemoryUtil.memAddress(remoteryNames[scope]), RMTSF_Aggregate, MemoryUtil.memAddress(remoteryHashes, scope * 2));
+    }
+
+    public static void end(int scope) {
+        if (!enabled)
+            return;
+        threadRing.get().end(scope, System.nanoTime());
+        if (remotery != 0)
+            rmt_EndCPUSample();
+    }
+
+    /**
+     * Starts a GPU scope on the GL thread. GPU scopes can not nest.
+     */
+    public static void beginGpu(int scope) {
+        if (!enabled)
+            return;
+        if (gpuTimer != null)
+            gpuTimer.begin(scope, System.nanoTime());
+        if (remoteryGl)
+            nrmt_BeginOpenGLSample(MemoryUtil.memAddress(remoteryNames[scope]), MemoryUtil.memAddress(remoteryHashes, scope * 2 + 1));
+    }
+
+    public static void endGpu() {
+        if (!enabled)
+            return;
+        if (gpuTimer != null)
+            gpuTimer.end();
+        if (remoteryGl)
+            rmt_EndOpenGLSample();
+    }
+
+    /**
+     * Closes the current frame: collects the CPU samples recorded by every thread, resolves old GPU queries and
+     * starts a new frame. Main thread only, outside of any scope.
+     */
+    public static void endFrame() {
+        long now = System.nanoTime();
+        ProfilerFrame frame = history.next(frameNumber, frameStart);
+        frame.finish(now);
+        for (int i = 0; i < rings.size(); i++)
+            rings.get(i).drain(frame);
+
+        if (gpuTimer != null)
+            gpuTimer.nextFrame(frameNumber, history);
+
+        frameNumber++;
+        frameStart = now;
+    }
+
+    /**
+     * Creates the GPU timer queries. Needs a current GL context.
+     */
+    public static void initGpu() {
+        if (!GpuTimer.isSupported()) {
+            LOGGER.info("Timer queries are not supported, GPU scopes will not be measured.");
+            return;
+        }
+        gpuTimer = new GpuTimer();
+    }
+
+    /**
+     * Starts streaming every scope to a Remotery viewer (vis/index.html of the Remotery repository). GPU scopes are
+     * streamed too when {@code bindOpenGL} is set, which must then be called on the GL thread.
+     */
+    public static synchronized void startRemotery(boolean bindOpenGL) {
+        if (remotery != 0)
+            return;
+
+        PointerBuffer instance = MemoryUtil.memAllocPointer(1);
+        try {
+            int error = rmt_CreateGlobalInstance(instance);
+            if (error != RMT_ERROR_NONE) {
+                LOGGER.error("Could not start Remotery, error {}.", error);
+                return;
+            }
+
+            if (remoteryHashes == null)
+                remoteryHashes = MemoryUtil.memCallocInt(MAX_SCOPES * 2);
+            for (int i = 0; i < scopeCount; i++)
+                if (remoteryNames[i] == null)
+                    remoteryNames[i] = MemoryUtil.memUTF8(scopeNames[i]);
+            remotery = instance.get(0);
+        } finally {
+            MemoryUtil.memFree(instance);
+        }
+
+        if (bindOpenGL) {
+            rmt_BindOpenGL();
+            remoteryGl = true;
+        }
+        LOGGER.info("Streaming profiler scopes to Remotery.");
+    }
+
+    public static synchronized void stopRemotery() {
+        if (remotery == 0)
+            return;
+
+        if (remoteryGl) {
+            rmt_UnbindOpenGL();
+            remoteryGl = false;
+        }
+        long instance = remotery;
+        remotery = 0;
+        rmt_DestroyGlobalInstance(instance);
+    }
+
+    public static void dispose() {
+        stopRemotery();
+        if (gpuTimer != null) {
+            gpuTimer.dispose();
+            gpuTimer = null;
+        }
+    }
+
+    /**
+     * Writes up to {@code frames} of the most recent frames in the Chrome trace event format, which can be opened
+     * with chrome://tracing or Perfetto. GPU scopes are placed on their own track at the time they were submitted.
+     */
+    public static void export(Path file, int frames) throws IOException {
+        History current = history;
+        int count = Math.min(frames, current.size());
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8); JsonWriter json = new JsonWriter(out)) {
+            long origin = count == 0 ? 0 : current.get(count - 1).getStart();
+            int gpuThread = rings.size();
+
+            json.beginObject();
+            json.name("displayTimeUnit").value("ms");
+            json.name("traceEvents").beginArray();
+            for (ScopeRing ring : rings)
+                writeThreadName(json, ring.getThreadIndex(), ring.getThreadName());
+            writeThreadName(json, gpuThread, "GPU");
+
+            for (int age = count - 1; age >= 0; age--) {
+                ProfilerFrame frame = current.get(age);
+                writeEvent(json, "Frame " + frame.getNumber(), "frame", 0, frame.getStart() - origin, frame.getDuration());
+                for (int i = 0; i < frame.getSampleCount(); i++) {
+                    writeEvent(json, scopeNames[frame.getScope(i)], "cpu", frame.getThread(i),
+                            frame.getStart(i) - origin, frame.getEnd(i) - frame.getStart(i));
+                }
+                for (int i = 0; i < frame.getGpuSampleCount(); i++) {
+                    writeEvent(json, scopeNames[frame.getGpuScope(i)], "gpu", gpuThread,
+                            frame.getGpuStart(i) - origin, frame.getGpuDuration(i));
+                }
+            }
+            json.endArray();
+            json.endObject();
+        }
+        LOGGER.info("Exported {} profiler frames to {}", count, file.toAbsolutePath());
+    }
+
+    private static void writeThreadName(JsonWriter json, int thread, String name) throws IOException {
+        json.beginObject();
+        json.name("name").value("thread_name");
+        json.name("ph").value("M");
+        json.name("pid").value(0);
+        json.name("tid").value(thread);
+        json.name("args").beginObject().name("name").value(name).endObject();
+        json.endObject();
+    }
+
+    private static void writeEvent(JsonWriter json, String name, String category, int thread, long start, long duration) throws IOException {
+        json.beginObject();
+        json.name("name").value(name);
+        json.name("cat").value(category);
+        json.name("ph").value("X");
+        json.name("pid").value(0);
+        json.name("tid").value(thread);
+        json.name("ts").value(start / 1000.0);
+        json.name("dur").value(duration / 1000.0);
+        json.endObject();
+    }
+
+    /**
+     * Resizes the frame history, dropping the recorded frames. Main thread only.
+     */
+    public static void setHistorySize(int frames) {
+        history = new History(frames);
+    }
+
+    public static History getHistory() {
+        return history;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isRemoteryRunning() {
+        return remotery != 0;
+    }
+
+    /**
+     * @return events dropped because a thread filled its ring between two frames
+     */
+    public static long getDroppedEvents() {
+        long dropped = 0;
+        for (ScopeRing ring : rings)
+            dropped += ring.getDropped();
+        return dropped;
+    }
+
+    public static long getGpuStalls() {
+        return gpuTimer == null ? 0 : gpuTimer.getStalls();
+    }
+
+    /**
+     * Recycled ring of the most recent frames. Main thread only.
+     */
+    public static final class History {
+
+        private final ProfilerFrame[] frames;
+        private int newest = -1;
+        private int size;
+
+        History(int capacity) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("History must hold at least one frame: " + capacity);
+            this.frames = new ProfilerFrame[capacity];
+            for (int i = 0; i < capacity; i++)
+                frames[i] = new ProfilerFrame();
+        }
+
+        ProfilerFrame next(long number, long start) {
+            newest = (newest + 1) % frames.length;
+            size = Math.min(size + 1, frames.length);
+            ProfilerFrame frame = frames[newest];
+            frame.reset(number, start);
+            return frame;
+        }
+
+        /**
+         * @param age 0 for the most recent frame
+         */
+        public ProfilerFrame get(int age) {
+            if (age < 0 || age >= size)
+                throw new IndexOutOfBoundsException(age + " >= " + size);
+            return frames[Math.floorMod(newest - age, frames.length)];
+        }
+
+        /**
+         * @return the frame with the given number or null if it is no longer in the history
+         */
+        public ProfilerFrame find(long number) {
+            if (size == 0)
+                return null;
+            long age = get(0).getNumber() - number;
+            return age >= 0 && age < size ? get((int) age) : null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int capacity() {
+            return frames.length;
+        }
+
+        /**
+         * Copies the durations of the most recent frames, oldest first, in milliseconds.
+         *
+         * @return number of copied frames
+         */
+        public int frameTimes(float[] target) {
+            int count = Math.min(size, target.length);
+            Arrays.fill(target, count, target.length, 0f);
+            for (int i = 0; i < count; i++)
+                target[count - 1 - i] = get(i).getDuration() / 1_000_000f;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.johanvonelectrum.engine.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Samples of one frame. CPU samples are complete scopes with their thread and nesting depth; GPU samples are
+ * {@code GL_TIME_ELAPSED} durations, filled in a few frames later once the queries are resolved. Frames are
+ * recycled by the {@link Profiler} history, so they must not be kept across frames.
+ */
+public final class ProfilerFrame {
+
+    private long number = -1;
+    private long start, end;
+
+    private int size;
+    private int[] scopes = new int[64];
+    private int[] threads = new int[64];
+    private int[] depths = new int[64];
+    private long[] starts = new long[64];
+    private long[] ends = new long[64];
+
+    private int gpuSize;
+    private boolean gpuResolved;
+    private int[] gpuScopes = new int[16];
+    private long[] gpuStarts = new long[16];
+    private long[] gpuDurations = new long[16];
+
+    void reset(long number, long start) {
+        this.number = number;
+        this.start = start;
+        this.end = start;
+        this.size = 0;
+        this.gpuSize = 0;
+        this.gpuResolved = false;
+    }
+
+    void finish(long end) {
+        this.end = end;
+    }
+
+    void addSample(int scope, int thread, int depth, long start, long end) {
+        if (size == scopes.length) {
+            int capacity = size * 2;
+            scopes = Arrays.copyOf(scopes, capacity);
+            threads = Arrays.copyOf(threads, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        scopes[size] = scope;
+        threads[size] = thread;
+        depths[size] = depth;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    void addGpuSample(int scope, long cpuStart, long duration) {
+        if (gpuSize == gpuScopes.length) {
+            int capacity = gpuSize * 2;
+            gpuScopes = Arrays.copyOf(gpuScopes, capacity);
+            gpuStarts = Arrays.copyOf(gpuStarts, capacity);
+            gpuDurations = Arrays.copyOf(gpuDurations, capacity);
+        }
+        gpuScopes[gpuSize] = scope;
+        gpuStarts[gpuSize] = cpuStart;
+        gpuDurations[gpuSize] = duration;
+        gpuSize++;
+    }
+
+    void setGpuResolved() {
+        this.gpuResolved = true;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at the start of the frame
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getDuration() {
+        return end - start;
+    }
+
+    public int getSampleCount() {
+        return size;
+    }
+
+    public int getScope(int sample) {
+        return scopes[sample];
+    }
+
+    public int getThread(int sample) {
+        return threads[sample];
+    }
+
+    public int getDepth(int sample) {
+        return depths[sample];
+    }
+
+    public long getStart(int sample) {
+        return starts[sample];
+    }
+
+    public long getEnd(int sample) {
+        return ends[sample];
+    }
+
+    /**
+     * @return total time of the scope in this frame, in nanoseconds, summed over every thread and call
+     */
+    public long getTotal(int scope) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (scopes[i] == scope)
+                total += ends[i] - starts[i];
+        }
+        return total;
+    }
+
+    public boolean isGpuResolved() {
+        return gpuResolved;
+    }
+
+    public int getGpuSampleCount() {
+        return gpuSize;
+    }
+
+    public int getGpuScope(int sample) {
+        return gpuScopes[sample];
+    }
+
+    /**
+     * @return CPU time at which the GPU scope was submitted
+     */
+    public long getGpuStart(int sample) {
+        return gpuStarts[sample];
+    }
+
+    public long getGpuDuration(int sample) {
+        return gpuDurations[sample];
+    }
+
+    public long getGpuTotal() {
+        long total = 0;
+        for (int i = 0; i < gpuSize; i++)
+            total += gpuDurations[i];
+        return total;
+    }
+}
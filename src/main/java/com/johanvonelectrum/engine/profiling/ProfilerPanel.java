@@ -0,0 +1,213 @@
+package com.johanvonelectrum.engine.profiling;
+
+import imgui.ImDrawList;
+import imgui.ImGui;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * ImGui window showing the {@link Profiler}: a histogram of the recent frame times and a flame graph of the selected
+ * frame, one band per thread, plus the GPU scopes. Hovering a scope shows its name and duration. The view follows
+ * the latest frame a few times per second, so its text only changes, and allocates, when the view moves.
+ */
+public class ProfilerPanel {
+
+    public static final String EXPORT_DIRECTORY = "profiles";
+
+    private static final Logger LOGGER = LogManager.getLogger("ProfilerPanel");
+    private static final float ROW_HEIGHT = 18f;
+    private static final int TEXT_COLOR = 0xFFFFFFFF;
+    private static final int GPU_COLOR = 0xFF3D9E5C;
+    private static final long REFRESH_NANOS = 250_000_000L;
+
+    private final float[] frameTimes = new float[Profiler.DEFAULT_HISTORY];
+    private final int[] selectedAge = { 0 };
+    private final int[] threadRows = new int[64];
+    private boolean paused;
+    private long viewFrame = -1;
+    private long lastRefresh;
+    private int frameCount;
+    private float maxFrameTime;
+
+    private final TextBuffer summary = new TextBuffer(96);
+    private final TextBuffer overlay = new TextBuffer(16);
+    private final TextBuffer tooltip = new TextBuffer(64);
+    private TextBuffer[] totals = new TextBuffer[0];
+    private final TextBuffer gpuTotal = new TextBuffer(48);
+
+    public void draw() {
+        ImGui.begin("Profiler");
+
+        Profiler.History history = Profiler.getHistory();
+        if (history.size() == 0) {
+            ImGui.text("No frames recorded yet.");
+            ImGui.end();
+            return;
+        }
+
+        if (ImGui.checkbox("Recording", Profiler.isEnabled()))
+            Profiler.setEnabled(!Profiler.isEnabled());
+        ImGui.sameLine();
+        if (ImGui.checkbox("Pause view", paused))
+            paused = !paused;
+        ImGui.sameLine();
+        if (ImGui.button("Export JSON"))
+            export(history);
+
+        long now = System.nanoTime();
+        if (!paused && (viewFrame < 0 || now - lastRefresh >= REFRESH_NANOS)) {
+            refresh(history);
+            lastRefresh = now;
+        }
+
+        ImGui.text(summary.toString());
+        ImGui.plotHistogram("##frameTimes", frameTimes, frameCount, 0, overlay.toString(),
+                0f, Math.max(maxFrameTime, 16.7f), ImGui.getContentRegionAvailX(), 60f);
+
+        ImGui.sliderInt("Frame age", selectedAge, 0, history.size() - 1);
+        ProfilerFrame frame = selectedFrame(history);
+        if (frame == null) {
+            ImGui.text("The selected frame left the history.");
+        } else {
+            drawFlameGraph(frame);
+            drawScopeTotals(frame);
+        }
+
+        ImGui.end();
+    }
+
+    private void refresh(Profiler.History history) {
+        ProfilerFrame latest = history.get(0);
+        viewFrame = latest.getNumber();
+        summary.clear()
+                .append("Frame ").append(latest.getDuration() / 1e6, 2)
+                .append(" ms (").append(1e9 / Math.max(1, latest.getDuration()), 0)
+                .append(" FPS), ").append(Profiler.getDroppedEvents())
+                .append(" dropped events, ").append(Profiler.getGpuStalls()).append(" GPU stalls");
+
+        frameCount = history.frameTimes(frameTimes);
+        maxFrameTime = 0;
+        for (int i = 0; i < frameCount; i++)
+            maxFrameTime = Math.max(maxFrameTime, frameTimes[i]);
+        overlay.clear().append("max ").append(maxFrameTime, 2).append(" ms");
+    }
+
+    private ProfilerFrame selectedFrame(Profiler.History history) {
+        return history.find(viewFrame - selectedAge[0]);
+    }
+
+    private void drawFlameGraph(ProfilerFrame frame) {
+        Arrays.fill(threadRows, 0);
+        int threads = 0;
+        for (int i = 0; i < frame.getSampleCount(); i++) {
+            int thread = frame.getThread(i);
+            if (thread >= threadRows.length)
+                continue;
+            threadRows[thread] = Math.max(threadRows[thread], frame.getDepth(i) + 1);
+            threads = Math.max(threads, thread + 1);
+        }
+
+        // Band offsets: each thread starts below the previous one, the GPU band goes last
+        int rows = 0;
+        for (int thread = 0; thread < threads; thread++) {
+            int depth = threadRows[thread];
+            threadRows[thread] = rows;
+            rows += depth;
+        }
+        int gpuRow = rows;
+        if (frame.getGpuSampleCount() > 0)
+            rows++;
+
+        float x = ImGui.getCursorScreenPosX();
+        float y = ImGui.getCursorScreenPosY();
+        float width = Math.max(1f, ImGui.getContentRegionAvailX());
+        float height = Math.max(1, rows) * ROW_HEIGHT;
+        double scale = width / (double) Math.max(1, frame.getDuration());
+        ImDrawList drawList = ImGui.getWindowDrawList();
+
+        for (int i = 0; i < frame.getSampleCount(); i++) {
+            int thread = frame.getThread(i);
+            if (thread >= threadRows.length)
+                continue;
+            float top = y + (threadRows[thread] + frame.getDepth(i)) * ROW_HEIGHT;
+            drawBar(drawList, frame.getScope(i), colorOf(frame.getScope(i)), x, top,
+                    (frame.getStart(i) - frame.getStart()) * scale, (frame.getEnd(i) - frame.getStart()) * scale,
+                    frame.getEnd(i) - frame.getStart(i));
+        }
+
+        for (int i = 0; i < frame.getGpuSampleCount(); i++) {
+            double start = (frame.getGpuStart(i) - frame.getStart()) * scale;
+            drawBar(drawList, frame.getGpuScope(i), GPU_COLOR, x, y + gpuRow * ROW_HEIGHT,
+                    start, start + frame.getGpuDuration(i) * scale, frame.getGpuDuration(i));
+        }
+
+        ImGui.dummy(width, height);
+    }
+
+    private void drawBar(ImDrawList drawList, int scope, int color, float x, float top,
+                                double start, double end, long nanos) {
+        float left = x + (float) start;
+        float right = Math.max(left + 1f, x + (float) end);
+        float bottom = top + ROW_HEIGHT - 1f;
+        drawList.addRectFilled(left, top, right, bottom, color);
+        if (right - left > 40f)
+            drawList.addText(left + 2f, top + 2f, TEXT_COLOR, Profiler.getScopeName(scope));
+
+        if (ImGui.isMouseHoveringRect(left, top, right, bottom))
+            ImGui.setTooltip(tooltip.clear().append(Profiler.getScopeName(scope)).append(": ")
+                    .append(nanos / 1e6, 3).append(" ms").toString());
+    }
+
+    private void drawScopeTotals(ProfilerFrame frame) {
+        ImGui.separator();
+        int scopes = Profiler.getScopeCount();
+        if (totals.length < scopes) {
+            int from = totals.length;
+            totals = Arrays.copyOf(totals, scopes);
+            for (int scope = from; scope < scopes; scope++)
+                totals[scope] = new TextBuffer(48);
+        }
+
+        for (int scope = 0; scope < scopes; scope++) {
+            long total = frame.getTotal(scope);
+            if (total > 0)
+                ImGui.text(formatTotal(totals[scope], Profiler.getScopeName(scope), total));
+        }
+        if (frame.isGpuResolved())
+            ImGui.text(formatTotal(gpuTotal, "GPU", frame.getGpuTotal()));
+        else
+            ImGui.text("GPU timings pending...");
+    }
+
+    private static String formatTotal(TextBuffer text, String name, long nanos) {
+        return text.clear().append(name).pad(32).append(' ').append(nanos / 1e6, 3).append(" ms").toString();
+    }
+
+    /**
+     * Stable, saturated color per scope in ImGui's ABGR layout.
+     */
+    private static int colorOf(int scope) {
+        int hash = scope * 0x9E3779B9;
+        int red = 80 + (hash & 0x7F);
+        int green = 80 + (hash >>> 8 & 0x7F);
+        int blue = 80 + (hash >>> 16 & 0x7F);
+        return 0xFF000000 | blue << 16 | green << 8 | red;
+    }
+
+    private static void export(Profiler.History history) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        Path file = Paths.get(EXPORT_DIRECTORY, "profile-" + timestamp + ".json");
+        try {
+            Profiler.export(file, history.size());
+        } catch (IOException e) {
+            LOGGER.error("Could not export the profiler frames.", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.johanvonelectrum.engine.profiling;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of scope events. The owning thread writes begin and end events,
+ * the main thread drains them once per frame and pairs them into samples. Events are dropped when the ring is full.
+ */
+final class ScopeRing {
+
+    private final String threadName;
+    private final int threadIndex;
+    private final int mask;
+    private final long[] times;
+    private final int[] events;
+
+    private long tail;
+    private final AtomicLong published = new AtomicLong();
+    private volatile long head;
+    private volatile long dropped;
+
+    // Reader state: scopes begun but not ended yet, possibly across frames
+    private int[] openScopes = new int[32];
+    private long[] openTimes = new long[32];
+    private int depth;
+
+    ScopeRing(String threadName, int threadIndex, int capacity) {
+        this.threadName = threadName;
+        this.threadIndex = threadIndex;
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.events = new int[size];
+    }
+
+    void begin(int scope, long time) {
+        write(scope, time);
+    }
+
+    void end(int scope, long time) {
+        write(scope | Integer.MIN_VALUE, time);
+    }
+
+    private void write(int event, long time) {
+        if (tail - head > mask) {
+            dropped++;
+            return;
+        }
+
+        int index = (int) (tail & mask);
+        times[index] = time;
+        events[index] = event;
+        published.lazySet(++tail);
+    }
+
+    /**
+     * Pairs the published events and adds the completed scopes to the frame. Main thread only.
+     */
+    void drain(ProfilerFrame frame) {
+        long end = published.get();
+        for (long position = head; position < end; position++) {
+            int index = (int) (position & mask);
+            int event = events[index];
+            long time = times[index];
+
+            if (event >= 0) {
+                if (depth == openScopes.length) {
+                    openScopes = Arrays.copyOf(openScopes, depth * 2);
+                    openTimes = Arrays.copyOf(openTimes, depth * 2);
+                }
+                openScopes[depth] = event;
+                openTimes[depth++] = time;
+                continue;
+            }
+
+            // Unwind to the matching begin, discarding scopes whose end was dropped
+            int scope = event & Integer.MAX_VALUE;
+            int match = depth - 1;
+            while (match >= 0 && openScopes[match] != scope)
+                match--;
+            if (match < 0)
+                continue;
+
+            depth = match;
+            frame.addSample(scope, threadIndex, depth, openTimes[match], time);
+        }
+        head = end;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    int getThreadIndex() {
+        return threadIndex;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+}
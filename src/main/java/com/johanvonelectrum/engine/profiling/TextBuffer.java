@@ -0,0 +1,147 @@
+package com.johanvonelectrum.engine.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Reusable text for values shown every frame. Numbers are written straight into a char array, without boxing or
+ * {@link String#format}, and {@link #toString()} only creates a new String when the text differs from the last one.
+ * Text that is rebuilt every frame with the same contents does not allocate.
+ */
+public final class TextBuffer implements CharSequence {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+    private static final double MAX_FIXED = 1e15;
+
+    private char[] chars;
+    private int length;
+    private String text = "";
+
+    public TextBuffer(int capacity) {
+        this.chars = new char[Math.max(1, capacity)];
+    }
+
+    public TextBuffer clear() {
+        length = 0;
+        return this;
+    }
+
+    public TextBuffer append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public TextBuffer append(CharSequence sequence) {
+        int count = sequence.length();
+        ensureCapacity(length + count);
+        for (int i = 0; i < count; i++)
+            chars[length++] = sequence.charAt(i);
+        return this;
+    }
+
+    public TextBuffer append(long value) {
+        if (value == Long.MIN_VALUE)
+            return append("-9223372036854775808");
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+
+        int start = length;
+        do {
+            append((char) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        reverse(start, length - 1);
+        return this;
+    }
+
+    /**
+     * Appends the value rounded to a fixed number of decimals, like {@code %.Nf}.
+     */
+    public TextBuffer append(double value, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+            throw new IllegalArgumentException("Decimals must be between 0 and " + (POWERS_OF_TEN.length - 1) + ": " + decimals);
+        if (Double.isNaN(value))
+            return append("NaN");
+        if (Double.isInfinite(value))
+            return append(value > 0 ? "Infinity" : "-Infinity");
+        if (Math.abs(value) >= MAX_FIXED)
+            return append((long) value);
+
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0)
+            append('-');
+        append(scaled / scale);
+        if (decimals == 0)
+            return this;
+
+        append('.');
+        long fraction = scaled % scale;
+        for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10)
+            append('0');
+        return append(fraction);
+    }
+
+    /**
+     * Pads with spaces up to the given length, like a left aligned {@code %-Ns}.
+     */
+    public TextBuffer pad(int column) {
+        while (length < column)
+            append(' ');
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * @return the text, the same instance as the previous call when the contents did not change
+     */
+    @Override
+    public String toString() {
+        if (!matches(text))
+            text = new String(chars, 0, length);
+        return text;
+    }
+
+    private boolean matches(String previous) {
+        if (previous.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (previous.charAt(i) != chars[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            char c = chars[from];
+            chars[from++] = chars[to];
+            chars[to--] = c;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+    }
+}
@@ -0,0 +1,189 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * Persistent cache of linked program binaries ({@code glGetProgramBinary}). Entries are keyed by an xxHash of the
+ * shader sources, defines and driver string, so a driver update simply misses the cache. Binaries the driver
+ * rejects are deleted and the program is compiled from source again. Can be used from any thread with a current
+ * context sharing objects with the main one.
+ */
+public class ProgramBinaryCache {
+
+    private static final Logger LOGGER = LogManager.getLogger("ProgramBinaryCache");
+    private static final int MAGIC = 0x4A455042;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    private final Path directory;
+    private final String driver;
+    private final boolean supported;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public ProgramBinaryCache(Path directory) {
+        this.directory = directory;
+        this.driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+
+        GLCapabilities capabilities = GL.getCapabilities();
+        this.supported = (capabilities.OpenGL41 || capabilities.GL_ARB_get_program_binary)
+                && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+
+        if (supported)
+            LOGGER.debug("Caching program binaries in {} for {}", directory.toAbsolutePath(), driver);
+        else
+            LOGGER.info("The driver does not support program binaries, shaders will always be compiled.");
+    }
+
+    /**
+     * @param parts shader sources and defines making up the program
+     */
+    public long key(String... parts) {
+        String[] all = new String[parts.length + 1];
+        System.arraycopy(parts, 0, all, 0, parts.length);
+        all[parts.length] = driver;
+        return Hashing.xxh64(all);
+    }
+
+    /**
+     * Must be called before linking a program that should be stored.
+     */
+    public void prepare(int programId) {
+        if (supported)
+            glProgramParameteri(programId, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+    }
+
+    /**
+     * @return true if the program was loaded and linked from the cache
+     */
+    public boolean load(int programId, long key) {
+        if (!supported)
+            return false;
+
+        Path file = fileOf(key);
+        if (!Files.isRegularFile(file)) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        ByteBuffer data = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= HEADER_SIZE || size > Integer.MAX_VALUE)
+                throw new IOException("Invalid size " + size);
+
+            data = MemoryUtil.memAlloc((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining()) {
+                if (channel.read(data) < 0)
+                    throw new IOException("Unexpected end of file");
+            }
+            data.flip();
+
+            if (data.getInt(0) != MAGIC)
+                throw new IOException("Bad magic");
+            int format = data.getInt(4);
+            int length = data.getInt(8);
+            if (length != size - HEADER_SIZE)
+                throw new IOException("Truncated binary");
+
+            data.position(HEADER_SIZE);
+            glProgramBinary(programId, format, data);
+            if (glGetProgrami(programId, GL_LINK_STATUS) == GL_FALSE)
+                throw new IOException("Rejected by the driver");
+
+            hits.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Discarding cached program binary {}: {}", file.getFileName(), e.getMessage());
+            delete(file);
+            misses.incrementAndGet();
+            return false;
+        } finally {
+            if (data != null)
+                MemoryUtil.memFree(data);
+        }
+    }
+
+    /**
+     * Stores the binary of a linked program. Failures are only logged, the cache is an optimization.
+     */
+    public void store(int programId, long key) {
+        if (!supported)
+            return;
+
+        int length = glGetProgrami(programId, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0)
+            return;
+
+        ByteBuffer data = MemoryUtil.memAlloc(HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+
+            data.position(HEADER_SIZE);
+            glGetProgramBinary(programId, written, format, data);
+            data.putInt(0, MAGIC);
+            data.putInt(4, format.get(0));
+            data.putInt(8, written.get(0));
+            data.position(0).limit(HEADER_SIZE + written.get(0));
+
+            Files.createDirectories(directory);
+            Path file = fileOf(key);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining())
+                    channel.write(data);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not store program binary.", e);
+        } finally {
+            MemoryUtil.memFree(data);
+        }
+    }
+
+    private Path fileOf(long key) {
+        return directory.resolve(Hashing.toHex(key) + ".bin");
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+}
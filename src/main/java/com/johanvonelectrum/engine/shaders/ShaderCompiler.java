@@ -0,0 +1,134 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.memory.NativeMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.glFinish;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Compiles and links shader programs on a background thread with its own OpenGL context sharing objects with the
+ * main window, so expensive driver compiles do not stall frames. Returned programs are ready to be bound on the main
+ * context once their future completes.
+ */
+public class ShaderCompiler {
+
+    private static final Logger LOGGER = LogManager.getLogger("ShaderCompiler");
+
+    private final long context;
+    private final Thread thread;
+    private final BlockingQueue<CompileTask> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * Must be called from the main thread, GLFW windows can only be created there.
+     *
+     * @param sharedWindow window whose context shares objects with the compiler
+     */
+    public ShaderCompiler(long sharedWindow) {
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        this.context = glfwCreateWindow(1, 1, "Shader Compiler", NULL, sharedWindow);
+        if (this.context == NULL)
+            throw new IllegalStateException("Could not create the shared shader compiler context.");
+
+        this.thread = new Thread(this::run, "Shader Compiler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void run() {
+        NativeMemory.attachThread();
+        glfwMakeContextCurrent(context);
+        GL.createCapabilities();
+        LOGGER.debug("Shader compiler context ready.");
+
+        try {
+            while (running) {
+                CompileTask task = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (task != null)
+                    compile(task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            GL.setCapabilities(null);
+            glfwMakeContextCurrent(NULL);
+            NativeMemory.detachThread();
+        }
+    }
+
+    /**
+     * Creates and links the program in the background. The future fails with a {@link ShaderException} if the
+     * sources do not compile or link.
+     */
+    public CompletableFuture<ShaderProgram> compileAsync(String name, String... defines) {
+        CompletableFuture<ShaderProgram> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("The shader compiler is disposed."));
+            return future;
+        }
+
+        queue.add(new CompileTask(name, defines, future));
+        return future;
+    }
+
+    private void compile(CompileTask task) {
+        long start = System.nanoTime();
+        ShaderProgram program = null;
+        try {
+            program = new ShaderProgram(task.name, task.defines);
+            program.link();
+            glFinish();
+            LOGGER.debug("Compiled shader program {} in {} ms{}", task.name, (System.nanoTime() - start) / 1_000_000,
+                    program.isCached() ? " (cached)" : "");
+            task.future.complete(program);
+        } catch (Throwable e) {
+            if (program != null)
+                program.release();
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Must be called from the main thread before the shared window is destroyed.
+     */
+    public void dispose() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        CompileTask task;
+        while ((task = queue.poll()) != null)
+            task.future.completeExceptionally(new IllegalStateException("The shader compiler was disposed before compiling " + task.name));
+        glfwDestroyWindow(context);
+    }
+
+    private static final class CompileTask {
+
+        private final String name;
+        private final String[] defines;
+        private final CompletableFuture<ShaderProgram> future;
+
+        private CompileTask(String name, String[] defines, CompletableFuture<ShaderProgram> future) {
+            this.name = name;
+            this.defines = defines;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.graphics.GLStateCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Compiles shader permutations on first use and shares them afterwards. Permutations whose preprocessed sources are
+ * identical, for example because a define is never tested, resolve to the same program. Programs are owned by the
+ * library and disposed with it.
+ * <p>
+ * With a {@link ShaderCompiler}, {@link #request} compiles permutations on the compiler thread, so a frame never
+ * waits on the driver; {@link #get} still blocks until the program is ready.
+ */
+public class ShaderLibrary {
+
+    private static final Logger LOGGER = LogManager.getLogger("ShaderLibrary");
+
+    private final Map<String, ShaderProgram> variants = new HashMap<>();
+    private final Map<Long, ShaderProgram> programs = new HashMap<>();
+    private final Map<String, CompletableFuture<ShaderProgram>> pending = new HashMap<>();
+    private ShaderCompiler compiler;
+
+    /**
+     * Compiles the permutations of {@link #request} in the background. Without a compiler they are compiled on the
+     * calling thread.
+     */
+    public void setCompiler(ShaderCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * GL thread only. Starts compiling the permutation in the background if needed.
+     *
+     * @return the program, or null while it is compiling
+     * @throws ShaderException if the permutation does not compile or link
+     */
+    public ShaderProgram request(String name, String... defines) throws ShaderException {
+        String key = ShaderVariant.keyOf(name, defines);
+        ShaderProgram program = variants.get(key);
+        if (program != null)
+            return program;
+
+        CompletableFuture<ShaderProgram> future = pending.get(key);
+        if (future == null) {
+            if (compiler == null)
+                return get(name, defines);
+            pending.put(key, compiler.compileAsync(name, defines));
+            return null;
+        }
+        return future.isDone() ? complete(key, future) : null;
+    }
+
+    /**
+     * GL thread only, the thread owning the main context.
+     *
+     * @param defines {@code NAME} or {@code NAME=VALUE} entries
+     */
+    public ShaderProgram get(String name, String... defines) throws ShaderException {
+        String key = ShaderVariant.keyOf(name, defines);
+        ShaderProgram program = variants.get(key);
+        if (program != null)
+            return program;
+
+        CompletableFuture<ShaderProgram> future = pending.get(key);
+        if (future != null)
+            return complete(key, future);
+
+        ShaderVariant variant = ShaderVariant.load(name, defines);
+        program = programs.get(variant.getHash());
+        if (program == null) {
+            program = new ShaderProgram(variant);
+            try {
+                program.link();
+            } catch (ShaderException e) {
+                program.dispose();
+                throw e;
+            }
+            programs.put(variant.getHash(), program);
+        } else {
+            LOGGER.debug("Shader permutation {} is identical to {}, sharing the program.", key, program.getName());
+        }
+
+        variants.put(key, program);
+        return program;
+    }
+
+    /**
+     * Waits for a background compile and registers its program, sharing an identical one if it exists.
+     */
+    private ShaderProgram complete(String key, CompletableFuture<ShaderProgram> future) throws ShaderException {
+        pending.remove(key);
+        ShaderProgram compiled;
+        try {
+            compiled = future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ShaderException)
+                throw (ShaderException) e.getCause();
+            throw new ShaderException("Could not compile " + key, e.getCause());
+        }
+
+        ShaderProgram program = programs.get(compiled.getSourceHash());
+        if (program == null) {
+            program = compiled;
+            programs.put(program.getSourceHash(), program);
+        } else {
+            LOGGER.debug("Shader permutation {} is identical to {}, sharing the program.", key, program.getName());
+            // Never bound, so the caller's current program stays bound.
+            compiled.release();
+            GLStateCache.forgetProgram(compiled.getProgramId());
+        }
+        variants.put(key, program);
+        return program;
+    }
+
+    public boolean contains(String name, String... defines) {
+        return variants.containsKey(ShaderVariant.keyOf(name, defines));
+    }
+
+    public int getVariantCount() {
+        return variants.size();
+    }
+
+    public int getProgramCount() {
+        return programs.size();
+    }
+
+    /**
+     * @return permutations requested but not compiled yet
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Must run after the compiler was disposed, so every pending compile is finished.
+     */
+    public void dispose() {
+        Iterator<CompletableFuture<ShaderProgram>> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<ShaderProgram> future = iterator.next();
+            iterator.remove();
+            if (future.isDone() && !future.isCompletedExceptionally())
+                future.join().dispose();
+        }
+
+        LOGGER.debug("Disposing {} shader programs for {} permutations.", programs.size(), variants.size());
+        for (ShaderProgram program : programs.values())
+            program.dispose();
+        programs.clear();
+        variants.clear();
+    }
+}
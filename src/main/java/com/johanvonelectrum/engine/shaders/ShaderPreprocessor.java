@@ -0,0 +1,181 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves {@code #include} directives and injects permutation defines right after {@code #version}.
+ * <p>
+ * {@code #include "file"} is relative to the including file and {@code #include <file>} to the shaders root. Every
+ * file is included at most once per stage, and {@code #line} directives keep driver errors pointing at the original
+ * file and line. Does not touch OpenGL, so it also runs at build time.
+ */
+public class ShaderPreprocessor {
+
+    public static final String ROOT = "shaders/";
+
+    private static final Pattern INCLUDE = Pattern.compile("^\\s*#\\s*include\\s+([\"<])([^\">]+)[\">]\\s*(//.*)?$");
+    private static final Pattern VERSION = Pattern.compile("^\\s*#\\s*version\\s.*$");
+    private static final Pattern DEFINE = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(=.*)?");
+
+    private final Path root;
+    private final String[] defines;
+
+    private final List<String> files = new ArrayList<>();
+    private final Set<String> included = new HashSet<>();
+    private final Deque<String> stack = new ArrayDeque<>();
+    private StringBuilder output;
+    private boolean versionFound;
+
+    /**
+     * @param defines {@code NAME} or {@code NAME=VALUE} entries
+     */
+    public ShaderPreprocessor(String... defines) {
+        this(null, defines);
+    }
+
+    /**
+     * @param root directory the shaders are read from, or null to read them as resources under {@link #ROOT}
+     */
+    public ShaderPreprocessor(Path root, String... defines) {
+        this.root = root;
+        this.defines = canonical(defines);
+    }
+
+    /**
+     * @return true if the shader file exists where this preprocessor reads from
+     */
+    public boolean exists(String path) {
+        return root != null ? Files.isRegularFile(root.resolve(path)) : ResourceLoader.hasResource(ROOT + path);
+    }
+
+    /**
+     * @return sorted and de-duplicated defines, so equal permutations always produce the same source
+     */
+    public static String[] canonical(String... defines) {
+        String[] sorted = Arrays.stream(defines).map(String::trim).distinct().sorted().toArray(String[]::new);
+        for (String define : sorted) {
+            if (!DEFINE.matcher(define).matches())
+                throw new IllegalArgumentException("Invalid shader define: '" + define + "'");
+        }
+        return sorted;
+    }
+
+    /**
+     * @param path shader file relative to the shaders directory
+     */
+    public ShaderSource process(String path, int type) throws ShaderException {
+        files.clear();
+        included.clear();
+        stack.clear();
+        output = new StringBuilder(4096);
+        versionFound = false;
+
+        append(normalize(path));
+        if (!versionFound)
+            throw new ShaderException("Missing #version directive in " + path);
+
+        return new ShaderSource(type, path, output.toString(), new ArrayList<>(files));
+    }
+
+    private void append(String path) throws ShaderException {
+        if (stack.contains(path))
+            throw new ShaderException("Circular #include of " + path + " from " + stack.peek());
+        if (!included.add(path))
+            return;
+
+        String text;
+        try {
+            text = root != null
+                    ? new String(Files.readAllBytes(root.resolve(path)), StandardCharsets.UTF_8)
+                    : ResourceLoader.loadResourceText(ROOT + path);
+        } catch (IOException e) {
+            throw stack.isEmpty()
+                    ? new ShaderException("Could not read shader " + path, e)
+                    : new ShaderException("Could not read " + path + " included from " + stack.peek(), e);
+        }
+
+        int index = files.size();
+        files.add(path);
+        if (!stack.isEmpty())
+            line(1, index);
+        stack.push(path);
+
+        String[] lines = text.split("\r?\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+
+            Matcher include = INCLUDE.matcher(line);
+            if (include.matches()) {
+                String target = include.group(1).equals("<") ? include.group(2) : resolve(path, include.group(2));
+                append(normalize(target));
+                line(i + 2, index);
+                continue;
+            }
+
+            if (VERSION.matcher(line).matches()) {
+                if (stack.size() > 1)
+                    throw new ShaderException("#version is not allowed in included file " + path);
+                output.append(line).append('\n');
+                for (String define : defines) {
+                    int equals = define.indexOf('=');
+                    output.append("#define ");
+                    if (equals < 0)
+                        output.append(define);
+                    else
+                        output.append(define, 0, equals).append(' ').append(define.substring(equals + 1));
+                    output.append('\n');
+                }
+                line(i + 2, index);
+                versionFound = true;
+                continue;
+            }
+
+            output.append(line).append('\n');
+        }
+
+        stack.pop();
+    }
+
+    private void line(int line, int source) {
+        output.append("#line ").append(line).append(' ').append(source).append('\n');
+    }
+
+    private static String resolve(String from, String path) {
+        int slash = from.lastIndexOf('/');
+        return slash < 0 ? path : from.substring(0, slash + 1) + path;
+    }
+
+    private static String normalize(String path) throws ShaderException {
+        Deque<String> parts = new ArrayDeque<>();
+        for (String part : path.replace('\\', '/').split("/")) {
+            if (part.isEmpty() || part.equals("."))
+                continue;
+            if (part.equals("..")) {
+                if (parts.isEmpty())
+                    throw new ShaderException("Include escapes the shaders root: " + path);
+                parts.removeLast();
+            } else {
+                parts.addLast(part);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    public String[] getDefines() {
+        return defines.clone();
+    }
+}
@@ -1,105 +1,271 @@
 package com.johanvonelectrum.engine.shaders;
 
-import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+import com.johanvonelectrum.engine.graphics.GLStateCache;
+import com.johanvonelectrum.engine.graphics.Graphics;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import com.johanvonelectrum.engine.graphics.UniformBuffer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+import org.lwjgl.system.MemoryStack;
 
-import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL32.GL_FRAGMENT_SHADER;
-import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
-import static org.lwjgl.opengl.GL32.GL_VERTEX_SHADER;
+import static org.lwjgl.opengl.GL31.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class ShaderProgram {
 
     public static final Logger LOGGER = LogManager.getLogger("Shader");
 
+    private static ProgramBinaryCache binaryCache;
+
+    private final RenderDevice device = Graphics.getDevice();
     private final int programId;
-    private final int vertexId;
-    private final int geometryId;
-    private final int fragmentId;
+    private int vertexId;
+    private int geometryId;
+    private int fragmentId;
+
+    private final String name;
+    private final Map<String, Uniform> uniforms = new HashMap<>();
+    private final Map<String, Integer> uniformBlocks = new HashMap<>();
 
-    public ShaderProgram(String name) throws ShaderException {
-        this.programId = glCreateProgram();
+    private final long sourceHash;
+    private long binaryKey;
+    private boolean cached;
+
+    public ShaderProgram(String name, String... defines) throws ShaderException {
+        this(ShaderVariant.load(name, defines));
+    }
+
+    public ShaderProgram(ShaderVariant variant) throws ShaderException {
+        this.name = variant.getKey();
+        this.sourceHash = variant.getHash();
+        this.programId = device.createProgram();
         if (this.programId == NULL)
             throw new ShaderException("Could not create shader program. " + name);
 
-        String vertexShader;
-        String geometryShader = null;
-        String fragmentShader;
-        try {
-            vertexShader = ResourceLoader.loadResourceShader(name, GL_VERTEX_SHADER);
-            fragmentShader = ResourceLoader.loadResourceShader(name, GL_FRAGMENT_SHADER);
-        } catch (IOException e) {
-            throw new ShaderException("IOException while trying to read shader sources. " + name);
+        ShaderSource geometry = variant.getGeometry();
+        ProgramBinaryCache cache = binaryCache;
+        if (cache != null) {
+            this.binaryKey = cache.key(variant.getVertex().getText(), geometry == null ? null : geometry.getText(), variant.getFragment().getText());
+            if (cache.load(this.programId, this.binaryKey)) {
+                LOGGER.debug("Loaded shader program {} from the binary cache.", name);
+                this.cached = true;
+                return;
+            }
         }
 
         try {
-            geometryShader = ResourceLoader.loadResourceShader(name, GL_GEOMETRY_SHADER);
-        } catch (IOException e) {
-            LOGGER.warn("IOException while trying to read geometry shader source.", e);
+            this.vertexId = createShader(variant.getVertex());
+            if (geometry != null)
+                this.geometryId = createShader(geometry);
+            this.fragmentId = createShader(variant.getFragment());
+        } catch (ShaderException e) {
+            release();
+            throw e;
         }
+    }
 
-        if (vertexShader == null)
-            throw new ShaderException("Vertex shader not found. " + name);
-        else this.vertexId = createShader(vertexShader, GL_VERTEX_SHADER);
-        if (geometryShader == null) {
-            LOGGER.warn(new ShaderException("Geometry shader not found. " + name));
-            this.geometryId = -1;
-        }
-        else this.geometryId = createShader(geometryShader, GL_GEOMETRY_SHADER);
-        if (fragmentShader == null)
-            throw new ShaderException("Fragment shader not found. " + name);
-        else this.fragmentId = createShader(fragmentShader, GL_FRAGMENT_SHADER);
+    /**
+     * Programs created afterwards are loaded from and stored into the given cache. Pass null to disable it.
+     */
+    public static void setBinaryCache(ProgramBinaryCache cache) {
+        binaryCache = cache;
+    }
 
+    public static ProgramBinaryCache getBinaryCache() {
+        return binaryCache;
     }
 
-    private int createShader(String shaderSource, int shader) throws ShaderException {
-        int shaderId = glCreateShader(shader);
+    private int createShader(ShaderSource source) throws ShaderException {
+        int shaderId = device.createShader(source.getType());
         if (shaderId == NULL)
-            throw new ShaderException("Could not create shader of type " + shader);
+            throw new ShaderException("Could not create shader of type " + source.getType());
 
-        glShaderSource(shaderId, shaderSource);
-        glCompileShader(shaderId);
+        device.shaderSource(shaderId, source.getText());
+        device.compileShader(shaderId);
 
-        if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == GL_FALSE)
-            throw new ShaderException("Error compiling shader source: " + glGetShaderInfoLog(shaderId, 1024));
+        if (device.getShaderi(shaderId, GL_COMPILE_STATUS) == GL_FALSE) {
+            String log = device.getShaderInfoLog(shaderId);
+            device.deleteShader(shaderId);
+            throw new ShaderException("Error compiling " + source.getPath() + " (" + source.describeFiles() + "): " + log);
+        }
 
-        glAttachShader(this.programId, shaderId);
+        device.attachShader(this.programId, shaderId);
 
         return shaderId;
     }
 
+    /**
+     * Links the program, or only reflects it when it was loaded from the binary cache.
+     */
     public void link() throws ShaderException {
-        glLinkProgram(this.programId);
-        if (glGetProgrami(this.programId, GL_LINK_STATUS) == GL_FALSE)
-            throw new ShaderException("Error linking shader program: " + glGetProgramInfoLog(this.programId, 1024));
+        if (this.cached) {
+            reflect();
+            return;
+        }
+
+        ProgramBinaryCache cache = binaryCache;
+        if (cache != null)
+            cache.prepare(this.programId);
+
+        device.linkProgram(this.programId);
+        if (device.getProgrami(this.programId, GL_LINK_STATUS) == GL_FALSE)
+            throw new ShaderException("Error linking shader program " + name + ": " + device.getProgramInfoLog(this.programId));
+
+        this.vertexId = deleteShader(this.vertexId);
+        this.geometryId = deleteShader(this.geometryId);
+        this.fragmentId = deleteShader(this.fragmentId);
+
+        device.validateProgram(this.programId);
+        if (device.getProgrami(this.programId, GL_VALIDATE_STATUS) == GL_FALSE)
+            LOGGER.warn("Warning validating shader program: " + device.getProgramInfoLog(this.programId));
+
+        if (cache != null)
+            cache.store(this.programId, this.binaryKey);
+
+        reflect();
+    }
+
+    private int deleteShader(int shaderId) {
+        if (shaderId != NULL) {
+            device.detachShader(this.programId, shaderId);
+            device.deleteShader(shaderId);
+        }
+        return 0;
+    }
+
+    /**
+     * Caches every active uniform and binds every uniform block to the binding point shared through
+     * {@link UniformBuffer}.
+     */
+    private void reflect() {
+        uniforms.clear();
+        uniformBlocks.clear();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+
+            int uniformCount = device.getProgrami(this.programId, GL_ACTIVE_UNIFORMS);
+            for (int i = 0; i < uniformCount; i++) {
+                String uniformName = device.getActiveUniform(this.programId, i, size, type);
+                int location = device.getUniformLocation(this.programId, uniformName);
+                if (location == -1)
+                    continue; // Member of a uniform block
+
+                if (uniformName.endsWith("[0]"))
+                    uniformName = uniformName.substring(0, uniformName.length() - 3);
+                uniforms.put(uniformName, new Uniform(device, this.programId, uniformName, location, type.get(0), size.get(0)));
+            }
+        }
+
+        int blockCount = device.getProgrami(this.programId, GL_ACTIVE_UNIFORM_BLOCKS);
+        for (int i = 0; i < blockCount; i++) {
+            String blockName = device.getActiveUniformBlockName(this.programId, i);
+            int binding = UniformBuffer.bindingOf(blockName);
+            device.uniformBlockBinding(this.programId, i, binding);
+            uniformBlocks.put(blockName, binding);
+        }
+
+        LOGGER.debug("Shader program {} has {} uniforms and {} uniform blocks.", name, uniforms.size(), uniformBlocks.size());
+    }
+
+    /**
+     * Returns the cached uniform. Unknown names give an inactive uniform whose setters do nothing.
+     */
+    public Uniform getUniform(String uniformName) {
+        Uniform uniform = uniforms.get(uniformName);
+        if (uniform == null) {
+            LOGGER.debug("Uniform {} is not active in shader program {}.", uniformName, name);
+            uniform = new Uniform(device, this.programId, uniformName, -1, 0, 0);
+            uniforms.put(uniformName, uniform);
+        }
+        return uniform;
+    }
+
+    public void setUniform(String uniformName, int value) {
+        getUniform(uniformName).set(value);
+    }
+
+    public void setUniform(String uniformName, float value) {
+        getUniform(uniformName).set(value);
+    }
 
-        if (this.vertexId != NULL)
-            glDetachShader(this.programId, this.vertexId);
-        if (this.geometryId != NULL)
-            glDetachShader(this.programId, this.geometryId);
-        if (this.fragmentId != NULL)
-            glDetachShader(this.programId, this.fragmentId);
+    public void setUniform(String uniformName, Vector3fc value) {
+        getUniform(uniformName).set(value);
+    }
 
-        glValidateProgram(this.programId);
-        if (glGetProgrami(this.programId, GL_VALIDATE_STATUS) == GL_FALSE)
-            LOGGER.warn("Warning validating shader program: " + glGetProgramInfoLog(this.programId, 1024));
+    public void setUniform(String uniformName, Vector4fc value) {
+        getUniform(uniformName).set(value);
+    }
+
+    public void setUniform(String uniformName, Matrix4fc value) {
+        getUniform(uniformName).set(value);
+    }
+
+    public Map<String, Uniform> getUniforms() {
+        return Collections.unmodifiableMap(uniforms);
+    }
+
+    /**
+     * @return uniform block names mapped to their binding points
+     */
+    public Map<String, Integer> getUniformBlocks() {
+        return Collections.unmodifiableMap(uniformBlocks);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the program was loaded from the {@link ProgramBinaryCache} instead of compiled
+     */
+    public boolean isCached() {
+        return cached;
     }
 
     public void bind() {
-        glUseProgram(this.programId);
+        GLStateCache.useProgram(this.programId);
     }
 
     public void unbind() {
-        glUseProgram(GL_FALSE);
+        GLStateCache.useProgram(GL_FALSE);
+    }
+
+    public int getProgramId() {
+        return programId;
+    }
+
+    /**
+     * @return hash of the preprocessed sources, equal for permutations that compile to the same program
+     */
+    public long getSourceHash() {
+        return sourceHash;
     }
 
     public void dispose() {
         this.unbind();
+        release();
+        GLStateCache.forgetProgram(programId);
+    }
+
+    /**
+     * Deletes the GL objects without touching the {@link GLStateCache}, for contexts other than the main one.
+     */
+    void release() {
+        this.vertexId = deleteShader(this.vertexId);
+        this.geometryId = deleteShader(this.geometryId);
+        this.fragmentId = deleteShader(this.fragmentId);
         if (this.programId != NULL)
-            glDeleteProgram(programId);
+            device.deleteProgram(programId);
     }
 }
@@ -0,0 +1,52 @@
+package com.johanvonelectrum.engine.shaders;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Preprocessed source of a single shader stage. Source string numbers in {@code #line} directives and driver errors
+ * index into {@link #getFiles()}.
+ */
+public final class ShaderSource {
+
+    private final int type;
+    private final String path;
+    private final String text;
+    private final List<String> files;
+
+    ShaderSource(int type, String path, String text, List<String> files) {
+        this.type = type;
+        this.path = path;
+        this.text = text;
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return source string numbers mapped to file names, for error messages
+     */
+    public String describeFiles() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(i).append(": ").append(files.get(i));
+        }
+        return builder.toString();
+    }
+}
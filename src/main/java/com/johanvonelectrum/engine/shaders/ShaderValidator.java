@@ -0,0 +1,192 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.johanvonelectrum.engine.io.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.lwjgl.opengl.GL32.GL_FRAGMENT_SHADER;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL32.GL_VERTEX_SHADER;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.util.shaderc.Shaderc.*;
+
+/**
+ * Build time validation of every shader permutation with shaderc, run by the {@code validateShaders} Gradle task.
+ * <p>
+ * Every program in the shaders directory is validated without defines, plus the permutations listed in
+ * {@code permutations.json} ({@code {"sprite": [["ALPHA_TEST"], ...]}}). Each permutation is preprocessed exactly
+ * like at runtime and compiled to SPIR-V for OpenGL 4.5, which is written to the output directory. Exits with 1 if
+ * any stage fails.
+ * <p>
+ * Usage: {@code ShaderValidator <shaders directory> <output directory>}
+ */
+public final class ShaderValidator {
+
+    private static final Logger LOGGER = LogManager.getLogger("ShaderValidator");
+
+    public static final String PERMUTATIONS = "permutations.json";
+
+    private ShaderValidator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShaderValidator <shaders directory> <output directory>");
+            System.exit(2);
+        }
+
+        Path shaders = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Map<String, List<String[]>> permutations = findPermutations(shaders);
+
+        long compiler = shaderc_compiler_initialize();
+        long options = shaderc_compile_options_initialize();
+        if (compiler == NULL || options == NULL)
+            throw new IllegalStateException("Could not initialize shaderc.");
+
+        int failures = 0, stages = 0;
+        Set<Long> validated = new HashSet<>();
+        try {
+            shaderc_compile_options_set_source_language(options, shaderc_source_language_glsl);
+            shaderc_compile_options_set_target_env(options, shaderc_target_env_opengl, shaderc_env_version_opengl_4_5);
+            shaderc_compile_options_set_auto_map_locations(options, true);
+            shaderc_compile_options_set_auto_bind_uniforms(options, true);
+
+            Files.createDirectories(output);
+            for (Map.Entry<String, List<String[]>> entry : permutations.entrySet()) {
+                for (String[] defines : entry.getValue()) {
+                    String key = ShaderVariant.keyOf(entry.getKey(), defines);
+                    ShaderVariant variant;
+                    try {
+                        variant = ShaderVariant.load(shaders, entry.getKey(), defines);
+                    } catch (ShaderException e) {
+                        LOGGER.error("{}: {}", key, e.getMessage());
+                        failures++;
+                        continue;
+                    }
+
+                    if (!validated.add(variant.getHash())) {
+                        LOGGER.debug("{}: identical to an already validated permutation.", key);
+                        continue;
+                    }
+
+                    String prefix = Hashing.toHex(variant.getHash());
+                    for (ShaderSource source : new ShaderSource[] { variant.getVertex(), variant.getGeometry(), variant.getFragment() }) {
+                        if (source == null)
+                            continue;
+                        stages++;
+                        if (!compile(compiler, options, key, source, output.resolve(prefix + "." + kindName(source.getType()) + ".spv")))
+                            failures++;
+                    }
+                }
+            }
+        } finally {
+            shaderc_compile_options_release(options);
+            shaderc_compiler_release(compiler);
+        }
+
+        LOGGER.info("Validated {} shader stages of {} permutations, {} failures.", stages, validated.size(), failures);
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static boolean compile(long compiler, long options, String key, ShaderSource source, Path target) throws IOException {
+        long result = shaderc_compile_into_spv(compiler, source.getText(), kindOf(source.getType()), source.getPath(), "main", options);
+        if (result == NULL) {
+            LOGGER.error("{}: shaderc returned no result for {}", key, source.getPath());
+            return false;
+        }
+
+        try {
+            if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success) {
+                LOGGER.error("{}: {} ({})\n{}", key, source.getPath(), source.describeFiles(), shaderc_result_get_error_message(result));
+                return false;
+            }
+            if (shaderc_result_get_num_warnings(result) > 0)
+                LOGGER.warn("{}: {}\n{}", key, source.getPath(), shaderc_result_get_error_message(result));
+
+            ByteBuffer spirv = shaderc_result_get_bytes(result);
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (spirv != null && spirv.hasRemaining())
+                    channel.write(spirv);
+            }
+            return true;
+        } finally {
+            shaderc_result_release(result);
+        }
+    }
+
+    /**
+     * @return every program with a vertex shader mapped to its permutations, the default one always included
+     */
+    private static Map<String, List<String[]>> findPermutations(Path shaders) throws IOException {
+        Map<String, List<String[]>> permutations = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.walk(shaders)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".vs"))
+                    .sorted()
+                    .forEach(file -> {
+                        String relative = shaders.relativize(file).toString().replace('\\', '/');
+                        List<String[]> list = new ArrayList<>();
+                        list.add(new String[0]);
+                        permutations.put(relative.substring(0, relative.length() - 3), list);
+                    });
+        }
+
+        Path manifest = shaders.resolve(PERMUTATIONS);
+        if (Files.isRegularFile(manifest)) {
+            try (Reader reader = Files.newBufferedReader(manifest)) {
+                JsonObject root = new Gson().fromJson(reader, JsonObject.class);
+                for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+                    List<String[]> list = permutations.get(entry.getKey());
+                    if (list == null)
+                        throw new IllegalArgumentException(PERMUTATIONS + " references unknown shader " + entry.getKey());
+
+                    for (JsonElement permutation : entry.getValue().getAsJsonArray()) {
+                        JsonArray defines = permutation.getAsJsonArray();
+                        String[] values = new String[defines.size()];
+                        for (int i = 0; i < values.length; i++)
+                            values[i] = defines.get(i).getAsString();
+                        list.add(values);
+                    }
+                }
+            }
+        }
+        return permutations;
+    }
+
+    private static int kindOf(int type) {
+        if (type == GL_VERTEX_SHADER)
+            return shaderc_glsl_vertex_shader;
+        if (type == GL_GEOMETRY_SHADER)
+            return shaderc_glsl_geometry_shader;
+        return shaderc_glsl_fragment_shader;
+    }
+
+    private static String kindName(int type) {
+        if (type == GL_VERTEX_SHADER)
+            return "vert";
+        if (type == GL_GEOMETRY_SHADER)
+            return "geom";
+        return "frag";
+    }
+}
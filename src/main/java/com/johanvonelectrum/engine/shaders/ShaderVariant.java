@@ -0,0 +1,97 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.io.Hashing;
+import com.johanvonelectrum.engine.io.resources.ResourceLoader;
+
+import java.nio.file.Path;
+
+import static org.lwjgl.opengl.GL32.GL_FRAGMENT_SHADER;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL32.GL_VERTEX_SHADER;
+
+/**
+ * One permutation of a shader program: its name, the defines it was built with and the preprocessed source of every
+ * stage. The geometry stage is optional.
+ */
+public final class ShaderVariant {
+
+    private final String name;
+    private final String[] defines;
+    private final ShaderSource vertex;
+    private final ShaderSource geometry;
+    private final ShaderSource fragment;
+    private final long hash;
+
+    private ShaderVariant(String name, String[] defines, ShaderSource vertex, ShaderSource geometry, ShaderSource fragment) {
+        this.name = name;
+        this.defines = defines;
+        this.vertex = vertex;
+        this.geometry = geometry;
+        this.fragment = fragment;
+        this.hash = Hashing.xxh64(vertex.getText(), geometry == null ? null : geometry.getText(), fragment.getText());
+    }
+
+    public static ShaderVariant load(String name, String... defines) throws ShaderException {
+        return load(new ShaderPreprocessor(defines), name);
+    }
+
+    /**
+     * Loads the permutation from a shaders directory instead of the resources, for build time tools.
+     */
+    public static ShaderVariant load(Path root, String name, String... defines) throws ShaderException {
+        return load(new ShaderPreprocessor(root, defines), name);
+    }
+
+    private static ShaderVariant load(ShaderPreprocessor preprocessor, String name) throws ShaderException {
+        ShaderSource vertex = preprocessor.process(name + ResourceLoader.shaderExtension(GL_VERTEX_SHADER), GL_VERTEX_SHADER);
+        ShaderSource geometry = null;
+        String geometryPath = name + ResourceLoader.shaderExtension(GL_GEOMETRY_SHADER);
+        if (preprocessor.exists(geometryPath))
+            geometry = preprocessor.process(geometryPath, GL_GEOMETRY_SHADER);
+        ShaderSource fragment = preprocessor.process(name + ResourceLoader.shaderExtension(GL_FRAGMENT_SHADER), GL_FRAGMENT_SHADER);
+
+        return new ShaderVariant(name, preprocessor.getDefines(), vertex, geometry, fragment);
+    }
+
+    /**
+     * @return a stable key like {@code sprite[ALPHA_TEST,SAMPLES=4]}, equal for equal permutations
+     */
+    public static String keyOf(String name, String... defines) {
+        String[] canonical = ShaderPreprocessor.canonical(defines);
+        return canonical.length == 0 ? name : name + "[" + String.join(",", canonical) + "]";
+    }
+
+    public String getKey() {
+        return keyOf(name, defines);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getDefines() {
+        return defines.clone();
+    }
+
+    public ShaderSource getVertex() {
+        return vertex;
+    }
+
+    /**
+     * @return the geometry stage or null if the program has none
+     */
+    public ShaderSource getGeometry() {
+        return geometry;
+    }
+
+    public ShaderSource getFragment() {
+        return fragment;
+    }
+
+    /**
+     * @return xxHash64 of the preprocessed sources, equal for permutations that expand to the same code
+     */
+    public long getHash() {
+        return hash;
+    }
+}
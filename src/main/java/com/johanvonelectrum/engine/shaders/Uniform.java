@@ -0,0 +1,117 @@
+package com.johanvonelectrum.engine.shaders;
+
+import com.johanvonelectrum.engine.graphics.GLStateCache;
+import com.johanvonelectrum.engine.graphics.RenderDevice;
+import org.joml.Matrix3fc;
+import org.joml.Matrix4fc;
+import org.joml.Vector2fc;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Active uniform of a linked {@link ShaderProgram}. The location is resolved once at link time, so setters do not
+ * look anything up and matrices are staged on the {@link MemoryStack} instead of the heap. Setting a uniform binds
+ * its program through the {@link GLStateCache}.
+ */
+public class Uniform {
+
+    private final RenderDevice device;
+    private final int programId;
+    private final String name;
+    private final int location;
+    private final int type;
+    private final int size;
+
+    Uniform(RenderDevice device, int programId, String name, int location, int type, int size) {
+        this.device = device;
+        this.programId = programId;
+        this.name = name;
+        this.location = location;
+        this.type = type;
+        this.size = size;
+    }
+
+    private void use() {
+        GLStateCache.useProgram(programId);
+    }
+
+    public void set(int value) {
+        use();
+        device.uniform1i(location, value);
+    }
+
+    public void set(float value) {
+        use();
+        device.uniform1f(location, value);
+    }
+
+    public void set(float x, float y) {
+        use();
+        device.uniform2f(location, x, y);
+    }
+
+    public void set(float x, float y, float z) {
+        use();
+        device.uniform3f(location, x, y, z);
+    }
+
+    public void set(float x, float y, float z, float w) {
+        use();
+        device.uniform4f(location, x, y, z, w);
+    }
+
+    public void set(Vector2fc value) {
+        set(value.x(), value.y());
+    }
+
+    public void set(Vector3fc value) {
+        set(value.x(), value.y(), value.z());
+    }
+
+    public void set(Vector4fc value) {
+        set(value.x(), value.y(), value.z(), value.w());
+    }
+
+    public void set(Matrix3fc value) {
+        use();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            device.uniformMatrix3fv(location, false, value.get(stack.mallocFloat(9)));
+        }
+    }
+
+    public void set(Matrix4fc value) {
+        use();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            device.uniformMatrix4fv(location, false, value.get(stack.mallocFloat(16)));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the uniform location, -1 if the uniform is not active (setters are then ignored by GL)
+     */
+    public int getLocation() {
+        return location;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isActive() {
+        return location != -1;
+    }
+
+    @Override
+    public String toString() {
+        return "Uniform{" + name + " @" + location + '}';
+    }
+}
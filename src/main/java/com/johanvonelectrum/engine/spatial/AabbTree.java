@@ -0,0 +1,724 @@
+package com.johanvonelectrum.engine.spatial;
+
+import com.johanvonelectrum.engine.jobs.Job;
+import com.johanvonelectrum.engine.jobs.JobCounter;
+import com.johanvonelectrum.engine.jobs.JobSystem;
+import org.joml.FrustumIntersection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dynamic bounding volume hierarchy of axis aligned boxes, for frustum culling and spatial queries.
+ * <p>
+ * Leaves store the box of an object enlarged by a margin, so objects moving inside it cost nothing. Objects leaving
+ * it get a new fat box and their ancestors are refitted in place, which is cheap but slowly degrades the tree;
+ * {@link #rebuildIfNeeded()} rebuilds it top-down once enough leaves were refitted. Insertions pick the sibling with
+ * the lowest surface area cost and keep the tree balanced with rotations.
+ * <p>
+ * Nodes live in primitive arrays and queries append the user data of the matching leaves to a reusable
+ * {@link QueryResults}, so queries do not allocate. Results are tested against the fat boxes and may contain objects
+ * slightly outside the query. The tree is not thread-safe, except for the parallel cull which only reads it.
+ */
+public class AabbTree {
+
+    public static final int NULL_NODE = -1;
+    public static final float DEFAULT_MARGIN = 0.1f;
+    public static final float DEFAULT_REBUILD_RATIO = 0.5f;
+
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int SUBTREES_PER_WORKER = 4;
+
+    // minX, minY, minZ, maxX, maxY, maxZ per node
+    private float[] bounds;
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    private int[] height;
+    private int[] data;
+
+    private int root = NULL_NODE;
+    private int freeList = NULL_NODE;
+    private int nodeCount;
+    private int leafCount;
+
+    private final float margin;
+    private final float rebuildRatio;
+    private int refits;
+
+    private final Traversal traversal = new Traversal();
+    private final CullStats stats = new CullStats();
+
+    private CullWorker[] workers;
+    private int[] frontier = new int[64];
+    private int frontierSize;
+    private final AtomicInteger frontierCursor = new AtomicInteger();
+    private final JobCounter cullCounter = new JobCounter();
+    private FrustumIntersection cullFrustum;
+
+    public AabbTree() {
+        this(DEFAULT_MARGIN, DEFAULT_REBUILD_RATIO);
+    }
+
+    /**
+     * @param margin       added on every side of the leaf boxes
+     * @param rebuildRatio refitted leaves, relative to the leaf count, after which {@link #rebuildIfNeeded()} rebuilds
+     */
+    public AabbTree(float margin, float rebuildRatio) {
+        this.margin = margin;
+        this.rebuildRatio = rebuildRatio;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        int previous = parent == null ? 0 : parent.length;
+        bounds = bounds == null ? new float[capacity * 6] : Arrays.copyOf(bounds, capacity * 6);
+        parent = parent == null ? new int[capacity] : Arrays.copyOf(parent, capacity);
+        child1 = child1 == null ? new int[capacity] : Arrays.copyOf(child1, capacity);
+        child2 = child2 == null ? new int[capacity] : Arrays.copyOf(child2, capacity);
+        height = height == null ? new int[capacity] : Arrays.copyOf(height, capacity);
+        data = data == null ? new int[capacity] : Arrays.copyOf(data, capacity);
+
+        for (int node = previous; node < capacity - 1; node++) {
+            parent[node] = node + 1;
+            height[node] = -1;
+        }
+        parent[capacity - 1] = freeList;
+        height[capacity - 1] = -1;
+        freeList = previous;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE)
+            allocate(parent.length * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        data[node] = -1;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+        nodeCount--;
+    }
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL_NODE;
+    }
+
+    /**
+     * @param userData value returned by queries for this object, e.g. an entity
+     * @return proxy id of the object, stable until it is removed
+     */
+    public int insert(int userData, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int leaf = allocateNode();
+        data[leaf] = userData;
+        setFat(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        checkProxy(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Moves an object. Nothing changes while the box stays inside the fat box of the leaf, otherwise the leaf gets a
+     * new fat box and its ancestors are refitted.
+     *
+     * @return true if the tree was modified
+     */
+    public boolean update(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        checkProxy(proxy);
+        int offset = proxy * 6;
+        if (bounds[offset] <= minX && bounds[offset + 1] <= minY && bounds[offset + 2] <= minZ
+                && bounds[offset + 3] >= maxX && bounds[offset + 4] >= maxY && bounds[offset + 5] >= maxZ)
+            return false;
+
+        setFat(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int node = parent[proxy]; node != NULL_NODE; node = parent[node])
+            union(node, child1[node], child2[node]);
+        refits++;
+        return true;
+    }
+
+    private void checkProxy(int proxy) {
+        if (proxy < 0 || proxy >= parent.length || height[proxy] != 0)
+            throw new IllegalArgumentException("Invalid proxy: " + proxy);
+    }
+
+    private void setFat(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int offset = node * 6;
+        bounds[offset] = minX - margin;
+        bounds[offset + 1] = minY - margin;
+        bounds[offset + 2] = minZ - margin;
+        bounds[offset + 3] = maxX + margin;
+        bounds[offset + 4] = maxY + margin;
+        bounds[offset + 5] = maxZ + margin;
+    }
+
+    private void union(int target, int a, int b) {
+        int t = target * 6, i = a * 6, j = b * 6;
+        bounds[t] = Math.min(bounds[i], bounds[j]);
+        bounds[t + 1] = Math.min(bounds[i + 1], bounds[j + 1]);
+        bounds[t + 2] = Math.min(bounds[i + 2], bounds[j + 2]);
+        bounds[t + 3] = Math.max(bounds[i + 3], bounds[j + 3]);
+        bounds[t + 4] = Math.max(bounds[i + 4], bounds[j + 4]);
+        bounds[t + 5] = Math.max(bounds[i + 5], bounds[j + 5]);
+    }
+
+    private float area(int node) {
+        int o = node * 6;
+        float x = bounds[o + 3] - bounds[o], y = bounds[o + 4] - bounds[o + 1], z = bounds[o + 5] - bounds[o + 2];
+        return 2f * (x * y + y * z + z * x);
+    }
+
+    private float unionArea(int a, int b) {
+        int i = a * 6, j = b * 6;
+        float x = Math.max(bounds[i + 3], bounds[j + 3]) - Math.min(bounds[i], bounds[j]);
+        float y = Math.max(bounds[i + 4], bounds[j + 4]) - Math.min(bounds[i + 1], bounds[j + 1]);
+        float z = Math.max(bounds[i + 5], bounds[j + 5]) - Math.min(bounds[i + 2], bounds[j + 2]);
+        return 2f * (x * y + y * z + z * x);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[leaf] = NULL_NODE;
+            return;
+        }
+
+        int index = root;
+        while (!isLeaf(index)) {
+            int first = child1[index], second = child2[index];
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            float cost = 2f * combinedArea;
+            float inheritanceCost = 2f * (combinedArea - area);
+            float cost1 = unionArea(first, leaf) - (isLeaf(first) ? 0f : area(first)) + inheritanceCost;
+            float cost2 = unionArea(second, leaf) - (isLeaf(second) ? 0f : area(second)) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2)
+                break;
+            index = cost1 < cost2 ? first : second;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        union(newParent, sibling, leaf);
+        height[newParent] = height[sibling] + 1;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        if (oldParent == NULL_NODE)
+            root = newParent;
+        else if (child1[oldParent] == sibling)
+            child1[oldParent] = newParent;
+        else
+            child2[oldParent] = newParent;
+
+        fixUpwards(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int parentNode = parent[leaf];
+        int grandParent = parent[parentNode];
+        int sibling = child1[parentNode] == leaf ? child2[parentNode] : child1[parentNode];
+
+        if (grandParent == NULL_NODE) {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(parentNode);
+            return;
+        }
+
+        if (child1[grandParent] == parentNode)
+            child1[grandParent] = sibling;
+        else
+            child2[grandParent] = sibling;
+        parent[sibling] = grandParent;
+        freeNode(parentNode);
+        fixUpwards(grandParent);
+    }
+
+    private void fixUpwards(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int first = child1[index], second = child2[index];
+            height[index] = 1 + Math.max(height[first], height[second]);
+            union(index, first, second);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Rotates the taller child of {@code a} up if the subtree is unbalanced.
+     *
+     * @return the new root of the subtree
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2)
+            return a;
+
+        int b = child1[a], c = child2[a];
+        int difference = height[c] - height[b];
+        if (difference > 1)
+            return rotate(a, c, b, false);
+        if (difference < -1)
+            return rotate(a, b, c, true);
+        return a;
+    }
+
+    private int rotate(int a, int up, int other, boolean upIsFirst) {
+        int f = child1[up], g = child2[up];
+
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+        int upParent = parent[up];
+        if (upParent == NULL_NODE)
+            root = up;
+        else if (child1[upParent] == a)
+            child1[upParent] = up;
+        else
+            child2[upParent] = up;
+
+        int keep = height[f] > height[g] ? f : g;
+        int give = keep == f ? g : f;
+        child2[up] = keep;
+        if (upIsFirst)
+            child1[a] = give;
+        else
+            child2[a] = give;
+        parent[give] = a;
+
+        union(a, other, give);
+        union(up, a, keep);
+        height[a] = 1 + Math.max(height[other], height[give]);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+        return up;
+    }
+
+    /**
+     * Rebuilds the tree if more than the configured ratio of leaves was refitted since the last rebuild. Meant to be
+     * called once per frame.
+     *
+     * @return true if the tree was rebuilt
+     */
+    public boolean rebuildIfNeeded() {
+        if (leafCount < 2 || refits <= leafCount * rebuildRatio)
+            return false;
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Rebuilds every internal node top-down, splitting the leaves at the median of the longest axis. Proxy ids stay
+     * valid.
+     */
+    public void rebuild() {
+        refits = 0;
+        if (leafCount < 2)
+            return;
+
+        int[] leaves = new int[leafCount];
+        int count = 0;
+        for (int node = 0; node < parent.length; node++) {
+            if (height[node] < 0)
+                continue;
+            if (isLeaf(node))
+                leaves[count++] = node;
+            else
+                freeNode(node);
+        }
+
+        root = build(leaves, 0, count);
+        parent[root] = NULL_NODE;
+    }
+
+    private int build(int[] leaves, int start, int end) {
+        if (end - start == 1)
+            return leaves[start];
+
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = start; i < end; i++) {
+            int o = leaves[i] * 6;
+            float x = bounds[o] + bounds[o + 3], y = bounds[o + 1] + bounds[o + 4], z = bounds[o + 2] + bounds[o + 5];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            minZ = Math.min(minZ, z);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        float extentX = maxX - minX, extentY = maxY - minY, extentZ = maxZ - minZ;
+        int axis = extentX >= extentY && extentX >= extentZ ? 0 : extentY >= extentZ ? 1 : 2;
+        int middle = (start + end) >>> 1;
+        select(leaves, start, end - 1, middle, axis);
+
+        int node = allocateNode();
+        int first = build(leaves, start, middle);
+        int second = build(leaves, middle, end);
+        child1[node] = first;
+        child2[node] = second;
+        parent[first] = node;
+        parent[second] = node;
+        height[node] = 1 + Math.max(height[first], height[second]);
+        union(node, first, second);
+        return node;
+    }
+
+    private float centroid(int leaf, int axis) {
+        int o = leaf * 6 + axis;
+        return bounds[o] + bounds[o + 3];
+    }
+
+    /**
+     * Quickselect: partially orders the leaves so the k-th one is at its sorted position along the axis.
+     */
+    private void select(int[] leaves, int low, int high, int k, int axis) {
+        while (low < high) {
+            float pivot = centroid(leaves[(low + high) >>> 1], axis);
+            int i = low, j = high;
+            while (i <= j) {
+                while (centroid(leaves[i], axis) < pivot)
+                    i++;
+                while (centroid(leaves[j], axis) > pivot)
+                    j--;
+                if (i <= j) {
+                    int swap = leaves[i];
+                    leaves[i++] = leaves[j];
+                    leaves[j--] = swap;
+                }
+            }
+            if (k <= j)
+                high = j;
+            else if (k >= i)
+                low = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Appends the user data of every object whose fat box overlaps the box.
+     */
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryResults results) {
+        if (root == NULL_NODE)
+            return;
+
+        int[] stack = traversal.stack;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int o = node * 6;
+            if (bounds[o] > maxX || bounds[o + 1] > maxY || bounds[o + 2] > maxZ
+                    || bounds[o + 3] < minX || bounds[o + 4] < minY || bounds[o + 5] < minZ)
+                continue;
+
+            if (isLeaf(node)) {
+                results.add(data[node]);
+            } else {
+                stack = traversal.ensure(top + 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+    }
+
+    /**
+     * Appends the user data of every object whose fat box overlaps the sphere.
+     */
+    public void querySphere(float x, float y, float z, float radius, QueryResults results) {
+        if (root == NULL_NODE)
+            return;
+
+        float radiusSquared = radius * radius;
+        int[] stack = traversal.stack;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int o = node * 6;
+            float dx = Math.max(Math.max(bounds[o] - x, 0f), x - bounds[o + 3]);
+            float dy = Math.max(Math.max(bounds[o + 1] - y, 0f), y - bounds[o + 4]);
+            float dz = Math.max(Math.max(bounds[o + 2] - z, 0f), z - bounds[o + 5]);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared)
+                continue;
+
+            if (isLeaf(node)) {
+                results.add(data[node]);
+            } else {
+                stack = traversal.ensure(top + 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+    }
+
+    /**
+     * Appends the user data of every object whose fat box is hit by the ray within {@code maxDistance}, in no
+     * particular order. The direction does not need to be normalized; distances are in multiples of it.
+     */
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                        float maxDistance, QueryResults results) {
+        if (root == NULL_NODE)
+            return;
+
+        float inverseX = 1f / directionX, inverseY = 1f / directionY, inverseZ = 1f / directionZ;
+        int[] stack = traversal.stack;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int o = node * 6;
+
+            float t1 = (bounds[o] - originX) * inverseX, t2 = (bounds[o + 3] - originX) * inverseX;
+            float near = Math.min(t1, t2), far = Math.max(t1, t2);
+            t1 = (bounds[o + 1] - originY) * inverseY;
+            t2 = (bounds[o + 4] - originY) * inverseY;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            t1 = (bounds[o + 2] - originZ) * inverseZ;
+            t2 = (bounds[o + 5] - originZ) * inverseZ;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            if (far < Math.max(near, 0f) || near > maxDistance)
+                continue;
+
+            if (isLeaf(node)) {
+                results.add(data[node]);
+            } else {
+                stack = traversal.ensure(top + 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+    }
+
+    /**
+     * Appends the user data of every object inside or intersecting the frustum. Subtrees fully inside are accepted
+     * without testing their nodes.
+     */
+    public void cull(FrustumIntersection frustum, QueryResults results) {
+        int before = results.size();
+        int tested = root == NULL_NODE ? 0 : cullSubtree(root, frustum, results, traversal);
+        int visible = results.size() - before;
+        stats.add(visible, leafCount - visible, tested);
+    }
+
+    /**
+     * Same as {@link #cull(FrustumIntersection, QueryResults)}, but the subtrees below the first levels are culled on
+     * the job workers and the calling thread. The tree must not be modified until it returns.
+     */
+    public void cull(FrustumIntersection frustum, QueryResults results, JobSystem jobSystem) {
+        if (leafCount < PARALLEL_THRESHOLD || jobSystem.getWorkerCount() < 1) {
+            cull(frustum, results);
+            return;
+        }
+
+        int before = results.size();
+        int tested = splitFrontier(frustum, results, (jobSystem.getWorkerCount() + 1) * SUBTREES_PER_WORKER);
+
+        if (workers == null) {
+            workers = new CullWorker[jobSystem.getWorkerCount() + 1];
+            for (int i = 0; i < workers.length; i++)
+                workers[i] = new CullWorker(i);
+        }
+
+        cullFrustum = frustum;
+        frontierCursor.set(0);
+        try {
+            for (int i = 1; i < workers.length; i++)
+                jobSystem.submit(workers[i].job, cullCounter);
+            workers[0].run();
+            jobSystem.waitFor(cullCounter);
+        } finally {
+            cullFrustum = null;
+        }
+
+        for (CullWorker worker : workers) {
+            results.addAll(worker.results);
+            tested += worker.tested;
+            worker.results.clear();
+        }
+
+        int visible = results.size() - before;
+        stats.add(visible, leafCount - visible, tested);
+    }
+
+    /**
+     * Culls the top of the tree breadth first until there are enough intersecting subtrees to share.
+     *
+     * @return tested nodes
+     */
+    private int splitFrontier(FrustumIntersection frustum, QueryResults results, int target) {
+        frontierSize = 0;
+        frontier[frontierSize++] = root;
+        int tested = 0;
+        int head = 0;
+        while (head < frontierSize && frontierSize - head < target) {
+            int node = frontier[head++];
+            int o = node * 6;
+            int result = frustum.intersectAab(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4], bounds[o + 5]);
+            tested++;
+            if (result == FrustumIntersection.INSIDE) {
+                tested += addSubtree(node, results, traversal, 0);
+            } else if (result == FrustumIntersection.INTERSECT) {
+                if (isLeaf(node)) {
+                    results.add(data[node]);
+                } else {
+                    if (frontierSize + 2 > frontier.length)
+                        frontier = Arrays.copyOf(frontier, frontier.length * 2);
+                    frontier[frontierSize++] = child1[node];
+                    frontier[frontierSize++] = child2[node];
+                }
+            }
+        }
+
+        // Drop the processed nodes so only the subtrees left to cull remain
+        System.arraycopy(frontier, head, frontier, 0, frontierSize - head);
+        frontierSize -= head;
+        return tested;
+    }
+
+    /**
+     * @return tested nodes
+     */
+    private int cullSubtree(int start, FrustumIntersection frustum, QueryResults results, Traversal traversal) {
+        int[] stack = traversal.stack;
+        int top = 0;
+        int tested = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int node = stack[--top];
+            int o = node * 6;
+            int result = frustum.intersectAab(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4], bounds[o + 5]);
+            tested++;
+            if (result == FrustumIntersection.INSIDE) {
+                tested += addSubtree(node, results, traversal, top);
+                stack = traversal.stack;
+            } else if (result == FrustumIntersection.INTERSECT) {
+                if (isLeaf(node)) {
+                    results.add(data[node]);
+                } else {
+                    stack = traversal.ensure(top + 2);
+                    stack[top++] = child1[node];
+                    stack[top++] = child2[node];
+                }
+            }
+        }
+        return tested;
+    }
+
+    /**
+     * Appends every leaf below the node without testing, using the traversal stack above {@code base}.
+     *
+     * @return visited nodes, counted as tested for the statistics
+     */
+    private int addSubtree(int start, QueryResults results, Traversal traversal, int base) {
+        int[] stack = traversal.ensure(base + 1);
+        int top = base;
+        stack[top++] = start;
+        int visited = 0;
+        while (top > base) {
+            int node = stack[--top];
+            visited++;
+            if (isLeaf(node)) {
+                results.add(data[node]);
+            } else {
+                stack = traversal.ensure(top + 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+        return visited - 1;
+    }
+
+    public CullStats getStats() {
+        return stats;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+    /**
+     * @return leaves refitted since the last rebuild
+     */
+    public int getRefitCount() {
+        return refits;
+    }
+
+    public int getUserData(int proxy) {
+        checkProxy(proxy);
+        return data[proxy];
+    }
+
+    /**
+     * Traversal stack of one thread.
+     */
+    private static final class Traversal {
+
+        private int[] stack = new int[64];
+
+        int[] ensure(int size) {
+            if (size > stack.length)
+                stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+            return stack;
+        }
+    }
+
+    private final class CullWorker implements Runnable {
+
+        private final QueryResults results = new QueryResults(256);
+        private final Traversal traversal = new Traversal();
+        private final Job job;
+        private int tested;
+
+        private CullWorker(int index) {
+            this.job = new Job("Cull #" + index, this);
+        }
+
+        @Override
+        public void run() {
+            tested = 0;
+            int index;
+            while ((index = frontierCursor.getAndIncrement()) < frontierSize)
+                tested += cullSubtree(frontier[index], cullFrustum, results, traversal);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.johanvonelectrum.engine.spatial;
+
+/**
+ * Per frame culling counters of an {@link AabbTree}. Values of the frame in progress are accumulated until
+ * {@link #nextFrame()}, which publishes them as the last frame values.
+ */
+public class CullStats {
+
+    private int culls, visible, culled, nodesTested;
+    private int lastCulls, lastVisible, lastCulled, lastNodesTested;
+
+    void add(int visible, int culled, int nodesTested) {
+        this.culls++;
+        this.visible += visible;
+        this.culled += culled;
+        this.nodesTested += nodesTested;
+    }
+
+    public void nextFrame() {
+        lastCulls = culls;
+        lastVisible = visible;
+        lastCulled = culled;
+        lastNodesTested = nodesTested;
+        culls = visible = culled = nodesTested = 0;
+    }
+
+    public int getCulls() {
+        return lastCulls;
+    }
+
+    public int getVisible() {
+        return lastVisible;
+    }
+
+    public int getCulled() {
+        return lastCulled;
+    }
+
+    /**
+     * @return tree nodes tested against a frustum, lower than the object count when whole subtrees are accepted or
+     * rejected at once
+     */
+    public int getNodesTested() {
+        return lastNodesTested;
+    }
+
+    @Override
+    public String toString() {
+        return "CullStats{" +
+                "culls=" + lastCulls +
+                ", visible=" + lastVisible +
+                ", culled=" + lastCulled +
+                ", nodesTested=" + lastNodesTested +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.johanvonelectrum.engine.spatial;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints filled by spatial queries. Meant to be kept and cleared every frame, so queries do not
+ * allocate once it reached its working size.
+ */
+public final class QueryResults {
+
+    private int[] values;
+    private int size;
+
+    public QueryResults() {
+        this(64);
+    }
+
+    public QueryResults(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    public void addAll(QueryResults other) {
+        if (size + other.size > values.length)
+            values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #size()}
+     */
+    public int[] array() {
+        return values;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,100 @@
+package com.johanvonelectrum.engine.time;
+
+/**
+ * Accumulator that turns variable frame times into a fixed number of simulation ticks. The backlog is capped to
+ * {@code maxTicksPerFrame} ticks so a slow frame can not make the next one even slower (spiral of death); the time
+ * that does not fit is dropped and counted.
+ */
+public class FixedTimestep {
+
+    private static final float NANOS_PER_SECOND = 1_000_000_000f;
+
+    private final int tickRate;
+    private final long tickNanos;
+    private final int maxTicksPerFrame;
+
+    private long lastTime;
+    private long accumulator;
+    private long ticks;
+    private long droppedTicks;
+
+    public FixedTimestep(int tickRate, int maxTicksPerFrame) {
+        if (tickRate <= 0)
+            throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+        if (maxTicksPerFrame <= 0)
+            throw new IllegalArgumentException("Max ticks per frame must be positive: " + maxTicksPerFrame);
+
+        this.tickRate = tickRate;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * Resets the clock, must be called right before the first frame.
+     */
+    public void start(long now) {
+        this.lastTime = now;
+        this.accumulator = 0;
+    }
+
+    /**
+     * Adds the time elapsed since the previous call to the accumulator.
+     *
+     * @return frame time in seconds
+     */
+    public float advance(long now) {
+        long frameNanos = now - lastTime;
+        lastTime = now;
+
+        accumulator += frameNanos;
+        long maxBacklog = tickNanos * maxTicksPerFrame;
+        if (accumulator > maxBacklog) {
+            droppedTicks += (accumulator - maxBacklog) / tickNanos;
+            accumulator = maxBacklog;
+        }
+
+        return frameNanos / NANOS_PER_SECOND;
+    }
+
+    /**
+     * @return true if a tick is due, in which case it is consumed from the accumulator
+     */
+    public boolean consumeTick() {
+        if (accumulator < tickNanos)
+            return false;
+
+        accumulator -= tickNanos;
+        ticks++;
+        return true;
+    }
+
+    /**
+     * @return how far the render frame is between the last tick and the next one, in [0, 1)
+     */
+    public float getAlpha() {
+        return (float) accumulator / tickNanos;
+    }
+
+    /**
+     * @return fixed tick duration in seconds
+     */
+    public float getTickDelta() {
+        return tickNanos / NANOS_PER_SECOND;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+}
@@ -0,0 +1,96 @@
+package com.johanvonelectrum.engine.time;
+
+import com.johanvonelectrum.engine.profiling.TextBuffer;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Aggregates tick durations and start latency over a reporting interval.
+ */
+public class TickMetrics {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final long periodNanos;
+    private final long reportIntervalNanos;
+    private final TextBuffer report = new TextBuffer(160);
+
+    private long windowStart;
+    private long ticks;
+    private long totalNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+    private long overruns;
+    private long totalLateness;
+    private long maxLateness;
+
+    private long lifetimeTicks;
+    private long lifetimeOverruns;
+
+    public TickMetrics(long periodNanos, long reportIntervalNanos) {
+        this.periodNanos = periodNanos;
+        this.reportIntervalNanos = reportIntervalNanos;
+    }
+
+    public void start(long now) {
+        this.windowStart = now;
+    }
+
+    /**
+     * @param tickNanos time spent running the tick
+     * @param latenessNanos how late the tick started
+     */
+    public void record(long tickNanos, long latenessNanos) {
+        ticks++;
+        lifetimeTicks++;
+        totalNanos += tickNanos;
+        if (tickNanos < minNanos)
+            minNanos = tickNanos;
+        if (tickNanos > maxNanos)
+            maxNanos = tickNanos;
+        if (tickNanos > periodNanos) {
+            overruns++;
+            lifetimeOverruns++;
+        }
+
+        totalLateness += latenessNanos;
+        if (latenessNanos > maxLateness)
+            maxLateness = latenessNanos;
+    }
+
+    /**
+     * Logs and resets the current window once the report interval has elapsed.
+     */
+    public void reportIfDue(long now, Logger logger) {
+        if (now - windowStart < reportIntervalNanos || ticks == 0)
+            return;
+
+        if (logger.isInfoEnabled()) {
+            report.clear()
+                    .append("Ticks: ").append(ticks)
+                    .append(", tick time avg ").append(totalNanos / (double) ticks / NANOS_PER_MILLI, 3)
+                    .append(" ms / min ").append(minNanos / NANOS_PER_MILLI, 3)
+                    .append(" ms / max ").append(maxNanos / NANOS_PER_MILLI, 3)
+                    .append(" ms, overruns: ").append(overruns)
+                    .append(", jitter avg ").append(totalLateness / (double) ticks / NANOS_PER_MILLI, 3)
+                    .append(" ms / max ").append(maxLateness / NANOS_PER_MILLI, 3).append(" ms");
+            logger.info(report);
+        }
+
+        windowStart = now;
+        ticks = 0;
+        totalNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+        overruns = 0;
+        totalLateness = 0;
+        maxLateness = 0;
+    }
+
+    public long getLifetimeTicks() {
+        return lifetimeTicks;
+    }
+
+    public long getLifetimeOverruns() {
+        return lifetimeOverruns;
+    }
+}
@@ -0,0 +1,78 @@
+package com.johanvonelectrum.engine.time;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a loop at a fixed rate without a window or v-sync. The thread parks until shortly before the deadline and
+ * busy-waits the rest, since parking alone overshoots by tens of microseconds on most systems.
+ */
+public class TickScheduler {
+
+    public static final long DEFAULT_SPIN_NANOS = 500_000L;
+
+    private final long periodNanos;
+    private final long spinNanos;
+    private final int maxCatchUpTicks;
+
+    private long nextTick;
+    private long skippedTicks;
+
+    public TickScheduler(int tickRate, int maxCatchUpTicks) {
+        this(tickRate, maxCatchUpTicks, DEFAULT_SPIN_NANOS);
+    }
+
+    public TickScheduler(int tickRate, int maxCatchUpTicks, long spinNanos) {
+        if (tickRate <= 0)
+            throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+
+        this.periodNanos = 1_000_000_000L / tickRate;
+        this.spinNanos = spinNanos;
+        this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+    }
+
+    public void start(long now) {
+        this.nextTick = now + periodNanos;
+    }
+
+    /**
+     * Waits for the next tick deadline. When the loop falls more than {@code maxCatchUpTicks} behind, the schedule
+     * is moved forward and the missed ticks are counted as skipped.
+     *
+     * @return how late the tick starts, in nanoseconds
+     */
+    public long awaitNextTick() {
+        long now;
+        for (;;) {
+            now = System.nanoTime();
+            long remaining = nextTick - now;
+            if (remaining <= 0)
+                break;
+            if (remaining > spinNanos)
+                LockSupport.parkNanos(remaining - spinNanos);
+        }
+
+        long lateness = now - nextTick;
+        nextTick += periodNanos;
+
+        long behind = now - nextTick;
+        if (behind > periodNanos * maxCatchUpTicks) {
+            long missed = behind / periodNanos;
+            skippedTicks += missed;
+            nextTick += missed * periodNanos;
+        }
+
+        return lateness;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public float getTickDelta() {
+        return periodNanos / 1_000_000_000f;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+}
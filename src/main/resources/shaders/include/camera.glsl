@@ -0,0 +1,3 @@
+layout (std140) uniform Camera {
+    mat4 uViewProjection;
+};
@@ -0,0 +1,14 @@
+in vec2 vTexCoord;
+in vec4 vColor;
+
+uniform sampler2D uTexture;
+
+out vec4 fragColor;
+
+void main() {
+    fragColor = texture(uTexture, vTexCoord) * vColor;
+#ifdef ALPHA_TEST
+    if (fragColor.a < 0.01)
+        discard;
+#endif
+}
@@ -0,0 +1,3 @@
+#version 330 core
+
+#include <include/sprite_fragment.glsl>
@@ -0,0 +1,16 @@
+#version 330 core
+
+layout (location = 0) in vec2 aPosition;
+layout (location = 1) in vec2 aTexCoord;
+layout (location = 2) in vec4 aColor;
+
+#include <include/camera.glsl>
+
+out vec2 vTexCoord;
+out vec4 vColor;
+
+void main() {
+    vTexCoord = aTexCoord;
+    vColor = aColor;
+    gl_Position = uViewProjection * vec4(aPosition, 0.0, 1.0);
+}
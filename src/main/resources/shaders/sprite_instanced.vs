@@ -0,0 +1,17 @@
+#version 330 core
+
+layout (location = 0) in vec2 aCorner;
+layout (location = 1) in vec4 aRect;
+layout (location = 2) in vec4 aTexRect;
+layout (location = 3) in vec4 aColor;
+
+#include <include/camera.glsl>
+
+out vec2 vTexCoord;
+out vec4 vColor;
+
+void main() {
+    vTexCoord = mix(aTexRect.xy, aTexRect.zw, aCorner);
+    vColor = aColor;
+    gl_Position = uViewProjection * vec4(aRect.xy + aCorner * aRect.zw, 0.0, 1.0);
+}